@@ -16,6 +16,7 @@
 
 package org.bremersee.peregrinus.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.bremersee.exception.RestApiExceptionParser;
 import org.bremersee.google.maps.GoogleMapsProperties;
@@ -25,6 +26,8 @@ import org.bremersee.groupman.mock.GroupControllerMock;
 import org.bremersee.nominatim.NominatimProperties;
 import org.bremersee.nominatim.client.ReactiveNominatimClient;
 import org.bremersee.nominatim.client.ReactiveNominatimClientImpl;
+import org.bremersee.peregrinus.security.group.MembershipService;
+import org.bremersee.peregrinus.security.group.MembershipServiceImpl;
 import org.bremersee.security.reactive.function.client.JwtAuthenticationTokenAppender;
 import org.bremersee.tomtom.TomTomProperties;
 import org.bremersee.tomtom.client.ReactiveGeocodingClient;
@@ -36,14 +39,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.WebFilter;
 
 /**
  * @author Christian Bremer
  */
 @Configuration
 @EnableConfigurationProperties({PeregrinusProperties.class})
+@EnableScheduling
 @Slf4j
 public class PeregrinusConfiguration {
 
@@ -67,12 +73,19 @@ public class PeregrinusConfiguration {
   }
 
   @Bean
-  public GroupControllerApi groupService(final RestApiExceptionParser restApiExceptionParser) {
+  public WebClientBuilderFactory webClientBuilderFactory(final MeterRegistry meterRegistry) {
+    return new WebClientBuilderFactory(peregrinusProperties.getHttpClient(), meterRegistry);
+  }
+
+  @Bean
+  public GroupControllerApi groupService(
+      final RestApiExceptionParser restApiExceptionParser,
+      final WebClientBuilderFactory webClientBuilderFactory) {
     if (StringUtils.hasText(peregrinusProperties.getGroupmanBaseUri())) {
       log.info("msg=[Creating http groupman client.] baseUri=[{}]",
           peregrinusProperties.getGroupmanBaseUri());
-      final WebClient webClient = WebClient
-          .builder()
+      final WebClient webClient = webClientBuilderFactory
+          .builder("groupman")
           .baseUrl(peregrinusProperties.getGroupmanBaseUri())
           .filter(new JwtAuthenticationTokenAppender())
           .build();
@@ -86,25 +99,54 @@ public class PeregrinusConfiguration {
   }
 
   @Bean
-  public ReactiveNominatimClient nominatimService() {
-    return new ReactiveNominatimClientImpl(nominatimProperties, WebClient.builder());
+  public MembershipService membershipService(
+      final GroupControllerApi groupService,
+      final MeterRegistry meterRegistry) {
+    log.info("msg=[Creating membership service.] cache=[{}]",
+        peregrinusProperties.getMembershipCache());
+    return new MembershipServiceImpl(
+        groupService,
+        peregrinusProperties.getMembershipCache(),
+        meterRegistry);
+  }
+
+  @Bean
+  public WebFilter membershipRequestScopeFilter() {
+    return (exchange, chain) -> chain
+        .filter(exchange)
+        .subscriberContext(MembershipServiceImpl::withRequestScope);
+  }
+
+  @Bean
+  public ReactiveNominatimClient nominatimService(
+      final WebClientBuilderFactory webClientBuilderFactory) {
+    return new ReactiveNominatimClientImpl(
+        nominatimProperties,
+        webClientBuilderFactory.builder("nominatim"));
   }
 
   @Bean
-  public ReactiveGeocodingClient tomTomGeocodingService() {
-    return new ReactiveGeocodingClientImpl(tomTomProperties, WebClient.builder());
+  public ReactiveGeocodingClient tomTomGeocodingService(
+      final WebClientBuilderFactory webClientBuilderFactory) {
+    return new ReactiveGeocodingClientImpl(
+        tomTomProperties,
+        webClientBuilderFactory.builder("tomtom-geocoding"));
   }
 
   @Bean
-  public org.bremersee.google.maps.client.ReactiveGeocodingClient googleGeocodingService() {
+  public org.bremersee.google.maps.client.ReactiveGeocodingClient googleGeocodingService(
+      final WebClientBuilderFactory webClientBuilderFactory) {
     return new org.bremersee.google.maps.client.ReactiveGeocodingClientImpl(
         googleMapsProperties,
-        WebClient.builder());
+        webClientBuilderFactory.builder("google-geocoding"));
   }
 
   @Bean
-  public ReactiveRoutingClient tomTomRoutingService() {
-    return new ReactiveRoutingClientImpl(tomTomProperties, WebClient.builder());
+  public ReactiveRoutingClient tomTomRoutingService(
+      final WebClientBuilderFactory webClientBuilderFactory) {
+    return new ReactiveRoutingClientImpl(
+        tomTomProperties,
+        webClientBuilderFactory.builder("tomtom-routing"));
   }
 
 }
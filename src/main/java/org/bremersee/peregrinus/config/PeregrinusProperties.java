@@ -16,9 +16,17 @@
 
 package org.bremersee.peregrinus.config;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -36,4 +44,407 @@ public class PeregrinusProperties {
 
   private String googleKey;
 
+  private MembershipCacheProperties membershipCache = new MembershipCacheProperties();
+
+  private TreeJobProperties treeJobs = new TreeJobProperties();
+
+  private OrphanCompactionProperties orphanCompaction = new OrphanCompactionProperties();
+
+  private GeoCodingCacheProperties geoCodingCache = new GeoCodingCacheProperties();
+
+  private GeoCodingProperties geoCoding = new GeoCodingProperties();
+
+  private ReverseGeoCodingProperties reverseGeoCoding = new ReverseGeoCodingProperties();
+
+  private RteCalculationCacheProperties rteCalculationCache = new RteCalculationCacheProperties();
+
+  private HttpClientProperties httpClient = new HttpClientProperties();
+
+  private FeatureSpatialIndexProperties featureSpatialIndex = new FeatureSpatialIndexProperties();
+
+  private VectorTileProperties vectorTiles = new VectorTileProperties();
+
+  /**
+   * Cache settings of the group membership ids.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class MembershipCacheProperties {
+
+    private boolean enabled = true;
+
+    private Duration timeToLive = Duration.ofSeconds(30L);
+
+    private long maximumSize = 10000L;
+
+  }
+
+  /**
+   * Settings of the recursive tree operations (deleting a subtree or changing its access control).
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class TreeJobProperties {
+
+    /**
+     * The number of nodes that are processed together.
+     */
+    private int batchSize = 500;
+
+    /**
+     * The maximum number of batches that are processed at the same time.
+     */
+    private int maxConcurrency = 4;
+
+    /**
+     * Subtrees with more nodes are processed in the background.
+     */
+    private long threshold = 5000L;
+
+    /**
+     * How long the status of a finished job is kept.
+     */
+    private Duration timeToLive = Duration.ofHours(1L);
+
+  }
+
+  /**
+   * Settings of the background job that removes settings and features of deleted nodes.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class OrphanCompactionProperties {
+
+    private boolean enabled = true;
+
+    private int batchSize = 500;
+
+    /**
+     * Features without a leaf are only removed, if they were not modified within this time, so
+     * that features of leaves that are just created are not removed.
+     */
+    private Duration featureMinAge = Duration.ofDays(1L);
+
+    /**
+     * The compaction runs on one instance at a time. The instance holds a lease, that expires
+     * after this time, if the instance stops before releasing it.
+     */
+    private Duration leaseTime = Duration.ofHours(2L);
+
+  }
+
+  /**
+   * Cache settings of the geocoding results.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class GeoCodingCacheProperties {
+
+    private boolean enabled = true;
+
+    private long maximumSize = 10000L;
+
+    private Duration timeToLive = Duration.ofDays(7L);
+
+    /**
+     * Time to live of the results of a provider, if it differs from the default.
+     */
+    private Map<GeoProvider, Duration> providerTimeToLive = new EnumMap<>(GeoProvider.class);
+
+    /**
+     * Time to live of empty results.
+     */
+    private Duration negativeTimeToLive = Duration.ofMinutes(15L);
+
+    /**
+     * Specifies whether the results are also stored in the database, so that they survive a
+     * restart.
+     */
+    private boolean persistent = false;
+
+    public Duration getTimeToLive(final GeoProvider geoProvider) {
+      final Duration ttl = geoProvider != null ? providerTimeToLive.get(geoProvider) : null;
+      return ttl != null ? ttl : timeToLive;
+    }
+
+  }
+
+  /**
+   * Settings of the geocoding providers.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class GeoCodingProperties {
+
+    /**
+     * The providers that are asked, if the requested provider fails or is not available, in this
+     * order.
+     */
+    private List<GeoProvider> fallbackProviders = new ArrayList<>(Arrays.asList(
+        GeoProvider.NOMINATIM, GeoProvider.TOMTOM, GeoProvider.GOOGLE));
+
+    private Duration timeout = Duration.ofSeconds(5L);
+
+    /**
+     * If the requested provider has not answered within this time, the next provider is asked,
+     * too, and the first answer is taken. Hedging is disabled, if it is not set.
+     */
+    private Duration hedgeDelay;
+
+    /**
+     * Specifies whether the results of the requested provider and of the first fallback provider
+     * are merged.
+     */
+    private boolean merge = false;
+
+    /**
+     * Results with positions closer than this (in degrees) are merged.
+     */
+    private double mergeTolerance = 0.0005;
+
+    private Map<GeoProvider, GeoProviderGuardProperties> guards = defaultGuards();
+
+    private static Map<GeoProvider, GeoProviderGuardProperties> defaultGuards() {
+      final Map<GeoProvider, GeoProviderGuardProperties> guards = new EnumMap<>(GeoProvider.class);
+      final GeoProviderGuardProperties nominatim = new GeoProviderGuardProperties();
+      nominatim.setPermitsPerSecond(1.0);
+      nominatim.setBurst(1);
+      guards.put(GeoProvider.NOMINATIM, nominatim);
+      return guards;
+    }
+
+    public GeoProviderGuardProperties getGuard(final GeoProvider geoProvider) {
+      return guards.computeIfAbsent(geoProvider, key -> new GeoProviderGuardProperties());
+    }
+
+  }
+
+  /**
+   * Settings of the reverse geocoding.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class ReverseGeoCodingProperties {
+
+    /**
+     * The positions of a batch are snapped to a grid with this cell size (in degrees), so that
+     * nearby positions are looked up only once.
+     */
+    private double gridSize = 0.0001;
+
+    /**
+     * A cached result is used for a position, if it was looked up for a position within this
+     * distance (in meters).
+     */
+    private double tolerance = 25.0;
+
+    /**
+     * The precision of the geohash, that is used as key of the cache.
+     */
+    private int geoHashPrecision = 7;
+
+    private long maximumSize = 100000L;
+
+    private Duration timeToLive = Duration.ofDays(7L);
+
+    /**
+     * The maximum number of concurrent provider calls of a batch.
+     */
+    private int maxConcurrency = 2;
+
+  }
+
+  /**
+   * Cache settings of the calculated routes.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class RteCalculationCacheProperties {
+
+    private long maximumSize = 1000L;
+
+    /**
+     * Calculated routes depend on the traffic, so they shouldn't be cached too long.
+     */
+    private Duration timeToLive = Duration.ofMinutes(30L);
+
+    /**
+     * The number of decimal places the coordinates of the locations are rounded to, before they
+     * are used as cache key.
+     */
+    private int scale = 5;
+
+  }
+
+  /**
+   * Settings of the in-memory spatial index of the features, that a user can read.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class FeatureSpatialIndexProperties {
+
+    /**
+     * Specifies whether the spatial index is used. The index is kept per instance and doesn't see
+     * the changes of other instances until it expires, so it should only be enabled, if there is
+     * one instance with few writes.
+     */
+    private boolean enabled = false;
+
+    /**
+     * The maximum number of features of all cached indexes. The indexes of the users, that were
+     * not used recently, are removed first.
+     */
+    private long maximumFeatures = 500000L;
+
+    private Duration expireAfterAccess = Duration.ofMinutes(30L);
+
+    /**
+     * How long an index is used at most, before it is loaded again. It bounds how long the changes
+     * of other instances are missing.
+     */
+    private Duration expireAfterWrite = Duration.ofMinutes(5L);
+
+    /**
+     * The number of changed features, after which an index is rebuilt. Until then the changed
+     * features are searched one by one.
+     */
+    private int rebuildThreshold = 256;
+
+  }
+
+  /**
+   * Settings of the vector tiles.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class VectorTileProperties {
+
+    private int extent = 4096;
+
+    /**
+     * The geometries are clipped with this buffer (in tile units) around the tile, so that lines
+     * and symbols are not cut at the tile border.
+     */
+    private int buffer = 64;
+
+    /**
+     * The distance tolerance (in tile units) of the simplification of the lines.
+     */
+    private double simplifyTolerance = 1.0;
+
+    /**
+     * The maximum number of features of a tile. The features of a tile with more features are
+     * taken in the order of their ids; such a tile is logged and counted with
+     * {@code peregrinus.tile.truncated}.
+     */
+    private int maximumFeatures = 5000;
+
+    private long cacheMaximumSize = 10000L;
+
+    private Duration cacheTimeToLive = Duration.ofMinutes(10L);
+
+  }
+
+  /**
+   * Settings of the http clients of the providers (nominatim, tomtom-geocoding,
+   * google-geocoding, tomtom-routing and groupman).
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class HttpClientProperties {
+
+    /**
+     * The number of threads of the event loop, that is shared by all clients. If it is not
+     * positive, the default of reactor netty is used.
+     */
+    private int workerCount = 0;
+
+    private HttpClientPoolProperties defaults = new HttpClientPoolProperties();
+
+    /**
+     * Settings of a provider, if they differ from the defaults.
+     */
+    private Map<String, HttpClientPoolProperties> providers = new LinkedHashMap<>();
+
+    public HttpClientPoolProperties getProvider(final String provider) {
+      final HttpClientPoolProperties pool = providers.get(provider);
+      return pool != null ? pool : defaults;
+    }
+
+  }
+
+  /**
+   * Connection pool and timeout settings of a http client.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class HttpClientPoolProperties {
+
+    private int maxConnections = 50;
+
+    /**
+     * How long a request waits for a connection of the pool.
+     */
+    private Duration acquireTimeout = Duration.ofSeconds(10L);
+
+    private Duration connectTimeout = Duration.ofSeconds(5L);
+
+    private Duration readTimeout = Duration.ofSeconds(10L);
+
+    private Duration writeTimeout = Duration.ofSeconds(10L);
+
+    /**
+     * How long it may take until the response is received, including its body.
+     */
+    private Duration responseTimeout = Duration.ofSeconds(15L);
+
+    private boolean keepAlive = true;
+
+    /**
+     * Specifies whether gzip compressed responses are requested.
+     */
+    private boolean compress = true;
+
+  }
+
+  /**
+   * Rate limit and circuit breaker settings of a geocoding provider.
+   */
+  @Getter
+  @Setter
+  @ToString
+  public static class GeoProviderGuardProperties {
+
+    private double permitsPerSecond = 10.0;
+
+    private int burst = 10;
+
+    /**
+     * How long a request waits for a permit, before the next provider is asked.
+     */
+    private Duration maxWait = Duration.ofSeconds(2L);
+
+    /**
+     * The number of failures in a row, that opens the circuit.
+     */
+    private int failureThreshold = 5;
+
+    /**
+     * How long the provider is not asked after the circuit was opened.
+     */
+    private Duration openDuration = Duration.ofSeconds(30L);
+
+  }
+
 }
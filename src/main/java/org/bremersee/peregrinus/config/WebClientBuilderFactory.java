@@ -0,0 +1,191 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.peregrinus.config.PeregrinusProperties.HttpClientPoolProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.HttpClientProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Creates the web client builders of the providers. Every provider gets its own connection pool,
+ * all of them share one event loop. The requests of every provider are measured until their body
+ * is consumed with the timer {@code peregrinus.http.client.requests}, the number of requests in
+ * flight with the gauge {@code peregrinus.http.client.requests.active}.
+ *
+ * <p>Reactor netty resolves host names with the resolver of the JVM. How long they are cached is
+ * therefore configured with the security property {@code networkaddress.cache.ttl} of the JVM
+ * (for example with {@code -Dsun.net.inetaddr.ttl=60} on start up); it cannot be changed, once
+ * the first host name was resolved.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+public class WebClientBuilderFactory implements DisposableBean {
+
+  private final HttpClientProperties properties;
+
+  private final MeterRegistry meterRegistry;
+
+  private final LoopResources loopResources;
+
+  private final List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+
+  public WebClientBuilderFactory(
+      final HttpClientProperties properties,
+      final MeterRegistry meterRegistry) {
+
+    this.properties = properties;
+    this.meterRegistry = meterRegistry;
+    this.loopResources = properties.getWorkerCount() > 0
+        ? LoopResources.create("peregrinus-http", properties.getWorkerCount(), true)
+        : LoopResources.create("peregrinus-http");
+  }
+
+  /**
+   * Creates a web client builder for the provider.
+   *
+   * @param provider the name of the provider
+   * @return the web client builder
+   */
+  public WebClient.Builder builder(final String provider) {
+    final HttpClientPoolProperties pool = properties.getProvider(provider);
+    log.info("msg=[Creating http client.] provider=[{}] settings=[{}]", provider, pool);
+    final ConnectionProvider connectionProvider = ConnectionProvider.fixed(
+        "peregrinus-" + provider,
+        pool.getMaxConnections(),
+        pool.getAcquireTimeout().toMillis());
+    connectionProviders.add(connectionProvider);
+    final HttpClient httpClient = HttpClient
+        .create(connectionProvider)
+        .compress(pool.isCompress())
+        .keepAlive(pool.isKeepAlive())
+        .tcpConfiguration(tcpClient -> tcpClient
+            .runOn(loopResources)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                (int) pool.getConnectTimeout().toMillis())
+            .doOnConnected(connection -> connection
+                .addHandlerLast(new ReadTimeoutHandler(
+                    pool.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                .addHandlerLast(new WriteTimeoutHandler(
+                    pool.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS))));
+    return WebClient
+        .builder()
+        .clientConnector(new ReactorClientHttpConnector(httpClient))
+        .filter(measure(provider, pool));
+  }
+
+  private ExchangeFilterFunction measure(
+      final String provider,
+      final HttpClientPoolProperties pool) {
+
+    final Tags tags = Tags.of("provider", provider);
+    final AtomicInteger active = meterRegistry.gauge(
+        "peregrinus.http.client.requests.active", tags, new AtomicInteger());
+    Gauge.builder("peregrinus.http.client.connections.max", pool,
+        HttpClientPoolProperties::getMaxConnections)
+        .tags(tags)
+        .strongReference(true)
+        .register(meterRegistry);
+    return (request, next) -> Mono.defer(() -> {
+      final String method = request.method().name();
+      final long start = System.nanoTime();
+      final long deadline = start + pool.getResponseTimeout().toNanos();
+      final AtomicBoolean finished = new AtomicBoolean();
+      final Runnable finish = () -> {
+        if (finished.compareAndSet(false, true)) {
+          active.decrementAndGet();
+        }
+      };
+      active.incrementAndGet();
+      return next.exchange(request)
+          .timeout(pool.getResponseTimeout())
+          .doOnError(error -> {
+            record(tags, method, status(error), start);
+            finish.run();
+          })
+          .doOnCancel(finish)
+          .map(response -> ClientResponse
+              .from(response)
+              // the request is measured until its body is consumed
+              .body(response.bodyToFlux(DataBuffer.class)
+                  .timeout(
+                      Mono.defer(() -> until(deadline)),
+                      buffer -> until(deadline))
+                  .doOnError(error -> record(tags, method, status(error), start))
+                  .doFinally(signalType -> {
+                    if (signalType != SignalType.ON_ERROR) {
+                      record(tags, method, String.valueOf(response.statusCode().value()), start);
+                    }
+                    finish.run();
+                  }))
+              .build());
+    });
+  }
+
+  private static Mono<Long> until(final long deadline) {
+    return Mono.delay(Duration.ofNanos(Math.max(0L, deadline - System.nanoTime())));
+  }
+
+  private static String status(final Throwable error) {
+    return error instanceof TimeoutException ? "TIMEOUT" : "IO_ERROR";
+  }
+
+  private void record(
+      final Tags tags,
+      final String method,
+      final String status,
+      final long start) {
+
+    Timer.builder("peregrinus.http.client.requests")
+        .tags(tags)
+        .tags("method", method, "status", status)
+        .register(meterRegistry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void destroy() {
+    connectionProviders.forEach(ConnectionProvider::dispose);
+    loopResources.dispose();
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bremersee.peregrinus.content.controller;
+
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.FeaturePage;
+import org.bremersee.peregrinus.content.service.FeatureService;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Christian Bremer
+ */
+@RestController
+@RequestMapping(path = "/api/features")
+@Validated
+public class FeatureController {
+
+  private FeatureService featureService;
+
+  public FeatureController(FeatureService featureService) {
+    this.featureService = featureService;
+  }
+
+  @GetMapping(produces = {MediaType.APPLICATION_JSON_UTF8_VALUE})
+  public Mono<FeaturePage> findFeatures(
+      @RequestParam(value = "bbox") double[] bbox,
+      @RequestParam(value = "within", defaultValue = "false") boolean within,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "limit", required = false) Integer limit,
+      @RequestParam(value = "zoom", required = false) Integer zoom,
+      @RequestParam(value = "cluster", defaultValue = "false") boolean cluster,
+      Authentication authentication) {
+    return featureService
+        .findFeatures(bbox, within, cursor, limit, zoom, cluster, authentication);
+  }
+
+  @GetMapping(path = "/nearest", produces = {MediaType.APPLICATION_JSON_UTF8_VALUE})
+  public Flux<Feature> findNearestFeatures(
+      @RequestParam(value = "lon") double longitude,
+      @RequestParam(value = "lat") double latitude,
+      @RequestParam(value = "limit", required = false) Integer limit,
+      @RequestParam(value = "zoom", required = false) Integer zoom,
+      Authentication authentication) {
+    return featureService
+        .findNearestFeatures(longitude, latitude, limit, zoom, authentication);
+  }
+
+  @GetMapping(path = "/{featureId}", produces = {MediaType.APPLICATION_JSON_UTF8_VALUE})
+  public Mono<Feature> findFeatureById(
+      @PathVariable("featureId") String featureId,
+      @RequestParam(value = "zoom", required = false) Integer zoom,
+      Authentication authentication) {
+    return featureService.findFeatureById(featureId, zoom, authentication);
+  }
+
+}
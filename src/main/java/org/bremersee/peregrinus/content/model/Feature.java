@@ -25,8 +25,8 @@ import lombok.ToString;
 import org.locationtech.jts.geom.Geometry;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.TypeAlias;
-import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
-import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
@@ -34,6 +34,11 @@ import org.springframework.data.mongodb.core.mapping.Document;
  */
 @Document(collection = "feature")
 @TypeAlias("Feature")
+@CompoundIndexes({
+    @CompoundIndex(
+        name = "idx_geometry_read",
+        def = "{'geometry': '2dsphere', 'properties.accessControl.read.principals': 1}")
+})
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type", visible = true)
 @JsonSubTypes({
 })
@@ -47,13 +52,17 @@ public abstract class Feature<G extends Geometry, P extends FeatureProperties>
   @Id
   private String id;
 
-  @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
   private G geometry;
 
   private double[] bbox;
 
   private P properties;
 
+  /**
+   * The number of points of the full geometry.
+   */
+  private Integer pointCount;
+
   abstract int orderValue();
 
   @SuppressWarnings("Duplicates")
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Way points, that are close together at the requested zoom level, are returned as cluster.
+ *
+ * @author Christian Bremer
+ */
+@Getter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeatureCluster {
+
+  /**
+   * The center of the way points.
+   */
+  private Point position;
+
+  private int count;
+
+  private double[] bbox;
+
+}
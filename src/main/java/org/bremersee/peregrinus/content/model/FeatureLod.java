@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A simplified geometry of a track or route for a zoom level of a map (level of detail).
+ *
+ * @author Christian Bremer
+ */
+@Document(collection = "feature-lod")
+@TypeAlias("FeatureLod")
+@CompoundIndexes({
+    @CompoundIndex(name = "uk_feature_zoom", def = "{'featureId': 1, 'zoom': 1}", unique = true)
+})
+@Getter
+@Setter
+@ToString(exclude = {"geometry"})
+public class FeatureLod {
+
+  @Id
+  private String id;
+
+  private String featureId;
+
+  /**
+   * The zoom level of the map.
+   */
+  private int zoom;
+
+  /**
+   * The distance tolerance (in degrees) that was used to simplify the geometry.
+   */
+  private double tolerance;
+
+  private int pointCount;
+
+  private MultiLineString geometry;
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A page of the features of a viewport.
+ *
+ * @author Christian Bremer
+ */
+@Getter
+@Setter
+@ToString
+@JsonInclude(Include.NON_EMPTY)
+public class FeaturePage {
+
+  private List<Feature> features = new ArrayList<>();
+
+  private List<FeatureCluster> clusters = new ArrayList<>();
+
+  /**
+   * The cursor of the next page (is {@code null}, if this is the last page).
+   */
+  private String nextCursor;
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.locationtech.jts.geom.LineString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A part of a line of a large track. The points of a track line are split into chunks of a fixed
+ * size. A chunk that continues the line of the previous chunk starts with the last point of the
+ * previous chunk.
+ *
+ * @author Christian Bremer
+ */
+@Document(collection = "feature-trk-chunks")
+@TypeAlias("TrkChunk")
+@CompoundIndexes({
+    @CompoundIndex(name = "uk_feature_index", def = "{'featureId': 1, 'index': 1}", unique = true)
+})
+@Getter
+@Setter
+@ToString(exclude = {"geometry", "packedEleLine", "packedTimeLine"})
+public class TrkChunk {
+
+  @Id
+  private String id;
+
+  private String featureId;
+
+  /**
+   * The position of the chunk within the track.
+   */
+  private int index;
+
+  /**
+   * The position of the line within the multi line string of the track.
+   */
+  private int lineIndex;
+
+  /**
+   * Specifies whether this chunk continues the line of the previous chunk.
+   */
+  private boolean continuation;
+
+  @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+  private LineString geometry;
+
+  private double[] bbox;
+
+  /**
+   * The elevations of the points, packed by {@link TrkLineCodec}.
+   */
+  private byte[] packedEleLine;
+
+  /**
+   * The times of the points, packed by {@link TrkLineCodec}.
+   */
+  private byte[] packedTimeLine;
+
+}
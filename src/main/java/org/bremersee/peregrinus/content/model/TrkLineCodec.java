@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.model;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs the elevations and times of track lines into byte arrays. An elevation is stored as a
+ * 32-bit float, the times are stored as zig-zag encoded variable length deltas of the epoch
+ * milliseconds.
+ *
+ * @author Christian Bremer
+ */
+public abstract class TrkLineCodec {
+
+  private TrkLineCodec() {
+  }
+
+  public static List<byte[]> encodeEleLines(final List<List<BigDecimal>> eleLines) {
+    if (eleLines == null) {
+      return null;
+    }
+    final List<byte[]> packedLines = new ArrayList<>(eleLines.size());
+    for (final List<BigDecimal> eleLine : eleLines) {
+      packedLines.add(encodeEleLine(eleLine));
+    }
+    return packedLines;
+  }
+
+  public static List<List<BigDecimal>> decodeEleLines(final List<byte[]> packedLines) {
+    if (packedLines == null) {
+      return null;
+    }
+    final List<List<BigDecimal>> eleLines = new ArrayList<>(packedLines.size());
+    for (final byte[] packedLine : packedLines) {
+      eleLines.add(decodeEleLine(packedLine));
+    }
+    return eleLines;
+  }
+
+  public static byte[] encodeEleLine(final List<BigDecimal> eleLine) {
+    if (eleLine == null) {
+      return new byte[0];
+    }
+    final ByteBuffer buffer = ByteBuffer.allocate(eleLine.size() * Float.BYTES);
+    for (final BigDecimal ele : eleLine) {
+      buffer.putFloat(ele != null ? ele.floatValue() : Float.NaN);
+    }
+    return buffer.array();
+  }
+
+  public static List<BigDecimal> decodeEleLine(final byte[] packedLine) {
+    if (packedLine == null) {
+      return new ArrayList<>();
+    }
+    final ByteBuffer buffer = ByteBuffer.wrap(packedLine);
+    final List<BigDecimal> eleLine = new ArrayList<>(packedLine.length / Float.BYTES);
+    while (buffer.remaining() >= Float.BYTES) {
+      final float ele = buffer.getFloat();
+      eleLine.add(Float.isNaN(ele) ? null : new BigDecimal(Float.toString(ele)));
+    }
+    return eleLine;
+  }
+
+  public static List<byte[]> encodeTimeLines(final List<List<Instant>> timeLines) {
+    if (timeLines == null) {
+      return null;
+    }
+    final List<byte[]> packedLines = new ArrayList<>(timeLines.size());
+    for (final List<Instant> timeLine : timeLines) {
+      packedLines.add(encodeTimeLine(timeLine));
+    }
+    return packedLines;
+  }
+
+  public static List<List<Instant>> decodeTimeLines(final List<byte[]> packedLines) {
+    if (packedLines == null) {
+      return null;
+    }
+    final List<List<Instant>> timeLines = new ArrayList<>(packedLines.size());
+    for (final byte[] packedLine : packedLines) {
+      timeLines.add(decodeTimeLine(packedLine));
+    }
+    return timeLines;
+  }
+
+  /**
+   * Encodes the times of a track line. Missing times are replaced by the previous time, so the
+   * track builders must have filled them already.
+   *
+   * @param timeLine the times of a track line
+   * @return the packed times
+   */
+  public static byte[] encodeTimeLine(final List<Instant> timeLine) {
+    if (timeLine == null) {
+      return new byte[0];
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(timeLine.size() * 2 + 8);
+    long previous = 0L;
+    for (final Instant time : timeLine) {
+      final long millis = time != null ? time.toEpochMilli() : previous;
+      writeVarLong(out, zigZag(millis - previous));
+      previous = millis;
+    }
+    return out.toByteArray();
+  }
+
+  public static List<Instant> decodeTimeLine(final byte[] packedLine) {
+    final List<Instant> timeLine = new ArrayList<>();
+    if (packedLine == null) {
+      return timeLine;
+    }
+    long previous = 0L;
+    int index = 0;
+    while (index < packedLine.length) {
+      long value = 0L;
+      int shift = 0;
+      byte b;
+      do {
+        b = packedLine[index++];
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0 && index < packedLine.length);
+      previous += unZigZag(value);
+      timeLine.add(Instant.ofEpochMilli(previous));
+    }
+    return timeLine;
+  }
+
+  private static long zigZag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(final ByteArrayOutputStream out, final long value) {
+    long v = value;
+    while ((v & ~0x7FL) != 0L) {
+      out.write((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    out.write((int) v);
+  }
+
+}
@@ -16,13 +16,14 @@
 
 package org.bremersee.peregrinus.content.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.Date;
 import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.annotation.TypeAlias;
 
 /**
@@ -31,13 +32,67 @@ import org.springframework.data.annotation.TypeAlias;
 @TypeAlias("TrkProperties")
 @Getter
 @Setter
-@ToString(callSuper = true)
+@ToString(callSuper = true, exclude = {"packedEleLines", "packedTimeLines"})
 public class TrkProperties extends FeatureProperties<TrkSettings> {
 
+  /**
+   * The elevations of the lines, packed by {@link TrkLineCodec}.
+   */
+  @JsonIgnore
+  private List<byte[]> packedEleLines;
+
+  /**
+   * The times of the lines, packed by {@link TrkLineCodec}.
+   */
+  @JsonIgnore
+  private List<byte[]> packedTimeLines;
+
+  /**
+   * The number of chunks, if the lines are stored as {@link TrkChunk}s, otherwise {@code null}.
+   * The geometry of a chunked track is a simplified overview, elevations and times are not set.
+   */
+  private Integer chunkCount;
+
+  @Transient
   private List<List<BigDecimal>> eleLines;
 
+  @Transient
   private List<List<Instant>> timeLines;
 
+  /**
+   * Gets the elevations of the lines. They are decoded on first access.
+   *
+   * @return the elevations of the lines
+   */
+  public List<List<BigDecimal>> getEleLines() {
+    if (eleLines == null && packedEleLines != null) {
+      eleLines = TrkLineCodec.decodeEleLines(packedEleLines);
+    }
+    return eleLines;
+  }
+
+  public void setEleLines(final List<List<BigDecimal>> eleLines) {
+    this.eleLines = eleLines;
+    this.packedEleLines = TrkLineCodec.encodeEleLines(eleLines);
+  }
+
+  /**
+   * Gets the times of the lines. They are decoded on first access.
+   *
+   * @return the times of the lines
+   */
+  public List<List<Instant>> getTimeLines() {
+    if (timeLines == null && packedTimeLines != null) {
+      timeLines = TrkLineCodec.decodeTimeLines(packedTimeLines);
+    }
+    return timeLines;
+  }
+
+  public void setTimeLines(final List<List<Instant>> timeLines) {
+    this.timeLines = timeLines;
+    this.packedTimeLines = TrkLineCodec.encodeTimeLines(timeLines);
+  }
+
   @Override
   TrkSettings doCreateDefaultSettings() {
 
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.content.model.FeatureLod;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+
+/**
+ * Creates the simplified geometries of tracks and routes for several zoom levels.
+ *
+ * @author Christian Bremer
+ */
+abstract class FeatureLodBuilder {
+
+  /**
+   * The zoom levels with a simplified geometry, from the most to the least detailed one. Higher
+   * zoom levels get the full geometry.
+   */
+  private static final int[] ZOOM_LEVELS = {14, 12, 10, 8, 6, 4};
+
+  /**
+   * A simplified geometry is only stored, if it has less than this part of the points of the next
+   * more detailed geometry.
+   */
+  private static final double MIN_REDUCTION = 0.8;
+
+  private FeatureLodBuilder() {
+  }
+
+  /**
+   * Gets the distance tolerance of a zoom level, that is the size of one pixel (of a 256 pixel
+   * tile) at the equator in degrees.
+   *
+   * @param zoom the zoom level
+   * @return the distance tolerance in degrees
+   */
+  static double tolerance(final int zoom) {
+    return 360.0 / (256.0 * Math.pow(2.0, Math.max(0, zoom)));
+  }
+
+  /**
+   * Creates the simplified geometries. Each level is simplified from the previous one.
+   *
+   * @param featureId the feature id
+   * @param geometry  the full geometry
+   * @return the simplified geometries
+   */
+  static List<FeatureLod> build(final String featureId, final MultiLineString geometry) {
+    final List<FeatureLod> lods = new ArrayList<>();
+    if (geometry == null || geometry.isEmpty()) {
+      return lods;
+    }
+    MultiLineString current = geometry;
+    for (final int zoom : ZOOM_LEVELS) {
+      final double tolerance = tolerance(zoom);
+      final MultiLineString simplified = simplify(current, tolerance);
+      if (simplified.isEmpty()
+          || simplified.getNumPoints() > current.getNumPoints() * MIN_REDUCTION) {
+        continue;
+      }
+      final FeatureLod lod = new FeatureLod();
+      lod.setFeatureId(featureId);
+      lod.setZoom(zoom);
+      lod.setTolerance(tolerance);
+      lod.setPointCount(simplified.getNumPoints());
+      lod.setGeometry(simplified);
+      lods.add(lod);
+      current = simplified;
+    }
+    return lods;
+  }
+
+  /**
+   * Simplifies the given lines with the Douglas Peucker algorithm.
+   *
+   * @param geometry  the lines
+   * @param tolerance the distance tolerance in degrees
+   * @return the simplified lines
+   */
+  static MultiLineString simplify(final MultiLineString geometry, final double tolerance) {
+    final Geometry simplified = DouglasPeuckerSimplifier.simplify(geometry, tolerance);
+    if (simplified instanceof MultiLineString) {
+      return (MultiLineString) simplified;
+    }
+    final List<LineString> lines = new ArrayList<>();
+    for (int n = 0; n < simplified.getNumGeometries(); n++) {
+      if (simplified.getGeometryN(n) instanceof LineString) {
+        lines.add((LineString) simplified.getGeometryN(n));
+      }
+    }
+    return GeometryUtils.createMultiLineString(lines);
+  }
+
+}
@@ -16,7 +16,19 @@
 
 package org.bremersee.peregrinus.content.repository;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.FeatureLod;
 import org.bremersee.peregrinus.content.model.FeatureSettings;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.TrkChunk;
+import org.bremersee.peregrinus.security.access.AccessControl;
+import org.locationtech.jts.geom.LineString;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -26,13 +38,239 @@ public interface FeatureRepository {
 
   <T> Mono<T> persist(T entity);
 
+  <T extends Feature> Mono<T> findFeatureById(
+      Class<T> clazz,
+      String id,
+      String permission,
+      boolean includePublic,
+      String userId,
+      Collection<String> roles,
+      Collection<String> groups);
+
   Mono<Void> delete(Object entity);
 
+  /**
+   * Finds the features without the data that is not needed to display them in the tree: the
+   * elevations and times of tracks, the segments of routes and, if not requested, the geometry.
+   * The features must not be persisted.
+   *
+   * @param featureIds      the feature ids
+   * @param includeGeometry specifies whether the geometry should be loaded
+   * @return the features
+   */
+  Flux<Feature> findFeatureHeaders(Collection<String> featureIds, boolean includeGeometry);
+
+  /**
+   * Finds the features of a viewport, that the user is allowed to access, without elevations and
+   * times of tracks and without the segments of routes. The features are ordered by their id, so
+   * that the id of the last feature of a page can be used as cursor of the next one. If the
+   * in-memory spatial index is used, the bounding boxes of the features are compared instead of
+   * their geometries.
+   *
+   * @param bbox          the bounding box of the viewport (min lon, min lat, max lon, max lat)
+   * @param within        {@code true} to find only the features within the bounding box,
+   *                      otherwise all features that intersect it are found
+   * @param afterId       the cursor (can be {@code null})
+   * @param limit         the maximum number of features
+   * @param permission    the permission
+   * @param includePublic specifies whether public features are included
+   * @param userId        the user id
+   * @param roles         the roles of the user
+   * @param groups        the groups of the user
+   * @return the features
+   */
+  Flux<Feature> findFeatureHeaders(
+      double[] bbox,
+      boolean within,
+      String afterId,
+      int limit,
+      String permission,
+      boolean includePublic,
+      String userId,
+      Collection<String> roles,
+      Collection<String> groups);
+
+  /**
+   * Finds the ids and the modification dates of the features, that intersect the bounding box and
+   * that the user is allowed to access. Only the id and the modification date of the returned
+   * features are set. The features are the same as those of
+   * {@link #findFeatureHeaders(double[], boolean, String, int, String, boolean, String,
+   * Collection, Collection)}, so they can be used as cache key of the headers.
+   *
+   * @param bbox          the bounding box (min lon, min lat, max lon, max lat)
+   * @param limit         the maximum number of features
+   * @param permission    the permission
+   * @param includePublic specifies whether public features are included
+   * @param userId        the user id
+   * @param roles         the roles of the user
+   * @param groups        the groups of the user
+   * @return the features ordered by their id
+   */
+  Flux<Feature> findFeatureModifications(
+      double[] bbox,
+      int limit,
+      String permission,
+      boolean includePublic,
+      String userId,
+      Collection<String> roles,
+      Collection<String> groups);
+
+  /**
+   * Finds the features next to a position, that the user is allowed to access, without
+   * elevations and times of tracks and without the segments of routes.
+   *
+   * @param longitude     the longitude of the position
+   * @param latitude      the latitude of the position
+   * @param limit         the maximum number of features
+   * @param permission    the permission
+   * @param includePublic specifies whether public features are included
+   * @param userId        the user id
+   * @param roles         the roles of the user
+   * @param groups        the groups of the user
+   * @return the features, the nearest one first
+   */
+  Flux<Feature> findNearestFeatureHeaders(
+      double longitude,
+      double latitude,
+      int limit,
+      String permission,
+      boolean includePublic,
+      String userId,
+      Collection<String> roles,
+      Collection<String> groups);
+
+  /**
+   * Finds the features of the given type with all their data, that the user is allowed to
+   * access. The lines of chunked tracks are not loaded (see {@link #loadTrkLines(Trk)}).
+   *
+   * @param clazz         the feature type
+   * @param featureIds    the feature ids
+   * @param permission    the permission
+   * @param includePublic specifies whether public features are included
+   * @param userId        the user id
+   * @param roles         the roles of the user
+   * @param groups        the groups of the user
+   * @param <T>           the feature type
+   * @return the features ordered by their id
+   */
+  <T extends Feature> Flux<T> findFeatures(
+      Class<T> clazz,
+      Collection<String> featureIds,
+      String permission,
+      boolean includePublic,
+      String userId,
+      Collection<String> roles,
+      Collection<String> groups);
+
+  Mono<Long> renameFeature(String featureId, String name);
+
+  Mono<Long> deleteFeatures(Collection<String> featureIds);
+
+  Mono<Long> updateAccessControl(Collection<String> featureIds, AccessControl accessControl);
+
   <T extends FeatureSettings> Mono<T> findFeatureSettings(
       Class<T> clazz,
       String featureId,
       String userId);
 
+  <T extends FeatureSettings> Flux<T> findFeatureSettings(
+      Class<T> clazz,
+      Collection<String> featureIds,
+      String userId);
+
+  /**
+   * Finds the settings of the given features and creates the missing ones with one bulk write.
+   *
+   * @param clazz           the settings class
+   * @param featureIds      the feature ids
+   * @param userId          the user id
+   * @param settingsFactory creates the settings of a feature id
+   * @param <T>             the settings type
+   * @return the settings of all given features
+   */
+  <T extends FeatureSettings> Flux<T> findOrCreateFeatureSettings(
+      Class<T> clazz,
+      Collection<String> featureIds,
+      String userId,
+      Function<String, ? extends T> settingsFactory);
+
   Mono<Void> deleteFeatureSettings(String featureId, String userId);
 
+  Mono<Void> deleteFeatureSettings(Collection<String> featureIds, String userId);
+
+  /**
+   * Deletes the settings of all users of the given features.
+   *
+   * @param featureIds the feature ids
+   * @return the number of deleted settings
+   */
+  Mono<Long> deleteFeatureSettings(Collection<String> featureIds);
+
+  /**
+   * Finds all chunks of a track ordered by their index.
+   *
+   * @param featureId the track id
+   * @return the chunks
+   */
+  Flux<TrkChunk> findTrkChunks(String featureId);
+
+  /**
+   * Finds the chunks of a track that intersect the given bounding box ordered by their index.
+   *
+   * @param featureId the track id
+   * @param bbox      the bounding box (min lon, min lat, max lon, max lat)
+   * @return the chunks
+   */
+  Flux<TrkChunk> findTrkChunks(String featureId, double[] bbox);
+
+  /**
+   * Sets geometry, elevations and times of a chunked track. Other tracks are returned unchanged.
+   *
+   * @param trk the track
+   * @return the track with all points
+   */
+  Mono<Trk> loadTrkLines(Trk trk);
+
+  /**
+   * Appends points to a track. The points of a chunked track are stored as new chunks, so the
+   * track document is not rewritten.
+   *
+   * @param featureId        the track id
+   * @param line             the points to append
+   * @param eleLine          the elevations of the points (can be {@code null})
+   * @param timeLine         the times of the points (can be {@code null})
+   * @param continueLastLine {@code true} to append the points to the last line, otherwise a new
+   *                         line will be added
+   * @return the number of appended points ({@code 0}, if the track does not exist or if a single
+   *     point does not continue a line)
+   */
+  Mono<Long> appendTrkLine(
+      String featureId,
+      LineString line,
+      List<BigDecimal> eleLine,
+      List<Instant> timeLine,
+      boolean continueLastLine);
+
+  /**
+   * Finds the simplified geometries of the given features for a zoom level. For every feature the
+   * least detailed geometry whose zoom level is not lower than the given one is returned.
+   * Features that need the full geometry at this zoom level have none.
+   *
+   * @param featureIds the feature ids
+   * @param zoom       the zoom level
+   * @return the simplified geometries
+   */
+  Flux<FeatureLod> findFeatureLods(Collection<String> featureIds, int zoom);
+
+  /**
+   * Replaces the geometries of the tracks and routes by the simplified geometries of the zoom
+   * level. Elevations and times of the tracks are removed. The features must not be persisted
+   * afterwards.
+   *
+   * @param features the features
+   * @param zoom     the zoom level (if it is {@code null}, nothing will be changed)
+   * @return empty mono
+   */
+  Mono<Void> applyFeatureLods(Collection<? extends Feature> features, Integer zoom);
+
 }
@@ -16,11 +16,54 @@
 
 package org.bremersee.peregrinus.content.repository;
 
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.FeatureLod;
 import org.bremersee.peregrinus.content.model.FeatureSettings;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.TrkChunk;
+import org.bremersee.peregrinus.content.model.TrkLineCodec;
+import org.bremersee.peregrinus.content.model.TrkProperties;
+import org.bremersee.peregrinus.repository.MongoBulkUtils;
+import org.bremersee.peregrinus.security.access.AccessControl;
+import org.bremersee.peregrinus.security.access.MongoRepositoryUtils;
+import org.bremersee.peregrinus.security.access.PermissionConstants;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.geo.Point;
 import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -29,21 +72,361 @@ import reactor.core.publisher.Mono;
 @Repository
 public class FeatureRepositoryImpl implements FeatureRepository {
 
+  /**
+   * Tracks with more points are stored as chunks.
+   */
+  private static final int TRK_CHUNK_THRESHOLD = 5000;
+
+  private static final int TRK_CHUNK_SIZE = 1000;
+
+  /**
+   * The distance tolerance (in degrees) of the overview geometry of a chunked track.
+   */
+  private static final double TRK_OVERVIEW_TOLERANCE = 0.00005;
+
+  /**
+   * The candidates of the spatial index are checked in batches of (at least) this size.
+   */
+  private static final int CANDIDATE_BATCH_SIZE = 200;
+
   private ReactiveMongoOperations mongoOperations;
 
+  private FeatureSpatialIndex spatialIndex;
+
   public FeatureRepositoryImpl(
-      ReactiveMongoOperations mongoOperations) {
+      ReactiveMongoOperations mongoOperations,
+      FeatureSpatialIndex spatialIndex) {
     this.mongoOperations = mongoOperations;
+    this.spatialIndex = spatialIndex;
   }
 
   @Override
   public <T> Mono<T> persist(T entity) {
+    if (entity instanceof Feature
+        && ((Feature) entity).getId() != null
+        && ((Feature) entity).getProperties() != null) {
+      // the modification date is part of the cache key of the vector tiles
+      ((Feature) entity).getProperties().setModified(Instant.now());
+    }
+    return save(entity).doOnNext(saved -> {
+      if (saved instanceof Feature) {
+        spatialIndex.updateFeature((Feature) saved);
+      }
+    });
+  }
+
+  private <T> Mono<T> save(T entity) {
+    if (entity instanceof Trk) {
+      //noinspection unchecked
+      return (Mono<T>) persistTrk((Trk) entity);
+    }
+    if (entity instanceof Feature) {
+      setPointCount((Feature) entity);
+    }
+    if (entity instanceof Rte) {
+      return mongoOperations
+          .save(entity)
+          .flatMap(saved -> saveFeatureLods(((Rte) saved).getId(), ((Rte) saved).getGeometry())
+              .thenReturn(saved));
+    }
     return mongoOperations.save(entity);
   }
 
+  private Mono<Trk> persistTrk(final Trk trk) {
+    final TrkProperties properties = trk.getProperties();
+    if (properties.getChunkCount() != null && properties.getEleLines() == null) {
+      // the chunks are not loaded, so only the track document is updated
+      return mongoOperations.save(trk);
+    }
+    setPointCount(trk);
+    final MultiLineString geometry = trk.getGeometry();
+    if (geometry == null || geometry.getNumPoints() <= TRK_CHUNK_THRESHOLD) {
+      final boolean chunked = properties.getChunkCount() != null;
+      properties.setChunkCount(null);
+      return mongoOperations
+          .save(trk)
+          .flatMap(saved -> chunked
+              ? deleteTrkChunks(Collections.singleton(saved.getId())).thenReturn(saved)
+              : Mono.just(saved))
+          .flatMap(saved -> saveFeatureLods(saved.getId(), geometry).thenReturn(saved));
+    }
+    if (trk.getId() == null) {
+      trk.setId(new ObjectId().toString());
+    }
+    final List<TrkChunk> chunks = TrkChunker.split(trk, TRK_CHUNK_SIZE);
+    final List<List<BigDecimal>> eleLines = properties.getEleLines();
+    final List<List<Instant>> timeLines = properties.getTimeLines();
+    trk.setGeometry(TrkChunker.overview(geometry, TRK_OVERVIEW_TOLERANCE));
+    properties.setEleLines(null);
+    properties.setTimeLines(null);
+    properties.setChunkCount(chunks.size());
+    return mongoOperations
+        .save(trk)
+        .flatMap(saved -> deleteTrkChunks(Collections.singleton(saved.getId())))
+        .thenMany(mongoOperations.insertAll(chunks))
+        .then(Mono.defer(() -> saveFeatureLods(trk.getId(), geometry)))
+        .then(Mono.fromSupplier(() -> {
+          trk.setGeometry(geometry);
+          properties.setEleLines(eleLines);
+          properties.setTimeLines(timeLines);
+          return trk;
+        }));
+  }
+
+  private static void setPointCount(final Feature feature) {
+    feature.setPointCount(feature.getGeometry() != null
+        ? feature.getGeometry().getNumPoints()
+        : 0);
+    if (feature.getGeometry() != null) {
+      feature.setBbox(FeatureSpatialIndex.boundingBox(feature));
+    }
+  }
+
+  /*
+   * Replaces the simplified geometries of a track or route.
+   */
+  private Mono<Void> saveFeatureLods(final String featureId, final MultiLineString geometry) {
+    final List<FeatureLod> lods = FeatureLodBuilder.build(featureId, geometry);
+    return deleteFeatureLods(Collections.singleton(featureId))
+        .thenMany(lods.isEmpty() ? Flux.empty() : mongoOperations.insertAll(lods))
+        .then();
+  }
+
   @Override
   public Mono<Void> delete(Object entity) {
-    return mongoOperations.remove(entity).flatMap(deleteResult -> Mono.empty());
+    final Mono<Void> deleteDependencies = entity instanceof Feature
+        ? deleteTrkChunks(Collections.singleton(((Feature) entity).getId()))
+        .then(deleteFeatureLods(Collections.singleton(((Feature) entity).getId())))
+        .then()
+        : Mono.empty();
+    return mongoOperations.remove(entity)
+        .then(deleteDependencies)
+        .doOnSuccess(ignored -> {
+          if (entity instanceof Feature) {
+            spatialIndex.removeFeatures(Collections.singleton(((Feature) entity).getId()));
+          }
+        });
+  }
+
+  @Override
+  public Mono<Long> deleteFeatures(Collection<String> featureIds) {
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Mono.just(0L);
+    }
+    // the features are deleted last, so that a failed delete can be repeated
+    return deleteTrkChunks(featureIds)
+        .then(deleteFeatureLods(featureIds))
+        .then(mongoOperations
+            .remove(Query.query(Criteria.where("id").in(featureIds)), Feature.class)
+            .map(DeleteResult::getDeletedCount))
+        .doOnSuccess(count -> spatialIndex.removeFeatures(featureIds));
+  }
+
+  private Mono<Long> deleteFeatureLods(final Collection<String> featureIds) {
+    return mongoOperations
+        .remove(Query.query(Criteria.where("featureId").in(featureIds)), FeatureLod.class)
+        .map(DeleteResult::getDeletedCount);
+  }
+
+  private Mono<Long> deleteTrkChunks(final Collection<String> featureIds) {
+    return mongoOperations
+        .remove(Query.query(Criteria.where("featureId").in(featureIds)), TrkChunk.class)
+        .map(DeleteResult::getDeletedCount);
+  }
+
+  @Override
+  public Flux<Feature> findFeatureHeaders(
+      final Collection<String> featureIds,
+      final boolean includeGeometry) {
+
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Flux.empty();
+    }
+    final Query query = Query.query(Criteria.where("id").in(featureIds));
+    return mongoOperations.find(excludeDetails(query, includeGeometry), Feature.class);
+  }
+
+  private static Query excludeDetails(final Query query, final boolean includeGeometry) {
+    query.fields()
+        .exclude("properties.packedEleLines")
+        .exclude("properties.packedTimeLines")
+        .exclude("properties.rteSegments");
+    if (!includeGeometry) {
+      query.fields().exclude("geometry");
+    }
+    return query;
+  }
+
+  @Override
+  public Flux<Feature> findFeatureHeaders(
+      final double[] bbox,
+      final boolean within,
+      final String afterId,
+      final int limit,
+      final String permission,
+      final boolean includePublic,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    return findViewportFeatures(
+        bbox, within, afterId, limit, permission, includePublic, userId, roles, groups,
+        query -> excludeDetails(query, true));
+  }
+
+  @Override
+  public Flux<Feature> findFeatureModifications(
+      final double[] bbox,
+      final int limit,
+      final String permission,
+      final boolean includePublic,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    return findViewportFeatures(
+        bbox, false, null, limit, permission, includePublic, userId, roles, groups,
+        query -> {
+          query.fields()
+              .include("id")
+              .include("_class")
+              .include("properties._class")
+              .include("properties.modified");
+          return query;
+        });
+  }
+
+  private Flux<Feature> findViewportFeatures(
+      final double[] bbox,
+      final boolean within,
+      final String afterId,
+      final int limit,
+      final String permission,
+      final boolean includePublic,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups,
+      final UnaryOperator<Query> fields) {
+
+    final Criteria[] geoCriteria = boundingBoxPolygons(bbox)
+        .stream()
+        .map(polygon -> within
+            ? Criteria.where("geometry").within(polygon)
+            : Criteria.where("geometry").intersects(polygon))
+        .toArray(Criteria[]::new);
+    final Criteria geoCriterion = geoCriteria.length == 1
+        ? geoCriteria[0]
+        : new Criteria().orOperator(geoCriteria);
+    if (spatialIndex.isEnabled() && includePublic && PermissionConstants.READ.equals(permission)) {
+      // the index only compares bounding boxes and may be stale, so the candidates are checked
+      // against the geometry and the access control of the stored features
+      final Criteria readable = MongoRepositoryUtils.buildCriteria(
+          permission, true, userId, roles, groups, "properties.accessControl");
+      return spatialIndex
+          .findFeatureIds(bbox, within, userId, roles, groups)
+          .flatMapIterable(featureIds -> featureIds)
+          .filter(featureId -> afterId == null || featureId.compareTo(afterId) > 0)
+          .buffer(Math.max(limit, CANDIDATE_BATCH_SIZE))
+          .concatMap(featureIds -> mongoOperations.find(
+              fields.apply(Query
+                  .query(new Criteria().andOperator(
+                      Criteria.where("id").in(featureIds),
+                      geoCriterion,
+                      readable))
+                  .with(Sort.by(Direction.ASC, "id"))),
+              Feature.class))
+          .take(limit);
+    }
+    final List<Criteria> criteria = new ArrayList<>();
+    criteria.add(geoCriterion);
+    criteria.add(MongoRepositoryUtils.buildCriteria(
+        permission, includePublic, userId, roles, groups, "properties.accessControl"));
+    if (StringUtils.hasText(afterId)) {
+      criteria.add(Criteria.where("id").gt(afterId));
+    }
+    final Query query = Query
+        .query(new Criteria().andOperator(criteria.toArray(new Criteria[0])))
+        .with(Sort.by(Direction.ASC, "id"))
+        .limit(limit);
+    return mongoOperations.find(fields.apply(query), Feature.class);
+  }
+
+  @Override
+  public Flux<Feature> findNearestFeatureHeaders(
+      final double longitude,
+      final double latitude,
+      final int limit,
+      final String permission,
+      final boolean includePublic,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    if (spatialIndex.isEnabled() && includePublic && PermissionConstants.READ.equals(permission)) {
+      return spatialIndex
+          .findNearestFeatureIds(longitude, latitude, limit, userId, roles, groups)
+          .flatMapMany(featureIds -> mongoOperations
+              .find(excludeDetails(featuresQuery(
+                  featureIds, permission, true, userId, roles, groups), true), Feature.class)
+              .sort(Comparator.comparingInt(feature -> featureIds.indexOf(feature.getId()))));
+    }
+    final Query query = Query
+        .query(MongoRepositoryUtils
+            .buildCriteria(permission, includePublic, userId, roles, groups,
+                "properties.accessControl")
+            .and("geometry").nearSphere(new GeoJsonPoint(longitude, latitude)))
+        .limit(limit);
+    return mongoOperations.find(excludeDetails(query, true), Feature.class);
+  }
+
+  /**
+   * Creates the polygons of the bounding box, see {@link FeatureSpatialIndex#splitBoundingBox}.
+   */
+  private static List<GeoJsonPolygon> boundingBoxPolygons(final double[] bbox) {
+    return FeatureSpatialIndex.splitBoundingBox(bbox)
+        .stream()
+        .map(box -> boundingBoxPolygon(box[0], box[1], box[2], box[3]))
+        .collect(Collectors.toList());
+  }
+
+  private static GeoJsonPolygon boundingBoxPolygon(
+      final double minX,
+      final double minY,
+      final double maxX,
+      final double maxY) {
+    return new GeoJsonPolygon(
+        new Point(minX, minY),
+        new Point(maxX, minY),
+        new Point(maxX, maxY),
+        new Point(minX, maxY),
+        new Point(minX, minY));
+  }
+
+  @Override
+  public Mono<Long> renameFeature(final String featureId, final String name) {
+    return mongoOperations
+        .updateFirst(
+            Query.query(Criteria.where("id").is(featureId)),
+            Update.update("properties.name", name).set("properties.modified", Instant.now()),
+            Feature.class)
+        .map(UpdateResult::getModifiedCount);
+  }
+
+  @Override
+  public Mono<Long> updateAccessControl(
+      Collection<String> featureIds,
+      AccessControl accessControl) {
+
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Mono.just(0L);
+    }
+    return mongoOperations
+        .updateMulti(
+            Query.query(Criteria.where("id").in(featureIds)),
+            Update.update("properties.accessControl", accessControl),
+            Feature.class)
+        .map(UpdateResult::getModifiedCount)
+        .doOnSuccess(count -> spatialIndex.updateAccessControl(featureIds, accessControl));
   }
 
   private Criteria featureSettingsCriteria(String featureId, String userId) {
@@ -60,6 +443,59 @@ public class FeatureRepositoryImpl implements FeatureRepository {
     return mongoOperations.findOne(Query.query(featureSettingsCriteria(featureId, userId)), clazz);
   }
 
+  @Override
+  public <T extends FeatureSettings> Flux<T> findFeatureSettings(
+      Class<T> clazz,
+      Collection<String> featureIds,
+      String userId) {
+
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Flux.empty();
+    }
+    final Criteria criteria = new Criteria().andOperator(
+        Criteria.where("featureId").in(featureIds),
+        Criteria.where("userId").is(userId));
+    return mongoOperations.find(Query.query(criteria), clazz);
+  }
+
+  @Override
+  public <T extends FeatureSettings> Flux<T> findOrCreateFeatureSettings(
+      Class<T> clazz,
+      Collection<String> featureIds,
+      String userId,
+      Function<String, ? extends T> settingsFactory) {
+
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Flux.empty();
+    }
+    return findFeatureSettings(clazz, featureIds, userId)
+        .collectList()
+        .flatMapMany(existing -> {
+          final Set<String> found = existing.stream()
+              .map(FeatureSettings::getFeatureId)
+              .collect(Collectors.toSet());
+          final List<T> missing = featureIds.stream()
+              .distinct()
+              .filter(featureId -> !found.contains(featureId))
+              .map(settingsFactory)
+              .filter(Objects::nonNull)
+              .collect(Collectors.toList());
+          if (missing.isEmpty()) {
+            return Flux.fromIterable(existing);
+          }
+          final Set<String> missingIds = missing.stream()
+              .map(FeatureSettings::getFeatureId)
+              .collect(Collectors.toSet());
+          return MongoBulkUtils
+              .insertIfAbsent(mongoOperations, missing, settings -> new Document()
+                  .append("featureId", settings.getFeatureId())
+                  .append("userId", settings.getUserId()))
+              .thenMany(Flux.concat(
+                  Flux.fromIterable(existing),
+                  findFeatureSettings(clazz, missingIds, userId)));
+        });
+  }
+
   @Override
   public Mono<Void> deleteFeatureSettings(String featureId, String userId) {
     return mongoOperations
@@ -67,4 +503,375 @@ public class FeatureRepositoryImpl implements FeatureRepository {
         .flatMap(deleteResult -> Mono.empty());
   }
 
+  @Override
+  public Mono<Void> deleteFeatureSettings(Collection<String> featureIds, String userId) {
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Mono.empty();
+    }
+    final Criteria criteria = new Criteria().andOperator(
+        Criteria.where("featureId").in(featureIds),
+        Criteria.where("userId").is(userId));
+    return mongoOperations
+        .remove(Query.query(criteria), FeatureSettings.class)
+        .flatMap(deleteResult -> Mono.empty());
+  }
+
+  @Override
+  public Mono<Long> deleteFeatureSettings(Collection<String> featureIds) {
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Mono.just(0L);
+    }
+    return mongoOperations
+        .remove(Query.query(Criteria.where("featureId").in(featureIds)), FeatureSettings.class)
+        .map(DeleteResult::getDeletedCount);
+  }
+
+  @Override
+  public Flux<TrkChunk> findTrkChunks(final String featureId) {
+    final Query query = Query.query(Criteria.where("featureId").is(featureId))
+        .with(Sort.by(Direction.ASC, "index"));
+    return mongoOperations.find(query, TrkChunk.class);
+  }
+
+  @Override
+  public Flux<TrkChunk> findTrkChunks(final String featureId, final double[] bbox) {
+    final GeoJsonPolygon polygon = boundingBoxPolygon(bbox[0], bbox[1], bbox[2], bbox[3]);
+    final Query query = Query
+        .query(new Criteria().andOperator(
+            Criteria.where("featureId").is(featureId),
+            Criteria.where("geometry").intersects(polygon)))
+        .with(Sort.by(Direction.ASC, "index"));
+    return mongoOperations.find(query, TrkChunk.class);
+  }
+
+  @Override
+  public Mono<Trk> loadTrkLines(final Trk trk) {
+    if (trk.getProperties().getChunkCount() == null || trk.getProperties().getEleLines() != null) {
+      return Mono.just(trk);
+    }
+    return findTrkChunks(trk.getId())
+        .collectList()
+        .map(chunks -> TrkChunker.join(trk, chunks));
+  }
+
+  @Override
+  public Mono<Long> appendTrkLine(
+      final String featureId,
+      final LineString line,
+      final List<BigDecimal> eleLine,
+      final List<Instant> timeLine,
+      final boolean continueLastLine) {
+
+    if (line == null || line.getNumPoints() == 0) {
+      return Mono.just(0L);
+    }
+    return mongoOperations
+        .findById(featureId, Trk.class)
+        .flatMap(trk -> {
+          if (trk.getProperties().getChunkCount() == null) {
+            return appendTrkLineInline(trk, line, eleLine, timeLine, continueLastLine);
+          }
+          return findLastTrkChunk(featureId)
+              .map(Optional::of)
+              .defaultIfEmpty(Optional.empty())
+              .flatMap(lastChunk -> appendTrkChunks(
+                  trk, lastChunk.orElse(null), line, eleLine, timeLine, continueLastLine));
+        })
+        .defaultIfEmpty(0L)
+        .doOnSuccess(count -> {
+          if (count != null && count > 0L) {
+            spatialIndex.invalidateFeature(featureId);
+          }
+        });
+  }
+
+  private Mono<TrkChunk> findLastTrkChunk(final String featureId) {
+    final Query query = Query.query(Criteria.where("featureId").is(featureId))
+        .with(Sort.by(Direction.DESC, "index"))
+        .limit(1);
+    return mongoOperations.findOne(query, TrkChunk.class);
+  }
+
+  /*
+   * Returns the number of appended points. A single point, that does not continue a line, is not
+   * stored, because it is no line (the same applies to chunked tracks).
+   */
+  private Mono<Long> appendTrkLineInline(
+      final Trk trk,
+      final LineString line,
+      final List<BigDecimal> eleLine,
+      final List<Instant> timeLine,
+      final boolean continueLastLine) {
+
+    final boolean continuation = continueLastLine
+        && trk.getGeometry() != null
+        && trk.getGeometry().getNumGeometries() > 0;
+    if (!continuation && line.getNumPoints() < 2) {
+      return Mono.just(0L);
+    }
+    final List<LineString> lines = new ArrayList<>();
+    final List<List<BigDecimal>> eleLines = trk.getProperties().getEleLines() != null
+        ? new ArrayList<>(trk.getProperties().getEleLines())
+        : new ArrayList<>();
+    final List<List<Instant>> timeLines = trk.getProperties().getTimeLines() != null
+        ? new ArrayList<>(trk.getProperties().getTimeLines())
+        : new ArrayList<>();
+    if (trk.getGeometry() != null) {
+      for (int n = 0; n < trk.getGeometry().getNumGeometries(); n++) {
+        lines.add((LineString) trk.getGeometry().getGeometryN(n));
+      }
+    }
+    final List<BigDecimal> newEleLine = valuesOf(eleLine, line.getNumPoints());
+    final List<Instant> newTimeLine = valuesOf(timeLine, line.getNumPoints());
+    if (continuation) {
+      final int last = lines.size() - 1;
+      final List<Coordinate> coordinates = new ArrayList<>(
+          Arrays.asList(lines.get(last).getCoordinates()));
+      coordinates.addAll(Arrays.asList(line.getCoordinates()));
+      lines.set(last, GeometryUtils.createLineString(coordinates));
+      if (last < eleLines.size()) {
+        final List<BigDecimal> values = new ArrayList<>(eleLines.get(last));
+        values.addAll(newEleLine);
+        eleLines.set(last, values);
+      }
+      if (last < timeLines.size()) {
+        final List<Instant> values = new ArrayList<>(timeLines.get(last));
+        values.addAll(newTimeLine);
+        timeLines.set(last, values);
+      }
+    } else {
+      lines.add(line);
+      eleLines.add(newEleLine);
+      timeLines.add(newTimeLine);
+    }
+    trk.setGeometry(GeometryUtils.createMultiLineString(lines));
+    trk.setBbox(GeometryUtils.getBoundingBox(trk.getGeometry()));
+    trk.getProperties().setEleLines(eleLines);
+    trk.getProperties().setTimeLines(timeLines);
+    lastTime(timeLine).ifPresent(time -> trk.getProperties().setStopTime(time));
+    trk.getProperties().setModified(Instant.now());
+    return persistTrk(trk).thenReturn((long) line.getNumPoints());
+  }
+
+  /*
+   * Returns the number of appended points (see appendTrkLineInline).
+   */
+  private Mono<Long> appendTrkChunks(
+      final Trk trk,
+      final TrkChunk lastChunk,
+      final LineString line,
+      final List<BigDecimal> eleLine,
+      final List<Instant> timeLine,
+      final boolean continueLastLine) {
+
+    final List<Coordinate> coordinates = new ArrayList<>(line.getNumPoints() + 1);
+    final List<BigDecimal> eles = new ArrayList<>(line.getNumPoints() + 1);
+    final List<Instant> times = new ArrayList<>(line.getNumPoints() + 1);
+    final boolean continuation = continueLastLine && lastChunk != null;
+    if (continuation) {
+      final Coordinate[] lastCoordinates = lastChunk.getGeometry().getCoordinates();
+      final List<BigDecimal> lastEles = TrkLineCodec.decodeEleLine(lastChunk.getPackedEleLine());
+      final List<Instant> lastTimes = TrkLineCodec.decodeTimeLine(lastChunk.getPackedTimeLine());
+      coordinates.add(lastCoordinates[lastCoordinates.length - 1]);
+      eles.add(lastEles.isEmpty() ? null : lastEles.get(lastEles.size() - 1));
+      times.add(lastTimes.isEmpty() ? null : lastTimes.get(lastTimes.size() - 1));
+    }
+    coordinates.addAll(Arrays.asList(line.getCoordinates()));
+    eles.addAll(valuesOf(eleLine, line.getNumPoints()));
+    times.addAll(valuesOf(timeLine, line.getNumPoints()));
+
+    final int lineIndex = lastChunk == null
+        ? 0
+        : continuation ? lastChunk.getLineIndex() : lastChunk.getLineIndex() + 1;
+    final List<TrkChunk> chunks = TrkChunker.splitLine(
+        trk.getId(),
+        coordinates.toArray(new Coordinate[0]),
+        eles,
+        times,
+        lineIndex,
+        lastChunk != null ? lastChunk.getIndex() + 1 : 0,
+        continuation,
+        TRK_CHUNK_SIZE);
+    if (chunks.isEmpty()) {
+      return Mono.just(0L);
+    }
+
+    final MultiLineString overview = appendOverview(
+        trk.getGeometry(),
+        GeometryUtils.createLineString(coordinates),
+        continuation);
+    final double[] bbox = GeometryUtils.getBoundingBox(line);
+    final Update update = new Update()
+        .inc("properties.chunkCount", chunks.size())
+        .inc("pointCount", line.getNumPoints())
+        .set("geometry", overview)
+        .set("properties.modified", Instant.now());
+    if (trk.getBbox() == null || trk.getBbox().length < 4) {
+      update.set("bbox", bbox);
+    } else {
+      update
+          .min("bbox.0", bbox[0])
+          .min("bbox.1", bbox[1])
+          .max("bbox.2", bbox[2])
+          .max("bbox.3", bbox[3]);
+    }
+    lastTime(timeLine).ifPresent(time -> update.max("properties.stopTime", time));
+    return mongoOperations
+        .insertAll(chunks)
+        .then(mongoOperations.updateFirst(
+            Query.query(Criteria.where("id").is(trk.getId())),
+            update,
+            Trk.class))
+        .flatMap(result -> saveFeatureLods(trk.getId(), overview)
+            .thenReturn((long) line.getNumPoints()));
+  }
+
+  /*
+   * Adds the simplified line to the overview geometry of a chunked track. The simplified
+   * geometries of the zoom levels are less detailed than the overview, so they are built from it.
+   */
+  private static MultiLineString appendOverview(
+      final MultiLineString overview,
+      final LineString line,
+      final boolean continueLastLine) {
+
+    final MultiLineString simplifiedLine = TrkChunker.overview(
+        GeometryUtils.createMultiLineString(Collections.singletonList(line)),
+        TRK_OVERVIEW_TOLERANCE);
+    final List<LineString> lines = new ArrayList<>();
+    if (overview != null) {
+      for (int n = 0; n < overview.getNumGeometries(); n++) {
+        lines.add((LineString) overview.getGeometryN(n));
+      }
+    }
+    if (simplifiedLine.isEmpty()) {
+      return GeometryUtils.createMultiLineString(lines);
+    }
+    final Coordinate[] added = simplifiedLine.getGeometryN(0).getCoordinates();
+    if (continueLastLine && !lines.isEmpty()) {
+      // the added line starts with the last point of the last line
+      final int last = lines.size() - 1;
+      final List<Coordinate> coordinates = new ArrayList<>(
+          Arrays.asList(lines.get(last).getCoordinates()));
+      coordinates.addAll(Arrays.asList(added).subList(1, added.length));
+      lines.set(last, GeometryUtils.createLineString(coordinates));
+    } else {
+      lines.add(GeometryUtils.createLineString(Arrays.asList(added)));
+    }
+    return GeometryUtils.createMultiLineString(lines);
+  }
+
+  private static <T> List<T> valuesOf(final List<T> values, final int size) {
+    final List<T> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(values != null && i < values.size() ? values.get(i) : null);
+    }
+    return list;
+  }
+
+  private static Optional<Instant> lastTime(final List<Instant> timeLine) {
+    if (timeLine != null) {
+      for (int i = timeLine.size() - 1; i >= 0; i--) {
+        if (timeLine.get(i) != null) {
+          return Optional.of(timeLine.get(i));
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public <T extends Feature> Mono<T> findFeatureById(
+      final Class<T> clazz,
+      final String id,
+      final String permission,
+      final boolean includePublic,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    final Criteria two = MongoRepositoryUtils.buildCriteria(
+        permission, includePublic, userId, roles, groups, "properties.accessControl");
+    final Criteria one = Criteria.where("id").is(id);
+    return mongoOperations.findOne(Query.query(new Criteria().andOperator(one, two)), clazz);
+  }
+
+  @Override
+  public <T extends Feature> Flux<T> findFeatures(
+      final Class<T> clazz,
+      final Collection<String> featureIds,
+      final String permission,
+      final boolean includePublic,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Flux.empty();
+    }
+    final Query query = featuresQuery(featureIds, permission, includePublic, userId, roles, groups)
+        .restrict(clazz);
+    return mongoOperations.find(query, clazz);
+  }
+
+  private static Query featuresQuery(
+      final Collection<String> featureIds,
+      final String permission,
+      final boolean includePublic,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    final Criteria two = MongoRepositoryUtils.buildCriteria(
+        permission, includePublic, userId, roles, groups, "properties.accessControl");
+    final Criteria one = Criteria.where("id").in(featureIds);
+    return Query
+        .query(new Criteria().andOperator(one, two))
+        .with(Sort.by(Direction.ASC, "id"));
+  }
+
+  @Override
+  public Flux<FeatureLod> findFeatureLods(final Collection<String> featureIds, final int zoom) {
+    if (featureIds == null || featureIds.isEmpty()) {
+      return Flux.empty();
+    }
+    final Query query = Query
+        .query(new Criteria().andOperator(
+            Criteria.where("featureId").in(featureIds),
+            Criteria.where("zoom").gte(zoom)))
+        .with(Sort.by(Direction.ASC, "featureId", "zoom"));
+    return mongoOperations
+        .find(query, FeatureLod.class)
+        .distinct(FeatureLod::getFeatureId);
+  }
+
+  @Override
+  public Mono<Void> applyFeatureLods(
+      final Collection<? extends Feature> features,
+      final Integer zoom) {
+
+    if (zoom == null || features == null || features.isEmpty()) {
+      return Mono.empty();
+    }
+    final Map<String, Feature> lines = new HashMap<>();
+    for (final Feature feature : features) {
+      if (feature instanceof Trk || feature instanceof Rte) {
+        lines.put(feature.getId(), feature);
+      }
+    }
+    return findFeatureLods(lines.keySet(), zoom)
+        .doOnNext(lod -> {
+          final Feature feature = lines.get(lod.getFeatureId());
+          if (feature instanceof Trk) {
+            final Trk trk = (Trk) feature;
+            trk.setGeometry(lod.getGeometry());
+            trk.getProperties().setEleLines(null);
+            trk.getProperties().setTimeLines(null);
+          } else if (feature instanceof Rte) {
+            ((Rte) feature).setGeometry(lod.getGeometry());
+          }
+        })
+        .then();
+  }
+
 }
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.FeatureSpatialIndexProperties;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.security.access.AccessControl;
+import org.bremersee.peregrinus.security.access.AuthorizationSet;
+import org.bremersee.peregrinus.security.access.MongoRepositoryUtils;
+import org.bremersee.peregrinus.security.access.PermissionConstants;
+import org.bremersee.peregrinus.security.access.PermissionEvaluator;
+import org.bson.Document;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+/**
+ * Keeps an in-memory R-tree (STRtree) of the bounding boxes of the features, that a user can
+ * read. The indexes are loaded on first use and kept up to date by the feature repository. Changed
+ * features are searched one by one, until there are enough of them to rebuild the tree.
+ *
+ * <p>The indexes only find candidates: the repository checks them against the geometry and the
+ * access control of the stored features. They are kept per instance, so changes made by other
+ * instances only become visible, when an index expires (see
+ * {@link FeatureSpatialIndexProperties#getExpireAfterWrite()}). An index, during whose loading a
+ * feature was changed, is not cached, so under a steady write load the indexes are loaded again
+ * and again. Therefore the index is disabled by default and meant for single instances with few
+ * writes.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+class FeatureSpatialIndex {
+
+  private final ReactiveMongoOperations mongoOperations;
+
+  private final FeatureSpatialIndexProperties properties;
+
+  private final Cache<String, UserIndex> cache;
+
+  private final Map<String, Mono<UserIndex>> loading = new ConcurrentHashMap<>();
+
+  /**
+   * Counts the changes, an index that was loaded during a change is not cached.
+   */
+  private final AtomicLong modifications = new AtomicLong();
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  FeatureSpatialIndex(
+      ReactiveMongoOperations mongoOperations,
+      PeregrinusProperties peregrinusProperties,
+      MeterRegistry meterRegistry) {
+
+    this.mongoOperations = mongoOperations;
+    this.properties = peregrinusProperties.getFeatureSpatialIndex();
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(properties.getMaximumFeatures())
+        .weigher((String key, UserIndex index) -> Math.max(1, index.size()))
+        .expireAfterAccess(properties.getExpireAfterAccess())
+        .expireAfterWrite(properties.getExpireAfterWrite())
+        .build();
+    this.hits = meterRegistry.counter("peregrinus.feature.spatial-index", "result", "hit");
+    this.misses = meterRegistry.counter("peregrinus.feature.spatial-index", "result", "miss");
+    meterRegistry.gauge("peregrinus.feature.spatial-index.size", cache, Cache::estimatedSize);
+  }
+
+  boolean isEnabled() {
+    return properties.isEnabled();
+  }
+
+  /**
+   * Finds the ids of the features, that the user can read, whose bounding box intersects (or lies
+   * within) the given bounding box.
+   *
+   * @return the feature ids in ascending order
+   */
+  Mono<List<String>> findFeatureIds(
+      final double[] bbox,
+      final boolean within,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    final List<Envelope> envelopes = splitBoundingBox(bbox)
+        .stream()
+        .map(FeatureSpatialIndex::envelope)
+        .collect(Collectors.toList());
+    return index(userId, roles, groups).map(index -> index.query(envelopes, within));
+  }
+
+  /**
+   * Splits the bounding box into boxes, that don't cross the antimeridian and that are not wider
+   * than a hemisphere. A bounding box, whose west bound is greater than its east bound, crosses
+   * the antimeridian. A GeoJSON polygon is the smaller of the areas its ring encloses, so a box,
+   * that is wider than a hemisphere, is split into two boxes.
+   *
+   * @param bbox the bounding box (west, south, east, north)
+   * @return the boxes
+   */
+  static List<double[]> splitBoundingBox(final double[] bbox) {
+    final double minY = Math.max(-90., bbox[1]);
+    final double maxY = Math.min(90., bbox[3]);
+    if (bbox[0] > bbox[2]) {
+      final List<double[]> boxes = new ArrayList<>(
+          splitBoundingBox(new double[]{bbox[0], minY, 180., maxY}));
+      boxes.addAll(splitBoundingBox(new double[]{-180., minY, bbox[2], maxY}));
+      return boxes;
+    }
+    final double minX = Math.max(-180., bbox[0]);
+    final double maxX = Math.min(180., bbox[2]);
+    if (maxX - minX <= 180.) {
+      return Collections.singletonList(new double[]{minX, minY, maxX, maxY});
+    }
+    final double midX = (minX + maxX) / 2.;
+    return Arrays.asList(
+        new double[]{minX, minY, midX, maxY},
+        new double[]{midX, minY, maxX, maxY});
+  }
+
+  /**
+   * Finds the ids of the features, that the user can read, next to the position.
+   *
+   * @return the feature ids, the nearest one first
+   */
+  Mono<List<String>> findNearestFeatureIds(
+      final double longitude,
+      final double latitude,
+      final int limit,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    return index(userId, roles, groups).map(index -> index.nearest(longitude, latitude, limit));
+  }
+
+  void updateFeature(final Feature feature) {
+    if (feature.getId() == null || feature.getProperties() == null) {
+      return;
+    }
+    modifications.incrementAndGet();
+    final Envelope envelope = envelope(feature.getBbox());
+    final AccessControl accessControl = feature.getProperties().getAccessControl();
+    for (final UserIndex index : cache.asMap().values()) {
+      if (envelope != null
+          && index.evaluator.hasPermission(accessControl, PermissionConstants.READ)) {
+        index.put(feature.getId(), envelope);
+      } else {
+        index.remove(feature.getId());
+      }
+    }
+  }
+
+  void removeFeatures(final Collection<String> featureIds) {
+    modifications.incrementAndGet();
+    for (final UserIndex index : cache.asMap().values()) {
+      featureIds.forEach(index::remove);
+    }
+  }
+
+  /**
+   * Removes the features from the indexes of the users, that can't read them anymore. The indexes
+   * of the users, that can read a feature now, but couldn't before, are dropped, because the
+   * bounding box of the feature is unknown here.
+   */
+  void updateAccessControl(
+      final Collection<String> featureIds,
+      final AccessControl accessControl) {
+
+    modifications.incrementAndGet();
+    cache.asMap().forEach((key, index) -> {
+      final boolean readable = index.evaluator
+          .hasPermission(accessControl, PermissionConstants.READ);
+      for (final String featureId : featureIds) {
+        if (!readable) {
+          index.remove(featureId);
+        } else if (!index.contains(featureId)) {
+          cache.invalidate(key);
+          return;
+        }
+      }
+    });
+  }
+
+  /**
+   * Drops the indexes, that contain the feature, because its bounding box has changed.
+   */
+  void invalidateFeature(final String featureId) {
+    modifications.incrementAndGet();
+    cache.asMap().forEach((key, index) -> {
+      if (index.contains(featureId)) {
+        cache.invalidate(key);
+      }
+    });
+  }
+
+  private Mono<UserIndex> index(
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    final Set<String> principals = AuthorizationSet
+        .principals(true, userId, null, roles, groups);
+    final String key = String.valueOf(userId);
+    final UserIndex index = cache.getIfPresent(key);
+    if (index != null && index.principals.equals(principals)) {
+      hits.increment();
+      return Mono.just(index);
+    }
+    misses.increment();
+    return loading.computeIfAbsent(key, k -> {
+      final long modificationCount = modifications.get();
+      return load(userId, roles, groups, principals)
+          .doOnNext(loaded -> {
+            if (modificationCount == modifications.get()) {
+              cache.put(k, loaded);
+            }
+          })
+          .doFinally(signalType -> loading.remove(k))
+          .cache();
+    });
+  }
+
+  private Mono<UserIndex> load(
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups,
+      final Set<String> principals) {
+
+    final String collectionName = mongoOperations.getCollectionName(Feature.class);
+    final Criteria readable = MongoRepositoryUtils.buildCriteria(
+        PermissionConstants.READ, true, userId, roles, groups, "properties.accessControl");
+    final Query withBbox = Query.query(new Criteria().andOperator(
+        readable,
+        Criteria.where("bbox").exists(true)));
+    withBbox.fields().include("bbox");
+    // features, that were persisted before the bounding box was stored, need their geometry
+    final Query withoutBbox = Query.query(new Criteria().andOperator(
+        readable,
+        Criteria.where("bbox").exists(false),
+        Criteria.where("geometry").exists(true)));
+    withoutBbox.fields().include("geometry");
+    final long start = System.currentTimeMillis();
+    return Flux
+        .merge(
+            mongoOperations.find(withBbox, Document.class, collectionName),
+            mongoOperations.find(withoutBbox, Document.class, collectionName))
+        .flatMap(document -> Mono
+            .justOrEmpty(envelope(document))
+            .filter(envelope -> !envelope.isNull())
+            .map(envelope -> Tuples.of(String.valueOf(document.get("_id")), envelope)))
+        .collectMap(Tuple2::getT1, Tuple2::getT2)
+        .map(envelopes -> {
+          log.debug("msg=[Spatial index loaded.] userId=[{}] features=[{}] millis=[{}]",
+              userId, envelopes.size(), System.currentTimeMillis() - start);
+          return new UserIndex(
+              PermissionEvaluator.of(userId, roles, groups),
+              principals,
+              envelopes,
+              properties.getRebuildThreshold());
+        });
+  }
+
+  private static Envelope envelope(final Document document) {
+    final Object bbox = document.get("bbox");
+    if (bbox instanceof List && ((List<?>) bbox).size() >= 4) {
+      final List<?> values = (List<?>) bbox;
+      return new Envelope(
+          ((Number) values.get(0)).doubleValue(),
+          ((Number) values.get(2)).doubleValue(),
+          ((Number) values.get(1)).doubleValue(),
+          ((Number) values.get(3)).doubleValue());
+    }
+    final Object geometry = document.get("geometry");
+    if (geometry instanceof Document) {
+      final Envelope envelope = new Envelope();
+      expand(envelope, ((Document) geometry).get("coordinates"));
+      return envelope;
+    }
+    return null;
+  }
+
+  private static void expand(final Envelope envelope, final Object coordinates) {
+    if (!(coordinates instanceof List) || ((List<?>) coordinates).isEmpty()) {
+      return;
+    }
+    final List<?> values = (List<?>) coordinates;
+    if (values.get(0) instanceof Number) {
+      envelope.expandToInclude(
+          ((Number) values.get(0)).doubleValue(),
+          ((Number) values.get(1)).doubleValue());
+    } else {
+      values.forEach(value -> expand(envelope, value));
+    }
+  }
+
+  private static Envelope envelope(final double[] bbox) {
+    if (bbox == null || bbox.length < 4) {
+      return null;
+    }
+    return new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]);
+  }
+
+  /**
+   * Gets the bounding box of the geometry of the feature.
+   *
+   * @param feature the feature
+   * @return the bounding box (min lon, min lat, max lon, max lat) or {@code null}
+   */
+  static double[] boundingBox(final Feature feature) {
+    return feature.getGeometry() != null && !feature.getGeometry().isEmpty()
+        ? GeometryUtils.getBoundingBox(feature.getGeometry())
+        : null;
+  }
+
+  /**
+   * The index of a user.
+   */
+  private static class UserIndex {
+
+    private final PermissionEvaluator evaluator;
+
+    private final Set<String> principals;
+
+    private final Map<String, Envelope> envelopes;
+
+    private final Set<String> changed = new HashSet<>();
+
+    private final int rebuildThreshold;
+
+    private STRtree tree;
+
+    UserIndex(
+        final PermissionEvaluator evaluator,
+        final Set<String> principals,
+        final Map<String, Envelope> envelopes,
+        final int rebuildThreshold) {
+      this.evaluator = evaluator;
+      this.principals = principals;
+      this.envelopes = new HashMap<>(envelopes);
+      this.rebuildThreshold = rebuildThreshold;
+      rebuild();
+    }
+
+    synchronized int size() {
+      return envelopes.size();
+    }
+
+    synchronized boolean contains(final String featureId) {
+      return envelopes.containsKey(featureId);
+    }
+
+    synchronized void put(final String featureId, final Envelope envelope) {
+      envelopes.put(featureId, envelope);
+      changed.add(featureId);
+      rebuildIfNecessary();
+    }
+
+    synchronized void remove(final String featureId) {
+      if (envelopes.remove(featureId) != null) {
+        changed.add(featureId);
+        rebuildIfNecessary();
+      }
+    }
+
+    private void rebuildIfNecessary() {
+      if (changed.size() > rebuildThreshold) {
+        rebuild();
+      }
+    }
+
+    private void rebuild() {
+      final STRtree newTree = new STRtree();
+      envelopes.forEach((featureId, envelope) -> newTree.insert(envelope, featureId));
+      newTree.build();
+      tree = newTree;
+      changed.clear();
+    }
+
+    synchronized List<String> query(final Collection<Envelope> envelopes, final boolean within) {
+      final Set<String> featureIds = new TreeSet<>();
+      for (final Envelope envelope : envelopes) {
+        for (final Object item : tree.query(envelope)) {
+          if (!changed.contains(item)) {
+            add(featureIds, (String) item, envelope, within);
+          }
+        }
+        for (final String featureId : changed) {
+          add(featureIds, featureId, envelope, within);
+        }
+      }
+      return new ArrayList<>(featureIds);
+    }
+
+    private void add(
+        final Set<String> featureIds,
+        final String featureId,
+        final Envelope envelope,
+        final boolean within) {
+
+      final Envelope featureEnvelope = envelopes.get(featureId);
+      if (featureEnvelope != null && (within
+          ? envelope.contains(featureEnvelope)
+          : envelope.intersects(featureEnvelope))) {
+        featureIds.add(featureId);
+      }
+    }
+
+    /**
+     * Searches a growing square around the position, until it contains enough features, whose
+     * distance is not greater than half the side of the square.
+     */
+    synchronized List<String> nearest(final double x, final double y, final int limit) {
+      if (envelopes.isEmpty() || limit <= 0) {
+        return Collections.emptyList();
+      }
+      final Envelope position = new Envelope(x, x, y, y);
+      double radius = 0.01;
+      while (true) {
+        final double maxDistance = radius;
+        final List<String> featureIds = query(Collections.singleton(
+            new Envelope(x - radius, x + radius, y - radius, y + radius)), false)
+            .stream()
+            .filter(featureId -> maxDistance >= 360.
+                || envelopes.get(featureId).distance(position) <= maxDistance)
+            .sorted(Comparator.comparingDouble(featureId -> envelopes.get(featureId)
+                .distance(position)))
+            .collect(Collectors.toList());
+        if (featureIds.size() >= limit || radius >= 360.) {
+          return featureIds.size() > limit ? featureIds.subList(0, limit) : featureIds;
+        }
+        radius = Math.min(radius * 4., 360.);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.TrkChunk;
+import org.bremersee.peregrinus.content.model.TrkLineCodec;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+
+/**
+ * Splits the lines of large tracks into chunks and joins them again.
+ *
+ * @author Christian Bremer
+ */
+abstract class TrkChunker {
+
+  private TrkChunker() {
+  }
+
+  /**
+   * Splits all lines of the track into chunks.
+   *
+   * @param trk       the track (must have an id)
+   * @param chunkSize the maximum number of points of a chunk
+   * @return the chunks
+   */
+  static List<TrkChunk> split(final Trk trk, final int chunkSize) {
+    final List<TrkChunk> chunks = new ArrayList<>();
+    final MultiLineString geometry = trk.getGeometry();
+    if (geometry == null) {
+      return chunks;
+    }
+    final List<List<BigDecimal>> eleLines = trk.getProperties().getEleLines();
+    final List<List<Instant>> timeLines = trk.getProperties().getTimeLines();
+    for (int n = 0; n < geometry.getNumGeometries(); n++) {
+      chunks.addAll(splitLine(
+          trk.getId(),
+          geometry.getGeometryN(n).getCoordinates(),
+          lineAt(eleLines, n),
+          lineAt(timeLines, n),
+          n,
+          chunks.size(),
+          false,
+          chunkSize));
+    }
+    return chunks;
+  }
+
+  /**
+   * Splits one line into chunks. Every chunk but the first one starts with the last point of the
+   * previous chunk.
+   *
+   * @param featureId    the id of the track
+   * @param coordinates  the points of the line
+   * @param eleLine      the elevations of the line (can be {@code null})
+   * @param timeLine     the times of the line (can be {@code null})
+   * @param lineIndex    the position of the line within the track
+   * @param firstIndex   the position of the first chunk within the track
+   * @param continuation specifies whether the first point continues a previous chunk
+   * @param chunkSize    the maximum number of points of a chunk
+   * @return the chunks
+   */
+  static List<TrkChunk> splitLine(
+      final String featureId,
+      final Coordinate[] coordinates,
+      final List<BigDecimal> eleLine,
+      final List<Instant> timeLine,
+      final int lineIndex,
+      final int firstIndex,
+      final boolean continuation,
+      final int chunkSize) {
+
+    final List<TrkChunk> chunks = new ArrayList<>();
+    final int size = Math.max(chunkSize, 2);
+    int start = 0;
+    while (start < coordinates.length - 1) {
+      final int end = Math.min(start + size, coordinates.length);
+      final TrkChunk chunk = new TrkChunk();
+      chunk.setFeatureId(featureId);
+      chunk.setIndex(firstIndex + chunks.size());
+      chunk.setLineIndex(lineIndex);
+      chunk.setContinuation(start > 0 || continuation);
+      chunk.setGeometry(GeometryUtils.createLineString(
+          Arrays.asList(Arrays.copyOfRange(coordinates, start, end))));
+      chunk.setBbox(GeometryUtils.getBoundingBox(chunk.getGeometry()));
+      chunk.setPackedEleLine(TrkLineCodec.encodeEleLine(subList(eleLine, start, end)));
+      chunk.setPackedTimeLine(TrkLineCodec.encodeTimeLine(subList(timeLine, start, end)));
+      chunks.add(chunk);
+      start = end - 1;
+    }
+    return chunks;
+  }
+
+  /**
+   * Sets geometry, elevations and times of the track from the given chunks.
+   *
+   * @param trk    the track
+   * @param chunks all chunks of the track ordered by their index
+   * @return the track
+   */
+  static Trk join(final Trk trk, final List<TrkChunk> chunks) {
+    if (chunks.isEmpty()) {
+      return trk;
+    }
+    final Map<Integer, List<Coordinate>> points = new TreeMap<>();
+    final Map<Integer, List<BigDecimal>> eleLines = new TreeMap<>();
+    final Map<Integer, List<Instant>> timeLines = new TreeMap<>();
+    for (final TrkChunk chunk : chunks) {
+      final Coordinate[] coordinates = chunk.getGeometry().getCoordinates();
+      final List<BigDecimal> eleLine = TrkLineCodec.decodeEleLine(chunk.getPackedEleLine());
+      final List<Instant> timeLine = TrkLineCodec.decodeTimeLine(chunk.getPackedTimeLine());
+      final List<Coordinate> linePoints = points
+          .computeIfAbsent(chunk.getLineIndex(), key -> new ArrayList<>());
+      final List<BigDecimal> lineEles = eleLines
+          .computeIfAbsent(chunk.getLineIndex(), key -> new ArrayList<>());
+      final List<Instant> lineTimes = timeLines
+          .computeIfAbsent(chunk.getLineIndex(), key -> new ArrayList<>());
+      final int first = chunk.isContinuation() && !linePoints.isEmpty() ? 1 : 0;
+      for (int i = first; i < coordinates.length; i++) {
+        linePoints.add(coordinates[i]);
+        lineEles.add(i < eleLine.size() ? eleLine.get(i) : null);
+        lineTimes.add(i < timeLine.size() ? timeLine.get(i) : null);
+      }
+    }
+    final List<LineString> lines = new ArrayList<>(points.size());
+    for (final List<Coordinate> linePoints : points.values()) {
+      lines.add(GeometryUtils.createLineString(linePoints));
+    }
+    trk.setGeometry(GeometryUtils.createMultiLineString(lines));
+    trk.getProperties().setEleLines(new ArrayList<>(eleLines.values()));
+    trk.getProperties().setTimeLines(new ArrayList<>(timeLines.values()));
+    return trk;
+  }
+
+  /**
+   * Creates a simplified geometry of the track, that is stored within the track document.
+   *
+   * @param geometry  the geometry of the track
+   * @param tolerance the distance tolerance in degrees
+   * @return the simplified geometry
+   */
+  static MultiLineString overview(final MultiLineString geometry, final double tolerance) {
+    return FeatureLodBuilder.simplify(geometry, tolerance);
+  }
+
+  private static <T> List<T> lineAt(final List<List<T>> lines, final int index) {
+    return lines != null && index < lines.size() ? lines.get(index) : null;
+  }
+
+  private static <T> List<T> subList(final List<T> line, final int start, final int end) {
+    if (line == null) {
+      return null;
+    }
+    final List<T> values = new ArrayList<>(end - start);
+    for (int i = start; i < end; i++) {
+      values.add(i < line.size() ? line.get(i) : null);
+    }
+    return values;
+  }
+
+}
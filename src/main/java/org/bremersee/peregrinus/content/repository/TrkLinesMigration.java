@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.content.repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.peregrinus.content.model.TrkLineCodec;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Packs the elevations and times of tracks that were stored as lists of values.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class TrkLinesMigration {
+
+  private static final String COLLECTION = "feature";
+
+  private ReactiveMongoOperations mongoOperations;
+
+  public TrkLinesMigration(
+      ReactiveMongoOperations mongoOperations) {
+    this.mongoOperations = mongoOperations;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    migrate().subscribe(
+        count -> {
+          if (count > 0) {
+            log.info("msg=[Lines of tracks migrated.] tracks=[{}]", count);
+          }
+        },
+        error -> log.error("msg=[Migration of track lines failed.]", error));
+  }
+
+  /**
+   * Packs the elevation and time lines of all tracks that are not packed.
+   *
+   * @return the number of migrated tracks
+   */
+  public Mono<Long> migrate() {
+    final Query query = Query.query(new Criteria().orOperator(
+        Criteria.where("properties.eleLines").exists(true),
+        Criteria.where("properties.timeLines").exists(true)));
+    query.fields()
+        .include("_id")
+        .include("properties.eleLines")
+        .include("properties.timeLines");
+    return mongoOperations
+        .find(query, Document.class, COLLECTION)
+        .flatMap(this::migrate, 4)
+        .count();
+  }
+
+  private Mono<Document> migrate(final Document document) {
+    final Object properties = document.get("properties");
+    if (!(properties instanceof Document)) {
+      return Mono.empty();
+    }
+    final Document props = (Document) properties;
+    final Update update = new Update()
+        .unset("properties.eleLines")
+        .unset("properties.timeLines");
+    final List<List<BigDecimal>> eleLines = readLines(props.get("eleLines"), value ->
+        value != null ? new BigDecimal(String.valueOf(value)) : null);
+    if (eleLines != null) {
+      update.set("properties.packedEleLines", TrkLineCodec.encodeEleLines(eleLines));
+    }
+    final List<List<Instant>> timeLines = readLines(props.get("timeLines"), value ->
+        value instanceof Date ? ((Date) value).toInstant() : null);
+    if (timeLines != null) {
+      update.set("properties.packedTimeLines", TrkLineCodec.encodeTimeLines(timeLines));
+    }
+    return mongoOperations
+        .updateFirst(
+            Query.query(Criteria.where("_id").is(document.get("_id"))),
+            update,
+            COLLECTION)
+        .thenReturn(document);
+  }
+
+  private static <T> List<List<T>> readLines(
+      final Object lines,
+      final Function<Object, T> valueMapper) {
+
+    if (!(lines instanceof List)) {
+      return null;
+    }
+    final List<List<T>> result = new ArrayList<>();
+    for (final Object line : (List<?>) lines) {
+      final List<T> values = new ArrayList<>();
+      if (line instanceof List) {
+        for (final Object value : (List<?>) line) {
+          values.add(valueMapper.apply(value));
+        }
+      }
+      result.add(values);
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bremersee.peregrinus.content.service;
+
+import javax.validation.constraints.NotNull;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.FeaturePage;
+import org.springframework.lang.Nullable;
+import org.springframework.security.core.Authentication;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Christian Bremer
+ */
+@Validated
+public interface FeatureService {
+
+  /**
+   * Finds a feature with the settings of the current user.
+   *
+   * @param featureId      the feature id
+   * @param zoom           the zoom level of the map, the geometry is simplified for it (if it is
+   *                       {@code null}, the full geometry is returned)
+   * @param authentication the current user
+   * @return the feature
+   */
+  Mono<Feature> findFeatureById(
+      @NotNull String featureId,
+      @Nullable Integer zoom,
+      @NotNull Authentication authentication);
+
+  /**
+   * Finds a page of the features of a viewport, that the current user is allowed to read. The
+   * features have no settings, no elevations and times (tracks) and no segments (routes).
+   *
+   * @param bbox           the bounding box of the viewport (min lon, min lat, max lon, max lat)
+   * @param within         {@code true} to find only the features within the bounding box,
+   *                       otherwise all features that intersect it are found
+   * @param cursor         the cursor of the page (can be {@code null})
+   * @param limit          the page size (can be {@code null})
+   * @param zoom           the zoom level of the map, the geometries are simplified for it (can be
+   *                       {@code null})
+   * @param cluster        specifies whether way points, that are close together at the zoom level,
+   *                       are returned as clusters (requires the zoom level)
+   * @param authentication the current user
+   * @return the page
+   */
+  Mono<FeaturePage> findFeatures(
+      @NotNull double[] bbox,
+      boolean within,
+      @Nullable String cursor,
+      @Nullable Integer limit,
+      @Nullable Integer zoom,
+      boolean cluster,
+      @NotNull Authentication authentication);
+
+  /**
+   * Finds the features next to a position, that the current user is allowed to read. The features
+   * have no settings, no elevations and times (tracks) and no segments (routes).
+   *
+   * @param longitude      the longitude of the position
+   * @param latitude       the latitude of the position
+   * @param limit          the maximum number of features (can be {@code null})
+   * @param zoom           the zoom level of the map, the geometries are simplified for it (can be
+   *                       {@code null})
+   * @param authentication the current user
+   * @return the features, the nearest one first
+   */
+  Flux<Feature> findNearestFeatures(
+      double longitude,
+      double latitude,
+      @Nullable Integer limit,
+      @Nullable Integer zoom,
+      @NotNull Authentication authentication);
+
+}
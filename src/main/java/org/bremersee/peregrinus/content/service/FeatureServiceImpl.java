@@ -0,0 +1,220 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bremersee.peregrinus.content.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.bremersee.exception.ServiceException;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.FeatureCluster;
+import org.bremersee.peregrinus.content.model.FeaturePage;
+import org.bremersee.peregrinus.content.model.FeatureSettings;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.bremersee.peregrinus.content.repository.FeatureRepository;
+import org.bremersee.peregrinus.security.access.PermissionConstants;
+import org.bremersee.peregrinus.security.group.MembershipService;
+import org.locationtech.jts.geom.Point;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Christian Bremer
+ */
+@Component
+public class FeatureServiceImpl implements FeatureService {
+
+  private static final int DEFAULT_PAGE_SIZE = 500;
+
+  private static final int MAX_PAGE_SIZE = 2000;
+
+  private static final int DEFAULT_NEAREST_SIZE = 10;
+
+  /**
+   * The number of cluster cells along the side of a map tile.
+   */
+  private static final int CLUSTER_CELLS_PER_TILE = 8;
+
+  private static final int MIN_CLUSTER_SIZE = 3;
+
+  private final FeatureRepository featureRepository;
+
+  private final MembershipService membershipService;
+
+  public FeatureServiceImpl(
+      FeatureRepository featureRepository,
+      MembershipService membershipService) {
+    this.featureRepository = featureRepository;
+    this.membershipService = membershipService;
+  }
+
+  @Override
+  public Mono<Feature> findFeatureById(
+      final String featureId,
+      final Integer zoom,
+      final Authentication authentication) {
+
+    final String userId = authentication.getName();
+    final Set<String> roles = roles(authentication);
+    return membershipService.getMembershipIds(userId)
+        .flatMap(groups -> featureRepository.findFeatureById(
+            Feature.class, featureId, PermissionConstants.READ, true, userId, roles, groups))
+        .switchIfEmpty(Mono.error(ServiceException.forbidden("Feature", featureId)))
+        .flatMap(feature -> zoom == null && feature instanceof Trk
+            ? featureRepository.loadTrkLines((Trk) feature).map(Feature.class::cast)
+            : featureRepository.applyFeatureLods(Collections.singleton(feature), zoom)
+                .thenReturn(feature))
+        .flatMap(feature -> setFeatureSettings(feature, userId));
+  }
+
+  private static Set<String> roles(final Authentication authentication) {
+    return authentication.getAuthorities()
+        .stream()
+        .map(GrantedAuthority::getAuthority)
+        .collect(Collectors.toSet());
+  }
+
+  @Override
+  public Mono<FeaturePage> findFeatures(
+      final double[] bbox,
+      final boolean within,
+      final String cursor,
+      final Integer limit,
+      final Integer zoom,
+      final boolean cluster,
+      final Authentication authentication) {
+
+    if (bbox.length != 4) {
+      return Mono.error(ServiceException.badRequest(
+          "The bounding box must have four values (min lon, min lat, max lon, max lat)."));
+    }
+    final int size = limit == null || limit <= 0
+        ? DEFAULT_PAGE_SIZE
+        : Math.min(limit, MAX_PAGE_SIZE);
+    final String userId = authentication.getName();
+    final Set<String> roles = roles(authentication);
+    return membershipService.getMembershipIds(userId)
+        .flatMapMany(groups -> featureRepository.findFeatureHeaders(
+            bbox, within, cursor, size, PermissionConstants.READ, true, userId, roles, groups))
+        .collectList()
+        .flatMap(features -> featureRepository.applyFeatureLods(features, zoom)
+            .thenReturn(features))
+        .map(features -> {
+          final FeaturePage page = new FeaturePage();
+          if (features.size() == size) {
+            page.setNextCursor(features.get(size - 1).getId());
+          }
+          if (cluster && zoom != null) {
+            cluster(features, zoom, page);
+          } else {
+            page.setFeatures(features);
+          }
+          return page;
+        });
+  }
+
+  @Override
+  public Flux<Feature> findNearestFeatures(
+      final double longitude,
+      final double latitude,
+      final Integer limit,
+      final Integer zoom,
+      final Authentication authentication) {
+
+    final int size = limit == null || limit <= 0
+        ? DEFAULT_NEAREST_SIZE
+        : Math.min(limit, MAX_PAGE_SIZE);
+    final String userId = authentication.getName();
+    final Set<String> roles = roles(authentication);
+    return membershipService.getMembershipIds(userId)
+        .flatMapMany(groups -> featureRepository.findNearestFeatureHeaders(
+            longitude, latitude, size, PermissionConstants.READ, true, userId, roles, groups))
+        .collectList()
+        .flatMapMany(features -> featureRepository.applyFeatureLods(features, zoom)
+            .thenMany(Flux.fromIterable(features)));
+  }
+
+  /**
+   * Groups the way points by the cells of a grid, whose size depends on the zoom level. The way
+   * points of a cell are replaced by a cluster, if there are enough of them.
+   */
+  private static void cluster(
+      final List<Feature> features,
+      final int zoom,
+      final FeaturePage page) {
+
+    final double cellSize = 360. / Math.pow(2, zoom) / CLUSTER_CELLS_PER_TILE;
+    final Map<String, List<Wpt>> cells = new LinkedHashMap<>();
+    for (final Feature feature : features) {
+      if (feature instanceof Wpt && ((Wpt) feature).getGeometry() != null) {
+        final Point point = ((Wpt) feature).getGeometry();
+        final String cell = (long) Math.floor(point.getX() / cellSize) + ":"
+            + (long) Math.floor(point.getY() / cellSize);
+        cells.computeIfAbsent(cell, key -> new ArrayList<>()).add((Wpt) feature);
+      } else {
+        page.getFeatures().add(feature);
+      }
+    }
+    for (final List<Wpt> wpts : cells.values()) {
+      if (wpts.size() < MIN_CLUSTER_SIZE) {
+        page.getFeatures().addAll(wpts);
+        continue;
+      }
+      double minX = Double.MAX_VALUE;
+      double minY = Double.MAX_VALUE;
+      double maxX = -Double.MAX_VALUE;
+      double maxY = -Double.MAX_VALUE;
+      double sumX = 0.;
+      double sumY = 0.;
+      for (final Wpt wpt : wpts) {
+        final Point point = wpt.getGeometry();
+        minX = Math.min(minX, point.getX());
+        minY = Math.min(minY, point.getY());
+        maxX = Math.max(maxX, point.getX());
+        maxY = Math.max(maxY, point.getY());
+        sumX += point.getX();
+        sumY += point.getY();
+      }
+      page.getClusters().add(new FeatureCluster(
+          GeometryUtils.createPointWGS84(sumY / wpts.size(), sumX / wpts.size()),
+          wpts.size(),
+          new double[]{minX, minY, maxX, maxY}));
+    }
+  }
+
+  private Mono<Feature> setFeatureSettings(final Feature feature, final String userId) {
+    return featureRepository
+        .findFeatureSettings(FeatureSettings.class, feature.getId(), userId)
+        .switchIfEmpty(Mono.fromSupplier(() -> feature
+            .getProperties()
+            .createDefaultSettings(feature.getId(), userId)))
+        .map(featureSettings -> {
+          //noinspection unchecked
+          feature.getProperties().setSettings(featureSettings);
+          return feature;
+        });
+  }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * Builds the lines of a track point by point, so that a track can be created while the source is
+ * read. Missing elevations and times are replaced by the previous value; leading missing values
+ * are replaced by the first available value of the line.
+ *
+ * @author Christian Bremer
+ */
+public class TrkLineBuilder {
+
+  private static final BigDecimal DEFAULT_ELE = new BigDecimal("0");
+
+  private static final Instant DEFAULT_TIME = Instant.ofEpochMilli(0L);
+
+  private final List<LineString> geoLines = new ArrayList<>();
+
+  private final List<List<BigDecimal>> eleLines = new ArrayList<>();
+
+  private final List<List<Instant>> timeLines = new ArrayList<>();
+
+  private List<Coordinate> points;
+
+  private List<BigDecimal> eleLine;
+
+  private List<Instant> timeLine;
+
+  private BigDecimal lastEle;
+
+  private Instant lastTime;
+
+  /**
+   * Starts a new line. A line that was not ended will be ended.
+   *
+   * @return this builder
+   */
+  public TrkLineBuilder startLine() {
+    endLine();
+    points = new ArrayList<>();
+    eleLine = new ArrayList<>();
+    timeLine = new ArrayList<>();
+    lastEle = null;
+    lastTime = null;
+    return this;
+  }
+
+  /**
+   * Adds a point to the current line. If there is no current line, a new one will be started.
+   *
+   * @param lon  the longitude
+   * @param lat  the latitude
+   * @param ele  the elevation (can be {@code null})
+   * @param time the time (can be {@code null})
+   * @return this builder
+   */
+  public TrkLineBuilder addPoint(
+      final BigDecimal lon,
+      final BigDecimal lat,
+      final BigDecimal ele,
+      final Instant time) {
+
+    if (lon == null || lat == null) {
+      return this;
+    }
+    if (points == null) {
+      startLine();
+    }
+    if (ele != null) {
+      if (lastEle == null) {
+        backfill(eleLine, ele);
+      }
+      lastEle = ele;
+    }
+    if (time != null) {
+      if (lastTime == null) {
+        backfill(timeLine, time);
+      }
+      lastTime = time;
+    }
+    points.add(GeometryUtils.createCoordinate(lon, lat));
+    eleLine.add(lastEle);
+    timeLine.add(lastTime);
+    return this;
+  }
+
+  private static <T> void backfill(final List<T> line, final T value) {
+    for (int i = 0; i < line.size(); i++) {
+      line.set(i, value);
+    }
+  }
+
+  /**
+   * Ends the current line. Lines with less than two points are dropped.
+   *
+   * @return this builder
+   */
+  public TrkLineBuilder endLine() {
+    if (points != null && points.size() > 1) {
+      if (lastEle == null) {
+        backfill(eleLine, DEFAULT_ELE);
+      }
+      if (lastTime == null) {
+        backfill(timeLine, DEFAULT_TIME);
+      }
+      geoLines.add(GeometryUtils.createLineString(points));
+      eleLines.add(eleLine);
+      timeLines.add(timeLine);
+    }
+    points = null;
+    eleLine = null;
+    timeLine = null;
+    return this;
+  }
+
+  /**
+   * Determines whether this builder has at least one line.
+   *
+   * @return {@code true} if there is no line, otherwise {@code false}
+   */
+  public boolean isEmpty() {
+    return geoLines.isEmpty() && (points == null || points.size() < 2);
+  }
+
+  /**
+   * Sets geometry, bounding box, elevations, times, start and stop time of the given track.
+   *
+   * @param trk the track
+   * @return the track
+   */
+  public Trk build(final Trk trk) {
+    endLine();
+    if (geoLines.isEmpty()) {
+      return trk;
+    }
+    trk.setGeometry(GeometryUtils.createMultiLineString(geoLines));
+    trk.setBbox(GeometryUtils.getBoundingBox(trk.getGeometry()));
+    trk.getProperties().setEleLines(eleLines);
+    trk.getProperties().setTimeLines(timeLines);
+    final List<Instant> lastTimeLine = timeLines.get(timeLines.size() - 1);
+    trk.getProperties().setStartTime(timeLines.get(0).get(0));
+    trk.getProperties().setStopTime(lastTimeLine.get(lastTimeLine.size() - 1));
+    return trk;
+  }
+
+}
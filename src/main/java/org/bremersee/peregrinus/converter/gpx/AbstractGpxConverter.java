@@ -29,9 +29,9 @@ import org.bremersee.common.model.Link;
 import org.bremersee.common.model.PhoneNumber;
 import org.bremersee.garmin.gpx.v3.model.ext.AddressT;
 import org.bremersee.garmin.gpx.v3.model.ext.PhoneNumberT;
+import org.bremersee.gpx.model.ExtensionsType;
 import org.bremersee.gpx.model.LinkType;
 import org.bremersee.peregrinus.content.model.FeatureProperties;
-import org.bremersee.xml.JaxbContextBuilder;
 import org.springframework.util.StringUtils;
 
 /**
@@ -39,14 +39,23 @@ import org.springframework.util.StringUtils;
  */
 abstract class AbstractGpxConverter {
 
-  private final JaxbContextBuilder jaxbContextBuilder;
+  private final UnmarshallerPool unmarshallerPool;
 
-  public AbstractGpxConverter(JaxbContextBuilder jaxbContextBuilder) {
-    this.jaxbContextBuilder = jaxbContextBuilder;
+  AbstractGpxConverter(final UnmarshallerPool unmarshallerPool) {
+    this.unmarshallerPool = unmarshallerPool;
   }
 
-  Unmarshaller getUnmarshaller() {
-    return jaxbContextBuilder.buildUnmarshaller();
+  UnmarshallerPool getUnmarshallerPool() {
+    return unmarshallerPool;
+  }
+
+  GpxExtensions decodeExtensions(final ExtensionsType extensionsType) {
+    final Unmarshaller unmarshaller = unmarshallerPool.borrow();
+    try {
+      return GpxExtensions.decode(extensionsType, unmarshaller);
+    } finally {
+      unmarshallerPool.release(unmarshaller);
+    }
   }
 
   <T extends FeatureProperties> T readCommonData(
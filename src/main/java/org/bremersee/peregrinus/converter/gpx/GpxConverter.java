@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.converter.gpx;
+
+import java.io.InputStream;
+import java.util.List;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.bremersee.peregrinus.converter.TrkLineBuilder;
+import org.locationtech.jts.geom.Coordinate;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * Reads and writes GPX documents.
+ *
+ * @author Christian Bremer
+ */
+public interface GpxConverter {
+
+  /**
+   * Reads the features of a GPX document without unmarshalling the whole document.
+   *
+   * @param inputStream the GPX document (will be closed)
+   * @return the features in the order of the document
+   */
+  Flux<Feature> readGpx(InputStream inputStream);
+
+  /**
+   * Writes the features as GPX document without holding more than one feature in memory.
+   *
+   * @param features      the features ordered by their type (way points, routes and tracks)
+   * @param bufferFactory the buffer factory
+   * @return the GPX document
+   */
+  Flux<DataBuffer> writeGpx(Flux<Feature> features, DataBufferFactory bufferFactory);
+
+  /**
+   * Creates a way point from a GPX way point. Converters of other formats map their way points to
+   * GPX, so that all formats build the features in the same way.
+   *
+   * @param wptType the GPX way point
+   * @return the way point
+   */
+  Wpt readWptType(WptType wptType);
+
+  /**
+   * Creates a track from a GPX track, the track segments of the GPX track are ignored.
+   *
+   * @param trkType     the GPX track
+   * @param lineBuilder the line builder with the track points
+   * @return the track
+   */
+  Trk readTrkType(TrkType trkType, TrkLineBuilder lineBuilder);
+
+  /**
+   * Creates a route from a GPX route, whose route points have no Garmin extensions.
+   *
+   * @param rteType     the GPX route
+   * @param routePoints the points between the route points (the entry at position n belongs to
+   *                    the route point at position n)
+   * @return the route or {@code null}, if there are less than two route points
+   */
+  Rte readRteType(RteType rteType, List<List<Coordinate>> routePoints);
+
+}
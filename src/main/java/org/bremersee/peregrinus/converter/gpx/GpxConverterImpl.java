@@ -16,18 +16,30 @@
 
 package org.bremersee.peregrinus.converter.gpx;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.WptType;
 import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.bremersee.peregrinus.converter.TrkLineBuilder;
 import org.bremersee.xml.JaxbContextBuilder;
+import org.locationtech.jts.geom.Coordinate;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 
 /**
  * @author Christian Bremer
  */
 @Component
-public class GpxConverterImpl extends AbstractGpxConverter {
+public class GpxConverterImpl extends AbstractGpxConverter implements GpxConverter {
 
   private final WptConverter wptMapper;
 
@@ -35,11 +47,50 @@ public class GpxConverterImpl extends AbstractGpxConverter {
 
   private final RteConverter rteMapper;
 
+  private final GpxStreamReader gpxStreamReader;
+
+  private final GpxStreamWriter gpxStreamWriter;
+
   public GpxConverterImpl(final JaxbContextBuilder jaxbContextBuilder) {
-    super(jaxbContextBuilder);
-    wptMapper = new WptConverter(jaxbContextBuilder);
-    trkMapper = new TrkConverter(jaxbContextBuilder);
-    rteMapper = new RteConverter(jaxbContextBuilder);
+    this(new UnmarshallerPool(
+        jaxbContextBuilder,
+        2 * Runtime.getRuntime().availableProcessors()));
+  }
+
+  private GpxConverterImpl(final UnmarshallerPool unmarshallerPool) {
+    super(unmarshallerPool);
+    wptMapper = new WptConverter(unmarshallerPool);
+    trkMapper = new TrkConverter(unmarshallerPool);
+    rteMapper = new RteConverter(unmarshallerPool);
+    gpxStreamReader = new GpxStreamReader(unmarshallerPool, wptMapper, trkMapper, rteMapper);
+    gpxStreamWriter = new GpxStreamWriter();
+  }
+
+  @Override
+  public Flux<Feature> readGpx(final InputStream inputStream) {
+    return gpxStreamReader.read(inputStream);
+  }
+
+  @Override
+  public Flux<DataBuffer> writeGpx(
+      final Flux<Feature> features,
+      final DataBufferFactory bufferFactory) {
+    return gpxStreamWriter.write(features, bufferFactory);
+  }
+
+  @Override
+  public Wpt readWptType(final WptType wptType) {
+    return wptMapper.readWptType(wptType);
+  }
+
+  @Override
+  public Trk readTrkType(final TrkType trkType, final TrkLineBuilder lineBuilder) {
+    return trkMapper.readTrkType(trkType, lineBuilder);
+  }
+
+  @Override
+  public Rte readRteType(final RteType rteType, final List<List<Coordinate>> routePoints) {
+    return rteMapper.readRte(rteType, routePoints);
   }
 
   public List<Feature> mapToGpxImport(final Gpx gpx) {
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.gpx;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.w3c.dom.Element;
+
+/**
+ * The decoded extensions of a GPX element. Every extension element is unmarshalled only once and
+ * the results are indexed by their type.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+final class GpxExtensions {
+
+  private static final GpxExtensions EMPTY = new GpxExtensions(Collections.emptyMap());
+
+  private final Map<Class<?>, Object> extensions;
+
+  private GpxExtensions(final Map<Class<?>, Object> extensions) {
+    this.extensions = extensions;
+  }
+
+  /**
+   * Decodes the given extensions. Elements that are unknown to the unmarshaller are ignored.
+   *
+   * @param extensionsType the extensions (can be {@code null})
+   * @param unmarshaller   the unmarshaller
+   * @return the decoded extensions
+   */
+  static GpxExtensions decode(
+      final ExtensionsType extensionsType,
+      final Unmarshaller unmarshaller) {
+
+    if (extensionsType == null
+        || extensionsType.getAnies() == null
+        || extensionsType.getAnies().isEmpty()) {
+      return EMPTY;
+    }
+    final Map<Class<?>, Object> extensions = new LinkedHashMap<>();
+    for (final Element element : extensionsType.getAnies()) {
+      if (element == null) {
+        continue;
+      }
+      try {
+        Object value = unmarshaller.unmarshal(element);
+        if (value instanceof JAXBElement) {
+          value = ((JAXBElement<?>) value).getValue();
+        }
+        if (value != null) {
+          extensions.putIfAbsent(value.getClass(), value);
+        }
+      } catch (JAXBException e) {
+        log.debug("msg=[Ignoring unknown GPX extension.] element=[{}]", element.getLocalName());
+      }
+    }
+    return extensions.isEmpty() ? EMPTY : new GpxExtensions(extensions);
+  }
+
+  /**
+   * Finds the first extension of the given type.
+   *
+   * @param type the extension type
+   * @param <T>  the extension type
+   * @return the extension
+   */
+  <T> Optional<T> find(final Class<T> type) {
+    final Object value = extensions.get(type);
+    if (value != null) {
+      return Optional.of(type.cast(value));
+    }
+    for (final Object extension : extensions.values()) {
+      if (type.isInstance(extension)) {
+        return Optional.of(type.cast(extension));
+      }
+    }
+    return Optional.empty();
+  }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.gpx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.exception.ServiceException;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.LinkType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.converter.TrkLineBuilder;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+
+/**
+ * Reads the features of a GPX document with a pull parser. Way points and routes are unmarshalled
+ * one by one, the points of tracks are read directly from the stream, only the extensions are
+ * unmarshalled. So the whole document is never held in memory.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+class GpxStreamReader extends AbstractGpxConverter {
+
+  private final XMLInputFactory xmlInputFactory;
+
+  private final WptConverter wptConverter;
+
+  private final TrkConverter trkConverter;
+
+  private final RteConverter rteConverter;
+
+  GpxStreamReader(
+      final UnmarshallerPool unmarshallerPool,
+      final WptConverter wptConverter,
+      final TrkConverter trkConverter,
+      final RteConverter rteConverter) {
+    super(unmarshallerPool);
+    this.wptConverter = wptConverter;
+    this.trkConverter = trkConverter;
+    this.rteConverter = rteConverter;
+    this.xmlInputFactory = XMLInputFactory.newInstance();
+    this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    this.xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+  }
+
+  /**
+   * Reads the features of the GPX document. The input stream will be closed, when the returned
+   * flux terminates or is cancelled.
+   *
+   * @param inputStream the GPX document
+   * @return the features
+   */
+  Flux<Feature> read(final InputStream inputStream) {
+    return Flux.using(
+        () -> new State(
+            xmlInputFactory.createXMLStreamReader(inputStream),
+            getUnmarshallerPool().borrow()),
+        state -> Flux.<Feature>generate(sink -> {
+          try {
+            final Feature feature = readNextFeature(state.reader, state.unmarshaller);
+            if (feature != null) {
+              sink.next(feature);
+            } else {
+              sink.complete();
+            }
+          } catch (XMLStreamException | JAXBException | RuntimeException e) {
+            log.error("msg=[Reading GPX failed.]", e);
+            sink.error(ServiceException.badRequest("Reading GPX failed: " + e.getMessage()));
+          }
+        }),
+        state -> {
+          getUnmarshallerPool().release(state.unmarshaller);
+          close(state, inputStream);
+        });
+  }
+
+  private Feature readNextFeature(
+      final XMLStreamReader reader,
+      final Unmarshaller unmarshaller) throws XMLStreamException, JAXBException {
+
+    while (reader.hasNext()) {
+      if (reader.isStartElement()) {
+        switch (reader.getLocalName()) {
+          case "wpt":
+            return wptConverter
+                .readWptType(unmarshaller.unmarshal(reader, WptType.class).getValue());
+          case "rte":
+            final Rte rte = rteConverter
+                .readRte(unmarshaller.unmarshal(reader, RteType.class).getValue());
+            if (rte != null) {
+              return rte;
+            }
+            continue;
+          case "trk":
+            return readTrk(reader, unmarshaller);
+          case "metadata":
+          case "extensions":
+            skipElement(reader);
+            break;
+          default:
+            break;
+        }
+      }
+      reader.next();
+    }
+    return null;
+  }
+
+  private Feature readTrk(
+      final XMLStreamReader reader,
+      final Unmarshaller unmarshaller) throws XMLStreamException, JAXBException {
+
+    final TrkType trkType = new TrkType();
+    final TrkLineBuilder lineBuilder = new TrkLineBuilder();
+    reader.next();
+    while (reader.hasNext() && !isEndElement(reader, "trk")) {
+      if (reader.isStartElement()) {
+        switch (reader.getLocalName()) {
+          case "name":
+            trkType.setName(reader.getElementText());
+            break;
+          case "desc":
+            trkType.setDesc(reader.getElementText());
+            break;
+          case "cmt":
+            trkType.setCmt(reader.getElementText());
+            break;
+          case "link":
+            trkType.getLinks().add(unmarshaller.unmarshal(reader, LinkType.class).getValue());
+            continue;
+          case "extensions":
+            trkType.setExtensions(
+                unmarshaller.unmarshal(reader, ExtensionsType.class).getValue());
+            continue;
+          case "trkseg":
+            readTrkSeg(reader, lineBuilder);
+            break;
+          default:
+            skipElement(reader);
+            break;
+        }
+      }
+      reader.next();
+    }
+    if (reader.hasNext()) {
+      reader.next();
+    }
+    return trkConverter.readTrkType(trkType, lineBuilder);
+  }
+
+  private void readTrkSeg(
+      final XMLStreamReader reader,
+      final TrkLineBuilder lineBuilder) throws XMLStreamException {
+
+    lineBuilder.startLine();
+    reader.next();
+    while (!isEndElement(reader, "trkseg")) {
+      if (reader.isStartElement()) {
+        if ("trkpt".equals(reader.getLocalName())) {
+          readTrkPt(reader, lineBuilder);
+        } else {
+          skipElement(reader);
+        }
+      }
+      reader.next();
+    }
+    lineBuilder.endLine();
+  }
+
+  private void readTrkPt(
+      final XMLStreamReader reader,
+      final TrkLineBuilder lineBuilder) throws XMLStreamException {
+
+    final BigDecimal lat = parseDecimal(reader.getAttributeValue(null, "lat"));
+    final BigDecimal lon = parseDecimal(reader.getAttributeValue(null, "lon"));
+    BigDecimal ele = null;
+    Instant time = null;
+    reader.next();
+    while (!isEndElement(reader, "trkpt")) {
+      if (reader.isStartElement()) {
+        switch (reader.getLocalName()) {
+          case "ele":
+            ele = parseDecimal(reader.getElementText());
+            break;
+          case "time":
+            time = parseTime(reader.getElementText());
+            break;
+          default:
+            skipElement(reader);
+            break;
+        }
+      }
+      reader.next();
+    }
+    lineBuilder.addPoint(lon, lat, ele, time);
+  }
+
+  private static boolean isEndElement(final XMLStreamReader reader, final String localName) {
+    return reader.isEndElement() && localName.equals(reader.getLocalName());
+  }
+
+  /*
+   * Moves the reader from the start element to the corresponding end element.
+   */
+  private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      final int event = reader.next();
+      if (event == XMLStreamReader.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamReader.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static BigDecimal parseDecimal(final String value) {
+    return StringUtils.hasText(value) ? new BigDecimal(value.trim()) : null;
+  }
+
+  private static Instant parseTime(final String value) {
+    return StringUtils.hasText(value)
+        ? DatatypeConverter.parseDateTime(value.trim()).getTime().toInstant()
+        : null;
+  }
+
+  private static void close(final State state, final InputStream inputStream) {
+    try {
+      state.reader.close();
+    } catch (XMLStreamException e) {
+      log.warn("msg=[Closing GPX reader failed.]", e);
+    }
+    try {
+      inputStream.close();
+    } catch (IOException e) {
+      log.warn("msg=[Closing GPX input stream failed.]", e);
+    }
+  }
+
+  private static class State {
+
+    private final XMLStreamReader reader;
+
+    private final Unmarshaller unmarshaller;
+
+    private State(final XMLStreamReader reader, final Unmarshaller unmarshaller) {
+      this.reader = reader;
+      this.unmarshaller = unmarshaller;
+    }
+  }
+
+}
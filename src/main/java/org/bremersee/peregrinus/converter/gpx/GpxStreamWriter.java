@@ -0,0 +1,361 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.gpx;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.common.model.Link;
+import org.bremersee.peregrinus.content.model.DisplayColor;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.FeatureProperties;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.RteSegment;
+import org.bremersee.peregrinus.content.model.RteSettings;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.TrkSettings;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.MultiLineString;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes features as GPX document with a StAX writer. Every feature is emitted as data buffer as
+ * soon as it is written, so only one feature is held in memory. The header is emitted together
+ * with the first feature, so that an error of the feature source can still be answered with an
+ * error status. The features should be ordered by their type (way points, routes and tracks), as
+ * required by the GPX schema.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+class GpxStreamWriter {
+
+  private static final String GPX_NAMESPACE = "http://www.topografix.com/GPX/1/1";
+
+  private static final String GARMIN_NAMESPACE
+      = "http://www.garmin.com/xmlschemas/GpxExtensions/v3";
+
+  private static final String GARMIN_PREFIX = "gpxx";
+
+  private static final String CREATOR = "Peregrinus";
+
+  private final XMLOutputFactory xmlOutputFactory;
+
+  GpxStreamWriter() {
+    this.xmlOutputFactory = XMLOutputFactory.newInstance();
+  }
+
+  /**
+   * Writes the GPX document.
+   *
+   * @param features      the features
+   * @param bufferFactory the buffer factory
+   * @return the GPX document, one buffer for each feature (the first one with the header) and one
+   *     for the end
+   */
+  Flux<DataBuffer> write(
+      final Flux<Feature> features,
+      final DataBufferFactory bufferFactory) {
+
+    return Flux.using(
+        () -> new State(xmlOutputFactory),
+        state -> Flux.concat(
+            features.<DataBuffer>handle((feature, sink) -> {
+              try {
+                state.start();
+                writeFeature(state.writer, feature);
+                sink.next(state.drain(bufferFactory));
+              } catch (XMLStreamException | RuntimeException e) {
+                log.error("msg=[Writing GPX failed.] featureId=[{}]", feature.getId(), e);
+                sink.error(e);
+              }
+            }),
+            Mono.fromCallable(() -> {
+              state.start();
+              writeEnd(state.writer);
+              return state.drain(bufferFactory);
+            })),
+        GpxStreamWriter::close);
+  }
+
+  private static void writeStart(final XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeStartDocument("UTF-8", "1.0");
+    writer.setDefaultNamespace(GPX_NAMESPACE);
+    writer.setPrefix(GARMIN_PREFIX, GARMIN_NAMESPACE);
+    writer.writeStartElement(GPX_NAMESPACE, "gpx");
+    writer.writeDefaultNamespace(GPX_NAMESPACE);
+    writer.writeNamespace(GARMIN_PREFIX, GARMIN_NAMESPACE);
+    writer.writeAttribute("version", "1.1");
+    writer.writeAttribute("creator", CREATOR);
+    writer.writeStartElement(GPX_NAMESPACE, "metadata");
+    writeText(writer, "time", Instant.now());
+    writer.writeEndElement();
+  }
+
+  private static void writeEnd(final XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeEndElement();
+    writer.writeEndDocument();
+  }
+
+  private static void writeFeature(
+      final XMLStreamWriter writer,
+      final Feature feature) throws XMLStreamException {
+
+    if (feature instanceof Wpt) {
+      writeWpt(writer, (Wpt) feature);
+    } else if (feature instanceof Rte) {
+      writeRte(writer, (Rte) feature);
+    } else if (feature instanceof Trk) {
+      writeTrk(writer, (Trk) feature);
+    }
+  }
+
+  private static void writeWpt(
+      final XMLStreamWriter writer,
+      final Wpt wpt) throws XMLStreamException {
+
+    if (wpt.getGeometry() == null) {
+      return;
+    }
+    writer.writeStartElement(GPX_NAMESPACE, "wpt");
+    writeLatLon(writer, wpt.getGeometry().getCoordinate());
+    writeText(writer, "ele", wpt.getProperties().getEle());
+    writeText(writer, "time", wpt.getProperties().getTime());
+    writeCommonData(writer, wpt.getProperties());
+    writer.writeEndElement();
+  }
+
+  private static void writeRte(
+      final XMLStreamWriter writer,
+      final Rte rte) throws XMLStreamException {
+
+    final List<RteSegment> rteSegments = rte.getProperties().getRteSegments();
+    if (rteSegments == null || rteSegments.size() < 2) {
+      return;
+    }
+    writer.writeStartElement(GPX_NAMESPACE, "rte");
+    writeCommonData(writer, rte.getProperties());
+
+    final RteSettings settings = rte.getProperties().getSettings();
+    writer.writeStartElement(GPX_NAMESPACE, "extensions");
+    writer.writeStartElement(GARMIN_NAMESPACE, "RouteExtension");
+    writeGarminText(writer, "IsAutoNamed", Boolean.FALSE);
+    writeGarminText(writer, "DisplayColor", displayColor(
+        settings != null ? settings.getDisplayColor() : null, DisplayColor.MAGENTA));
+    writer.writeEndElement();
+    writer.writeEndElement();
+
+    final MultiLineString geometry = rte.getGeometry();
+    for (int n = 0; n < rteSegments.size(); n++) {
+      final RteSegment rteSegment = rteSegments.get(n);
+      if (rteSegment.getPoint() == null) {
+        continue;
+      }
+      writer.writeStartElement(GPX_NAMESPACE, "rtept");
+      writeLatLon(writer, rteSegment.getPoint().getCoordinate());
+      if (rteSegment.getProperties() != null) {
+        writeText(writer, "time", rteSegment.getProperties().getTime());
+        writeText(writer, "name", rteSegment.getProperties().getName());
+      }
+      if (geometry != null && n < geometry.getNumGeometries()) {
+        writeRoutePoints(writer, geometry.getGeometryN(n));
+      }
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+  }
+
+  /*
+   * The points between two route points are written as Garmin route point extension. The first
+   * point of the line is the route point itself, the last one is the next route point.
+   */
+  private static void writeRoutePoints(
+      final XMLStreamWriter writer,
+      final Geometry line) throws XMLStreamException {
+
+    final Coordinate[] coordinates = line.getCoordinates();
+    if (coordinates.length < 3) {
+      return;
+    }
+    writer.writeStartElement(GPX_NAMESPACE, "extensions");
+    writer.writeStartElement(GARMIN_NAMESPACE, "RoutePointExtension");
+    for (int i = 1; i < coordinates.length - 1; i++) {
+      writer.writeEmptyElement(GARMIN_NAMESPACE, "rpt");
+      writeLatLon(writer, coordinates[i]);
+    }
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  private static void writeTrk(
+      final XMLStreamWriter writer,
+      final Trk trk) throws XMLStreamException {
+
+    final MultiLineString geometry = trk.getGeometry();
+    if (geometry == null) {
+      return;
+    }
+    writer.writeStartElement(GPX_NAMESPACE, "trk");
+    writeCommonData(writer, trk.getProperties());
+
+    final TrkSettings settings = trk.getProperties().getSettings();
+    writer.writeStartElement(GPX_NAMESPACE, "extensions");
+    writer.writeStartElement(GARMIN_NAMESPACE, "TrackExtension");
+    writeGarminText(writer, "DisplayColor", displayColor(
+        settings != null ? settings.getDisplayColor() : null, DisplayColor.DARK_GRAY));
+    writer.writeEndElement();
+    writer.writeEndElement();
+
+    final List<List<BigDecimal>> eleLines = trk.getProperties().getEleLines();
+    final List<List<Instant>> timeLines = trk.getProperties().getTimeLines();
+    for (int n = 0; n < geometry.getNumGeometries(); n++) {
+      final Coordinate[] coordinates = geometry.getGeometryN(n).getCoordinates();
+      final List<BigDecimal> eleLine = lineAt(eleLines, n);
+      final List<Instant> timeLine = lineAt(timeLines, n);
+      writer.writeStartElement(GPX_NAMESPACE, "trkseg");
+      for (int i = 0; i < coordinates.length; i++) {
+        writer.writeStartElement(GPX_NAMESPACE, "trkpt");
+        writeLatLon(writer, coordinates[i]);
+        writeText(writer, "ele", valueAt(eleLine, i));
+        writeText(writer, "time", valueAt(timeLine, i));
+        writer.writeEndElement();
+      }
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+  }
+
+  private static void writeCommonData(
+      final XMLStreamWriter writer,
+      final FeatureProperties<?> properties) throws XMLStreamException {
+
+    writeText(writer, "name", properties.getName());
+    writeText(writer, "desc", properties.getPlainTextDescription());
+    if (properties.getLinks() != null) {
+      for (final Link link : properties.getLinks()) {
+        if (link != null && StringUtils.hasText(link.getHref())) {
+          writer.writeStartElement(GPX_NAMESPACE, "link");
+          writer.writeAttribute("href", link.getHref());
+          writeText(writer, "text", link.getText());
+          writeText(writer, "type", link.getType());
+          writer.writeEndElement();
+        }
+      }
+    }
+  }
+
+  private static void writeLatLon(
+      final XMLStreamWriter writer,
+      final Coordinate coordinate) throws XMLStreamException {
+    writer.writeAttribute("lat", String.valueOf(coordinate.y));
+    writer.writeAttribute("lon", String.valueOf(coordinate.x));
+  }
+
+  private static void writeText(
+      final XMLStreamWriter writer,
+      final String localName,
+      final Object value) throws XMLStreamException {
+
+    if (value != null && StringUtils.hasText(String.valueOf(value))) {
+      writer.writeStartElement(GPX_NAMESPACE, localName);
+      writer.writeCharacters(text(value));
+      writer.writeEndElement();
+    }
+  }
+
+  private static void writeGarminText(
+      final XMLStreamWriter writer,
+      final String localName,
+      final Object value) throws XMLStreamException {
+
+    writer.writeStartElement(GARMIN_NAMESPACE, localName);
+    writer.writeCharacters(text(value));
+    writer.writeEndElement();
+  }
+
+  private static String text(final Object value) {
+    if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toPlainString();
+    }
+    return String.valueOf(value);
+  }
+
+  private static String displayColor(
+      final DisplayColor displayColor,
+      final DisplayColor defaultDisplayColor) {
+    return displayColor != null ? displayColor.getValue() : defaultDisplayColor.getValue();
+  }
+
+  private static <T> List<T> lineAt(final List<List<T>> lines, final int index) {
+    return lines != null && index < lines.size() ? lines.get(index) : null;
+  }
+
+  private static <T> T valueAt(final List<T> line, final int index) {
+    return line != null && index < line.size() ? line.get(index) : null;
+  }
+
+  private static void close(final State state) {
+    try {
+      state.writer.close();
+    } catch (XMLStreamException e) {
+      log.warn("msg=[Closing GPX writer failed.]", e);
+    }
+  }
+
+  private static class State {
+
+    private final ByteArrayOutputStream out;
+
+    private final XMLStreamWriter writer;
+
+    private boolean started;
+
+    private State(final XMLOutputFactory xmlOutputFactory) throws XMLStreamException {
+      this.out = new ByteArrayOutputStream();
+      this.writer = xmlOutputFactory.createXMLStreamWriter(out, "UTF-8");
+    }
+
+    private void start() throws XMLStreamException {
+      if (!started) {
+        writeStart(writer);
+        started = true;
+      }
+    }
+
+    /*
+     * Moves the written bytes into a data buffer.
+     */
+    private DataBuffer drain(final DataBufferFactory bufferFactory) throws XMLStreamException {
+      writer.flush();
+      final DataBuffer buffer = bufferFactory.wrap(out.toByteArray());
+      out.reset();
+      return buffer;
+    }
+  }
+
+}
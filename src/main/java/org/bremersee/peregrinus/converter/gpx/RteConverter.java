@@ -17,6 +17,7 @@
 package org.bremersee.peregrinus.converter.gpx;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -30,7 +31,6 @@ import org.bremersee.garmin.gpx.v3.model.ext.RoutePointExtension;
 import org.bremersee.garmin.trip.v1.model.ext.Trip;
 import org.bremersee.garmin.trip.v1.model.ext.ViaPoint;
 import org.bremersee.geojson.utils.GeometryUtils;
-import org.bremersee.gpx.GpxJaxbContextHelper;
 import org.bremersee.gpx.model.RteType;
 import org.bremersee.gpx.model.WptType;
 import org.bremersee.peregrinus.content.model.DisplayColor;
@@ -41,7 +41,6 @@ import org.bremersee.peregrinus.content.model.RteSegment;
 import org.bremersee.peregrinus.content.model.RteSegmentProperties;
 import org.bremersee.peregrinus.content.model.RteSettings;
 import org.bremersee.peregrinus.content.model.Wpt;
-import org.bremersee.xml.JaxbContextBuilder;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
 
@@ -52,9 +51,9 @@ class RteConverter extends AbstractGpxConverter {
 
   private final WptConverter wptMapper;
 
-  RteConverter(JaxbContextBuilder jaxbContextBuilder) {
-    super(jaxbContextBuilder);
-    wptMapper = new WptConverter(jaxbContextBuilder);
+  RteConverter(final UnmarshallerPool unmarshallerPool) {
+    super(unmarshallerPool);
+    wptMapper = new WptConverter(unmarshallerPool);
   }
 
   List<Rte> readRtes(final List<RteType> rteTypes) {
@@ -72,7 +71,20 @@ class RteConverter extends AbstractGpxConverter {
     return rteList;
   }
 
-  private Rte readRte(final RteType rteType) {
+  Rte readRte(final RteType rteType) {
+    return readRte(rteType, null);
+  }
+
+  /**
+   * Creates a route from the given route type.
+   *
+   * @param rteType     the route type
+   * @param routePoints the points between the route points (the entry at position n belongs to
+   *                    the route point at position n); if it is {@code null}, the points are
+   *                    taken from the Garmin route point extensions
+   * @return the route or {@code null}, if there are less than two route points
+   */
+  Rte readRte(final RteType rteType, final List<List<Coordinate>> routePoints) {
 
     final Rte rte = new Rte();
     rte.setProperties(readCommonData(
@@ -83,12 +95,10 @@ class RteConverter extends AbstractGpxConverter {
         rteType.getLinks()));
     rte.getProperties().setSettings(new RteSettings());
 
+    final GpxExtensions extensions = decodeExtensions(rteType.getExtensions());
+
     // display color
-    final Optional<RouteExtension> rteTypeExt = GpxJaxbContextHelper.findFirstExtension(
-        RouteExtension.class,
-        true,
-        rteType.getExtensions(),
-        getUnmarshaller());
+    final Optional<RouteExtension> rteTypeExt = extensions.find(RouteExtension.class);
 
     final DisplayColorT displayColor = rteTypeExt.map(RouteExtension::getDisplayColor).orElse(null);
     rte
@@ -98,16 +108,12 @@ class RteConverter extends AbstractGpxConverter {
             displayColor,
             DisplayColor.MAGENTA));
 
-    final Optional<Trip> tripExt = GpxJaxbContextHelper.findFirstExtension(
-        Trip.class,
-        true,
-        rteType.getExtensions(),
-        getUnmarshaller());
+    final Optional<Trip> tripExt = extensions.find(Trip.class);
 
     final String transportationMode = tripExt.map(Trip::getTransportationMode).orElse(null);
 
     final List<RteSegmentWithCoordinates> rteSegmentWithCoordinates = readRtePts(
-        rteType.getRtepts(), transportationMode);
+        rteType.getRtepts(), routePoints, transportationMode);
 
     if (rteSegmentWithCoordinates.size() < 2) {
       return null;
@@ -121,7 +127,7 @@ class RteConverter extends AbstractGpxConverter {
         .getCoordinates();
 
     for (int n = 1; n < rteSegmentWithCoordinates.size(); n++) {
-      final RteSegment rteSegment = rteSegmentWithCoordinates.get(0).getRteSegment();
+      final RteSegment rteSegment = rteSegmentWithCoordinates.get(n).getRteSegment();
       final List<Coordinate> rteSegmentCoordinates = rteSegmentWithCoordinates
           .get(n)
           .getCoordinates();
@@ -145,12 +151,18 @@ class RteConverter extends AbstractGpxConverter {
 
   private List<RteSegmentWithCoordinates> readRtePts(
       final List<WptType> rtePts,
+      final List<List<Coordinate>> routePoints,
       final String transportationMode) {
 
     final List<RteSegmentWithCoordinates> list = new ArrayList<>();
     if (rtePts != null) {
-      for (final WptType rtePt : rtePts) {
-        final RteSegmentWithCoordinates entry = readRtePt(rtePt, transportationMode);
+      for (int n = 0; n < rtePts.size(); n++) {
+        List<Coordinate> rtePtRoutePoints = null;
+        if (routePoints != null) {
+          rtePtRoutePoints = n < routePoints.size() ? routePoints.get(n) : Collections.emptyList();
+        }
+        final RteSegmentWithCoordinates entry = readRtePt(
+            rtePts.get(n), rtePtRoutePoints, transportationMode);
         if (entry != null) {
           list.add(entry);
         }
@@ -161,13 +173,15 @@ class RteConverter extends AbstractGpxConverter {
 
   private RteSegmentWithCoordinates readRtePt(
       final WptType rtePt,
+      final List<Coordinate> routePoints,
       final String transportationMode) {
 
     if (rtePt == null || rtePt.getLat() == null || rtePt.getLon() == null) {
       return null;
     }
 
-    final Wpt wpt = wptMapper.readWptType(rtePt);
+    final GpxExtensions extensions = decodeExtensions(rtePt.getExtensions());
+    final Wpt wpt = wptMapper.readWptType(rtePt, extensions);
 
     final RteSegment rteSegment = new RteSegment();
     rteSegment.setPoint(wpt.getGeometry());
@@ -181,11 +195,7 @@ class RteConverter extends AbstractGpxConverter {
         = new GarminImportRteCalculationProperties();
     rteSegmentProperties.setCalculationProperties(calculationProperties);
     calculationProperties.setTransportationMode(transportationMode);
-    GpxJaxbContextHelper.findFirstExtension(
-        ViaPoint.class,
-        true,
-        rtePt.getExtensions(),
-        getUnmarshaller()).ifPresent(viaPoint -> {
+    extensions.find(ViaPoint.class).ifPresent(viaPoint -> {
       calculationProperties.setArrivalTime(
           viaPoint.getArrivalTime() != null
               ? viaPoint.getArrivalTime().toGregorianCalendar().getTime()
@@ -207,11 +217,12 @@ class RteConverter extends AbstractGpxConverter {
     final List<Coordinate> segmentCoordinates = new ArrayList<>();
     segmentCoordinates.add(wpt.getGeometry().getCoordinate());
 
-    GpxJaxbContextHelper.findFirstExtension(
-        RoutePointExtension.class,
-        true,
-        rtePt.getExtensions(),
-        getUnmarshaller()).ifPresent(routePointExtension -> {
+    if (routePoints != null) {
+      segmentCoordinates.addAll(routePoints);
+      return new RteSegmentWithCoordinates(rteSegment, segmentCoordinates);
+    }
+
+    extensions.find(RoutePointExtension.class).ifPresent(routePointExtension -> {
       if (routePointExtension.getRpts() != null) {
         for (AutoroutePointT pt : routePointExtension.getRpts()) {
           if (pt != null && pt.getLat() != null && pt.getLon() != null) {
@@ -16,17 +16,12 @@
 
 package org.bremersee.peregrinus.converter.gpx;
 
-import java.math.BigDecimal;
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import javax.xml.datatype.XMLGregorianCalendar;
 import org.bremersee.garmin.gpx.v3.model.ext.DisplayColorT;
 import org.bremersee.garmin.gpx.v3.model.ext.TrackExtension;
-import org.bremersee.geojson.utils.GeometryUtils;
-import org.bremersee.gpx.GpxJaxbContextHelper;
 import org.bremersee.gpx.model.TrkType;
 import org.bremersee.gpx.model.TrksegType;
 import org.bremersee.gpx.model.WptType;
@@ -34,19 +29,15 @@ import org.bremersee.peregrinus.content.model.DisplayColor;
 import org.bremersee.peregrinus.content.model.Trk;
 import org.bremersee.peregrinus.content.model.TrkProperties;
 import org.bremersee.peregrinus.content.model.TrkSettings;
-import org.bremersee.xml.JaxbContextBuilder;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.LineString;
-
-//import java.util.Date;
+import org.bremersee.peregrinus.converter.TrkLineBuilder;
 
 /**
  * @author Christian Bremer
  */
 class TrkConverter extends AbstractGpxConverter {
 
-  TrkConverter(JaxbContextBuilder jaxbContextBuilder) {
-    super(jaxbContextBuilder);
+  TrkConverter(final UnmarshallerPool unmarshallerPool) {
+    super(unmarshallerPool);
   }
 
   List<Trk> readTrkTypes(final List<TrkType> trks) {
@@ -62,6 +53,37 @@ class TrkConverter extends AbstractGpxConverter {
   }
 
   private Trk readTrkType(final TrkType trkType) {
+    final TrkLineBuilder lineBuilder = new TrkLineBuilder();
+    if (trkType.getTrksegs() != null) {
+      for (final TrksegType trksegType : trkType.getTrksegs()) {
+        if (trksegType != null && trksegType.getTrkpts() != null) {
+          lineBuilder.startLine();
+          for (final WptType wpt : trksegType.getTrkpts()) {
+            if (wpt != null) {
+              final XMLGregorianCalendar cal = wpt.getTime();
+              lineBuilder.addPoint(
+                  wpt.getLon(),
+                  wpt.getLat(),
+                  wpt.getEle(),
+                  cal != null ? cal.toGregorianCalendar().getTime().toInstant() : null);
+            }
+          }
+          lineBuilder.endLine();
+        }
+      }
+    }
+    return readTrkType(trkType, lineBuilder);
+  }
+
+  /**
+   * Creates a track from the given track type. The track points are taken from the line builder,
+   * the track segments of the track type are ignored.
+   *
+   * @param trkType     the track type
+   * @param lineBuilder the line builder with the track points
+   * @return the track
+   */
+  Trk readTrkType(final TrkType trkType, final TrkLineBuilder lineBuilder) {
 
     final Trk trk = new Trk();
     trk.setProperties(readCommonData(
@@ -72,11 +94,8 @@ class TrkConverter extends AbstractGpxConverter {
         trkType.getLinks()));
     trk.getProperties().setSettings(new TrkSettings());
 
-    final Optional<TrackExtension> trkExt = GpxJaxbContextHelper.findFirstExtension(
-        TrackExtension.class,
-        true,
-        trkType.getExtensions(),
-        getUnmarshaller());
+    final Optional<TrackExtension> trkExt = decodeExtensions(trkType.getExtensions())
+        .find(TrackExtension.class);
 
     final DisplayColorT displayColor = trkExt.map(TrackExtension::getDisplayColor).orElse(null);
     trk
@@ -86,98 +105,7 @@ class TrkConverter extends AbstractGpxConverter {
             displayColor,
             DisplayColor.DARK_GRAY));
 
-    parseTrkSegments(trkType.getTrksegs(), trk);
-
-    return trk;
-  }
-
-  @SuppressWarnings("Duplicates")
-  private void parseTrkSegments(List<TrksegType> trkSegments, final Trk trk) {
-    if (trkSegments == null || trkSegments.isEmpty()) {
-      return;
-    }
-    final List<LineString> geoLines = new ArrayList<>(trkSegments.size());
-    final List<List<BigDecimal>> eleLines = new ArrayList<>(trkSegments.size());
-    final List<List<Instant>> timeLines = new ArrayList<>(trkSegments.size());
-    for (final TrksegType trksegType : trkSegments) {
-      final LineString geoLine = parseTrkPoints(trksegType.getTrkpts(), eleLines, timeLines);
-      if (geoLine != null) {
-        geoLines.add(geoLine);
-      }
-    }
-    if (!geoLines.isEmpty()) {
-      trk.setGeometry(GeometryUtils.createMultiLineString(geoLines));
-      trk.setBbox(GeometryUtils.getBoundingBox(trk.getGeometry()));
-      trk.getProperties().setEleLines(eleLines);
-      trk.getProperties().setTimeLines(timeLines);
-      final Instant start = timeLines.get(0).get(0);
-      final List<Instant> lastTimeLine = timeLines.get(timeLines.size() - 1);
-      final Instant stop = lastTimeLine.get(lastTimeLine.size() - 1);
-      trk.getProperties().setStartTime(start);
-      trk.getProperties().setStopTime(stop);
-    }
-  }
-
-  @SuppressWarnings("Duplicates")
-  private LineString parseTrkPoints(
-      final List<WptType> wpts,
-      final List<List<BigDecimal>> eleLines,
-      final List<List<Instant>> timeLines) {
-
-    if (wpts == null || wpts.size() < 2) {
-      return null;
-    }
-    final List<Coordinate> points = new ArrayList<>(wpts.size());
-    final List<BigDecimal> eleLine = new ArrayList<>(wpts.size());
-    final List<Instant> timeLine = new ArrayList<>(wpts.size());
-    BigDecimal lastEle = findFirstEle(wpts);
-    Instant lastTime = findFirstTime(wpts);
-    for (final WptType wpt : wpts) {
-      if (wpt != null && wpt.getLon() != null && wpt.getLat() != null) {
-        final XMLGregorianCalendar cal = wpt.getTime();
-        final Instant time = cal != null ? cal.toGregorianCalendar().getTime().toInstant() : null;
-        lastTime = time != null ? time : lastTime;
-        lastEle = wpt.getEle() != null ? wpt.getEle() : lastEle;
-        points.add(GeometryUtils.createCoordinate(wpt.getLon(), wpt.getLat()));
-        eleLine.add(lastEle);
-        timeLine.add(lastTime);
-      }
-    }
-    if (points.size() < 2) {
-      return null;
-    }
-    eleLines.add(eleLine);
-    timeLines.add(timeLine);
-    return GeometryUtils.createLinearRing(points);
-  }
-
-  private BigDecimal findFirstEle(final List<WptType> wpts) {
-    if (wpts != null) {
-      for (final WptType wpt : wpts) {
-        if (wpt != null) {
-          final BigDecimal ele = wpt.getEle();
-          if (ele != null) {
-            return ele;
-          }
-        }
-      }
-    }
-    return new BigDecimal("0");
-  }
-
-  private Instant findFirstTime(final List<WptType> wpts) {
-    if (wpts != null) {
-      for (final WptType wpt : wpts) {
-        if (wpt != null) {
-          final XMLGregorianCalendar cal = wpt.getTime();
-          final Instant time = cal != null ? cal.toGregorianCalendar().getTime().toInstant() : null;
-          if (time != null) {
-            return time;
-          }
-        }
-      }
-    }
-    return new Date((0L)).toInstant();
+    return lineBuilder.build(trk);
   }
 
 }
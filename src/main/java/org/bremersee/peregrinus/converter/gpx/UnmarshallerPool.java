@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.gpx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.xml.bind.Unmarshaller;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * A bounded pool of unmarshallers. An unmarshaller is not thread safe, so it is borrowed by one
+ * thread at a time. Borrowing never blocks: if the pool is empty, a new unmarshaller is created;
+ * if the pool is full, a returned unmarshaller is dropped. So the pool never holds more than
+ * {@code maxIdle} unmarshallers, no matter how many threads are used.
+ *
+ * @author Christian Bremer
+ */
+class UnmarshallerPool {
+
+  private final JaxbContextBuilder jaxbContextBuilder;
+
+  private final BlockingQueue<Unmarshaller> idle;
+
+  /**
+   * Instantiates a new unmarshaller pool.
+   *
+   * @param jaxbContextBuilder the jaxb context builder
+   * @param maxIdle            the maximum number of pooled unmarshallers
+   */
+  UnmarshallerPool(final JaxbContextBuilder jaxbContextBuilder, final int maxIdle) {
+    Assert.isTrue(maxIdle > 0, "Max idle must be greater than zero.");
+    this.jaxbContextBuilder = jaxbContextBuilder;
+    this.idle = new ArrayBlockingQueue<>(maxIdle);
+  }
+
+  /**
+   * Takes an unmarshaller from the pool or creates a new one. It must be given back with
+   * {@link #release(Unmarshaller)}.
+   *
+   * @return the unmarshaller
+   */
+  Unmarshaller borrow() {
+    final Unmarshaller unmarshaller = idle.poll();
+    return unmarshaller != null ? unmarshaller : jaxbContextBuilder.buildUnmarshaller();
+  }
+
+  /**
+   * Gives an unmarshaller back to the pool.
+   *
+   * @param unmarshaller the unmarshaller (can be {@code null})
+   */
+  void release(final Unmarshaller unmarshaller) {
+    if (unmarshaller != null) {
+      idle.offer(unmarshaller);
+    }
+  }
+
+  /**
+   * Gets the number of pooled unmarshallers.
+   *
+   * @return the number of pooled unmarshallers
+   */
+  int size() {
+    return idle.size();
+  }
+
+}
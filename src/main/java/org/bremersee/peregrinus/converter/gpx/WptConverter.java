@@ -24,19 +24,17 @@ import javax.xml.datatype.XMLGregorianCalendar;
 import org.bremersee.garmin.creationtime.v1.model.ext.CreationTimeExtension;
 import org.bremersee.garmin.gpx.v3.model.ext.WaypointExtension;
 import org.bremersee.geojson.utils.GeometryUtils;
-import org.bremersee.gpx.GpxJaxbContextHelper;
 import org.bremersee.gpx.model.WptType;
 import org.bremersee.peregrinus.content.model.Wpt;
 import org.bremersee.peregrinus.content.model.WptProperties;
-import org.bremersee.xml.JaxbContextBuilder;
 
 /**
  * @author Christian Bremer
  */
 class WptConverter extends AbstractGpxConverter {
 
-  WptConverter(JaxbContextBuilder jaxbContextBuilder) {
-    super(jaxbContextBuilder);
+  WptConverter(final UnmarshallerPool unmarshallerPool) {
+    super(unmarshallerPool);
   }
 
   List<Wpt> readWptTypes(final List<WptType> wpts) {
@@ -53,6 +51,10 @@ class WptConverter extends AbstractGpxConverter {
   }
 
   Wpt readWptType(final WptType wptType) {
+    return readWptType(wptType, decodeExtensions(wptType.getExtensions()));
+  }
+
+  Wpt readWptType(final WptType wptType, final GpxExtensions extensions) {
 
     final Wpt wpt = new Wpt();
     wpt.setProperties(readCommonData(
@@ -65,11 +67,7 @@ class WptConverter extends AbstractGpxConverter {
     wpt.setGeometry(GeometryUtils.createPointWGS84(wptType.getLat(), wptType.getLon()));
     wpt.setBbox(GeometryUtils.getBoundingBox(wpt.getGeometry()));
 
-    final Optional<WaypointExtension> wptExt = GpxJaxbContextHelper.findFirstExtension(
-        WaypointExtension.class,
-        true,
-        wptType.getExtensions(),
-        getUnmarshaller());
+    final Optional<WaypointExtension> wptExt = extensions.find(WaypointExtension.class);
 
     wpt.getProperties()
         .setAddress(wptExt.map(ext -> readGarminAddress(ext.getAddress())).orElse(null));
@@ -77,12 +75,8 @@ class WptConverter extends AbstractGpxConverter {
     wpt.getProperties().setPhoneNumbers(
         wptExt.map(ext -> readGarminPhoneNumbers(ext.getPhoneNumbers())).orElse(null));
 
-    final XMLGregorianCalendar cal = GpxJaxbContextHelper
-        .findFirstExtension(
-            CreationTimeExtension.class,
-            true,
-            wptType.getExtensions(),
-            getUnmarshaller())
+    final XMLGregorianCalendar cal = extensions
+        .find(CreationTimeExtension.class)
         .map(CreationTimeExtension::getCreationTime)
         .orElse(wptType.getTime());
     final Instant time = cal != null ? cal.toGregorianCalendar().getTime().toInstant() : null;
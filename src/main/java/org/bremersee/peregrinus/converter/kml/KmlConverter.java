@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.converter.kml;
+
+import java.io.InputStream;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * Reads KML documents and KMZ files and writes KMZ files.
+ *
+ * @author Christian Bremer
+ */
+public interface KmlConverter {
+
+  /**
+   * Reads the features of a KML document without unmarshalling the whole document.
+   *
+   * @param inputStream the KML document (will be closed)
+   * @return the features
+   */
+  Flux<Feature> readKml(InputStream inputStream);
+
+  /**
+   * Reads the features of the KML document of a KMZ file.
+   *
+   * @param inputStream the KMZ file (will be closed)
+   * @return the features
+   */
+  Flux<Feature> readKmz(InputStream inputStream);
+
+  /**
+   * Writes the features as KMZ file without holding more than one feature in memory.
+   *
+   * @param features      the features
+   * @param bufferFactory the buffer factory
+   * @return the KMZ file
+   */
+  Flux<DataBuffer> writeKmz(Flux<Feature> features, DataBufferFactory bufferFactory);
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.kml;
+
+import java.io.InputStream;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.converter.gpx.GpxConverter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Christian Bremer
+ */
+@Component
+public class KmlConverterImpl implements KmlConverter {
+
+  private final KmlStreamReader kmlStreamReader;
+
+  private final KmlStreamWriter kmlStreamWriter;
+
+  public KmlConverterImpl(final GpxConverter gpxConverter) {
+    kmlStreamReader = new KmlStreamReader(gpxConverter);
+    kmlStreamWriter = new KmlStreamWriter();
+  }
+
+  @Override
+  public Flux<Feature> readKml(final InputStream inputStream) {
+    return kmlStreamReader.read(inputStream);
+  }
+
+  @Override
+  public Flux<Feature> readKmz(final InputStream inputStream) {
+    return kmlStreamReader.readKmz(inputStream);
+  }
+
+  @Override
+  public Flux<DataBuffer> writeKmz(
+      final Flux<Feature> features,
+      final DataBufferFactory bufferFactory) {
+    return kmlStreamWriter.writeKmz(features, bufferFactory);
+  }
+
+}
@@ -0,0 +1,641 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.kml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.exception.ServiceException;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.gpx.model.LinkType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.converter.TrkLineBuilder;
+import org.bremersee.peregrinus.converter.gpx.GpxConverter;
+import org.locationtech.jts.geom.Coordinate;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+
+/**
+ * Reads the placemarks of a KML document with a pull parser. Points become way points and lines
+ * become tracks. A folder with one line and a sub folder with points (as exported by Garmin
+ * BaseCamp) becomes a track, if there is a point for every point of the line, otherwise a route
+ * with the points as route points. Therefore the placemarks of a folder are only held as long as
+ * the folder can be such a route or track (it has at most one line and one sub folder with points)
+ * or can be the sub folder with the points of it. All other placemarks (for example the placemarks
+ * outside of folders) are emitted as soon as they are read.
+ *
+ * <p>The placemarks are mapped to GPX types and the features are built by the GPX converter, so
+ * that both formats create the features in the same way.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+class KmlStreamReader {
+
+  private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+
+  private final XMLInputFactory xmlInputFactory;
+
+  private final DatatypeFactory datatypeFactory;
+
+  private final GpxConverter gpxConverter;
+
+  KmlStreamReader(final GpxConverter gpxConverter) {
+    this.gpxConverter = gpxConverter;
+    this.xmlInputFactory = XMLInputFactory.newInstance();
+    this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    this.xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    try {
+      this.datatypeFactory = DatatypeFactory.newInstance();
+    } catch (DatatypeConfigurationException e) {
+      throw new IllegalStateException("Creating datatype factory failed.", e);
+    }
+  }
+
+  /**
+   * Reads the features of the KML document. The input stream will be closed, when the returned
+   * flux terminates or is cancelled.
+   *
+   * @param inputStream the KML document
+   * @return the features
+   */
+  Flux<Feature> read(final InputStream inputStream) {
+    return Flux.using(
+        () -> new State(xmlInputFactory.createXMLStreamReader(inputStream)),
+        state -> Flux.<Feature>generate(sink -> {
+          try {
+            final Feature feature = readNextFeature(state);
+            if (feature != null) {
+              sink.next(feature);
+            } else {
+              sink.complete();
+            }
+          } catch (XMLStreamException | RuntimeException e) {
+            log.error("msg=[Reading KML failed.]", e);
+            sink.error(ServiceException.badRequest("Reading KML failed: " + e.getMessage()));
+          }
+        }),
+        state -> close(state, inputStream));
+  }
+
+  /**
+   * Reads the features of the first KML document of the KMZ file. The input stream will be closed,
+   * when the returned flux terminates or is cancelled.
+   *
+   * @param inputStream the KMZ file
+   * @return the features
+   */
+  Flux<Feature> readKmz(final InputStream inputStream) {
+    return Flux.defer(() -> {
+      final ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+      try {
+        ZipEntry entry;
+        while ((entry = zipInputStream.getNextEntry()) != null) {
+          if (!entry.isDirectory()
+              && entry.getName().toLowerCase(Locale.ENGLISH).endsWith(".kml")) {
+            return read(zipInputStream);
+          }
+        }
+      } catch (IOException e) {
+        close(zipInputStream);
+        log.error("msg=[Reading KMZ failed.]", e);
+        return Flux.error(ServiceException.badRequest("Reading KMZ failed: " + e.getMessage()));
+      }
+      close(zipInputStream);
+      return Flux.error(ServiceException.badRequest("The KMZ file contains no KML document."));
+    });
+  }
+
+  private Feature readNextFeature(final State state) throws XMLStreamException {
+    final XMLStreamReader reader = state.reader;
+    while (state.features.isEmpty() && reader.hasNext()) {
+      final int event = reader.next();
+      if (event == XMLStreamReader.START_ELEMENT) {
+        switch (reader.getLocalName()) {
+          case "Document":
+            state.frames.push(new Frame(false));
+            break;
+          case "Folder":
+            state.frames.push(new Frame(true));
+            break;
+          case "Placemark":
+            for (final Placemark placemark : readPlacemark(reader).split()) {
+              add(placemark, state);
+            }
+            break;
+          default:
+            break;
+        }
+      } else if (event == XMLStreamReader.END_ELEMENT) {
+        switch (reader.getLocalName()) {
+          case "Document":
+          case "Folder":
+            resolve(state.frames.pop(), state);
+            break;
+          default:
+            break;
+        }
+      } else if (event == XMLStreamReader.END_DOCUMENT) {
+        while (!state.frames.isEmpty()) {
+          resolve(state.frames.pop(), state);
+        }
+      }
+    }
+    return state.features.poll();
+  }
+
+  private void add(final Placemark placemark, final State state) {
+    final Frame frame = state.frames.peek();
+    if (frame.streaming) {
+      emit(placemark, state.features);
+      return;
+    }
+    frame.add(placemark);
+    if (!isCandidate(frame, parentOf(state))) {
+      emit(frame, state.features);
+    }
+  }
+
+  private void resolve(final Frame frame, final State state) {
+    final Frame parent = state.frames.peek();
+    if (!frame.streaming && isPointFolder(frame, parent)) {
+      parent.pointFolders.add(frame.points);
+      if (!isCandidate(parent, parentOf(state))) {
+        emit(parent, state.features);
+      }
+      return;
+    }
+    if (!frame.streaming
+        && frame.lines.size() == 1
+        && frame.pointFolders.size() == 1
+        && frame.points.isEmpty()) {
+      final Feature feature = readLineWithPoints(
+          frame.lines.get(0), frame.pointFolders.get(0));
+      if (feature != null) {
+        state.features.add(feature);
+        return;
+      }
+    }
+    emit(frame, state.features);
+  }
+
+  /*
+   * Returns whether the folder can still be a route or track with route points or the folder
+   * with the route points of its parent.
+   */
+  private static boolean isCandidate(final Frame frame, final Frame parent) {
+    if (frame.streaming || !frame.folder) {
+      return false;
+    }
+    final boolean lineWithPoints = frame.lines.size() <= 1
+        && frame.pointFolders.size() <= 1
+        && frame.points.isEmpty();
+    return lineWithPoints || isPointFolder(frame, parent);
+  }
+
+  private static boolean isPointFolder(final Frame frame, final Frame parent) {
+    return frame.lines.isEmpty()
+        && frame.pointFolders.isEmpty()
+        && !frame.points.isEmpty()
+        && parent != null
+        && parent.folder
+        && !parent.streaming
+        && parent.lines.size() <= 1
+        && parent.pointFolders.isEmpty()
+        && parent.points.isEmpty();
+  }
+
+  private static Frame parentOf(final State state) {
+    final Iterator<Frame> iterator = state.frames.iterator();
+    iterator.next();
+    return iterator.hasNext() ? iterator.next() : null;
+  }
+
+  /*
+   * Emits the held placemarks of the frame, all further placemarks of the frame are emitted as
+   * soon as they are read.
+   */
+  private void emit(final Frame frame, final Deque<Feature> features) {
+    for (final List<Placemark> points : frame.pointFolders) {
+      for (final Placemark point : points) {
+        emit(point, features);
+      }
+    }
+    for (final Placemark point : frame.points) {
+      emit(point, features);
+    }
+    for (final Placemark line : frame.lines) {
+      emit(line, features);
+    }
+    frame.pointFolders.clear();
+    frame.points.clear();
+    frame.lines.clear();
+    frame.streaming = true;
+  }
+
+  private void emit(final Placemark placemark, final Deque<Feature> features) {
+    if (placemark.point != null) {
+      features.add(gpxConverter.readWptType(wptType(placemark)));
+    } else if (!placemark.lines.isEmpty()) {
+      features.add(readTrk(placemark, null));
+    }
+  }
+
+  private Feature readLineWithPoints(final Placemark line, final List<Placemark> points) {
+    int size = 0;
+    for (final List<KmlPoint> lineString : line.lines) {
+      size += lineString.size();
+    }
+    if (points.size() == size) {
+      return readTrk(line, points);
+    }
+    if (points.size() > 1) {
+      return readRte(line, points);
+    }
+    return null;
+  }
+
+  /*
+   * The points of the folder (if present) provide the times of the track points.
+   */
+  private Feature readTrk(final Placemark line, final List<Placemark> points) {
+    final TrkType trkType = new TrkType();
+    trkType.setName(line.name);
+    trkType.setDesc(line.description);
+    trkType.getLinks().addAll(linkTypes(line));
+    final TrkLineBuilder lineBuilder = new TrkLineBuilder();
+    int index = 0;
+    for (final List<KmlPoint> lineString : line.lines) {
+      lineBuilder.startLine();
+      for (final KmlPoint point : lineString) {
+        Instant time = point.time;
+        if (time == null && points != null) {
+          time = points.get(index).time;
+        }
+        lineBuilder.addPoint(point.lon, point.lat, point.ele, time);
+        index++;
+      }
+      lineBuilder.endLine();
+    }
+    return gpxConverter.readTrkType(trkType, lineBuilder);
+  }
+
+  /*
+   * The points of the line between two route points are found by searching the nearest point of
+   * the line for every route point.
+   */
+  private Feature readRte(final Placemark line, final List<Placemark> points) {
+    final List<KmlPoint> path = new ArrayList<>();
+    for (final List<KmlPoint> lineString : line.lines) {
+      path.addAll(lineString);
+    }
+    final int[] indexes = new int[points.size()];
+    int from = 0;
+    for (int i = 0; i < points.size(); i++) {
+      indexes[i] = nearest(path, points.get(i).point, from);
+      from = indexes[i];
+    }
+    final RteType rteType = new RteType();
+    rteType.setName(line.name);
+    rteType.setDesc(line.description);
+    rteType.getLinks().addAll(linkTypes(line));
+    final List<List<Coordinate>> routePoints = new ArrayList<>(points.size());
+    for (int i = 0; i < points.size(); i++) {
+      rteType.getRtepts().add(wptType(points.get(i)));
+      final List<Coordinate> coordinates = new ArrayList<>();
+      if (i + 1 < points.size()) {
+        for (int j = indexes[i] + 1; j < indexes[i + 1]; j++) {
+          coordinates.add(GeometryUtils.createCoordinateWGS84(path.get(j).lat, path.get(j).lon));
+        }
+      }
+      routePoints.add(coordinates);
+    }
+    return gpxConverter.readRteType(rteType, routePoints);
+  }
+
+  private static int nearest(final List<KmlPoint> path, final KmlPoint point, final int from) {
+    int index = from;
+    double minDistance = Double.MAX_VALUE;
+    for (int i = from; i < path.size(); i++) {
+      final double dx = path.get(i).lon.doubleValue() - point.lon.doubleValue();
+      final double dy = path.get(i).lat.doubleValue() - point.lat.doubleValue();
+      final double distance = dx * dx + dy * dy;
+      if (distance < minDistance) {
+        minDistance = distance;
+        index = i;
+      }
+    }
+    return index;
+  }
+
+  private WptType wptType(final Placemark placemark) {
+    final WptType wptType = new WptType();
+    wptType.setLat(placemark.point.lat);
+    wptType.setLon(placemark.point.lon);
+    wptType.setEle(placemark.point.ele);
+    wptType.setName(placemark.name);
+    wptType.setDesc(placemark.description);
+    wptType.getLinks().addAll(linkTypes(placemark));
+    final Instant time = placemark.time != null ? placemark.time : placemark.point.time;
+    if (time != null) {
+      final GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+      calendar.setTimeInMillis(time.toEpochMilli());
+      final XMLGregorianCalendar xmlCalendar = datatypeFactory.newXMLGregorianCalendar(calendar);
+      wptType.setTime(xmlCalendar);
+    }
+    return wptType;
+  }
+
+  private static List<LinkType> linkTypes(final Placemark placemark) {
+    final List<LinkType> linkTypes = new ArrayList<>(placemark.links.size());
+    for (final String href : placemark.links) {
+      final LinkType linkType = new LinkType();
+      linkType.setHref(href);
+      linkTypes.add(linkType);
+    }
+    return linkTypes;
+  }
+
+  /*
+   * Reads the placemark from the start element to the corresponding end element.
+   */
+  private static Placemark readPlacemark(final XMLStreamReader reader)
+      throws XMLStreamException {
+
+    final Placemark placemark = new Placemark();
+    String geometry = null;
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      final int event = reader.next();
+      if (event == XMLStreamReader.END_ELEMENT) {
+        depth--;
+        continue;
+      }
+      if (event != XMLStreamReader.START_ELEMENT) {
+        continue;
+      }
+      switch (reader.getLocalName()) {
+        case "name":
+          placemark.name = trimToNull(reader.getElementText());
+          break;
+        case "description":
+          placemark.description = trimToNull(reader.getElementText());
+          break;
+        case "when":
+        case "begin":
+          placemark.time = parseTime(reader.getElementText());
+          break;
+        case "link":
+          if (ATOM_NAMESPACE.equals(reader.getNamespaceURI())
+              && StringUtils.hasText(reader.getAttributeValue(null, "href"))) {
+            placemark.links.add(reader.getAttributeValue(null, "href"));
+          }
+          depth++;
+          break;
+        case "Point":
+        case "LineString":
+        case "LinearRing":
+          geometry = reader.getLocalName();
+          depth++;
+          break;
+        case "coordinates":
+          final List<KmlPoint> points = parseCoordinates(reader.getElementText());
+          if ("Point".equals(geometry) && !points.isEmpty()) {
+            placemark.points.add(points.get(0));
+          } else if ("LineString".equals(geometry) && points.size() > 1) {
+            placemark.lines.add(points);
+          }
+          break;
+        case "Track":
+          final List<KmlPoint> track = readTrack(reader);
+          if (track.size() > 1) {
+            placemark.lines.add(track);
+          }
+          break;
+        default:
+          depth++;
+          break;
+      }
+    }
+    return placemark;
+  }
+
+  /*
+   * Reads a gx:Track from the start element to the corresponding end element.
+   */
+  private static List<KmlPoint> readTrack(final XMLStreamReader reader)
+      throws XMLStreamException {
+
+    final List<Instant> times = new ArrayList<>();
+    final List<KmlPoint> points = new ArrayList<>();
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      final int event = reader.next();
+      if (event == XMLStreamReader.END_ELEMENT) {
+        depth--;
+      } else if (event == XMLStreamReader.START_ELEMENT) {
+        if ("when".equals(reader.getLocalName())) {
+          times.add(parseTime(reader.getElementText()));
+        } else if ("coord".equals(reader.getLocalName())) {
+          final String[] values = reader.getElementText().trim().split("\\s+");
+          if (values.length > 1) {
+            points.add(new KmlPoint(
+                new BigDecimal(values[0]),
+                new BigDecimal(values[1]),
+                values.length > 2 ? new BigDecimal(values[2]) : null));
+          }
+        } else {
+          depth++;
+        }
+      }
+    }
+    for (int i = 0; i < points.size() && i < times.size(); i++) {
+      points.get(i).time = times.get(i);
+    }
+    return points;
+  }
+
+  private static List<KmlPoint> parseCoordinates(final String text) {
+    final List<KmlPoint> points = new ArrayList<>();
+    for (final String tuple : text.trim().split("\\s+")) {
+      final String[] values = tuple.split(",");
+      if (values.length > 1) {
+        points.add(new KmlPoint(
+            new BigDecimal(values[0]),
+            new BigDecimal(values[1]),
+            values.length > 2 ? new BigDecimal(values[2]) : null));
+      }
+    }
+    return points;
+  }
+
+  private static Instant parseTime(final String value) {
+    return StringUtils.hasText(value)
+        ? DatatypeConverter.parseDateTime(value.trim()).getTime().toInstant()
+        : null;
+  }
+
+  private static String trimToNull(final String value) {
+    return StringUtils.hasText(value) ? value.trim() : null;
+  }
+
+  private static void close(final State state, final InputStream inputStream) {
+    try {
+      state.reader.close();
+    } catch (XMLStreamException e) {
+      log.warn("msg=[Closing KML reader failed.]", e);
+    }
+    close(inputStream);
+  }
+
+  private static void close(final InputStream inputStream) {
+    try {
+      inputStream.close();
+    } catch (IOException e) {
+      log.warn("msg=[Closing KML input stream failed.]", e);
+    }
+  }
+
+  private static class State {
+
+    private final XMLStreamReader reader;
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private final Deque<Feature> features = new ArrayDeque<>();
+
+    private State(final XMLStreamReader reader) {
+      this.reader = reader;
+      this.frames.push(new Frame(false));
+    }
+  }
+
+  /*
+   * The held placemarks of a document or folder. The placemarks of a document are never held.
+   */
+  private static class Frame {
+
+    private final boolean folder;
+
+    private boolean streaming;
+
+    private final List<Placemark> points = new ArrayList<>();
+
+    private final List<Placemark> lines = new ArrayList<>();
+
+    private final List<List<Placemark>> pointFolders = new ArrayList<>();
+
+    private Frame(final boolean folder) {
+      this.folder = folder;
+      this.streaming = !folder;
+    }
+
+    private void add(final Placemark placemark) {
+      if (placemark.point != null) {
+        points.add(placemark);
+      } else if (!placemark.lines.isEmpty()) {
+        lines.add(placemark);
+      }
+    }
+  }
+
+  private static class Placemark {
+
+    private String name;
+
+    private String description;
+
+    private Instant time;
+
+    private final List<String> links = new ArrayList<>();
+
+    private KmlPoint point;
+
+    private final List<KmlPoint> points = new ArrayList<>();
+
+    private final List<List<KmlPoint>> lines = new ArrayList<>();
+
+    /*
+     * Splits the placemark (which may have a multi geometry) into placemarks with one point or
+     * with the lines.
+     */
+    private List<Placemark> split() {
+      final List<Placemark> placemarks = new ArrayList<>(points.size() + 1);
+      for (final KmlPoint kmlPoint : points) {
+        final Placemark placemark = copy();
+        placemark.point = kmlPoint;
+        placemarks.add(placemark);
+      }
+      if (!lines.isEmpty()) {
+        final Placemark placemark = copy();
+        placemark.lines.addAll(lines);
+        placemarks.add(placemark);
+      }
+      return placemarks;
+    }
+
+    private Placemark copy() {
+      final Placemark placemark = new Placemark();
+      placemark.name = name;
+      placemark.description = description;
+      placemark.time = time;
+      placemark.links.addAll(links);
+      return placemark;
+    }
+  }
+
+  private static class KmlPoint {
+
+    private final BigDecimal lon;
+
+    private final BigDecimal lat;
+
+    private final BigDecimal ele;
+
+    private Instant time;
+
+    private KmlPoint(final BigDecimal lon, final BigDecimal lat, final BigDecimal ele) {
+      this.lon = lon;
+      this.lat = lat;
+      this.ele = ele;
+    }
+  }
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.kml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.common.model.Link;
+import org.bremersee.peregrinus.content.model.DisplayColor;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.FeatureProperties;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.RteSegment;
+import org.bremersee.peregrinus.content.model.RteSettings;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.TrkSettings;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.MultiLineString;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes features as KMZ file (a zip file with the KML document {@code doc.kml}) with a StAX
+ * writer. The compressed bytes are emitted as data buffers after every feature, so only one
+ * feature is held in memory. Tracks are written as {@code gx:MultiTrack} to keep their times (a
+ * line without a time for every point is written as {@code LineString}, because the number of the
+ * times of a {@code gx:Track} must be equal to the number of its coordinates), routes as folder
+ * with the route points and the line, so that they are read as routes again.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+class KmlStreamWriter {
+
+  private static final String KML_NAMESPACE = "http://www.opengis.net/kml/2.2";
+
+  private static final String GX_NAMESPACE = "http://www.google.com/kml/ext/2.2";
+
+  private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+
+  private static final String ENTRY_NAME = "doc.kml";
+
+  /**
+   * The KML colors (aabbggrr) of the display colors.
+   */
+  private static final Map<DisplayColor, String> COLORS = new EnumMap<>(DisplayColor.class);
+
+  static {
+    COLORS.put(DisplayColor.BLACK, "ff000000");
+    COLORS.put(DisplayColor.DARK_RED, "ff00008b");
+    COLORS.put(DisplayColor.DARK_GREEN, "ff006400");
+    COLORS.put(DisplayColor.DARK_YELLOW, "ff008b8b");
+    COLORS.put(DisplayColor.DARK_BLUE, "ff8b0000");
+    COLORS.put(DisplayColor.DARK_MAGENTA, "ff8b008b");
+    COLORS.put(DisplayColor.DARK_CYAN, "ff8b8b00");
+    COLORS.put(DisplayColor.LIGHT_GRAY, "ffd3d3d3");
+    COLORS.put(DisplayColor.DARK_GRAY, "ffa9a9a9");
+    COLORS.put(DisplayColor.RED, "ff0000ff");
+    COLORS.put(DisplayColor.GREEN, "ff00ff00");
+    COLORS.put(DisplayColor.YELLOW, "ff00ffff");
+    COLORS.put(DisplayColor.BLUE, "ffff0000");
+    COLORS.put(DisplayColor.MAGENTA, "ffff00ff");
+    COLORS.put(DisplayColor.CYAN, "ffffff00");
+    COLORS.put(DisplayColor.WHITE, "ffffffff");
+    COLORS.put(DisplayColor.TRANSPARENT, "00ffffff");
+  }
+
+  private final XMLOutputFactory xmlOutputFactory;
+
+  KmlStreamWriter() {
+    this.xmlOutputFactory = XMLOutputFactory.newInstance();
+  }
+
+  /**
+   * Writes the KMZ file.
+   *
+   * @param features      the features
+   * @param bufferFactory the buffer factory
+   * @return the KMZ file
+   */
+  Flux<DataBuffer> writeKmz(
+      final Flux<Feature> features,
+      final DataBufferFactory bufferFactory) {
+
+    return Flux.using(
+        () -> new State(xmlOutputFactory),
+        state -> Flux.concat(
+            features.<DataBuffer>handle((feature, sink) -> {
+              try {
+                state.start();
+                writeFeature(state.writer, feature);
+                final DataBuffer buffer = state.drain(bufferFactory);
+                if (buffer != null) {
+                  sink.next(buffer);
+                }
+              } catch (XMLStreamException | IOException | RuntimeException e) {
+                log.error("msg=[Writing KMZ failed.] featureId=[{}]", feature.getId(), e);
+                sink.error(e);
+              }
+            }),
+            Mono.fromCallable(() -> {
+              state.start();
+              state.finish();
+              return state.drain(bufferFactory);
+            })),
+        KmlStreamWriter::close);
+  }
+
+  private static void writeStart(final XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeStartDocument("UTF-8", "1.0");
+    writer.setDefaultNamespace(KML_NAMESPACE);
+    writer.setPrefix("gx", GX_NAMESPACE);
+    writer.setPrefix("atom", ATOM_NAMESPACE);
+    writer.writeStartElement(KML_NAMESPACE, "kml");
+    writer.writeDefaultNamespace(KML_NAMESPACE);
+    writer.writeNamespace("gx", GX_NAMESPACE);
+    writer.writeNamespace("atom", ATOM_NAMESPACE);
+    writer.writeStartElement(KML_NAMESPACE, "Document");
+  }
+
+  private static void writeEnd(final XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeEndElement();
+    writer.writeEndElement();
+    writer.writeEndDocument();
+  }
+
+  private static void writeFeature(
+      final XMLStreamWriter writer,
+      final Feature feature) throws XMLStreamException {
+
+    if (feature instanceof Wpt) {
+      writeWpt(writer, (Wpt) feature);
+    } else if (feature instanceof Rte) {
+      writeRte(writer, (Rte) feature);
+    } else if (feature instanceof Trk) {
+      writeTrk(writer, (Trk) feature);
+    }
+  }
+
+  private static void writeWpt(
+      final XMLStreamWriter writer,
+      final Wpt wpt) throws XMLStreamException {
+
+    if (wpt.getGeometry() == null) {
+      return;
+    }
+    writer.writeStartElement(KML_NAMESPACE, "Placemark");
+    writeCommonData(writer, wpt.getProperties());
+    if (wpt.getProperties().getTime() != null) {
+      writer.writeStartElement(KML_NAMESPACE, "TimeStamp");
+      writeText(writer, "when", wpt.getProperties().getTime());
+      writer.writeEndElement();
+    }
+    writer.writeStartElement(KML_NAMESPACE, "Point");
+    writer.writeStartElement(KML_NAMESPACE, "coordinates");
+    writer.writeCharacters(coordinates(
+        wpt.getGeometry().getCoordinate(), wpt.getProperties().getEle()));
+    writer.writeEndElement();
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  private static void writeRte(
+      final XMLStreamWriter writer,
+      final Rte rte) throws XMLStreamException {
+
+    final MultiLineString geometry = rte.getGeometry();
+    final List<RteSegment> rteSegments = rte.getProperties().getRteSegments();
+    if (geometry == null || rteSegments == null || rteSegments.size() < 2) {
+      return;
+    }
+    writer.writeStartElement(KML_NAMESPACE, "Folder");
+    writeText(writer, "name", rte.getProperties().getName());
+    writer.writeStartElement(KML_NAMESPACE, "Folder");
+    writeText(writer, "name", "Route points");
+    for (final RteSegment rteSegment : rteSegments) {
+      if (rteSegment.getPoint() == null) {
+        continue;
+      }
+      writer.writeStartElement(KML_NAMESPACE, "Placemark");
+      if (rteSegment.getProperties() != null) {
+        writeText(writer, "name", rteSegment.getProperties().getName());
+      }
+      writer.writeStartElement(KML_NAMESPACE, "Point");
+      writeText(writer, "coordinates", coordinates(rteSegment.getPoint().getCoordinate(), null));
+      writer.writeEndElement();
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+
+    final RteSettings settings = rte.getProperties().getSettings();
+    writer.writeStartElement(KML_NAMESPACE, "Placemark");
+    writeCommonData(writer, rte.getProperties());
+    writeLineStyle(writer, settings != null ? settings.getDisplayColor() : null,
+        DisplayColor.MAGENTA);
+    writer.writeStartElement(KML_NAMESPACE, "MultiGeometry");
+    for (int n = 0; n < geometry.getNumGeometries(); n++) {
+      writer.writeStartElement(KML_NAMESPACE, "LineString");
+      writer.writeStartElement(KML_NAMESPACE, "coordinates");
+      final Coordinate[] coordinates = geometry.getGeometryN(n).getCoordinates();
+      for (int i = 0; i < coordinates.length; i++) {
+        if (i > 0) {
+          writer.writeCharacters(" ");
+        }
+        writer.writeCharacters(coordinates(coordinates[i], null));
+      }
+      writer.writeEndElement();
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  private static void writeTrk(
+      final XMLStreamWriter writer,
+      final Trk trk) throws XMLStreamException {
+
+    final MultiLineString geometry = trk.getGeometry();
+    if (geometry == null) {
+      return;
+    }
+    final TrkSettings settings = trk.getProperties().getSettings();
+    writer.writeStartElement(KML_NAMESPACE, "Placemark");
+    writeCommonData(writer, trk.getProperties());
+    writeLineStyle(writer, settings != null ? settings.getDisplayColor() : null,
+        DisplayColor.DARK_GRAY);
+    final List<List<BigDecimal>> eleLines = trk.getProperties().getEleLines();
+    final List<List<Instant>> timeLines = trk.getProperties().getTimeLines();
+    boolean timed = true;
+    for (int n = 0; n < geometry.getNumGeometries() && timed; n++) {
+      timed = isComplete(lineAt(timeLines, n), geometry.getGeometryN(n).getNumPoints());
+    }
+    if (timed) {
+      writer.writeStartElement(GX_NAMESPACE, "MultiTrack");
+    } else {
+      writer.writeStartElement(KML_NAMESPACE, "MultiGeometry");
+    }
+    for (int n = 0; n < geometry.getNumGeometries(); n++) {
+      final Coordinate[] coordinates = geometry.getGeometryN(n).getCoordinates();
+      final List<BigDecimal> eleLine = lineAt(eleLines, n);
+      final List<Instant> timeLine = lineAt(timeLines, n);
+      if (isComplete(timeLine, coordinates.length)) {
+        writer.writeStartElement(GX_NAMESPACE, "Track");
+        for (final Instant time : timeLine) {
+          writeText(writer, "when", time);
+        }
+        for (int i = 0; i < coordinates.length; i++) {
+          writer.writeStartElement(GX_NAMESPACE, "coord");
+          writer.writeCharacters(
+              coordinates(coordinates[i], valueAt(eleLine, i)).replace(',', ' '));
+          writer.writeEndElement();
+        }
+      } else {
+        writer.writeStartElement(KML_NAMESPACE, "LineString");
+        writer.writeStartElement(KML_NAMESPACE, "coordinates");
+        for (int i = 0; i < coordinates.length; i++) {
+          if (i > 0) {
+            writer.writeCharacters(" ");
+          }
+          writer.writeCharacters(coordinates(coordinates[i], valueAt(eleLine, i)));
+        }
+        writer.writeEndElement();
+      }
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  /*
+   * A gx:Track needs a time for every coordinate.
+   */
+  private static boolean isComplete(final List<Instant> timeLine, final int size) {
+    return timeLine != null && timeLine.size() == size && !timeLine.contains(null);
+  }
+
+  private static void writeCommonData(
+      final XMLStreamWriter writer,
+      final FeatureProperties<?> properties) throws XMLStreamException {
+
+    writeText(writer, "name", properties.getName());
+    if (properties.getLinks() != null) {
+      for (final Link link : properties.getLinks()) {
+        if (link != null && StringUtils.hasText(link.getHref())) {
+          writer.writeEmptyElement(ATOM_NAMESPACE, "link");
+          writer.writeAttribute("href", link.getHref());
+        }
+      }
+    }
+    writeText(writer, "description", properties.getPlainTextDescription());
+  }
+
+  private static void writeLineStyle(
+      final XMLStreamWriter writer,
+      final DisplayColor displayColor,
+      final DisplayColor defaultDisplayColor) throws XMLStreamException {
+
+    writer.writeStartElement(KML_NAMESPACE, "Style");
+    writer.writeStartElement(KML_NAMESPACE, "LineStyle");
+    writeText(writer, "color",
+        COLORS.get(displayColor != null ? displayColor : defaultDisplayColor));
+    writeText(writer, "width", 3);
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  private static void writeText(
+      final XMLStreamWriter writer,
+      final String localName,
+      final Object value) throws XMLStreamException {
+
+    if (value != null && StringUtils.hasText(String.valueOf(value))) {
+      writer.writeStartElement(KML_NAMESPACE, localName);
+      writer.writeCharacters(String.valueOf(value));
+      writer.writeEndElement();
+    }
+  }
+
+  private static String coordinates(final Coordinate coordinate, final BigDecimal ele) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(coordinate.x).append(',').append(coordinate.y);
+    if (ele != null) {
+      sb.append(',').append(ele.toPlainString());
+    }
+    return sb.toString();
+  }
+
+  private static <T> List<T> lineAt(final List<List<T>> lines, final int index) {
+    return lines != null && index < lines.size() ? lines.get(index) : null;
+  }
+
+  private static <T> T valueAt(final List<T> line, final int index) {
+    return line != null && index < line.size() ? line.get(index) : null;
+  }
+
+  private static void close(final State state) {
+    try {
+      state.writer.close();
+    } catch (XMLStreamException e) {
+      log.warn("msg=[Closing KML writer failed.]", e);
+    }
+    try {
+      state.zip.close();
+    } catch (IOException e) {
+      log.warn("msg=[Closing KMZ output stream failed.]", e);
+    }
+  }
+
+  private static class State {
+
+    private final ByteArrayOutputStream out;
+
+    private final ZipOutputStream zip;
+
+    private final XMLStreamWriter writer;
+
+    private boolean started;
+
+    private State(final XMLOutputFactory xmlOutputFactory) throws XMLStreamException {
+      this.out = new ByteArrayOutputStream();
+      this.zip = new ZipOutputStream(out);
+      this.writer = xmlOutputFactory.createXMLStreamWriter(zip, "UTF-8");
+    }
+
+    private void start() throws XMLStreamException, IOException {
+      if (!started) {
+        zip.putNextEntry(new ZipEntry(ENTRY_NAME));
+        writeStart(writer);
+        started = true;
+      }
+    }
+
+    private void finish() throws XMLStreamException, IOException {
+      writeEnd(writer);
+      writer.flush();
+      zip.closeEntry();
+      zip.finish();
+    }
+
+    /*
+     * Moves the compressed bytes into a data buffer. The deflater may keep the last bytes, so the
+     * buffer can be empty (then null is returned).
+     */
+    private DataBuffer drain(final DataBufferFactory bufferFactory) throws XMLStreamException {
+      writer.flush();
+      if (out.size() == 0) {
+        return null;
+      }
+      final DataBuffer buffer = bufferFactory.wrap(out.toByteArray());
+      out.reset();
+      return buffer;
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.controller;
+
+import javax.validation.Valid;
+import org.bremersee.peregrinus.geo.model.ReverseGeoCodingRequest;
+import org.bremersee.peregrinus.geo.model.ReverseGeoCodingResult;
+import org.bremersee.peregrinus.geo.service.GeoCoder;
+import org.springframework.http.MediaType;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Christian Bremer
+ */
+@RestController
+@RequestMapping(path = "/api/geo")
+@Validated
+public class GeoController {
+
+  private GeoCoder geoCoder;
+
+  public GeoController(GeoCoder geoCoder) {
+    this.geoCoder = geoCoder;
+  }
+
+  @PostMapping(
+      path = "/reverse",
+      consumes = {MediaType.APPLICATION_JSON_UTF8_VALUE},
+      produces = {MediaType.APPLICATION_JSON_UTF8_VALUE})
+  public Flux<ReverseGeoCodingResult> reverseGeocode(
+      @Valid @RequestBody ReverseGeoCodingRequest request) {
+    return geoCoder.reverseGeocode(request);
+  }
+
+}
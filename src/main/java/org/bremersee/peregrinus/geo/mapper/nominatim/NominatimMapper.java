@@ -16,11 +16,15 @@
 
 package org.bremersee.peregrinus.geo.mapper.nominatim;
 
+import java.util.Locale;
 import javax.validation.constraints.NotNull;
+import org.bremersee.nominatim.model.ReverseSearchRequest;
 import org.bremersee.nominatim.model.SearchRequest;
 import org.bremersee.nominatim.model.SearchResult;
 import org.bremersee.peregrinus.geo.model.GeoCodingQueryRequest;
 import org.bremersee.peregrinus.geo.model.GeoCodingResult;
+import org.locationtech.jts.geom.Point;
+import org.springframework.lang.Nullable;
 import org.springframework.validation.annotation.Validated;
 
 /**
@@ -35,4 +39,9 @@ public interface NominatimMapper {
   @NotNull
   GeoCodingResult mapToGeoCodingResult(@NotNull SearchResult source);
 
+  @NotNull
+  ReverseSearchRequest mapToReverseSearchRequest(
+      @NotNull Point position,
+      @Nullable Locale language);
+
 }
@@ -16,12 +16,15 @@
 
 package org.bremersee.peregrinus.geo.mapper.nominatim;
 
+import java.util.Locale;
 import org.bremersee.common.model.Address;
 import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.nominatim.model.ReverseSearchRequest;
 import org.bremersee.nominatim.model.SearchRequest;
 import org.bremersee.nominatim.model.SearchResult;
 import org.bremersee.peregrinus.geo.model.GeoCodingQueryRequest;
 import org.bremersee.peregrinus.geo.model.GeoCodingResult;
+import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 
 /**
@@ -43,12 +46,29 @@ public class NominatimMapperImpl implements NominatimMapper {
   }
 
   private String mapToLanguage(final GeoCodingQueryRequest source) {
-    if (source.getLanguage() != null && source.getLanguage().getLanguage() != null) {
-      return source.getLanguage().getLanguage();
+    return mapToLanguage(source.getLanguage());
+  }
+
+  private String mapToLanguage(final Locale language) {
+    if (language != null && language.getLanguage() != null) {
+      return language.getLanguage();
     }
     return "en";
   }
 
+  @Override
+  public ReverseSearchRequest mapToReverseSearchRequest(
+      final Point position,
+      final Locale language) {
+    return ReverseSearchRequest
+        .builder()
+        .acceptLanguage(mapToLanguage(language))
+        .addressDetails(Boolean.TRUE)
+        .lat(position.getY())
+        .lon(position.getX())
+        .build();
+  }
+
   private double[] mapToViewBox(final GeoCodingQueryRequest source) { // TODO lat lon
     if (source.getBoundingBox() != null) {
       return GeometryUtils.getBoundingBox(source.getBoundingBox());
@@ -16,6 +16,8 @@
 
 package org.bremersee.peregrinus.geo.mapper.tomtom;
 
+import java.util.List;
+import java.util.Locale;
 import javax.validation.constraints.NotNull;
 import org.bremersee.peregrinus.geo.model.GeoCodingQueryRequest;
 import org.bremersee.peregrinus.geo.model.GeoCodingResult;
@@ -23,7 +25,12 @@ import org.bremersee.peregrinus.content.model.Rte;
 import org.bremersee.peregrinus.geo.model.TomTomRteCalculationProperties;
 import org.bremersee.tomtom.model.GeocodeRequest;
 import org.bremersee.tomtom.model.GeocodeResponse;
+import org.bremersee.tomtom.model.ReverseGeocodeRequest;
+import org.bremersee.tomtom.model.ReverseGeocodeResponse;
 import org.bremersee.tomtom.model.Route;
+import org.bremersee.tomtom.model.RoutingRequest;
+import org.locationtech.jts.geom.Point;
+import org.springframework.lang.Nullable;
 import org.springframework.validation.annotation.Validated;
 
 /**
@@ -38,6 +45,19 @@ public interface TomTomMapper {
   @NotNull
   Iterable<GeoCodingResult> mapToGeoCodingResults(@NotNull GeocodeResponse source);
 
+  @NotNull
+  ReverseGeocodeRequest mapToReverseGeocodeRequest(
+      @NotNull Point position,
+      @Nullable Locale language);
+
+  @NotNull
+  Iterable<GeoCodingResult> mapToGeoCodingResults(@NotNull ReverseGeocodeResponse source);
+
+  @NotNull
+  RoutingRequest mapToRoutingRequest(
+      @NotNull List<Point> locations,
+      @NotNull TomTomRteCalculationProperties calculationProperties);
+
   Rte mapToRte(Route route, TomTomRteCalculationProperties calculationProperties);
 
 }
@@ -19,7 +19,9 @@ package org.bremersee.peregrinus.geo.mapper.tomtom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 import org.bremersee.common.model.Address;
 import org.bremersee.geojson.utils.GeometryUtils;
@@ -38,9 +40,13 @@ import org.bremersee.tomtom.model.Language;
 import org.bremersee.tomtom.model.LatLon;
 import org.bremersee.tomtom.model.LatLonAware;
 import org.bremersee.tomtom.model.LatitudeLongitude;
+import org.bremersee.tomtom.model.ReverseGeocodeRequest;
+import org.bremersee.tomtom.model.ReverseGeocodeResponse;
+import org.bremersee.tomtom.model.ReverseGeocodeResult;
 import org.bremersee.tomtom.model.Route;
 import org.bremersee.tomtom.model.RouteLeg;
 import org.bremersee.tomtom.model.RouteSummary;
+import org.bremersee.tomtom.model.RoutingRequest;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Point;
@@ -74,6 +80,55 @@ public class TomTomMapperImpl implements TomTomMapper {
         .collect(Collectors.toList());
   }
 
+  @Override
+  public ReverseGeocodeRequest mapToReverseGeocodeRequest(
+      final Point position,
+      final Locale language) {
+    return ReverseGeocodeRequest
+        .builder()
+        .position(new LatLon(
+            LatLonAware
+                .builder()
+                .longitude(position.getX())
+                .latitude(position.getY())
+                .build()))
+        .language(Language.fromLocale(language))
+        .build();
+  }
+
+  @Override
+  public Iterable<GeoCodingResult> mapToGeoCodingResults(final ReverseGeocodeResponse source) {
+    if (source.getAddresses() == null) {
+      return Collections.emptyList();
+    }
+    return source.getAddresses()
+        .stream()
+        .map(this::mapToGeoCodingResult)
+        .collect(Collectors.toList());
+  }
+
+  private GeoCodingResult mapToGeoCodingResult(final ReverseGeocodeResult source) {
+    final GeoCodingResult destination = new GeoCodingResult();
+    if (source.getAddress() != null) {
+      final Address address = new Address();
+      address.setStreet(source.getAddress().getStreetName());
+      address.setStreetNumber(source.getAddress().getStreetNumber());
+      address.setPostalCode(source.getAddress().getPostalCode());
+      address.setCity(source.getAddress().getMunicipality());
+      address.setSuburb(source.getAddress().getMunicipalitySubdivision());
+      address.setCountry(source.getAddress().getCountry());
+      address.setCountryCode(source.getAddress().getCountryCode());
+      address.setFormattedAddress(source.getAddress().getFreeformAddress());
+      destination.setAddress(address);
+    }
+    if (source.getPosition() != null && source.getPosition().hasValues()) {
+      destination.setPosition(GeometryUtils.createPointWGS84(
+          source.getPosition().getLatitude(),
+          source.getPosition().getLongitude()));
+    }
+    return destination;
+  }
+
   private GeoCodingResult mapToGeoCodingResult(final GeocodeResult source) {
     final GeoCodingResult destination = new GeoCodingResult();
     destination.setAddress(mapToAddress(source));
@@ -153,6 +208,38 @@ public class TomTomMapperImpl implements TomTomMapper {
     return boundingBox;
   }
 
+  @Override
+  public RoutingRequest mapToRoutingRequest(
+      final List<Point> locations,
+      final TomTomRteCalculationProperties calculationProperties) {
+    return RoutingRequest
+        .builder()
+        .locations(locations
+            .stream()
+            .map(location -> new LatLon(
+                LatLonAware
+                    .builder()
+                    .longitude(location.getX())
+                    .latitude(location.getY())
+                    .build()))
+            .collect(Collectors.toList()))
+        .travelMode(calculationProperties.getTravelMode())
+        .routeType(calculationProperties.getRouteType())
+        .hilliness(calculationProperties.getHilliness())
+        .windingness(calculationProperties.getWindingness())
+        .avoid(calculationProperties.getAvoid())
+        .avoidAreas(calculationProperties.getAvoidAreas())
+        .avoidVignette(calculationProperties.getAvoidVignette())
+        .allowVignette(calculationProperties.getAllowVignette())
+        .departAt(calculationProperties.getDepartAt() != null
+            ? Date.from(calculationProperties.getDepartAt())
+            : null)
+        .arriveAt(calculationProperties.getArriveAt() != null
+            ? Date.from(calculationProperties.getArriveAt())
+            : null)
+        .build();
+  }
+
   @Override
   public Rte mapToRte(
       final Route route,
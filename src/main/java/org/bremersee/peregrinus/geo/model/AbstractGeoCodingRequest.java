@@ -16,6 +16,7 @@
 
 package org.bremersee.peregrinus.geo.model;
 
+import java.util.Locale;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -30,4 +31,9 @@ public abstract class AbstractGeoCodingRequest implements GeoProviderAware {
 
   private GeoProvider geoProvider = GeoProvider.NOMINATIM;
 
+  /**
+   * Preferred language.
+   */
+  private Locale language;
+
 }
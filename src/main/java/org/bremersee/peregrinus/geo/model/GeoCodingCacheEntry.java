@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * The cached results of a geocoding request. The id is the normalized request.
+ *
+ * @author Christian Bremer
+ */
+@Document(collection = "geo-coding-cache")
+@TypeAlias("GeoCodingCacheEntry")
+@Getter
+@Setter
+@ToString(exclude = {"results"})
+@NoArgsConstructor
+public class GeoCodingCacheEntry {
+
+  @Id
+  private String id;
+
+  private GeoProvider geoProvider;
+
+  private List<GeoCodingResult> results = new ArrayList<>();
+
+  /**
+   * The entry is removed by the database after this time.
+   */
+  @Indexed(expireAfterSeconds = 0)
+  private Instant expiresAt;
+
+  public GeoCodingCacheEntry(
+      String id,
+      GeoProvider geoProvider,
+      List<GeoCodingResult> results,
+      Instant expiresAt) {
+    this.id = id;
+    this.geoProvider = geoProvider;
+    this.results = results != null ? results : new ArrayList<>();
+    this.expiresAt = expiresAt;
+  }
+
+}
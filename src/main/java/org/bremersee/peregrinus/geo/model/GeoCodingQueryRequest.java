@@ -36,11 +36,6 @@ public class GeoCodingQueryRequest extends AbstractGeoCodingRequest {
 
   private Integer limit = 6;
 
-  /**
-   * Preferred language.
-   */
-  private Locale language;
-
   /**
    * Limit search results to a specific country (or a list of countries).
    */
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * A batch of positions, whose addresses are looked up.
+ *
+ * @author Christian Bremer
+ */
+@Getter
+@Setter
+@ToString(callSuper = true)
+public class ReverseGeoCodingRequest extends AbstractGeoCodingRequest {
+
+  /**
+   * The maximum number of positions of a request.
+   */
+  public static final int MAX_POSITIONS = 100;
+
+  @NotNull
+  @Size(max = MAX_POSITIONS)
+  private List<Point> positions = new ArrayList<>();
+
+}
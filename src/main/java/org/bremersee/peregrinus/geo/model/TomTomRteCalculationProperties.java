@@ -20,6 +20,7 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -37,6 +38,7 @@ import org.springframework.data.annotation.TypeAlias;
 @Getter
 @Setter
 @ToString
+@EqualsAndHashCode(callSuper = true)
 @TypeAlias("TomTomRteCalculationProperties")
 public class TomTomRteCalculationProperties extends AbstractRteCalculationProperties {
 
@@ -16,9 +16,16 @@
 
 package org.bremersee.peregrinus.geo.service;
 
+import java.util.Collection;
+import java.util.Locale;
 import javax.validation.constraints.NotNull;
+import org.bremersee.peregrinus.content.model.Wpt;
 import org.bremersee.peregrinus.geo.model.GeoCodingQueryRequest;
 import org.bremersee.peregrinus.geo.model.GeoCodingResult;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
+import org.bremersee.peregrinus.geo.model.ReverseGeoCodingRequest;
+import org.bremersee.peregrinus.geo.model.ReverseGeoCodingResult;
+import org.springframework.lang.Nullable;
 import org.springframework.validation.annotation.Validated;
 import reactor.core.publisher.Flux;
 
@@ -30,4 +37,25 @@ public interface GeoCoder {
 
   Flux<GeoCodingResult> geocode(@NotNull GeoCodingQueryRequest request);
 
+  /**
+   * Looks up the places of all positions of the request.
+   *
+   * @param request the reverse geocoding request
+   * @return one result for every requested position in the same order
+   */
+  Flux<ReverseGeoCodingResult> reverseGeocode(@NotNull ReverseGeoCodingRequest request);
+
+  /**
+   * Sets the address of all way points, that don't have one, by reverse geocoding.
+   *
+   * @param wpts        the way points
+   * @param geoProvider the provider (can be {@code null})
+   * @param language    the preferred language (can be {@code null})
+   * @return the way points
+   */
+  Flux<Wpt> setMissingAddresses(
+      @NotNull Collection<Wpt> wpts,
+      @Nullable GeoProvider geoProvider,
+      @Nullable Locale language);
+
 }
@@ -16,7 +16,25 @@
 
 package org.bremersee.peregrinus.geo.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.geojson.utils.GeometryUtils;
 import org.bremersee.nominatim.client.ReactiveNominatimClient;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.GeoCodingProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.ReverseGeoCodingProperties;
+import org.bremersee.peregrinus.content.model.Wpt;
 import org.bremersee.peregrinus.geo.mapper.google.GoogleMapper;
 import org.bremersee.peregrinus.geo.mapper.google.GoogleMapperImpl;
 import org.bremersee.peregrinus.geo.mapper.nominatim.NominatimMapper;
@@ -26,15 +44,28 @@ import org.bremersee.peregrinus.geo.mapper.tomtom.TomTomMapperImpl;
 import org.bremersee.peregrinus.geo.model.GeoCodingQueryRequest;
 import org.bremersee.peregrinus.geo.model.GeoCodingResult;
 import org.bremersee.peregrinus.geo.model.GeoProvider;
+import org.bremersee.peregrinus.geo.model.ReverseGeoCodingRequest;
+import org.bremersee.peregrinus.geo.model.ReverseGeoCodingResult;
 import org.bremersee.tomtom.client.ReactiveGeocodingClient;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Point;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 /**
+ * Asks the requested geo provider and falls back to the next available provider, if it fails,
+ * is rate limited or its circuit is open.
+ *
  * @author Christian Bremer
  */
 @Component
+@Slf4j
 public class GeoCoderImpl implements GeoCoder {
 
   private NominatimMapper nominatimMapper = new NominatimMapperImpl();
@@ -49,13 +80,53 @@ public class GeoCoderImpl implements GeoCoder {
 
   private org.bremersee.google.maps.client.ReactiveGeocodingClient googleGeocodingService;
 
+  private GeoCodingCache geoCodingCache;
+
+  private ReverseGeoCodingCache reverseGeoCodingCache;
+
+  private GeoCodingProperties properties;
+
+  private ReverseGeoCodingProperties reverseProperties;
+
+  private Map<GeoProvider, GeoProviderGuard> guards = new EnumMap<>(GeoProvider.class);
+
   @Autowired
   public GeoCoderImpl(ReactiveNominatimClient nominatimService,
       ReactiveGeocodingClient tomTomGeocodingService,
-      org.bremersee.google.maps.client.ReactiveGeocodingClient googleGeocodingService) {
+      org.bremersee.google.maps.client.ReactiveGeocodingClient googleGeocodingService,
+      GeoCodingCache geoCodingCache,
+      ReverseGeoCodingCache reverseGeoCodingCache,
+      PeregrinusProperties peregrinusProperties) {
     this.nominatimService = nominatimService;
     this.tomTomGeocodingService = tomTomGeocodingService;
     this.googleGeocodingService = googleGeocodingService;
+    this.geoCodingCache = geoCodingCache;
+    this.reverseGeoCodingCache = reverseGeoCodingCache;
+    this.properties = peregrinusProperties.getGeoCoding();
+    this.reverseProperties = peregrinusProperties.getReverseGeoCoding();
+    for (final GeoProvider geoProvider : GeoProvider.values()) {
+      if (isAvailable(geoProvider, peregrinusProperties)) {
+        guards.put(geoProvider, new GeoProviderGuard(
+            geoProvider, properties.getGuard(geoProvider), properties.getTimeout()));
+      }
+    }
+  }
+
+  private static boolean isAvailable(
+      final GeoProvider geoProvider,
+      final PeregrinusProperties peregrinusProperties) {
+
+    if (!geoProvider.isGeoCodingAvailable()) {
+      return false;
+    }
+    switch (geoProvider) {
+      case GOOGLE:
+        return StringUtils.hasText(peregrinusProperties.getGoogleKey());
+      case TOMTOM:
+        return StringUtils.hasText(peregrinusProperties.getTomTomKey());
+      default:
+        return true;
+    }
   }
 
   @Override
@@ -65,6 +136,257 @@ public class GeoCoderImpl implements GeoCoder {
         ? request.getGeoProvider()
         : GeoProvider.NOMINATIM;
 
+    return geoCodingCache.get(request, geoProvider, () -> geocode(request,
+        guards(geoProvider, GeoProvider::isGeoCodingAvailable)));
+  }
+
+  /**
+   * Gets the guards of the requested provider and of the fallback providers, that have the
+   * capability.
+   */
+  private List<GeoProviderGuard> guards(
+      final GeoProvider requestedProvider,
+      final Predicate<GeoProvider> capability) {
+
+    final Set<GeoProvider> geoProviders = new LinkedHashSet<>();
+    geoProviders.add(requestedProvider);
+    geoProviders.addAll(properties.getFallbackProviders());
+    return geoProviders
+        .stream()
+        .filter(capability)
+        .map(guards::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  private Flux<GeoCodingResult> geocode(
+      final GeoCodingQueryRequest request,
+      final List<GeoProviderGuard> chain) {
+
+    if (chain.isEmpty()) {
+      return Flux.empty();
+    }
+    final Mono<List<GeoCodingResult>> results;
+    if (properties.isMerge() && chain.size() > 1) {
+      results = Mono
+          .zip(
+              geocode(request, chain.get(0)).materialize(),
+              geocode(request, chain, 1).materialize())
+          .flatMap(signals -> merge(signals.getT1(), signals.getT2()));
+    } else if (properties.getHedgeDelay() != null && chain.size() > 1) {
+      results = Mono.first(
+          geocode(request, chain, 0),
+          Mono.delay(properties.getHedgeDelay()).then(geocode(request, chain, 1)));
+    } else {
+      results = geocode(request, chain, 0);
+    }
+    final int limit = request.getLimit() != null && request.getLimit() > 0
+        ? request.getLimit()
+        : Integer.MAX_VALUE;
+    return results
+        .map(this::removeDuplicates)
+        .flatMapIterable(list -> list.size() > limit ? list.subList(0, limit) : list);
+  }
+
+  /**
+   * Asks the provider at the given position of the chain and the next ones, if it fails.
+   */
+  private Mono<List<GeoCodingResult>> geocode(
+      final GeoCodingQueryRequest request,
+      final List<GeoProviderGuard> chain,
+      final int index) {
+
+    return geocode(request, chain.get(index))
+        .onErrorResume(error -> {
+          log.warn("msg=[Geocoding failed.] provider=[{}] error=[{}]",
+              chain.get(index).getGeoProvider(), error.toString());
+          return index + 1 < chain.size()
+              ? geocode(request, chain, index + 1)
+              : Mono.error(error);
+        });
+  }
+
+  /**
+   * Merges the results of both branches. A failed branch is ignored, if the other one succeeds;
+   * if both fail, the error is propagated, so that an outage is not cached as 'no results'.
+   */
+  private static Mono<List<GeoCodingResult>> merge(
+      final Signal<List<GeoCodingResult>> first,
+      final Signal<List<GeoCodingResult>> second) {
+
+    if (first.isOnError() && second.isOnError()) {
+      final Throwable error = first.getThrowable();
+      if (error != second.getThrowable()) {
+        error.addSuppressed(second.getThrowable());
+      }
+      return Mono.error(error);
+    }
+    final List<GeoCodingResult> merged = new ArrayList<>();
+    for (final Signal<List<GeoCodingResult>> signal : Arrays.asList(first, second)) {
+      if (signal.isOnError()) {
+        log.warn("msg=[Geocoding failed, merging the results of the other provider only.] "
+            + "error=[{}]", signal.getThrowable().toString());
+      } else if (signal.hasValue()) {
+        merged.addAll(signal.get());
+      }
+    }
+    return Mono.just(merged);
+  }
+
+  private Mono<List<GeoCodingResult>> geocode(
+      final GeoCodingQueryRequest request,
+      final GeoProviderGuard guard) {
+    return guard.execute(() -> geocode(request, guard.getGeoProvider()).collectList());
+  }
+
+  /**
+   * Removes results, whose position is next to the position of a previous result.
+   */
+  private List<GeoCodingResult> removeDuplicates(final List<GeoCodingResult> results) {
+    final List<GeoCodingResult> distinct = new ArrayList<>(results.size());
+    for (final GeoCodingResult result : results) {
+      final boolean duplicate = distinct
+          .stream()
+          .anyMatch(other -> Math.abs(other.getPosition().getX() - result.getPosition().getX())
+              <= properties.getMergeTolerance()
+              && Math.abs(other.getPosition().getY() - result.getPosition().getY())
+              <= properties.getMergeTolerance());
+      if (!duplicate) {
+        distinct.add(result);
+      }
+    }
+    return distinct;
+  }
+
+  @Override
+  public Flux<ReverseGeoCodingResult> reverseGeocode(final ReverseGeoCodingRequest request) {
+
+    final GeoProvider geoProvider = request.getGeoProvider() != null
+        ? request.getGeoProvider()
+        : GeoProvider.NOMINATIM;
+    final List<GeoProviderGuard> chain = guards(
+        geoProvider, GeoProvider::isReverseGeoCodingAvailable);
+    final List<Point> positions = request.getPositions()
+        .stream()
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+    final Set<Coordinate> cells = positions
+        .stream()
+        .map(this::snapToGrid)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+    return Flux.fromIterable(cells)
+        .flatMap(cell -> {
+          final Point position = GeometryUtils.createPointWGS84(cell.y, cell.x);
+          return reverseGeoCodingCache
+              .get(position, request.getLanguage(), geoProvider,
+                  () -> reverseGeocode(position, request.getLanguage(), chain, 0))
+              .map(result -> Tuples.of(cell, result))
+              .onErrorResume(error -> {
+                log.warn("msg=[Reverse geocoding failed.] position=[{}] error=[{}]",
+                    position, error.toString());
+                return Mono.empty();
+              });
+        }, Math.max(1, reverseProperties.getMaxConcurrency()))
+        .collectMap(Tuple2::getT1, Tuple2::getT2)
+        .flatMapMany(results -> Flux.fromIterable(positions)
+            .map(position -> new ReverseGeoCodingResult(
+                position, results.get(snapToGrid(position)))));
+  }
+
+  private Coordinate snapToGrid(final Point position) {
+    final double gridSize = reverseProperties.getGridSize();
+    if (gridSize <= 0.) {
+      return new Coordinate(position.getX(), position.getY());
+    }
+    return new Coordinate(
+        Math.round(position.getX() / gridSize) * gridSize,
+        Math.round(position.getY() / gridSize) * gridSize);
+  }
+
+  /**
+   * Asks the provider at the given position of the chain and the next ones, if it fails.
+   */
+  private Mono<GeoCodingResult> reverseGeocode(
+      final Point position,
+      final Locale language,
+      final List<GeoProviderGuard> chain,
+      final int index) {
+
+    if (index >= chain.size()) {
+      return Mono.empty();
+    }
+    final GeoProviderGuard guard = chain.get(index);
+    return guard
+        .execute(() -> reverseGeocode(position, language, guard.getGeoProvider()).collectList())
+        .flatMap(results -> Mono.justOrEmpty(results.stream().findFirst()))
+        .onErrorResume(error -> {
+          log.warn("msg=[Reverse geocoding failed.] provider=[{}] error=[{}]",
+              guard.getGeoProvider(), error.toString());
+          return index + 1 < chain.size()
+              ? reverseGeocode(position, language, chain, index + 1)
+              : Mono.error(error);
+        });
+  }
+
+  private Flux<GeoCodingResult> reverseGeocode(
+      final Point position,
+      final Locale language,
+      final GeoProvider geoProvider) {
+
+    switch (geoProvider) {
+
+      case TOMTOM:
+        return tomTomGeocodingService
+            .reverseGeocode(tomTomMapper.mapToReverseGeocodeRequest(position, language))
+            .flatMapIterable(tomTomMapper::mapToGeoCodingResults);
+
+      default:
+        return nominatimService
+            .reverseGeocode(nominatimMapper.mapToReverseSearchRequest(position, language))
+            .map(nominatimMapper::mapToGeoCodingResult)
+            .flux();
+    }
+  }
+
+  @Override
+  public Flux<Wpt> setMissingAddresses(
+      final Collection<Wpt> wpts,
+      final GeoProvider geoProvider,
+      final Locale language) {
+
+    final List<Wpt> wptsWithoutAddress = wpts
+        .stream()
+        .filter(wpt -> wpt.getGeometry() != null
+            && wpt.getProperties() != null
+            && wpt.getProperties().getAddress() == null)
+        .collect(Collectors.toList());
+    if (wptsWithoutAddress.isEmpty()) {
+      return Flux.fromIterable(wpts);
+    }
+    final ReverseGeoCodingRequest request = new ReverseGeoCodingRequest();
+    request.setGeoProvider(geoProvider);
+    request.setLanguage(language);
+    request.setPositions(wptsWithoutAddress
+        .stream()
+        .map(Wpt::getGeometry)
+        .collect(Collectors.toList()));
+    return reverseGeocode(request)
+        .collectList()
+        .flatMapMany(results -> {
+          for (int i = 0; i < results.size(); i++) {
+            final GeoCodingResult result = results.get(i).getResult();
+            if (result != null && result.getAddress() != null) {
+              wptsWithoutAddress.get(i).getProperties().setAddress(result.getAddress());
+            }
+          }
+          return Flux.fromIterable(wpts);
+        });
+  }
+
+  private Flux<GeoCodingResult> geocode(
+      final GeoCodingQueryRequest request,
+      final GeoProvider geoProvider) {
+
     switch (geoProvider) {
 
       case GOOGLE:
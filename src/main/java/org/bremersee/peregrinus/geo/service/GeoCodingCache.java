@@ -0,0 +1,238 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.GeoCodingCacheProperties;
+import org.bremersee.peregrinus.geo.model.GeoCodingCacheEntry;
+import org.bremersee.peregrinus.geo.model.GeoCodingQueryRequest;
+import org.bremersee.peregrinus.geo.model.GeoCodingResult;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caches the results of geocoding requests in memory and optionally in the database. The cache
+ * key is the normalized request. Empty results are cached with a shorter time to live.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class GeoCodingCache {
+
+  private final GeoCodingCacheProperties properties;
+
+  private final ReactiveMongoOperations mongoOperations;
+
+  private final Cache<String, GeoCodingCacheEntry> cache;
+
+  private final Counter hits;
+
+  private final Counter negativeHits;
+
+  private final Counter persistentHits;
+
+  private final Counter misses;
+
+  public GeoCodingCache(
+      PeregrinusProperties peregrinusProperties,
+      ReactiveMongoOperations mongoOperations,
+      MeterRegistry meterRegistry) {
+
+    this.properties = peregrinusProperties.getGeoCodingCache();
+    this.mongoOperations = mongoOperations;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(properties.getMaximumSize())
+        .expireAfter(new Expiry<String, GeoCodingCacheEntry>() {
+          @Override
+          public long expireAfterCreate(
+              String key, GeoCodingCacheEntry value, long currentTime) {
+            return nanosUntil(value.getExpiresAt());
+          }
+
+          @Override
+          public long expireAfterUpdate(
+              String key, GeoCodingCacheEntry value, long currentTime, long currentDuration) {
+            return nanosUntil(value.getExpiresAt());
+          }
+
+          @Override
+          public long expireAfterRead(
+              String key, GeoCodingCacheEntry value, long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .build();
+    this.hits = meterRegistry.counter("peregrinus.geocoding.cache", "result", "hit");
+    this.negativeHits = meterRegistry
+        .counter("peregrinus.geocoding.cache", "result", "negative-hit");
+    this.persistentHits = meterRegistry
+        .counter("peregrinus.geocoding.cache", "result", "persistent-hit");
+    this.misses = meterRegistry.counter("peregrinus.geocoding.cache", "result", "miss");
+    meterRegistry.gauge("peregrinus.geocoding.cache.size", cache, Cache::estimatedSize);
+  }
+
+  private static long nanosUntil(final Instant expiresAt) {
+    return Math.max(0L, Duration.between(Instant.now(), expiresAt).toNanos());
+  }
+
+  /**
+   * Gets the cached results of the request or loads and caches them.
+   *
+   * @param request     the geocoding request
+   * @param geoProvider the provider that answers the request
+   * @param loader      loads the results
+   * @return the results
+   */
+  public Flux<GeoCodingResult> get(
+      final GeoCodingQueryRequest request,
+      final GeoProvider geoProvider,
+      final Supplier<Flux<GeoCodingResult>> loader) {
+
+    if (!properties.isEnabled()) {
+      return loader.get();
+    }
+    final String key = buildKey(request, geoProvider);
+    final GeoCodingCacheEntry cached = cache.getIfPresent(key);
+    if (cached != null) {
+      if (cached.getResults().isEmpty()) {
+        negativeHits.increment();
+      } else {
+        hits.increment();
+      }
+      return Flux.fromIterable(cached.getResults());
+    }
+    return findPersistent(key)
+        .doOnNext(entry -> {
+          persistentHits.increment();
+          cache.put(key, entry);
+        })
+        .switchIfEmpty(Mono.defer(() -> {
+          misses.increment();
+          return loader.get()
+              .collectList()
+              .map(results -> new GeoCodingCacheEntry(
+                  key,
+                  geoProvider,
+                  results,
+                  Instant.now().plus(results.isEmpty()
+                      ? properties.getNegativeTimeToLive()
+                      : properties.getTimeToLive(geoProvider))))
+              .doOnNext(entry -> cache.put(key, entry))
+              .flatMap(this::persist);
+        }))
+        .flatMapIterable(GeoCodingCacheEntry::getResults);
+  }
+
+  private Mono<GeoCodingCacheEntry> findPersistent(final String key) {
+    if (!properties.isPersistent()) {
+      return Mono.empty();
+    }
+    return mongoOperations
+        .findOne(
+            Query.query(new Criteria().andOperator(
+                Criteria.where("id").is(key),
+                Criteria.where("expiresAt").gt(Instant.now()))),
+            GeoCodingCacheEntry.class)
+        .onErrorResume(error -> {
+          log.warn("msg=[Reading geocoding cache entry failed.] key=[{}]", key, error);
+          return Mono.empty();
+        });
+  }
+
+  private Mono<GeoCodingCacheEntry> persist(final GeoCodingCacheEntry entry) {
+    if (!properties.isPersistent()) {
+      return Mono.just(entry);
+    }
+    return mongoOperations
+        .save(entry)
+        .onErrorResume(error -> {
+          log.warn("msg=[Saving geocoding cache entry failed.] entry=[{}]", entry, error);
+          return Mono.just(entry);
+        });
+  }
+
+  /**
+   * Builds the cache key of a request. The query is normalized (unicode, case and white spaces),
+   * the bounding box is rounded to two decimals.
+   *
+   * @param request     the request
+   * @param geoProvider the provider that answers the request
+   * @return the cache key
+   */
+  static String buildKey(final GeoCodingQueryRequest request, final GeoProvider geoProvider) {
+    final StringBuilder key = new StringBuilder()
+        .append(geoProvider)
+        .append('|')
+        .append(normalize(request.getQuery()))
+        .append('|')
+        .append(request.getLanguage() != null ? request.getLanguage().toLanguageTag() : "")
+        .append('|');
+    if (request.getCountries() != null) {
+      key.append(request.getCountries()
+          .stream()
+          .filter(Objects::nonNull)
+          .map(country -> StringUtils.hasText(country.getCountry())
+              ? country.getCountry()
+              : country.toString())
+          .map(country -> country.toUpperCase(Locale.ROOT))
+          .sorted()
+          .distinct()
+          .collect(Collectors.joining(",")));
+    }
+    key.append('|');
+    if (request.getBoundingBox() != null) {
+      for (final double value : request.toBoundingBox()) {
+        key.append(String.format(Locale.ROOT, "%.2f;", value));
+      }
+    }
+    return key
+        .append('|')
+        .append(request.getLimit())
+        .toString();
+  }
+
+  private static String normalize(final String query) {
+    if (query == null) {
+      return "";
+    }
+    return Normalizer.normalize(query, Normalizer.Form.NFKC)
+        .trim()
+        .replaceAll("\\s+", " ")
+        .toLowerCase(Locale.ROOT);
+  }
+
+}
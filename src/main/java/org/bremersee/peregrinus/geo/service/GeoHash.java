@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.service;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Encodes positions as geohash.
+ *
+ * @author Christian Bremer
+ */
+abstract class GeoHash {
+
+  private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+  private static final double EARTH_RADIUS = 6371008.8;
+
+  private GeoHash() {
+  }
+
+  /**
+   * Encodes the position.
+   *
+   * @param latitude  the latitude
+   * @param longitude the longitude
+   * @param precision the number of characters of the geohash
+   * @return the geohash
+   */
+  static String encode(final double latitude, final double longitude, final int precision) {
+    final StringBuilder hash = new StringBuilder(precision);
+    double minLat = -90.0;
+    double maxLat = 90.0;
+    double minLon = -180.0;
+    double maxLon = 180.0;
+    boolean even = true;
+    int bit = 0;
+    int ch = 0;
+    while (hash.length() < precision) {
+      if (even) {
+        final double mid = (minLon + maxLon) / 2.0;
+        if (longitude >= mid) {
+          ch = (ch << 1) | 1;
+          minLon = mid;
+        } else {
+          ch = ch << 1;
+          maxLon = mid;
+        }
+      } else {
+        final double mid = (minLat + maxLat) / 2.0;
+        if (latitude >= mid) {
+          ch = (ch << 1) | 1;
+          minLat = mid;
+        } else {
+          ch = ch << 1;
+          maxLat = mid;
+        }
+      }
+      even = !even;
+      if (++bit == 5) {
+        hash.append(BASE32.charAt(ch));
+        bit = 0;
+        ch = 0;
+      }
+    }
+    return hash.toString();
+  }
+
+  /**
+   * Gets the geohash of the cell of the position and of the eight surrounding cells.
+   *
+   * @param latitude  the latitude
+   * @param longitude the longitude
+   * @param precision the number of characters of the geohash
+   * @return the geohashes
+   */
+  static Set<String> encodeWithNeighbours(
+      final double latitude,
+      final double longitude,
+      final int precision) {
+
+    final double height = 180.0 / Math.pow(2, (5 * precision) / 2);
+    final double width = 360.0 / Math.pow(2, (5 * precision + 1) / 2);
+    final Set<String> hashes = new LinkedHashSet<>(9);
+    hashes.add(encode(latitude, longitude, precision));
+    for (int dy = -1; dy <= 1; dy++) {
+      for (int dx = -1; dx <= 1; dx++) {
+        final double lat = Math.max(-90.0, Math.min(90.0, latitude + dy * height));
+        double lon = longitude + dx * width;
+        if (lon < -180.0) {
+          lon += 360.0;
+        } else if (lon >= 180.0) {
+          lon -= 360.0;
+        }
+        hashes.add(encode(lat, lon, precision));
+      }
+    }
+    return hashes;
+  }
+
+  /**
+   * Calculates the great circle distance of two positions.
+   *
+   * @return the distance in meters
+   */
+  static double distance(
+      final double latitude1,
+      final double longitude1,
+      final double latitude2,
+      final double longitude2) {
+
+    final double dLat = Math.toRadians(latitude2 - latitude1);
+    final double dLon = Math.toRadians(longitude2 - longitude1);
+    final double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+        + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+        * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.service;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.peregrinus.config.PeregrinusProperties.GeoProviderGuardProperties;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Protects a provider with a token bucket rate limit, a timeout and a circuit breaker.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+class GeoProviderGuard {
+
+  private final GeoProvider geoProvider;
+
+  private final long nanosPerPermit;
+
+  private final double burst;
+
+  private final long maxWaitNanos;
+
+  private final int failureThreshold;
+
+  private final long openNanos;
+
+  private final Duration timeout;
+
+  private double permits;
+
+  private long refilledAt;
+
+  private int failures;
+
+  private long openUntil;
+
+  private boolean trialRunning;
+
+  GeoProviderGuard(
+      final GeoProvider geoProvider,
+      final GeoProviderGuardProperties properties,
+      final Duration timeout) {
+    this.geoProvider = geoProvider;
+    this.nanosPerPermit = (long) (1_000_000_000.0
+        / Math.max(properties.getPermitsPerSecond(), 0.001));
+    this.burst = Math.max(properties.getBurst(), 1);
+    this.maxWaitNanos = properties.getMaxWait().toNanos();
+    this.failureThreshold = Math.max(properties.getFailureThreshold(), 1);
+    this.openNanos = properties.getOpenDuration().toNanos();
+    this.timeout = timeout;
+    this.permits = burst;
+    this.refilledAt = System.nanoTime();
+  }
+
+  GeoProvider getGeoProvider() {
+    return geoProvider;
+  }
+
+  /**
+   * Executes the call, if the circuit is not open and a permit is available in time.
+   *
+   * @param call the call
+   * @param <T>  the result type
+   * @return the result or a {@link GeoProviderUnavailableException}
+   */
+  <T> Mono<T> execute(final Supplier<Mono<T>> call) {
+    return Mono.defer(() -> {
+      final long now = System.nanoTime();
+      if (!allowRequest(now)) {
+        return Mono.error(new GeoProviderUnavailableException(geoProvider, "circuit is open"));
+      }
+      final long waitNanos = reservePermit(now);
+      if (waitNanos < 0L) {
+        onCancel();
+        return Mono.error(new GeoProviderUnavailableException(geoProvider, "rate limit"));
+      }
+      final Mono<T> result = Mono.defer(call).timeout(timeout);
+      // the cancel handling must include the delay, otherwise a trial request that is cancelled
+      // while it is waiting for its permit would keep the circuit half open forever
+      return (waitNanos == 0L ? result : Mono.delay(Duration.ofNanos(waitNanos)).then(result))
+          .doOnSuccess(value -> onSuccess())
+          .doOnError(this::onError)
+          .doFinally(signalType -> {
+            if (signalType == SignalType.CANCEL) {
+              onCancel();
+            }
+          });
+    });
+  }
+
+  private synchronized boolean allowRequest(final long now) {
+    if (failures < failureThreshold) {
+      return true;
+    }
+    if (now - openUntil < 0L || trialRunning) {
+      return false;
+    }
+    trialRunning = true; // half open: one trial request
+    return true;
+  }
+
+  /**
+   * Takes a permit from the bucket. If the bucket is empty, the next permit is reserved.
+   *
+   * @param now the current nano time
+   * @return the nanos to wait for the permit or {@code -1}, if it would take too long
+   */
+  private synchronized long reservePermit(final long now) {
+    permits = Math.min(burst, permits + (double) (now - refilledAt) / nanosPerPermit);
+    refilledAt = now;
+    if (permits >= 1.0) {
+      permits -= 1.0;
+      return 0L;
+    }
+    final long waitNanos = (long) ((1.0 - permits) * nanosPerPermit);
+    if (waitNanos > maxWaitNanos) {
+      return -1L;
+    }
+    permits -= 1.0;
+    return waitNanos;
+  }
+
+  private synchronized void onSuccess() {
+    failures = 0;
+    trialRunning = false;
+  }
+
+  private synchronized void onError(final Throwable error) {
+    failures++;
+    trialRunning = false;
+    if (failures >= failureThreshold) {
+      openUntil = System.nanoTime() + openNanos;
+      log.warn("msg=[Circuit of geo provider is open.] provider=[{}] failures=[{}] error=[{}]",
+          geoProvider, failures, error.toString());
+    }
+  }
+
+  private synchronized void onCancel() {
+    trialRunning = false;
+  }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.service;
+
+import lombok.Getter;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
+
+/**
+ * Signals that a geo provider is not asked because of its rate limit or its open circuit.
+ *
+ * @author Christian Bremer
+ */
+public class GeoProviderUnavailableException extends RuntimeException {
+
+  @Getter
+  private final GeoProvider geoProvider;
+
+  public GeoProviderUnavailableException(GeoProvider geoProvider, String reason) {
+    super("Geo provider " + geoProvider + " is not available: " + reason);
+    this.geoProvider = geoProvider;
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Supplier;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.ReverseGeoCodingProperties;
+import org.bremersee.peregrinus.geo.model.GeoCodingResult;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
+import org.bremersee.peregrinus.geo.model.ReverseGeoCodingResult;
+import org.locationtech.jts.geom.Point;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caches the results of reverse geocoding requests by the geohash of the requested position. A
+ * cached result is used for every position within the configured tolerance of the position it
+ * was looked up for, even if it lies in a neighbouring cell.
+ *
+ * @author Christian Bremer
+ */
+@Component
+public class ReverseGeoCodingCache {
+
+  private final ReverseGeoCodingProperties properties;
+
+  private final Cache<String, List<ReverseGeoCodingResult>> cache;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  public ReverseGeoCodingCache(
+      PeregrinusProperties peregrinusProperties,
+      MeterRegistry meterRegistry) {
+
+    this.properties = peregrinusProperties.getReverseGeoCoding();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(properties.getMaximumSize())
+        .expireAfterWrite(properties.getTimeToLive())
+        .build();
+    this.hits = meterRegistry.counter("peregrinus.reverse-geocoding.cache", "result", "hit");
+    this.misses = meterRegistry.counter("peregrinus.reverse-geocoding.cache", "result", "miss");
+    meterRegistry.gauge("peregrinus.reverse-geocoding.cache.size", cache, Cache::estimatedSize);
+  }
+
+  /**
+   * Gets the cached result of the position or loads and caches it.
+   *
+   * @param position    the position
+   * @param language    the preferred language (can be {@code null})
+   * @param geoProvider the requested provider
+   * @param loader      loads the result
+   * @return the result (is empty, if there is no place at the position)
+   */
+  public Mono<GeoCodingResult> get(
+      final Point position,
+      final Locale language,
+      final GeoProvider geoProvider,
+      final Supplier<Mono<GeoCodingResult>> loader) {
+
+    final String prefix = geoProvider + ":" + (language != null ? language.toLanguageTag() : "")
+        + ":";
+    final Optional<ReverseGeoCodingResult> cached = find(prefix, position);
+    if (cached.isPresent()) {
+      hits.increment();
+      return Mono.justOrEmpty(cached.get().getResult());
+    }
+    misses.increment();
+    final String key = prefix
+        + GeoHash.encode(position.getY(), position.getX(), properties.getGeoHashPrecision());
+    return loader.get()
+        .map(Optional::of)
+        .defaultIfEmpty(Optional.empty())
+        .doOnNext(result -> put(key, new ReverseGeoCodingResult(position, result.orElse(null))))
+        .flatMap(Mono::justOrEmpty);
+  }
+
+  private Optional<ReverseGeoCodingResult> find(final String prefix, final Point position) {
+    ReverseGeoCodingResult nearest = null;
+    double nearestDistance = properties.getTolerance();
+    for (final String hash : GeoHash.encodeWithNeighbours(
+        position.getY(), position.getX(), properties.getGeoHashPrecision())) {
+      final List<ReverseGeoCodingResult> entries = cache.getIfPresent(prefix + hash);
+      if (entries == null) {
+        continue;
+      }
+      for (final ReverseGeoCodingResult entry : entries) {
+        final double distance = GeoHash.distance(
+            position.getY(), position.getX(),
+            entry.getPosition().getY(), entry.getPosition().getX());
+        if (distance <= nearestDistance) {
+          nearest = entry;
+          nearestDistance = distance;
+        }
+      }
+    }
+    return Optional.ofNullable(nearest);
+  }
+
+  private void put(final String key, final ReverseGeoCodingResult entry) {
+    cache.asMap().compute(key, (k, entries) -> {
+      final List<ReverseGeoCodingResult> newEntries = entries != null
+          ? new ArrayList<>(entries)
+          : new ArrayList<>(1);
+      newEntries.add(entry);
+      return Collections.unmodifiableList(newEntries);
+    });
+  }
+
+}
@@ -17,15 +17,43 @@
 package org.bremersee.peregrinus.geo.service;
 
 import java.util.List;
-import org.bremersee.peregrinus.geo.model.AbstractRteCalculationProperties;
+import javax.validation.constraints.NotNull;
 import org.bremersee.peregrinus.content.model.Rte;
-import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.bremersee.peregrinus.geo.model.AbstractRteCalculationProperties;
+import org.locationtech.jts.geom.Point;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Mono;
 
 /**
  * @author Christian Bremer
  */
+@Validated
 public interface RteCalculator {
 
-  Rte calculateRoute(List<GeoJsonPoint> locations, AbstractRteCalculationProperties properties);
+  /**
+   * Calculates a route along the locations.
+   *
+   * @param locations  the start, the via points and the destination
+   * @param properties the calculation properties
+   * @return the route (one leg between every two locations)
+   */
+  Mono<Rte> calculateRte(
+      @NotNull List<Point> locations,
+      @NotNull AbstractRteCalculationProperties properties);
+
+  /**
+   * Recalculates the route after its locations were changed, for example after a via point was
+   * moved. The legs, whose start and end didn't change, are taken from the route, only the other
+   * ones are calculated again.
+   *
+   * @param rte        the route, whose geometry and segments will be replaced
+   * @param locations  the new start, via points and destination
+   * @param properties the calculation properties
+   * @return the route
+   */
+  Mono<Rte> recalculateRte(
+      @NotNull Rte rte,
+      @NotNull List<Point> locations,
+      @NotNull AbstractRteCalculationProperties properties);
 
 }
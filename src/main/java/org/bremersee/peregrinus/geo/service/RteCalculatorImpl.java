@@ -0,0 +1,334 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.geo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.exception.ServiceException;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.RteCalculationCacheProperties;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.RteProperties;
+import org.bremersee.peregrinus.content.model.RteSegment;
+import org.bremersee.peregrinus.content.model.RteSegmentProperties;
+import org.bremersee.peregrinus.geo.mapper.tomtom.TomTomMapper;
+import org.bremersee.peregrinus.geo.mapper.tomtom.TomTomMapperImpl;
+import org.bremersee.peregrinus.geo.model.AbstractRteCalculationProperties;
+import org.bremersee.peregrinus.geo.model.TomTomRteCalculationProperties;
+import org.bremersee.tomtom.client.ReactiveRoutingClient;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.Point;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+/**
+ * Calculates routes with TomTom. The calculated routes are cached by their rounded locations and
+ * the calculation properties. Concurrent calculations of the same route share one request.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class RteCalculatorImpl implements RteCalculator {
+
+  private TomTomMapper tomTomMapper = new TomTomMapperImpl();
+
+  private final ReactiveRoutingClient tomTomRoutingService;
+
+  private final RteCalculationCacheProperties properties;
+
+  private final Cache<RteKey, Mono<Rte>> cache;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  public RteCalculatorImpl(
+      ReactiveRoutingClient tomTomRoutingService,
+      PeregrinusProperties peregrinusProperties,
+      MeterRegistry meterRegistry) {
+
+    this.tomTomRoutingService = tomTomRoutingService;
+    this.properties = peregrinusProperties.getRteCalculationCache();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(properties.getMaximumSize())
+        .expireAfterWrite(properties.getTimeToLive())
+        .build();
+    this.hits = meterRegistry.counter("peregrinus.rte-calculation.cache", "result", "hit");
+    this.misses = meterRegistry.counter("peregrinus.rte-calculation.cache", "result", "miss");
+  }
+
+  @Override
+  public Mono<Rte> calculateRte(
+      final List<Point> locations,
+      final AbstractRteCalculationProperties calculationProperties) {
+
+    if (locations.size() < 2) {
+      return Mono.error(ServiceException.badRequest(
+          "A route calculation needs at least two locations."));
+    }
+    if (!(calculationProperties instanceof TomTomRteCalculationProperties)) {
+      return Mono.error(ServiceException.badRequest(
+          "Route calculation is not supported by provider ["
+              + calculationProperties.getProvider() + "]."));
+    }
+    final TomTomRteCalculationProperties tomTomProperties
+        = (TomTomRteCalculationProperties) calculationProperties;
+    if (tomTomProperties.getAvoidVignette() != null
+        && tomTomProperties.getAllowVignette() != null) {
+      return Mono.error(ServiceException.badRequest(
+          "Avoid vignette and allow vignette must not be specified both."));
+    }
+    final RteKey key = new RteKey(round(locations), calculationProperties);
+    Mono<Rte> rte = cache.getIfPresent(key);
+    if (rte != null) {
+      hits.increment();
+    } else {
+      rte = cache.get(key, k -> {
+        misses.increment();
+        return loadRte(locations, tomTomProperties)
+            .doOnError(error -> cache.invalidate(k))
+            .cache();
+      });
+    }
+    return rte.map(cached -> buildRte(new Rte(), legs(cached), endSegment(cached)));
+  }
+
+  private Mono<Rte> loadRte(
+      final List<Point> locations,
+      final TomTomRteCalculationProperties calculationProperties) {
+
+    return Mono
+        .defer(() -> tomTomRoutingService
+            .calculateRoute(tomTomMapper.mapToRoutingRequest(locations, calculationProperties)))
+        .flatMap(response -> Mono.justOrEmpty(
+            response.getRoutes() != null && !response.getRoutes().isEmpty()
+                ? response.getRoutes().get(0)
+                : null))
+        .flatMap(route -> Mono.justOrEmpty(tomTomMapper.mapToRte(route, calculationProperties)))
+        .switchIfEmpty(Mono.error(ServiceException.badRequest(
+            "No route was found between the locations.")));
+  }
+
+  @Override
+  public Mono<Rte> recalculateRte(
+      final Rte rte,
+      final List<Point> locations,
+      final AbstractRteCalculationProperties calculationProperties) {
+
+    if (locations.size() < 2) {
+      return Mono.error(ServiceException.badRequest(
+          "A route calculation needs at least two locations."));
+    }
+    final List<Leg> previousLegs = legs(rte);
+    final Map<List<Coordinate>, Leg> reusableLegs = new HashMap<>();
+    for (int i = 0; i < previousLegs.size(); i++) {
+      final Leg leg = previousLegs.get(i);
+      final RteSegmentProperties segmentProperties = leg.getStart().getProperties();
+      if (segmentProperties != null
+          && calculationProperties.equals(segmentProperties.getCalculationProperties())) {
+        reusableLegs.put(
+            Arrays.asList(
+                round(leg.getStart().getPoint()),
+                round(i + 1 < previousLegs.size()
+                    ? previousLegs.get(i + 1).getStart().getPoint()
+                    : endSegment(rte).getPoint())),
+            leg);
+      }
+    }
+
+    final List<Coordinate> points = round(locations);
+    final Leg[] legs = new Leg[points.size() - 1];
+    for (int i = 0; i < legs.length; i++) {
+      legs[i] = reusableLegs.get(Arrays.asList(points.get(i), points.get(i + 1)));
+    }
+
+    // consecutive legs, that must be calculated again, are calculated with one request
+    final List<int[]> runs = new ArrayList<>();
+    int index = 0;
+    while (index < legs.length) {
+      if (legs[index] == null) {
+        final int start = index;
+        while (index < legs.length && legs[index] == null) {
+          index++;
+        }
+        runs.add(new int[]{start, index});
+      } else {
+        index++;
+      }
+    }
+    log.debug("msg=[Recalculating route.] legs=[{}] runs=[{}]", legs.length, runs.size());
+
+    final RteSegment previousEnd = endSegment(rte);
+    return Flux.fromIterable(runs)
+        .flatMap(run -> calculateRte(locations.subList(run[0], run[1] + 1), calculationProperties)
+            .map(calculated -> Tuples.of(run, calculated)))
+        .collectList()
+        .flatMap(calculatedRuns -> {
+          if (calculatedRuns.size() < runs.size()) {
+            return Mono.error(ServiceException.badRequest(
+                "No route was found between the locations."));
+          }
+          RteSegment end = legs[legs.length - 1] != null ? previousEnd : null;
+          for (final Tuple2<int[], Rte> calculatedRun : calculatedRuns) {
+            final int[] run = calculatedRun.getT1();
+            final List<Leg> calculatedLegs = legs(calculatedRun.getT2());
+            if (calculatedLegs.size() != run[1] - run[0]) {
+              return calculateRte(locations, calculationProperties)
+                  .map(calculated -> buildRte(rte, legs(calculated), endSegment(calculated)));
+            }
+            for (int i = run[0]; i < run[1]; i++) {
+              legs[i] = calculatedLegs.get(i - run[0]);
+            }
+            if (run[1] == legs.length) {
+              end = endSegment(calculatedRun.getT2());
+            }
+          }
+          return Mono.just(buildRte(rte, Arrays.asList(legs), end));
+        });
+  }
+
+  private List<Coordinate> round(final List<Point> locations) {
+    return locations
+        .stream()
+        .map(this::round)
+        .collect(Collectors.toList());
+  }
+
+  private Coordinate round(final Point location) {
+    if (location == null) {
+      return null;
+    }
+    return new Coordinate(
+        BigDecimal.valueOf(location.getX())
+            .setScale(properties.getScale(), RoundingMode.HALF_UP).doubleValue(),
+        BigDecimal.valueOf(location.getY())
+            .setScale(properties.getScale(), RoundingMode.HALF_UP).doubleValue());
+  }
+
+  /**
+   * Gets the legs of the route. The geometry of the route has one line and the properties have one
+   * segment per leg. The segment after the last leg marks the destination.
+   */
+  private static List<Leg> legs(final Rte rte) {
+    final List<Leg> legs = new ArrayList<>();
+    final MultiLineString geometry = rte.getGeometry();
+    final List<RteSegment> segments = rte.getProperties() != null
+        ? rte.getProperties().getRteSegments()
+        : null;
+    if (geometry == null || segments == null) {
+      return legs;
+    }
+    final int size = Math.min(geometry.getNumGeometries(), segments.size() - 1);
+    for (int i = 0; i < size; i++) {
+      legs.add(new Leg(segments.get(i), (LineString) geometry.getGeometryN(i)));
+    }
+    return legs;
+  }
+
+  private static RteSegment endSegment(final Rte rte) {
+    final List<RteSegment> segments = rte.getProperties() != null
+        ? rte.getProperties().getRteSegments()
+        : null;
+    return segments != null && !segments.isEmpty() ? segments.get(segments.size() - 1) : null;
+  }
+
+  private static Rte buildRte(final Rte rte, final List<Leg> legs, final RteSegment end) {
+    final List<RteSegment> segments = legs
+        .stream()
+        .map(leg -> copy(leg.getStart()))
+        .collect(Collectors.toList());
+    if (end != null) {
+      segments.add(copy(end));
+    }
+    if (rte.getProperties() == null) {
+      rte.setProperties(new RteProperties());
+    }
+    rte.getProperties().setRteSegments(segments);
+    rte.setGeometry(GeometryUtils.createMultiLineString(legs
+        .stream()
+        .map(Leg::getLine)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList())));
+    rte.setBbox(GeometryUtils.getBoundingBox(rte.getGeometry()));
+    return rte;
+  }
+
+  private static RteSegment copy(final RteSegment source) {
+    final RteSegment destination = new RteSegment();
+    destination.setPoint(source.getPoint());
+    final RteSegmentProperties properties = source.getProperties();
+    if (properties != null) {
+      final RteSegmentProperties copy = new RteSegmentProperties();
+      copy.setCalculationProperties(properties.getCalculationProperties());
+      copy.setName(properties.getName());
+      copy.setTime(properties.getTime());
+      copy.setLengthInMeters(properties.getLengthInMeters());
+      copy.setTravelTimeInSeconds(properties.getTravelTimeInSeconds());
+      copy.setTrafficDelayInSeconds(properties.getTrafficDelayInSeconds());
+      copy.setNoTrafficTravelTimeInSeconds(properties.getNoTrafficTravelTimeInSeconds());
+      copy.setHistoricTrafficTravelTimeInSeconds(
+          properties.getHistoricTrafficTravelTimeInSeconds());
+      copy.setLiveTrafficIncidentsTravelTimeInSeconds(
+          properties.getLiveTrafficIncidentsTravelTimeInSeconds());
+      destination.setProperties(copy);
+    }
+    return destination;
+  }
+
+  @Getter
+  @AllArgsConstructor
+  private static class Leg {
+
+    private RteSegment start;
+
+    private LineString line;
+
+  }
+
+  @EqualsAndHashCode
+  @AllArgsConstructor
+  private static class RteKey {
+
+    private List<Coordinate> locations;
+
+    private AbstractRteCalculationProperties calculationProperties;
+
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import reactor.core.publisher.Mono;
+
+/**
+ * Bulk operations that are not supported by the reactive mongo template.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+public abstract class MongoBulkUtils {
+
+  private static final int DUPLICATE_KEY = 11000;
+
+  private MongoBulkUtils() {
+  }
+
+  /**
+   * Inserts the given entities with one unordered bulk write, unless a document with the same
+   * unique key exists. Every entity is written as an upsert with {@code $setOnInsert}, so existing
+   * documents are never changed. Inserted documents start with version {@code 0}. Duplicate key
+   * errors of concurrent inserts are ignored.
+   *
+   * @param mongoOperations the mongo operations
+   * @param entities        the entities to insert
+   * @param keyFactory      creates the filter of the unique key of an entity
+   * @param <T>             the entity type
+   * @return the number of inserted documents
+   */
+  public static <T> Mono<Long> insertIfAbsent(
+      final ReactiveMongoOperations mongoOperations,
+      final Collection<? extends T> entities,
+      final Function<T, Document> keyFactory) {
+
+    if (entities == null || entities.isEmpty()) {
+      return Mono.just(0L);
+    }
+    final String collectionName = mongoOperations
+        .getCollectionName(entities.iterator().next().getClass());
+    final List<WriteModel<Document>> writes = new ArrayList<>(entities.size());
+    for (final T entity : entities) {
+      final Document key = keyFactory.apply(entity);
+      final Document document = new Document();
+      mongoOperations.getConverter().write(entity, document);
+      document.remove("_id");
+      key.keySet().forEach(document::remove);
+      final MongoPersistentProperty versionProperty = mongoOperations.getConverter()
+          .getMappingContext()
+          .getRequiredPersistentEntity(entity.getClass())
+          .getVersionProperty();
+      if (versionProperty != null) {
+        document.put(versionProperty.getFieldName(), 0L);
+      }
+      writes.add(new UpdateOneModel<>(
+          key,
+          new Document("$setOnInsert", document),
+          new UpdateOptions().upsert(true)));
+    }
+    return Mono
+        .from(mongoOperations
+            .getCollection(collectionName)
+            .bulkWrite(writes, new BulkWriteOptions().ordered(false)))
+        .map(result -> (long) result.getUpserts().size())
+        .onErrorResume(MongoBulkWriteException.class, e -> {
+          if (!isDuplicateKeyErrorOnly(e)) {
+            return Mono.error(e);
+          }
+          log.debug("msg=[Ignoring duplicate keys of concurrent inserts.] collection=[{}]",
+              collectionName);
+          return Mono.just((long) e.getWriteResult().getUpserts().size());
+        });
+  }
+
+  private static boolean isDuplicateKeyErrorOnly(final MongoBulkWriteException exception) {
+    if (exception.getWriteConcernError() != null) {
+      return false;
+    }
+    for (final BulkWriteError error : exception.getWriteErrors()) {
+      if (error.getCode() != DUPLICATE_KEY) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
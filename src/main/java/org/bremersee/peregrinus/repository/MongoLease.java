@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.repository;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+/**
+ * A lease on a named lock document, so that a scheduled job runs on one instance of the service
+ * at a time. A lease expires, so that an instance, that stopped while holding it, does not block
+ * the job forever.
+ *
+ * @author Christian Bremer
+ */
+@Slf4j
+public class MongoLease {
+
+  private static final String COLLECTION_NAME = "lease";
+
+  private final ReactiveMongoOperations mongoOperations;
+
+  private final String name;
+
+  private final String holder;
+
+  /**
+   * Instantiates a new lease.
+   *
+   * @param mongoOperations the mongo operations
+   * @param name            the name of the lease
+   */
+  public MongoLease(final ReactiveMongoOperations mongoOperations, final String name) {
+    this.mongoOperations = mongoOperations;
+    this.name = name;
+    this.holder = UUID.randomUUID().toString();
+  }
+
+  /**
+   * Acquires the lease, if it is not held by another instance or if it is expired.
+   *
+   * @param duration the time after which the lease expires
+   * @return {@code true} if the lease was acquired, otherwise {@code false}
+   */
+  public Mono<Boolean> acquire(final Duration duration) {
+    final Date now = new Date();
+    final Query query = Query.query(Criteria
+        .where("_id").is(name)
+        .orOperator(
+            Criteria.where("expires").lte(now),
+            Criteria.where("holder").is(holder)));
+    final Update update = Update
+        .update("holder", holder)
+        .set("expires", new Date(now.getTime() + duration.toMillis()));
+    // if the lease is held by another instance, the upsert fails with a duplicate key
+    return mongoOperations
+        .upsert(query, update, COLLECTION_NAME)
+        .map(result -> true)
+        .onErrorResume(DuplicateKeyException.class, e -> {
+          log.debug("msg=[Lease is held by another instance.] name=[{}]", name);
+          return Mono.just(false);
+        });
+  }
+
+  /**
+   * Releases the lease, if it is held by this instance.
+   *
+   * @return empty mono
+   */
+  public Mono<Void> release() {
+    return mongoOperations
+        .updateFirst(
+            Query.query(Criteria.where("_id").is(name).and("holder").is(holder)),
+            Update.update("expires", new Date()),
+            COLLECTION_NAME)
+        .then();
+  }
+
+  /**
+   * Runs the job, if the lease can be acquired, and releases the lease afterwards.
+   *
+   * @param duration the time after which the lease expires, it should be longer than the job
+   *                 runs
+   * @param job      the job
+   * @param <T>      the result type
+   * @return the result of the job or empty mono, if the lease is held by another instance
+   */
+  public <T> Mono<T> runExclusively(final Duration duration, final Mono<T> job) {
+    return acquire(duration)
+        .filter(Boolean::booleanValue)
+        .flatMap(acquired -> job
+            .flatMap(result -> release().thenReturn(result))
+            .switchIfEmpty(release().then(Mono.<T>empty()))
+            .onErrorResume(e -> release().then(Mono.<T>error(e))));
+  }
+
+}
@@ -16,18 +16,22 @@
 
 package org.bremersee.peregrinus.security.access;
 
-import java.util.Collection;
 import java.util.Optional;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import org.bremersee.security.core.AuthorityConstants;
+import org.springframework.data.annotation.AccessType;
+import org.springframework.data.annotation.AccessType.Type;
 import org.springframework.data.annotation.TypeAlias;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.util.StringUtils;
 
 /**
+ * The access control is mapped with property access, so that the owner is passed to the
+ * authorization sets and becomes part of their principals.
+ *
  * @author Christian Bremer
  */
 @Getter
@@ -35,6 +39,7 @@ import org.springframework.util.StringUtils;
 @ToString
 @NoArgsConstructor
 @TypeAlias("AccessControl")
+@AccessType(Type.PROPERTY)
 public class AccessControl {
 
   @Indexed
@@ -52,7 +57,7 @@ public class AccessControl {
 
   public AccessControl(final AccessControl accessControl) {
     if (accessControl != null) {
-      owner = accessControl.getOwner();
+      setOwner(accessControl.getOwner());
       for (final String permission : PermissionConstants.ALL) {
         accessControl.findAuthorizationSet(permission)
             .ifPresent(authorizationSet -> findAuthorizationSet(permission)
@@ -65,6 +70,41 @@ public class AccessControl {
     }
   }
 
+  public void setOwner(String owner) {
+    this.owner = owner;
+    for (final String permission : PermissionConstants.ALL) {
+      findAuthorizationSet(permission).ifPresent(as -> as.setOwner(owner));
+    }
+  }
+
+  public void setAdministration(AuthorizationSet administration) {
+    this.administration = ownedBy(administration);
+  }
+
+  public void setCreate(AuthorizationSet create) {
+    this.create = ownedBy(create);
+  }
+
+  public void setDelete(AuthorizationSet delete) {
+    this.delete = ownedBy(delete);
+  }
+
+  public void setRead(AuthorizationSet read) {
+    this.read = ownedBy(read);
+  }
+
+  public void setWrite(AuthorizationSet write) {
+    this.write = ownedBy(write);
+  }
+
+  private AuthorizationSet ownedBy(AuthorizationSet authorizationSet) {
+    final AuthorizationSet as = authorizationSet != null
+        ? authorizationSet
+        : new AuthorizationSet();
+    as.setOwner(owner);
+    return as;
+  }
+
   public Optional<AuthorizationSet> findAuthorizationSet(Object permission) {
     final String permissionStr = String.valueOf(permission);
     switch (permissionStr) {
@@ -95,7 +135,7 @@ public class AccessControl {
 
   public AccessControl owner(String owner) {
     if (StringUtils.hasText(owner)) {
-      this.owner = owner;
+      setOwner(owner);
     }
     return addUser(owner, PermissionConstants.ALL);
   }
@@ -160,29 +200,4 @@ public class AccessControl {
     return this;
   }
 
-  public boolean hasPermission(
-      Object permission,
-      String user,
-      Collection<String> roles,
-      Collection<String> groups) {
-
-    if (permission == null) {
-      return false;
-    }
-    if (user != null && user.equals(getOwner())) {
-      return true;
-    }
-    final AuthorizationSet set = findAuthorizationSet(permission).orElse(new AuthorizationSet());
-    if (set.isGuest()) {
-      return true;
-    }
-    if (set.getUsers().contains(user)) {
-      return true;
-    }
-    if (roles != null && roles.stream().anyMatch(role -> set.getRoles().contains(role))) {
-      return true;
-    }
-    return groups != null && groups.stream().anyMatch(group -> set.getGroups().contains(group));
-  }
-
 }
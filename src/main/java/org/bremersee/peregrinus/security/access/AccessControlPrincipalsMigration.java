@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.security.access;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sets the principals of the access control of all nodes and features that were stored before the
+ * principals were introduced.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class AccessControlPrincipalsMigration {
+
+  private ReactiveMongoOperations mongoOperations;
+
+  public AccessControlPrincipalsMigration(
+      ReactiveMongoOperations mongoOperations) {
+    this.mongoOperations = mongoOperations;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    Flux
+        .concat(
+            migrate("directory", "accessControl"),
+            migrate("feature", "properties.accessControl"))
+        .reduce(0L, Long::sum)
+        .subscribe(
+            count -> {
+              if (count > 0) {
+                log.info("msg=[Principals of access controls migrated.] documents=[{}]", count);
+              }
+            },
+            error -> log.error("msg=[Migration of access control principals failed.]", error));
+  }
+
+  /**
+   * Sets the principals of every authorization set of the documents without principals.
+   *
+   * @param collectionName the collection name
+   * @param propertyName   the name of the access control property
+   * @return the number of migrated documents
+   */
+  public Mono<Long> migrate(final String collectionName, final String propertyName) {
+    final Query query = Query.query(new Criteria().andOperator(
+        Criteria.where(propertyName).exists(true),
+        Criteria.where(propertyName + "." + PermissionConstants.READ + ".principals")
+            .exists(false)));
+    query.fields().include("_id").include(propertyName);
+    return mongoOperations
+        .find(query, Document.class, collectionName)
+        .flatMap(document -> migrate(document, collectionName, propertyName), 4)
+        .count();
+  }
+
+  private Mono<Document> migrate(
+      final Document document,
+      final String collectionName,
+      final String propertyName) {
+
+    final Document accessControl = embedded(document, propertyName);
+    if (accessControl == null) {
+      return Mono.empty();
+    }
+    final String owner = accessControl.getString("owner");
+    final Update update = new Update();
+    for (final String permission : PermissionConstants.ALL) {
+      final Document authorizationSet = accessControl.get(permission, Document.class);
+      final List<String> principals = new ArrayList<>(authorizationSet == null
+          ? AuthorizationSet.principals(false, owner, null, null, null)
+          : AuthorizationSet.principals(
+              Boolean.TRUE.equals(authorizationSet.getBoolean("guest")),
+              owner,
+              strings(authorizationSet.get("users")),
+              strings(authorizationSet.get("roles")),
+              strings(authorizationSet.get("groups"))));
+      update.set(propertyName + "." + permission + ".principals", principals);
+    }
+    return mongoOperations
+        .updateFirst(
+            Query.query(Criteria.where("_id").is(document.get("_id"))),
+            update,
+            collectionName)
+        .thenReturn(document);
+  }
+
+  private static Document embedded(final Document document, final String propertyName) {
+    Object value = document;
+    for (final String key : propertyName.split("\\.")) {
+      if (!(value instanceof Document)) {
+        return null;
+      }
+      value = ((Document) value).get(key);
+    }
+    return value instanceof Document ? (Document) value : null;
+  }
+
+  private static Collection<String> strings(final Object values) {
+    final List<String> strings = new ArrayList<>();
+    if (values instanceof Collection) {
+      for (final Object value : (Collection<?>) values) {
+        if (value != null) {
+          strings.add(String.valueOf(value));
+        }
+      }
+    }
+    return strings;
+  }
+
+}
@@ -16,35 +16,120 @@
 
 package org.bremersee.peregrinus.security.access;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.springframework.data.annotation.AccessType;
+import org.springframework.data.annotation.AccessType.Type;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.annotation.TypeAlias;
 import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.util.StringUtils;
 
 /**
  * @author Christian Bremer
  */
 @Getter
 @Setter
-@ToString
+@ToString(exclude = {"owner"})
 @NoArgsConstructor
 @TypeAlias("AuthorizationSet")
 public class AuthorizationSet {
 
-  @Indexed
+  public static final String GUEST_PRINCIPAL = "*";
+
+  private static final String USER_PREFIX = "u:";
+
+  private static final String ROLE_PREFIX = "r:";
+
+  private static final String GROUP_PREFIX = "g:";
+
   private boolean guest;
 
-  @Indexed
   private Set<String> users = new LinkedHashSet<>();
 
-  @Indexed
   private Set<String> roles = new LinkedHashSet<>();
 
-  @Indexed
   private Set<String> groups = new LinkedHashSet<>();
 
+  /**
+   * The owner of the access control, that has every permission. It is set by the access control.
+   */
+  @Transient
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.PACKAGE)
+  private String owner;
+
+  /**
+   * All principals of this set (guest, owner, users, roles and groups) in one indexed array, so
+   * that an access check is one {@code $in} query. It is calculated and never read.
+   */
+  @Indexed
+  @AccessType(Type.PROPERTY)
+  private Set<String> principals;
+
+  @JsonIgnore
+  public Set<String> getPrincipals() {
+    return principals(guest, owner, users, roles, groups);
+  }
+
+  @JsonIgnore
+  public void setPrincipals(Set<String> principals) {
+    // the principals are calculated
+  }
+
+  public static String userPrincipal(String user) {
+    return USER_PREFIX + user;
+  }
+
+  public static String rolePrincipal(String role) {
+    return ROLE_PREFIX + role;
+  }
+
+  public static String groupPrincipal(String group) {
+    return GROUP_PREFIX + group;
+  }
+
+  /**
+   * Builds the principals of an authorization set or of a caller.
+   *
+   * @param guest  the guest flag
+   * @param owner  the owner or the user
+   * @param users  the users
+   * @param roles  the roles
+   * @param groups the groups
+   * @return the principals
+   */
+  public static Set<String> principals(
+      boolean guest,
+      String owner,
+      Collection<String> users,
+      Collection<String> roles,
+      Collection<String> groups) {
+
+    final Set<String> principals = new LinkedHashSet<>();
+    if (guest) {
+      principals.add(GUEST_PRINCIPAL);
+    }
+    if (StringUtils.hasText(owner)) {
+      principals.add(userPrincipal(owner));
+    }
+    if (users != null) {
+      users.stream().filter(StringUtils::hasText).forEach(u -> principals.add(userPrincipal(u)));
+    }
+    if (roles != null) {
+      roles.stream().filter(StringUtils::hasText).forEach(r -> principals.add(rolePrincipal(r)));
+    }
+    if (groups != null) {
+      groups.stream().filter(StringUtils::hasText).forEach(g -> principals.add(groupPrincipal(g)));
+    }
+    return principals;
+  }
+
 }
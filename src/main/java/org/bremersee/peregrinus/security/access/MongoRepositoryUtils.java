@@ -16,12 +16,8 @@
 
 package org.bremersee.peregrinus.security.access;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javax.validation.constraints.NotNull;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.lang.Nullable;
@@ -34,18 +30,34 @@ import org.springframework.validation.annotation.Validated;
 @Validated
 public abstract class MongoRepositoryUtils {
 
+  private MongoRepositoryUtils() {
+  }
+
   @NotNull
-  public static List<Criteria> buildCriteriaList(
+  public static Criteria buildCriteria(
       @NotNull final String permission,
       final boolean includePublic,
       @Nullable final String userId,
       @Nullable final Collection<String> roles,
       @Nullable final Collection<String> groups) {
-    return buildCriteriaList(permission, includePublic, userId, roles, groups, null);
+    return buildCriteria(permission, includePublic, userId, roles, groups, null);
   }
 
+  /**
+   * Builds the criteria of an access check. The principals of the caller are looked up in the
+   * indexed principals of the authorization set of the permission.
+   *
+   * @param permission                the permission
+   * @param includePublic             specifies whether public entities are included
+   * @param userId                    the user id
+   * @param roles                     the roles of the user
+   * @param groups                    the groups of the user
+   * @param accessControlPropertyName the name of the access control property (default is
+   *                                  {@code accessControl})
+   * @return the criteria
+   */
   @NotNull
-  public static List<Criteria> buildCriteriaList(
+  public static Criteria buildCriteria(
       @NotNull final String permission,
       final boolean includePublic,
       @Nullable final String userId,
@@ -56,27 +68,9 @@ public abstract class MongoRepositoryUtils {
     final String propName = StringUtils.hasText(accessControlPropertyName)
         ? accessControlPropertyName
         : "accessControl";
-    final String path = propName + "." + permission;
-    final Set<String> roleSet = roles == null ? new HashSet<>() : new HashSet<>(roles);
-    final Set<String> groupSet = groups == null ? new HashSet<>() : new HashSet<>(groups);
-    final List<Criteria> criteriaList = new ArrayList<>();
-    if (includePublic) {
-      criteriaList.add(Criteria.where(path + ".guest").is(true));
-    }
-    if (StringUtils.hasText(userId)) {
-      criteriaList.add(Criteria.where(propName + ".owner").is(userId));
-      criteriaList.add(Criteria.where(path + ".users").all(userId));
-    }
-    criteriaList.addAll(roleSet
-        .stream()
-        .filter(StringUtils::hasText)
-        .map(role -> Criteria.where(path + ".roles").all(role))
-        .collect(Collectors.toList()));
-    criteriaList.addAll(groupSet
-        .stream()
-        .filter(StringUtils::hasText)
-        .map(group -> Criteria.where(path + ".groups").all(group))
-        .collect(Collectors.toList()));
-    return criteriaList;
+    final String path = propName + "." + permission + ".principals";
+    final Set<String> principals = AuthorizationSet
+        .principals(includePublic, userId, null, roles, groups);
+    return Criteria.where(path).in(principals);
   }
 }
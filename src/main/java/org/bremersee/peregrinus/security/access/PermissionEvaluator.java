@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.security.access;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.springframework.util.StringUtils;
+
+/**
+ * Evaluates the permissions of one caller against many access controls. The roles and groups of
+ * the caller are collected once per request, so that checking the nodes or features of a batch
+ * does not allocate anything.
+ *
+ * @author Christian Bremer
+ */
+public final class PermissionEvaluator {
+
+  private final String userId;
+
+  private final Set<String> roleSet;
+
+  private final Set<String> groupSet;
+
+  private final String[] roles;
+
+  private final String[] groups;
+
+  private PermissionEvaluator(
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+
+    this.userId = StringUtils.hasText(userId) ? userId : null;
+    this.roleSet = collect(roles);
+    this.groupSet = collect(groups);
+    this.roles = roleSet.toArray(new String[0]);
+    this.groups = groupSet.toArray(new String[0]);
+  }
+
+  /**
+   * Creates a permission evaluator for the given caller.
+   *
+   * @param userId the user id
+   * @param roles  the roles of the user
+   * @param groups the groups of the user
+   * @return the permission evaluator
+   */
+  public static PermissionEvaluator of(
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups) {
+    return new PermissionEvaluator(userId, roles, groups);
+  }
+
+  /**
+   * Gets the user id of the caller.
+   *
+   * @return the user id
+   */
+  public String getUserId() {
+    return userId;
+  }
+
+  private static Set<String> collect(final Collection<String> principals) {
+    final Set<String> set = new LinkedHashSet<>();
+    if (principals != null) {
+      for (final String principal : principals) {
+        if (StringUtils.hasText(principal)) {
+          set.add(principal);
+        }
+      }
+    }
+    return set;
+  }
+
+  /**
+   * Gets the position of a permission within {@link PermissionConstants#ALL}.
+   *
+   * @param permission the permission
+   * @return the position of the permission or {@code -1}, if the permission is unknown
+   */
+  private static int permissionIndex(final Object permission) {
+    final String permissionStr = String.valueOf(permission);
+    for (int i = 0; i < PermissionConstants.ALL.length; i++) {
+      if (PermissionConstants.ALL[i].equals(permissionStr)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Determines whether the caller has the given permission.
+   *
+   * @param accessControl the access control
+   * @param permission    the permission
+   * @return {@code true} if the permission is granted, otherwise {@code false}
+   */
+  public boolean hasPermission(final AccessControl accessControl, final Object permission) {
+    final int index = permissionIndex(permission);
+    if (index < 0 || accessControl == null) {
+      return false;
+    }
+    if (userId != null && userId.equals(accessControl.getOwner())) {
+      return true;
+    }
+    return isGranted(authorizationSet(accessControl, index));
+  }
+
+  private static AuthorizationSet authorizationSet(
+      final AccessControl accessControl,
+      final int index) {
+    switch (index) {
+      case 0:
+        return accessControl.getAdministration();
+      case 1:
+        return accessControl.getCreate();
+      case 2:
+        return accessControl.getDelete();
+      case 3:
+        return accessControl.getRead();
+      case 4:
+        return accessControl.getWrite();
+      default:
+        return null;
+    }
+  }
+
+  private boolean isGranted(final AuthorizationSet authorizationSet) {
+    if (authorizationSet == null) {
+      return false;
+    }
+    if (authorizationSet.isGuest()) {
+      return true;
+    }
+    if (userId != null && authorizationSet.getUsers().contains(userId)) {
+      return true;
+    }
+    return intersects(authorizationSet.getRoles(), roles, roleSet)
+        || intersects(authorizationSet.getGroups(), groups, groupSet);
+  }
+
+  private static boolean intersects(
+      final Set<String> granted,
+      final String[] callerPrincipals,
+      final Set<String> callerPrincipalSet) {
+
+    if (granted == null || granted.isEmpty() || callerPrincipals.length == 0) {
+      return false;
+    }
+    if (callerPrincipals.length <= granted.size()) {
+      for (final String principal : callerPrincipals) {
+        if (granted.contains(principal)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (final String principal : granted) {
+      if (callerPrincipalSet.contains(principal)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.security.group;
+
+import java.util.Set;
+import javax.validation.constraints.NotNull;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Christian Bremer
+ */
+@Validated
+public interface MembershipService {
+
+  /**
+   * Gets the ids of the groups the current user is member of.
+   *
+   * @param userId the id (JWT subject) of the current user
+   * @return the group ids
+   */
+  Mono<Set<String>> getMembershipIds(@NotNull String userId);
+
+}
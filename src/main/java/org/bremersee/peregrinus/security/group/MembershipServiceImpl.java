@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.security.group;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.bremersee.groupman.api.GroupControllerApi;
+import org.bremersee.peregrinus.config.PeregrinusProperties.MembershipCacheProperties;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * A membership service that caches the group ids of the users which are returned by the group
+ * manager. Concurrent requests of the same user are coalesced into one remote call.
+ *
+ * @author Christian Bremer
+ */
+public class MembershipServiceImpl implements MembershipService {
+
+  private static final String REQUEST_SCOPE_KEY = MembershipServiceImpl.class.getName()
+      + ".REQUEST_SCOPE";
+
+  private final GroupControllerApi groupService;
+
+  private final Cache<String, Mono<Set<String>>> cache;
+
+  private final Counter requestScopeHits;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  private final Timer latency;
+
+  public MembershipServiceImpl(
+      final GroupControllerApi groupService,
+      final MembershipCacheProperties properties,
+      final MeterRegistry meterRegistry) {
+
+    this.groupService = groupService;
+    this.cache = properties.isEnabled()
+        ? Caffeine.newBuilder()
+        .expireAfterWrite(properties.getTimeToLive().toMillis(), TimeUnit.MILLISECONDS)
+        .maximumSize(properties.getMaximumSize())
+        .build()
+        : null;
+    this.requestScopeHits = meterRegistry
+        .counter("peregrinus.membership.cache", "result", "request-hit");
+    this.hits = meterRegistry.counter("peregrinus.membership.cache", "result", "hit");
+    this.misses = meterRegistry.counter("peregrinus.membership.cache", "result", "miss");
+    this.latency = meterRegistry.timer("peregrinus.membership.requests");
+  }
+
+  /**
+   * Adds a request scoped memory of the membership ids to the given subscriber context.
+   *
+   * @param context the subscriber context of the request
+   * @return the subscriber context with the request scoped memory
+   */
+  public static Context withRequestScope(final Context context) {
+    return context.put(REQUEST_SCOPE_KEY, new ConcurrentHashMap<String, Mono<Set<String>>>());
+  }
+
+  @Override
+  public Mono<Set<String>> getMembershipIds(final String userId) {
+    return Mono.subscriberContext().flatMap(context -> {
+      final Optional<Map<String, Mono<Set<String>>>> requestScope = context
+          .getOrEmpty(REQUEST_SCOPE_KEY);
+      if (requestScope.isPresent()) {
+        final Mono<Set<String>> membershipIds = requestScope.get().get(userId);
+        if (membershipIds != null) {
+          requestScopeHits.increment();
+          return membershipIds;
+        }
+        return requestScope.get().computeIfAbsent(userId, this::findMembershipIds);
+      }
+      return findMembershipIds(userId);
+    });
+  }
+
+  private Mono<Set<String>> findMembershipIds(final String userId) {
+    if (cache == null) {
+      return loadMembershipIds().cache();
+    }
+    final Mono<Set<String>> membershipIds = cache.getIfPresent(userId);
+    if (membershipIds != null) {
+      hits.increment();
+      return membershipIds;
+    }
+    return cache.get(userId, key -> {
+      misses.increment();
+      return loadMembershipIds()
+          .doOnError(error -> cache.invalidate(key))
+          .cache();
+    });
+  }
+
+  private Mono<Set<String>> loadMembershipIds() {
+    return Mono.defer(() -> {
+      final long start = System.nanoTime();
+      return groupService
+          .getMembershipIds()
+          .doFinally(signalType -> latency.record(
+              System.nanoTime() - start,
+              TimeUnit.NANOSECONDS));
+    });
+  }
+
+}
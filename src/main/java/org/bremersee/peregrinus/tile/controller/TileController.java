@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tile.controller;
+
+import java.util.concurrent.TimeUnit;
+import org.bremersee.peregrinus.tile.service.TileService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Christian Bremer
+ */
+@RestController
+@RequestMapping(path = "/api/tiles")
+@Validated
+public class TileController {
+
+  private static final String MVT_MEDIA_TYPE = "application/vnd.mapbox-vector-tile";
+
+  private TileService tileService;
+
+  public TileController(TileService tileService) {
+    this.tileService = tileService;
+  }
+
+  @GetMapping(path = "/{z}/{x}/{y}.mvt", produces = {MVT_MEDIA_TYPE})
+  public Mono<ResponseEntity<byte[]>> findTile(
+      @PathVariable("z") int z,
+      @PathVariable("x") int x,
+      @PathVariable("y") int y,
+      Authentication authentication) {
+    return tileService
+        .findTile(z, x, y, authentication)
+        .map(tile -> ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(MVT_MEDIA_TYPE))
+            .cacheControl(CacheControl.maxAge(0L, TimeUnit.SECONDS).cachePrivate())
+            .body(tile));
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tile.service;
+
+import javax.validation.constraints.NotNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Christian Bremer
+ */
+@Validated
+public interface TileService {
+
+  /**
+   * Creates a Mapbox Vector Tile with the features, that the user is allowed to read. The tile has
+   * the layers {@code wpt}, {@code trk} and {@code rte}.
+   *
+   * @param z              the zoom level
+   * @param x              the column of the tile
+   * @param y              the row of the tile
+   * @param authentication the authentication of the user
+   * @return the encoded tile (can be empty, if the tile contains no features)
+   */
+  Mono<byte[]> findTile(int z, int x, int y, @NotNull Authentication authentication);
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tile.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.exception.ServiceException;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.VectorTileProperties;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.bremersee.peregrinus.content.repository.FeatureRepository;
+import org.bremersee.peregrinus.security.access.PermissionConstants;
+import org.bremersee.peregrinus.security.group.MembershipService;
+import org.locationtech.jts.geom.CoordinateFilter;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Puntal;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Creates the vector tiles of the features. The tiles are cached by the tile coordinates and the
+ * ids and modification dates of the features of the tile, that the user can read. So users, that
+ * can read the same features, share the cached tiles, and a modification of a feature only
+ * invalidates the tiles, that contain it.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class TileServiceImpl implements TileService {
+
+  private static final int MAX_ZOOM = 22;
+
+  private static final double MAX_LATITUDE = 85.0511287798;
+
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+  private final FeatureRepository featureRepository;
+
+  private final MembershipService membershipService;
+
+  private final VectorTileProperties properties;
+
+  private final Cache<String, Mono<byte[]>> cache;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  private final Counter truncated;
+
+  public TileServiceImpl(
+      FeatureRepository featureRepository,
+      MembershipService membershipService,
+      PeregrinusProperties peregrinusProperties,
+      MeterRegistry meterRegistry) {
+
+    this.featureRepository = featureRepository;
+    this.membershipService = membershipService;
+    this.properties = peregrinusProperties.getVectorTiles();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(properties.getCacheMaximumSize())
+        .expireAfterWrite(properties.getCacheTimeToLive())
+        .build();
+    this.hits = meterRegistry.counter("peregrinus.tile.cache", "result", "hit");
+    this.misses = meterRegistry.counter("peregrinus.tile.cache", "result", "miss");
+    this.truncated = meterRegistry.counter("peregrinus.tile.truncated");
+  }
+
+  @Override
+  public Mono<byte[]> findTile(
+      final int z,
+      final int x,
+      final int y,
+      final Authentication authentication) {
+
+    if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) {
+      return Mono.error(ServiceException.badRequest(
+          "Tile [" + z + "/" + x + "/" + y + "] does not exist."));
+    }
+    final String userId = authentication.getName();
+    final Set<String> roles = authentication.getAuthorities()
+        .stream()
+        .map(GrantedAuthority::getAuthority)
+        .collect(Collectors.toSet());
+    final double[] bbox = boundingBox(z, x, y);
+    return membershipService.getMembershipIds(userId)
+        .flatMap(groups -> featureRepository
+            .findFeatureModifications(
+                bbox, properties.getMaximumFeatures(),
+                PermissionConstants.READ, true, userId, roles, groups)
+            .collectList()
+            .flatMap(features -> {
+              final String key = z + "|" + x + "|" + y + "|" + fingerprint(features);
+              Mono<byte[]> tile = cache.getIfPresent(key);
+              if (tile != null) {
+                hits.increment();
+                return tile;
+              }
+              return cache.get(key, k -> {
+                misses.increment();
+                return loadTile(z, x, y, bbox, userId, roles, groups)
+                    .doOnError(error -> cache.invalidate(k))
+                    .cache();
+              });
+            }));
+  }
+
+  /**
+   * Creates a hash of the ids and the modification dates of the features.
+   */
+  private static String fingerprint(final List<Feature> features) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available.", e);
+    }
+    for (final Feature feature : features) {
+      final Instant modified = feature.getProperties() != null
+          ? feature.getProperties().getModified()
+          : null;
+      digest.update((feature.getId() + "@" + (modified != null ? modified.toEpochMilli() : "")
+          + ";").getBytes(StandardCharsets.UTF_8));
+    }
+    return features.size() + "|" + Base64.getEncoder().encodeToString(digest.digest());
+  }
+
+  private double[] boundingBox(final int z, final int x, final int y) {
+    final double buffer = (double) properties.getBuffer() / properties.getExtent();
+    return new double[]{
+        longitude(x - buffer, z),
+        latitude(y + 1 + buffer, z),
+        longitude(x + 1 + buffer, z),
+        latitude(y - buffer, z)
+    };
+  }
+
+  private Mono<byte[]> loadTile(
+      final int z,
+      final int x,
+      final int y,
+      final double[] bbox,
+      final String userId,
+      final Set<String> roles,
+      final Set<String> groups) {
+
+    return featureRepository
+        .findFeatureHeaders(
+            bbox, false, null, properties.getMaximumFeatures(),
+            PermissionConstants.READ, true, userId, roles, groups)
+        .collectList()
+        .doOnNext(features -> {
+          if (features.size() >= properties.getMaximumFeatures()) {
+            truncated.increment();
+            log.warn("msg=[Vector tile is truncated.] tile=[{}/{}/{}] maximumFeatures=[{}]",
+                z, x, y, properties.getMaximumFeatures());
+          }
+        })
+        .flatMap(features -> featureRepository.applyFeatureLods(features, z)
+            .thenReturn(features))
+        .map(features -> encode(features, z, x, y))
+        .doOnNext(bytes -> log.debug("msg=[Vector tile created.] tile=[{}/{}/{}] bytes=[{}]",
+            z, x, y, bytes.length));
+  }
+
+  private byte[] encode(final List<Feature> features, final int z, final int x, final int y) {
+    final int extent = properties.getExtent();
+    final int buffer = properties.getBuffer();
+    final Geometry clip = GEOMETRY_FACTORY.toGeometry(
+        new Envelope(-buffer, extent + buffer, -buffer, extent + buffer));
+    final VectorTileEncoder encoder = new VectorTileEncoder(extent);
+    for (final Feature feature : features) {
+      final String layer = layer(feature);
+      if (layer == null || feature.getGeometry() == null) {
+        continue;
+      }
+      Geometry geometry = project((Geometry) feature.getGeometry(), z, x, y, extent);
+      if (!clip.getEnvelopeInternal().contains(geometry.getEnvelopeInternal())) {
+        geometry = geometry.intersection(clip);
+      }
+      if (!(geometry instanceof Puntal) && properties.getSimplifyTolerance() > 0.) {
+        geometry = DouglasPeuckerSimplifier.simplify(geometry, properties.getSimplifyTolerance());
+      }
+      final Map<String, String> tags = new LinkedHashMap<>();
+      tags.put("id", feature.getId());
+      tags.put("name", feature.getProperties().getName());
+      encoder.addFeature(layer, tags, geometry);
+    }
+    return encoder.encode();
+  }
+
+  private static String layer(final Feature feature) {
+    if (feature instanceof Wpt) {
+      return "wpt";
+    } else if (feature instanceof Trk) {
+      return "trk";
+    } else if (feature instanceof Rte) {
+      return "rte";
+    }
+    return null;
+  }
+
+  /**
+   * Transforms the geometry from WGS84 into the coordinates of the tile (web mercator, the origin
+   * is the upper left corner of the tile).
+   */
+  private static Geometry project(
+      final Geometry geometry,
+      final int z,
+      final int x,
+      final int y,
+      final int extent) {
+
+    final double scale = Math.pow(2, z);
+    final Geometry projected = geometry.copy();
+    projected.apply((CoordinateFilter) coordinate -> {
+      final double lat = Math.toRadians(
+          Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, coordinate.y)));
+      final double worldX = (coordinate.x + 180.) / 360.;
+      final double worldY = (1. - Math.log(Math.tan(lat) + 1. / Math.cos(lat)) / Math.PI) / 2.;
+      coordinate.x = (worldX * scale - x) * extent;
+      coordinate.y = (worldY * scale - y) * extent;
+    });
+    projected.geometryChanged();
+    return projected;
+  }
+
+  private static double longitude(final double x, final int z) {
+    return Math.max(-180., Math.min(180., x / Math.pow(2, z) * 360. - 180.));
+  }
+
+  private static double latitude(final double y, final int z) {
+    final double n = Math.PI * (1. - 2. * y / Math.pow(2, z));
+    return Math.max(-90., Math.min(90., Math.toDegrees(Math.atan(Math.sinh(n)))));
+  }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tile.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Encodes features as Mapbox Vector Tile (version 2). Only points and lines are supported, the
+ * geometries must be given in tile coordinates.
+ *
+ * @author Christian Bremer
+ */
+class VectorTileEncoder {
+
+  private static final int GEOM_TYPE_POINT = 1;
+
+  private static final int GEOM_TYPE_LINESTRING = 2;
+
+  private static final int COMMAND_MOVE_TO = 1;
+
+  private static final int COMMAND_LINE_TO = 2;
+
+  private static final int WIRE_TYPE_VARINT = 0;
+
+  private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+  private final int extent;
+
+  private final Map<String, Layer> layers = new LinkedHashMap<>();
+
+  VectorTileEncoder(final int extent) {
+    this.extent = extent;
+  }
+
+  /**
+   * Adds a feature to a layer. A geometry, that consists of points and lines (like a clipped
+   * collection), is added as two features with the same properties, because a feature of a vector
+   * tile has only one geometry type.
+   *
+   * @param layerName  the name of the layer
+   * @param properties the properties of the feature
+   * @param geometry   the geometry in tile coordinates
+   */
+  void addFeature(
+      final String layerName,
+      final Map<String, String> properties,
+      final Geometry geometry) {
+
+    final List<Point> points = new ArrayList<>();
+    final List<LineString> lines = new ArrayList<>();
+    collect(geometry, points, lines);
+    if (!points.isEmpty()) {
+      final List<Integer> commands = new ArrayList<>();
+      final int[] cursor = new int[2];
+      commands.add(command(COMMAND_MOVE_TO, points.size()));
+      for (final Point point : points) {
+        moveCursor(commands, cursor, point.getCoordinate());
+      }
+      addFeature(layerName, properties, GEOM_TYPE_POINT, commands);
+    }
+    if (!lines.isEmpty()) {
+      final List<Integer> commands = new ArrayList<>();
+      final int[] cursor = new int[2];
+      for (final LineString line : lines) {
+        encodeLine(commands, cursor, line);
+      }
+      addFeature(layerName, properties, GEOM_TYPE_LINESTRING, commands);
+    }
+  }
+
+  private void addFeature(
+      final String layerName,
+      final Map<String, String> properties,
+      final int type,
+      final List<Integer> commands) {
+
+    if (commands.isEmpty()) {
+      return;
+    }
+    final Layer layer = layers.computeIfAbsent(layerName, Layer::new);
+    layer.features.add(new EncodedFeature(type, layer.tags(properties), commands));
+  }
+
+  private static void collect(
+      final Geometry geometry,
+      final List<Point> points,
+      final List<LineString> lines) {
+
+    if (geometry == null || geometry.isEmpty()) {
+      return;
+    }
+    if (geometry instanceof Point) {
+      points.add((Point) geometry);
+    } else if (geometry instanceof LineString) {
+      lines.add((LineString) geometry);
+    } else {
+      for (int n = 0; n < geometry.getNumGeometries(); n++) {
+        final Geometry part = geometry.getGeometryN(n);
+        if (part != geometry) {
+          collect(part, points, lines);
+        }
+      }
+    }
+  }
+
+  private static void encodeLine(
+      final List<Integer> commands,
+      final int[] cursor,
+      final LineString line) {
+
+    final List<int[]> vertices = new ArrayList<>(line.getNumPoints());
+    for (final Coordinate coordinate : line.getCoordinates()) {
+      final int[] vertex = {(int) Math.round(coordinate.x), (int) Math.round(coordinate.y)};
+      final int[] last = vertices.isEmpty() ? null : vertices.get(vertices.size() - 1);
+      if (last == null || last[0] != vertex[0] || last[1] != vertex[1]) {
+        vertices.add(vertex);
+      }
+    }
+    if (vertices.size() < 2) {
+      return;
+    }
+    commands.add(command(COMMAND_MOVE_TO, 1));
+    moveCursor(commands, cursor, vertices.get(0));
+    commands.add(command(COMMAND_LINE_TO, vertices.size() - 1));
+    for (int i = 1; i < vertices.size(); i++) {
+      moveCursor(commands, cursor, vertices.get(i));
+    }
+  }
+
+  private static void moveCursor(
+      final List<Integer> commands,
+      final int[] cursor,
+      final Coordinate coordinate) {
+    moveCursor(commands, cursor,
+        new int[]{(int) Math.round(coordinate.x), (int) Math.round(coordinate.y)});
+  }
+
+  private static void moveCursor(
+      final List<Integer> commands,
+      final int[] cursor,
+      final int[] vertex) {
+    commands.add(zigZag(vertex[0] - cursor[0]));
+    commands.add(zigZag(vertex[1] - cursor[1]));
+    cursor[0] = vertex[0];
+    cursor[1] = vertex[1];
+  }
+
+  private static int command(final int id, final int count) {
+    return (id & 0x7) | (count << 3);
+  }
+
+  private static int zigZag(final int n) {
+    return (n << 1) ^ (n >> 31);
+  }
+
+  /**
+   * Encodes the tile.
+   *
+   * @return the protobuf bytes of the tile
+   */
+  byte[] encode() {
+    final ByteArrayOutputStream tile = new ByteArrayOutputStream();
+    for (final Layer layer : layers.values()) {
+      writeBytes(tile, 3, layer.encode(extent));
+    }
+    return tile.toByteArray();
+  }
+
+  private static void writeTag(final ByteArrayOutputStream out, final int field, final int type) {
+    writeVarint(out, (field << 3) | type);
+  }
+
+  private static void writeVarint(final ByteArrayOutputStream out, final long value) {
+    long v = value;
+    while ((v & ~0x7FL) != 0) {
+      out.write((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    out.write((int) v);
+  }
+
+  private static void writeVarintField(
+      final ByteArrayOutputStream out,
+      final int field,
+      final long value) {
+    writeTag(out, field, WIRE_TYPE_VARINT);
+    writeVarint(out, value);
+  }
+
+  private static void writeBytes(
+      final ByteArrayOutputStream out,
+      final int field,
+      final byte[] bytes) {
+    writeTag(out, field, WIRE_TYPE_LENGTH_DELIMITED);
+    writeVarint(out, bytes.length);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  private static void writeString(
+      final ByteArrayOutputStream out,
+      final int field,
+      final String value) {
+    writeBytes(out, field, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void writePacked(
+      final ByteArrayOutputStream out,
+      final int field,
+      final List<Integer> values) {
+    final ByteArrayOutputStream packed = new ByteArrayOutputStream();
+    for (final Integer value : values) {
+      writeVarint(packed, value & 0xFFFFFFFFL);
+    }
+    writeBytes(out, field, packed.toByteArray());
+  }
+
+  private static class Layer {
+
+    private final String name;
+
+    private final Map<String, Integer> keys = new LinkedHashMap<>();
+
+    private final Map<String, Integer> values = new LinkedHashMap<>();
+
+    private final List<EncodedFeature> features = new ArrayList<>();
+
+    Layer(final String name) {
+      this.name = name;
+    }
+
+    List<Integer> tags(final Map<String, String> properties) {
+      final List<Integer> tags = new ArrayList<>(properties.size() * 2);
+      properties.forEach((key, value) -> {
+        if (key != null && value != null) {
+          tags.add(keys.computeIfAbsent(key, k -> keys.size()));
+          tags.add(values.computeIfAbsent(value, v -> values.size()));
+        }
+      });
+      return tags;
+    }
+
+    byte[] encode(final int extent) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writeVarintField(out, 15, 2);
+      writeString(out, 1, name);
+      for (final EncodedFeature feature : features) {
+        final ByteArrayOutputStream featureOut = new ByteArrayOutputStream();
+        if (!feature.tags.isEmpty()) {
+          writePacked(featureOut, 2, feature.tags);
+        }
+        writeVarintField(featureOut, 3, feature.type);
+        writePacked(featureOut, 4, feature.geometry);
+        writeBytes(out, 2, featureOut.toByteArray());
+      }
+      for (final String key : keys.keySet()) {
+        writeString(out, 3, key);
+      }
+      for (final String value : values.keySet()) {
+        final ByteArrayOutputStream valueOut = new ByteArrayOutputStream();
+        writeString(valueOut, 1, value);
+        writeBytes(out, 4, valueOut.toByteArray());
+      }
+      writeVarintField(out, 5, extent);
+      return out.toByteArray();
+    }
+  }
+
+  private static class EncodedFeature {
+
+    private final int type;
+
+    private final List<Integer> tags;
+
+    private final List<Integer> geometry;
+
+    EncodedFeature(final int type, final List<Integer> tags, final List<Integer> geometry) {
+      this.type = type;
+      this.tags = tags;
+      this.geometry = geometry;
+    }
+  }
+
+}
@@ -16,11 +16,20 @@
 
 package org.bremersee.peregrinus.tree.controller;
 
+import java.net.URI;
+import org.bremersee.peregrinus.converter.gpx.GpxConverter;
+import org.bremersee.peregrinus.converter.kml.KmlConverter;
 import org.bremersee.peregrinus.security.access.AccessControl;
 import org.bremersee.peregrinus.tree.model.Branch;
+import org.bremersee.peregrinus.tree.model.TreeJob;
+import org.bremersee.peregrinus.tree.model.TreeNodeEvent;
 import org.bremersee.peregrinus.tree.service.TreeService;
 import org.hibernate.validator.constraints.Length;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.security.core.Authentication;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -43,10 +52,23 @@ import reactor.core.publisher.Mono;
 @Validated
 public class TreeController {
 
+  private static final String GPX_MEDIA_TYPE = "application/gpx+xml";
+
+  private static final String KMZ_MEDIA_TYPE = "application/vnd.google-earth.kmz";
+
   private TreeService treeService;
 
-  public TreeController(TreeService treeService) {
+  private GpxConverter gpxConverter;
+
+  private KmlConverter kmlConverter;
+
+  public TreeController(
+      TreeService treeService,
+      GpxConverter gpxConverter,
+      KmlConverter kmlConverter) {
     this.treeService = treeService;
+    this.gpxConverter = gpxConverter;
+    this.kmlConverter = kmlConverter;
   }
 
   @PostMapping(
@@ -65,8 +87,20 @@ public class TreeController {
   public Flux<Branch> loadBranches(
       @RequestParam(value = "open-all", defaultValue = "false") Boolean openAll,
       @RequestParam(value = "pub", defaultValue = "false") Boolean includePublic,
+      @RequestParam(value = "zoom", required = false) Integer zoom,
       Authentication authentication) {
-    return treeService.loadBranches(openAll, includePublic, authentication);
+    return treeService.loadBranches(openAll, includePublic, zoom, authentication);
+  }
+
+  @GetMapping(
+      path = "/stream",
+      produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_STREAM_JSON_VALUE})
+  public Flux<TreeNodeEvent> streamBranches(
+      @RequestParam(value = "open-all", defaultValue = "false") Boolean openAll,
+      @RequestParam(value = "pub", defaultValue = "false") Boolean includePublic,
+      @RequestParam(value = "zoom", required = false) Integer zoom,
+      Authentication authentication) {
+    return treeService.streamBranches(openAll, includePublic, zoom, authentication);
   }
 
   @PutMapping(path = "/{nodeId}", params = {"name"})
@@ -78,27 +112,82 @@ public class TreeController {
   }
 
   @PutMapping(path = "/{nodeId}/access-control")
-  public Mono<AccessControl> updateAccessControl(
+  public Mono<ResponseEntity<AccessControl>> updateAccessControl(
       @PathVariable("nodeId") String nodeId,
       @RequestParam(value = "recursive", defaultValue = "false") Boolean recursive,
       @RequestBody AccessControl accessControl,
       Authentication authentication) {
-    return treeService.updateAccessControl(nodeId, recursive, accessControl, authentication);
+    return treeService
+        .updateAccessControl(nodeId, recursive, accessControl, authentication)
+        .map(job -> jobResponse(job, job.getAccessControl()));
   }
 
   @DeleteMapping(path = "/{nodeId}")
-  public Mono<Void> deleteNode(
+  public Mono<ResponseEntity<Void>> deleteNode(
       @PathVariable("nodeId") String nodeId,
       Authentication authentication) {
-    return treeService.deleteNode(nodeId, authentication);
+    return treeService
+        .deleteNode(nodeId, authentication)
+        .map(job -> jobResponse(job, null));
+  }
+
+  @GetMapping(path = "/jobs/{jobId}", produces = {MediaType.APPLICATION_JSON_UTF8_VALUE})
+  public Mono<TreeJob> findJob(
+      @PathVariable("jobId") String jobId,
+      Authentication authentication) {
+    return treeService.findJob(jobId, authentication);
+  }
+
+  /**
+   * A job that is still running is answered with status 202 and the location of the job status.
+   */
+  private static <T> ResponseEntity<T> jobResponse(final TreeJob job, final T body) {
+    if (job.isRunning()) {
+      return ResponseEntity
+          .accepted()
+          .location(URI.create("/api/tree/jobs/" + job.getId()))
+          .body(body);
+    }
+    return ResponseEntity.ok(body);
   }
 
   @GetMapping(path = "/{branchId}/open", produces = {MediaType.APPLICATION_JSON_UTF8_VALUE})
   public Mono<Branch> openBranch(
       @PathVariable("branchId") String branchId,
       @RequestParam(value = "open-all", defaultValue = "false") Boolean openAll,
+      @RequestParam(value = "zoom", required = false) Integer zoom,
+      Authentication authentication) {
+    return treeService.openBranch(branchId, openAll, zoom, authentication);
+  }
+
+  @GetMapping(path = "/{nodeId}/gpx", produces = {GPX_MEDIA_TYPE})
+  public Flux<DataBuffer> exportGpx(
+      @PathVariable("nodeId") String nodeId,
+      ServerHttpResponse response,
+      Authentication authentication) {
+    response.getHeaders().setContentType(MediaType.parseMediaType(GPX_MEDIA_TYPE));
+    response.getHeaders().setContentDisposition(ContentDisposition
+        .builder("attachment")
+        .filename(nodeId + ".gpx")
+        .build());
+    return gpxConverter.writeGpx(
+        treeService.exportFeatures(nodeId, authentication),
+        response.bufferFactory());
+  }
+
+  @GetMapping(path = "/{nodeId}/kmz", produces = {KMZ_MEDIA_TYPE})
+  public Flux<DataBuffer> exportKmz(
+      @PathVariable("nodeId") String nodeId,
+      ServerHttpResponse response,
       Authentication authentication) {
-    return treeService.openBranch(branchId, openAll, authentication);
+    response.getHeaders().setContentType(MediaType.parseMediaType(KMZ_MEDIA_TYPE));
+    response.getHeaders().setContentDisposition(ContentDisposition
+        .builder("attachment")
+        .filename(nodeId + ".kmz")
+        .build());
+    return kmlConverter.writeKmz(
+        treeService.exportFeatures(nodeId, authentication),
+        response.bufferFactory());
   }
 
   @PutMapping(path = "/{branchId}/close")
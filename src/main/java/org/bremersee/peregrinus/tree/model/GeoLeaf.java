@@ -20,8 +20,9 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import org.bremersee.peregrinus.content.model.Feature;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.annotation.TypeAlias;
-import org.springframework.data.mongodb.core.mapping.DBRef;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
@@ -34,12 +35,25 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @ToString(callSuper = true)
 public class GeoLeaf extends Leaf {
 
-  @DBRef
+  @Indexed
+  private String featureId;
+
+  /**
+   * The feature is not stored with the leaf, it must be loaded with the feature id.
+   */
+  @Transient
   private Feature feature;
 
   public GeoLeaf() {
   }
 
+  public void setFeature(final Feature feature) {
+    this.feature = feature;
+    if (feature != null && feature.getId() != null) {
+      this.featureId = feature.getId();
+    }
+  }
+
   int orderValue() {
     return 50;
   }
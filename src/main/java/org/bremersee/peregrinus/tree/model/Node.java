@@ -26,6 +26,8 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 import javax.validation.constraints.NotNull;
 import lombok.Getter;
 import lombok.Setter;
@@ -35,6 +37,8 @@ import org.bremersee.peregrinus.security.access.AccessControl;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.TypeAlias;
 import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.lang.Nullable;
@@ -47,6 +51,11 @@ import org.springframework.validation.annotation.Validated;
  */
 @Document(collection = "directory")
 @TypeAlias("Node")
+@CompoundIndexes({
+    @CompoundIndex(
+        name = "idx_parent_read",
+        def = "{'parentId': 1, 'accessControl.read.principals': 1}")
+})
 @JsonAutoDetect(
     fieldVisibility = Visibility.ANY,
     getterVisibility = Visibility.NONE,
@@ -83,6 +92,12 @@ public abstract class Node implements Comparable<Node> {
   @Indexed
   private String parentId;
 
+  /**
+   * The ids of all ancestors of this node, starting with the root.
+   */
+  @Indexed
+  private List<String> path;
+
   private AccessControl accessControl = new AccessControl();
 
   public Node() {
@@ -112,6 +127,17 @@ public abstract class Node implements Comparable<Node> {
     this.parentId = parentId;
   }
 
+  /**
+   * Builds the path of the children of this node.
+   *
+   * @return the path of the children
+   */
+  public List<String> buildChildPath() {
+    final List<String> childPath = path != null ? new ArrayList<>(path) : new ArrayList<>();
+    childPath.add(id);
+    return childPath;
+  }
+
   abstract int orderValue();
 
   public abstract String getName();
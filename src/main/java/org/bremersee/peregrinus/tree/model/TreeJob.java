@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tree.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+import org.bremersee.peregrinus.security.access.AccessControl;
+
+/**
+ * A recursive operation on a subtree (deleting it or changing its access control). The status is
+ * updated while the operation is running.
+ *
+ * @author Christian Bremer
+ */
+@Getter
+@ToString
+@JsonInclude(Include.NON_NULL)
+public class TreeJob {
+
+  public enum Type {
+    UPDATE_ACCESS_CONTROL,
+    DELETE
+  }
+
+  public enum Status {
+    RUNNING,
+    DONE,
+    FAILED
+  }
+
+  private final String id = UUID.randomUUID().toString();
+
+  private final Type type;
+
+  private final String nodeId;
+
+  @JsonIgnore
+  private final String userId;
+
+  private final long totalNodes;
+
+  @Getter(AccessLevel.NONE)
+  private final AtomicLong processedNodes = new AtomicLong();
+
+  private final Instant started = Instant.now();
+
+  private volatile Instant finished;
+
+  private volatile Status status = Status.RUNNING;
+
+  private volatile String errorMessage;
+
+  /**
+   * The access control that is applied by the job.
+   */
+  private final AccessControl accessControl;
+
+  public TreeJob(
+      final Type type,
+      final String nodeId,
+      final String userId,
+      final long totalNodes,
+      final AccessControl accessControl) {
+    this.type = type;
+    this.nodeId = nodeId;
+    this.userId = userId;
+    this.totalNodes = totalNodes;
+    this.accessControl = accessControl;
+  }
+
+  public long getProcessedNodes() {
+    return processedNodes.get();
+  }
+
+  public void addProcessedNodes(final long count) {
+    processedNodes.addAndGet(count);
+  }
+
+  @JsonIgnore
+  public boolean isRunning() {
+    return status == Status.RUNNING;
+  }
+
+  public void done() {
+    finished = Instant.now();
+    status = Status.DONE;
+  }
+
+  public void failed(final Throwable error) {
+    finished = Instant.now();
+    errorMessage = error.getMessage();
+    status = Status.FAILED;
+  }
+
+}
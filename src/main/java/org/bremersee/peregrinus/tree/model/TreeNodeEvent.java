@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tree.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A node of a streamed tree. The node is emitted without its children (they follow as events of
+ * their own) and with the settings of the current user.
+ *
+ * @author Christian Bremer
+ */
+@Getter
+@ToString
+@NoArgsConstructor
+@JsonInclude(Include.NON_NULL)
+public class TreeNodeEvent {
+
+  private Node node;
+
+  private String parentId;
+
+  /**
+   * The depth of the node, the root branches have depth {@code 0}.
+   */
+  private int depth;
+
+  public TreeNodeEvent(Node node, int depth) {
+    this.node = node;
+    this.parentId = node.getParentId();
+    this.depth = depth;
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tree.repository;
+
+import com.mongodb.DBRef;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Replaces the feature reference (DBRef) of geo leaves that were stored before the feature id was
+ * introduced.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class GeoLeafFeatureIdMigration {
+
+  private static final String COLLECTION = "directory";
+
+  private ReactiveMongoOperations mongoOperations;
+
+  public GeoLeafFeatureIdMigration(
+      ReactiveMongoOperations mongoOperations) {
+    this.mongoOperations = mongoOperations;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    migrate().subscribe(
+        count -> {
+          if (count > 0) {
+            log.info("msg=[Feature ids of geo leaves migrated.] leaves=[{}]", count);
+          }
+        },
+        error -> log.error("msg=[Migration of geo leaf feature ids failed.]", error));
+  }
+
+  /**
+   * Sets the feature id of every geo leaf that has a feature reference and removes the reference.
+   *
+   * @return the number of migrated leaves
+   */
+  public Mono<Long> migrate() {
+    final Query query = Query.query(new Criteria().andOperator(
+        Criteria.where("feature").exists(true),
+        Criteria.where("featureId").exists(false)));
+    query.fields().include("_id").include("feature");
+    return mongoOperations
+        .find(query, Document.class, COLLECTION)
+        .flatMap(document -> {
+          final String featureId = findFeatureId(document.get("feature"));
+          final Update update = new Update().unset("feature");
+          if (featureId != null) {
+            update.set("featureId", featureId);
+          }
+          return mongoOperations.updateFirst(
+              Query.query(Criteria.where("_id").is(document.get("_id"))),
+              update,
+              COLLECTION);
+        }, 4)
+        .count();
+  }
+
+  private static String findFeatureId(final Object feature) {
+    Object id = null;
+    if (feature instanceof DBRef) {
+      id = ((DBRef) feature).getId();
+    } else if (feature instanceof Document) {
+      id = ((Document) feature).get("$id");
+    }
+    return id != null ? String.valueOf(id) : null;
+  }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tree.repository;
+
+import com.mongodb.client.result.DeleteResult;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.OrphanCompactionProperties;
+import org.bremersee.peregrinus.content.repository.FeatureRepository;
+import org.bremersee.peregrinus.repository.MongoLease;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Removes the settings, features and feature parts that are left by deleted nodes. The scheduled
+ * compaction only runs on the instance, that holds the lease {@code orphan-compaction}.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class OrphanCompaction {
+
+  private final ReactiveMongoOperations mongoOperations;
+
+  private final TreeRepository treeRepository;
+
+  private final FeatureRepository featureRepository;
+
+  private final OrphanCompactionProperties properties;
+
+  private final MongoLease lease;
+
+  public OrphanCompaction(
+      ReactiveMongoOperations mongoOperations,
+      TreeRepository treeRepository,
+      FeatureRepository featureRepository,
+      PeregrinusProperties peregrinusProperties) {
+    this.mongoOperations = mongoOperations;
+    this.treeRepository = treeRepository;
+    this.featureRepository = featureRepository;
+    this.properties = peregrinusProperties.getOrphanCompaction();
+    this.lease = new MongoLease(mongoOperations, "orphan-compaction");
+  }
+
+  @Scheduled(
+      initialDelayString = "${bremersee.peregrinus.orphan-compaction.initial-delay:600000}",
+      fixedDelayString = "${bremersee.peregrinus.orphan-compaction.fixed-delay:21600000}")
+  public void onSchedule() {
+    if (!properties.isEnabled()) {
+      return;
+    }
+    lease.runExclusively(properties.getLeaseTime(), compact()).subscribe(
+        count -> {
+          if (count > 0) {
+            log.info("msg=[Orphans removed.] documents=[{}]", count);
+          }
+        },
+        error -> log.error("msg=[Removing orphans failed.]", error));
+  }
+
+  /**
+   * Removes features without a leaf and then all settings and feature parts without a node or a
+   * feature.
+   *
+   * @return the number of removed documents
+   */
+  public Mono<Long> compact() {
+    return Flux
+        .concat(
+            removeFeaturesWithoutLeaf(),
+            removeOrphans("directory-settings", "nodeId", "directory",
+                treeRepository::deleteNodeSettings),
+            removeOrphans("feature-settings", "featureId", "feature",
+                featureRepository::deleteFeatureSettings),
+            removeOrphans("feature-trk-chunks", "featureId", "feature",
+                ids -> remove("feature-trk-chunks", "featureId", ids)),
+            removeOrphans("feature-lod", "featureId", "feature",
+                ids -> remove("feature-lod", "featureId", ids)))
+        .reduce(0L, Long::sum);
+  }
+
+  private Mono<Long> removeFeaturesWithoutLeaf() {
+    final Date modifiedBefore = Date.from(Instant.now().minus(properties.getFeatureMinAge()));
+    final Query query = Query.query(Criteria.where("properties.modified").lt(modifiedBefore));
+    query.fields().include("_id");
+    return mongoOperations
+        .find(query, Document.class, "feature")
+        .map(document -> String.valueOf(document.get("_id")))
+        .buffer(properties.getBatchSize())
+        .concatMap(featureIds -> findExisting("directory", "featureId", featureIds)
+            .flatMap(referenced -> {
+              final Set<String> orphans = minus(featureIds, referenced);
+              if (orphans.isEmpty()) {
+                return Mono.just(0L);
+              }
+              return featureRepository.deleteFeatureSettings(orphans)
+                  .then(featureRepository.deleteFeatures(orphans));
+            }))
+        .reduce(0L, Long::sum);
+  }
+
+  private Mono<Long> removeOrphans(
+      final String collectionName,
+      final String referenceField,
+      final String referencedCollectionName,
+      final Function<Collection<String>, Mono<Long>> remover) {
+
+    final Query query = new Query();
+    query.fields().include(referenceField);
+    return mongoOperations
+        .find(query, Document.class, collectionName)
+        .map(document -> document.get(referenceField))
+        .filter(Objects::nonNull)
+        .map(String::valueOf)
+        .buffer(properties.getBatchSize())
+        .concatMap(ids -> findExisting(referencedCollectionName, "_id", ids)
+            .flatMap(existing -> {
+              final Set<String> orphans = minus(ids, existing);
+              return orphans.isEmpty() ? Mono.just(0L) : remover.apply(orphans);
+            }))
+        .reduce(0L, Long::sum);
+  }
+
+  private Mono<Set<String>> findExisting(
+      final String collectionName,
+      final String field,
+      final Collection<String> ids) {
+
+    final Set<Object> values = new LinkedHashSet<>();
+    for (final String id : ids) {
+      values.add("_id".equals(field) ? toId(id) : id);
+    }
+    final Query query = Query.query(Criteria.where(field).in(values));
+    query.fields().include(field);
+    return mongoOperations
+        .find(query, Document.class, collectionName)
+        .map(document -> String.valueOf(document.get(field)))
+        .collect(Collectors.toSet());
+  }
+
+  private Mono<Long> remove(
+      final String collectionName,
+      final String field,
+      final Collection<String> ids) {
+    return mongoOperations
+        .remove(Query.query(Criteria.where(field).in(ids)), collectionName)
+        .map(DeleteResult::getDeletedCount);
+  }
+
+  private static Object toId(final String id) {
+    return ObjectId.isValid(id) ? new ObjectId(id) : id;
+  }
+
+  private static Set<String> minus(final List<String> ids, final Set<String> existing) {
+    return ids
+        .stream()
+        .filter(id -> !existing.contains(id))
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+  }
+
+}
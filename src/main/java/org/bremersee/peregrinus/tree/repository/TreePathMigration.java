@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tree.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sets the path of all nodes that were stored before the path was introduced.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class TreePathMigration {
+
+  private static final String COLLECTION = "directory";
+
+  private ReactiveMongoOperations mongoOperations;
+
+  public TreePathMigration(
+      ReactiveMongoOperations mongoOperations) {
+    this.mongoOperations = mongoOperations;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    migrate().subscribe(
+        count -> {
+          if (count > 0) {
+            log.info("msg=[Path of tree nodes migrated.] visitedNodes=[{}]", count);
+          }
+        },
+        error -> log.error("msg=[Migration of tree node paths failed.]", error));
+  }
+
+  /**
+   * Walks the tree from the roots to the leaves and sets the path of every node that has none.
+   *
+   * @return the number of visited nodes
+   */
+  public Mono<Long> migrate() {
+    return mongoOperations
+        .exists(Query.query(Criteria.where("path").exists(false)), COLLECTION)
+        .filter(Boolean::booleanValue)
+        .flatMap(missing -> mongoOperations.updateMulti(
+            Query.query(new Criteria().andOperator(
+                Criteria.where("path").exists(false),
+                new Criteria().orOperator(
+                    Criteria.where("parentId").exists(false),
+                    Criteria.where("parentId").is(null)))),
+            Update.update("path", new ArrayList<>()),
+            COLLECTION))
+        .flatMapMany(result -> findNodes(new Criteria().orOperator(
+            Criteria.where("parentId").exists(false),
+            Criteria.where("parentId").is(null))))
+        .expand(node -> {
+          final String nodeId = String.valueOf(node.get("_id"));
+          final List<String> childPath = new ArrayList<>();
+          final Object path = node.get("path");
+          if (path instanceof List) {
+            for (final Object ancestorId : (List<?>) path) {
+              childPath.add(String.valueOf(ancestorId));
+            }
+          }
+          childPath.add(nodeId);
+          return mongoOperations
+              .updateMulti(
+                  Query.query(new Criteria().andOperator(
+                      Criteria.where("parentId").is(nodeId),
+                      Criteria.where("path").exists(false))),
+                  Update.update("path", childPath),
+                  COLLECTION)
+              .thenMany(findNodes(Criteria.where("parentId").is(nodeId)));
+        })
+        .count();
+  }
+
+  private Flux<Document> findNodes(final Criteria criteria) {
+    final Query query = Query.query(criteria);
+    query.fields().include("_id").include("path");
+    return mongoOperations.find(query, Document.class, COLLECTION);
+  }
+
+}
@@ -17,6 +17,8 @@
 package org.bremersee.peregrinus.tree.repository;
 
 import java.util.Collection;
+import java.util.function.Function;
+import org.bremersee.peregrinus.security.access.AccessControl;
 import org.bremersee.peregrinus.tree.model.Node;
 import org.bremersee.peregrinus.tree.model.NodeSettings;
 import reactor.core.publisher.Flux;
@@ -53,8 +55,84 @@ public interface TreeRepository {
       Collection<String> roles,
       Collection<String> groups);
 
+  <T extends Node> Flux<T> findNodesByParentIds(
+      Class<T> clazz,
+      Collection<String> parentIds,
+      String permission,
+      boolean includePublic,
+      String userId,
+      Collection<String> roles,
+      Collection<String> groups);
+
+  /**
+   * Finds the node with the given id and all of its descendants.
+   *
+   * @param clazz  the node class
+   * @param nodeId the id of the subtree root
+   * @param <T>    the node type
+   * @return the nodes of the subtree
+   */
+  <T extends Node> Flux<T> findSubtree(Class<T> clazz, String nodeId);
+
+  /**
+   * Counts the node with the given id and all of its descendants.
+   *
+   * @param nodeId the id of the subtree root
+   * @return the number of nodes
+   */
+  Mono<Long> countSubtree(String nodeId);
+
+  /**
+   * Deletes the node with the given id and all of its descendants with one operation.
+   *
+   * @param nodeId the id of the subtree root
+   * @return the number of deleted nodes
+   */
+  Mono<Long> deleteSubtree(String nodeId);
+
+  /**
+   * Sets the access control of the node with the given id and of all of its descendants with one
+   * operation.
+   *
+   * @param nodeId        the id of the subtree root
+   * @param accessControl the new access control
+   * @return the number of modified nodes
+   */
+  Mono<Long> updateSubtreeAccessControl(String nodeId, AccessControl accessControl);
+
   <T extends NodeSettings> Mono<T> findNodeSettings(Class<T> clazz, String nodeId, String userId);
 
+  <T extends NodeSettings> Flux<T> findNodeSettings(
+      Class<T> clazz,
+      Collection<String> nodeIds,
+      String userId);
+
+  /**
+   * Finds the settings of the given nodes and creates the missing ones with one bulk write.
+   *
+   * @param clazz           the settings class
+   * @param nodeIds         the node ids
+   * @param userId          the user id
+   * @param settingsFactory creates the settings of a node id
+   * @param <T>             the settings type
+   * @return the settings of all given nodes
+   */
+  <T extends NodeSettings> Flux<T> findOrCreateNodeSettings(
+      Class<T> clazz,
+      Collection<String> nodeIds,
+      String userId,
+      Function<String, ? extends T> settingsFactory);
+
   Mono<Void> deleteNodeSettings(String nodeId, String userId);
 
+  Mono<Void> deleteNodeSettings(Collection<String> nodeIds, String userId);
+
+  /**
+   * Deletes the settings of all users of the given nodes.
+   *
+   * @param nodeIds the node ids
+   * @return the number of deleted settings
+   */
+  Mono<Long> deleteNodeSettings(Collection<String> nodeIds);
+
 }
@@ -16,14 +16,23 @@
 
 package org.bremersee.peregrinus.tree.repository;
 
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.bremersee.peregrinus.repository.MongoBulkUtils;
+import org.bremersee.peregrinus.security.access.AccessControl;
 import org.bremersee.peregrinus.security.access.MongoRepositoryUtils;
 import org.bremersee.peregrinus.tree.model.Node;
 import org.bremersee.peregrinus.tree.model.NodeSettings;
+import org.bson.Document;
 import org.springframework.data.mongodb.core.ReactiveMongoOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
@@ -62,10 +71,9 @@ public class TreeRepositoryImpl implements TreeRepository {
       Collection<String> roles,
       Collection<String> groups) {
 
-    final List<Criteria> criteriaList = MongoRepositoryUtils.buildCriteriaList(
+    final Criteria two = MongoRepositoryUtils.buildCriteria(
         permission, includePublic, userId, roles, groups);
     final Criteria one = Criteria.where("id").is(id);
-    final Criteria two = new Criteria().orOperator(criteriaList.toArray(new Criteria[0]));
     final Criteria oneAndTwo = new Criteria().andOperator(one, two);
     return mongoOperations.findOne(Query.query(oneAndTwo), clazz);
   }
@@ -88,18 +96,70 @@ public class TreeRepositoryImpl implements TreeRepository {
       Collection<String> roles,
       Collection<String> groups) {
 
-    final List<Criteria> criteriaList = MongoRepositoryUtils.buildCriteriaList(
+    final Criteria two = MongoRepositoryUtils.buildCriteria(
         permission, includePublic, userId, roles, groups);
     final Criteria one = StringUtils.hasText(parentId)
         ? Criteria.where("parentId").is(parentId)
         : new Criteria().orOperator(
             Criteria.where("parentId").exists(false),
             Criteria.where("parentId").is(null));
-    final Criteria two = new Criteria().orOperator(criteriaList.toArray(new Criteria[0]));
     final Criteria oneAndTwo = new Criteria().andOperator(one, two);
     return mongoOperations.find(Query.query(oneAndTwo), clazz);
   }
 
+  @Override
+  public <T extends Node> Flux<T> findNodesByParentIds(
+      Class<T> clazz,
+      Collection<String> parentIds,
+      String permission,
+      boolean includePublic,
+      String userId,
+      Collection<String> roles,
+      Collection<String> groups) {
+
+    if (parentIds == null || parentIds.isEmpty()) {
+      return Flux.empty();
+    }
+    final Criteria two = MongoRepositoryUtils.buildCriteria(
+        permission, includePublic, userId, roles, groups);
+    final Criteria one = Criteria.where("parentId").in(parentIds);
+    final Criteria oneAndTwo = new Criteria().andOperator(one, two);
+    return mongoOperations.find(Query.query(oneAndTwo), clazz);
+  }
+
+  private Criteria subtreeCriteria(String nodeId) {
+    return new Criteria().orOperator(
+        Criteria.where("id").is(nodeId),
+        Criteria.where("path").is(nodeId));
+  }
+
+  @Override
+  public <T extends Node> Flux<T> findSubtree(Class<T> clazz, String nodeId) {
+    return mongoOperations.find(Query.query(subtreeCriteria(nodeId)), clazz);
+  }
+
+  @Override
+  public Mono<Long> countSubtree(String nodeId) {
+    return mongoOperations.count(Query.query(subtreeCriteria(nodeId)), Node.class);
+  }
+
+  @Override
+  public Mono<Long> deleteSubtree(String nodeId) {
+    return mongoOperations
+        .remove(Query.query(subtreeCriteria(nodeId)), Node.class)
+        .map(DeleteResult::getDeletedCount);
+  }
+
+  @Override
+  public Mono<Long> updateSubtreeAccessControl(String nodeId, AccessControl accessControl) {
+    return mongoOperations
+        .updateMulti(
+            Query.query(subtreeCriteria(nodeId)),
+            Update.update("accessControl", accessControl).inc("version", 1),
+            Node.class)
+        .map(UpdateResult::getModifiedCount);
+  }
+
   private Criteria nodeSettingsCriteria(String nodeId, String userId) {
     return new Criteria().andOperator(
         Criteria.where("nodeId").is(nodeId),
@@ -114,6 +174,58 @@ public class TreeRepositoryImpl implements TreeRepository {
     return mongoOperations.findOne(Query.query(nodeSettingsCriteria(nodeId, userId)), clazz);
   }
 
+  @Override
+  public <T extends NodeSettings> Flux<T> findNodeSettings(
+      Class<T> clazz,
+      Collection<String> nodeIds,
+      String userId) {
+
+    if (nodeIds == null || nodeIds.isEmpty()) {
+      return Flux.empty();
+    }
+    final Criteria criteria = new Criteria().andOperator(
+        Criteria.where("nodeId").in(nodeIds),
+        Criteria.where("userId").is(userId));
+    return mongoOperations.find(Query.query(criteria), clazz);
+  }
+
+  @Override
+  public <T extends NodeSettings> Flux<T> findOrCreateNodeSettings(
+      Class<T> clazz,
+      Collection<String> nodeIds,
+      String userId,
+      Function<String, ? extends T> settingsFactory) {
+
+    if (nodeIds == null || nodeIds.isEmpty()) {
+      return Flux.empty();
+    }
+    return findNodeSettings(clazz, nodeIds, userId)
+        .collectList()
+        .flatMapMany(existing -> {
+          final Set<String> found = existing.stream()
+              .map(NodeSettings::getNodeId)
+              .collect(Collectors.toSet());
+          final List<T> missing = nodeIds.stream()
+              .distinct()
+              .filter(nodeId -> !found.contains(nodeId))
+              .map(settingsFactory)
+              .collect(Collectors.toList());
+          if (missing.isEmpty()) {
+            return Flux.fromIterable(existing);
+          }
+          final Set<String> missingIds = missing.stream()
+              .map(NodeSettings::getNodeId)
+              .collect(Collectors.toSet());
+          return MongoBulkUtils
+              .insertIfAbsent(mongoOperations, missing, settings -> new Document()
+                  .append("nodeId", settings.getNodeId())
+                  .append("userId", settings.getUserId()))
+              .thenMany(Flux.concat(
+                  Flux.fromIterable(existing),
+                  findNodeSettings(clazz, missingIds, userId)));
+        });
+  }
+
   @Override
   public Mono<Void> deleteNodeSettings(String nodeId, String userId) {
     return mongoOperations
@@ -121,4 +233,27 @@ public class TreeRepositoryImpl implements TreeRepository {
         .flatMap(deleteResult -> Mono.empty());
   }
 
+  @Override
+  public Mono<Void> deleteNodeSettings(Collection<String> nodeIds, String userId) {
+    if (nodeIds == null || nodeIds.isEmpty()) {
+      return Mono.empty();
+    }
+    final Criteria criteria = new Criteria().andOperator(
+        Criteria.where("nodeId").in(nodeIds),
+        Criteria.where("userId").is(userId));
+    return mongoOperations
+        .remove(Query.query(criteria), NodeSettings.class)
+        .flatMap(deleteResult -> Mono.empty());
+  }
+
+  @Override
+  public Mono<Long> deleteNodeSettings(Collection<String> nodeIds) {
+    if (nodeIds == null || nodeIds.isEmpty()) {
+      return Mono.just(0L);
+    }
+    return mongoOperations
+        .remove(Query.query(Criteria.where("nodeId").in(nodeIds)), NodeSettings.class)
+        .map(DeleteResult::getDeletedCount);
+  }
+
 }
@@ -16,10 +16,19 @@
 
 package org.bremersee.peregrinus.tree.service;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.bremersee.peregrinus.content.model.Feature;
 import org.bremersee.peregrinus.content.model.FeatureSettings;
 import org.bremersee.peregrinus.content.repository.FeatureRepository;
 import org.bremersee.peregrinus.security.access.AccessControl;
+import org.bremersee.peregrinus.security.access.PermissionConstants;
+import org.bremersee.peregrinus.security.access.PermissionEvaluator;
 import org.bremersee.peregrinus.tree.model.GeoLeaf;
 import org.bremersee.peregrinus.tree.model.GeoLeafSettings;
 import org.bremersee.peregrinus.tree.model.Leaf;
@@ -27,6 +36,7 @@ import org.bremersee.peregrinus.tree.model.LeafSettings;
 import org.bremersee.peregrinus.tree.model.Node;
 import org.bremersee.peregrinus.tree.repository.TreeRepository;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -53,14 +63,18 @@ public class GeoLeafAdapter implements LeafAdapter {
   @Override
   public Mono<Leaf> setLeafName(final Leaf leaf) {
     final GeoLeaf geoLeaf = (GeoLeaf) leaf;
-    geoLeaf.setName(geoLeaf.getFeature().getProperties().getName());
-    return Mono.just(leaf);
+    return setFeature(geoLeaf).map(feature -> {
+      geoLeaf.setName(feature.getProperties().getName());
+      return leaf;
+    }).defaultIfEmpty(leaf);
   }
 
   @Override
   public Mono<Leaf> setLeafSettings(final Leaf leaf, final String userId) {
-    return treeRepository.findNodeSettings(LeafSettings.class, leaf.getId(), userId)
-        .switchIfEmpty(createLeafSettings(leaf, userId))
+    return treeRepository
+        .findOrCreateNodeSettings(LeafSettings.class, Collections.singleton(leaf.getId()), userId,
+            nodeId -> createLeafSettings(nodeId, userId))
+        .next()
         .map(leafSettings -> {
           leaf.setSettings(leafSettings);
           return leaf;
@@ -71,22 +85,106 @@ public class GeoLeafAdapter implements LeafAdapter {
   public Mono<Leaf> setLeafContent(
       final Leaf leaf,
       final String userId) {
+    final GeoLeaf geoLeaf = (GeoLeaf) leaf;
+    return setFeature(geoLeaf)
+        .flatMap(feature -> featureRepository
+            .findOrCreateFeatureSettings(FeatureSettings.class,
+                Collections.singleton(feature.getId()), userId,
+                featureId -> createFeatureSettings(feature, userId))
+            .next()
+            .map(featureSettings -> {
+              //noinspection unchecked
+              feature.getProperties().setSettings(featureSettings);
+              return leaf;
+            }))
+        .defaultIfEmpty(leaf);
+  }
+
+  private Mono<Feature> setFeature(final GeoLeaf geoLeaf) {
+    if (geoLeaf.getFeature() != null) {
+      return Mono.just(geoLeaf.getFeature());
+    }
     return featureRepository
-        .findFeatureSettings(FeatureSettings.class, ((GeoLeaf) leaf).getFeature().getId(), userId)
-        .switchIfEmpty(createFeatureSettings(((GeoLeaf) leaf).getFeature(), userId))
-        .map(featureSettings -> {
-          //noinspection unchecked
-          ((GeoLeaf) leaf).getFeature().getProperties().setSettings(featureSettings);
-          return leaf;
+        .findFeatureHeaders(Collections.singleton(geoLeaf.getFeatureId()), false)
+        .next()
+        .doOnNext(geoLeaf::setFeature);
+  }
+
+  @Override
+  public Flux<Leaf> prepareLeaves(
+      final Collection<? extends Leaf> leaves,
+      final PermissionEvaluator evaluator,
+      final Integer zoom) {
+
+    final String userId = evaluator.getUserId();
+    final List<GeoLeaf> geoLeaves = leaves
+        .stream()
+        .map(GeoLeaf.class::cast)
+        .collect(Collectors.toList());
+    return featureRepository
+        .findFeatureHeaders(featureIds(geoLeaves), zoom != null)
+        .filter(feature -> evaluator.hasPermission(
+            feature.getProperties().getAccessControl(), PermissionConstants.READ))
+        .collectMap(Feature::getId)
+        .flatMapMany(features -> {
+          geoLeaves.forEach(geoLeaf -> {
+            final Feature feature = features.get(geoLeaf.getFeatureId());
+            if (feature != null) {
+              geoLeaf.setFeature(feature);
+              geoLeaf.setName(feature.getProperties().getName());
+            }
+          });
+          final List<GeoLeaf> geoLeavesWithFeature = geoLeaves
+              .stream()
+              .filter(geoLeaf -> geoLeaf.getFeature() != null)
+              .collect(Collectors.toList());
+          return Mono
+              .when(
+                  setLeafSettings(geoLeaves, userId),
+                  setLeafContent(geoLeavesWithFeature, userId),
+                  featureRepository.applyFeatureLods(features.values(), zoom))
+              .thenMany(Flux.fromIterable(geoLeaves));
         });
   }
 
+  private Mono<Void> setLeafSettings(final List<GeoLeaf> geoLeaves, final String userId) {
+    final Set<String> nodeIds = geoLeaves
+        .stream()
+        .map(Node::getId)
+        .collect(Collectors.toSet());
+    return treeRepository
+        .findOrCreateNodeSettings(LeafSettings.class, nodeIds, userId,
+            nodeId -> createLeafSettings(nodeId, userId))
+        .collectMap(LeafSettings::getNodeId)
+        .doOnNext(settingsMap -> geoLeaves.forEach(geoLeaf -> geoLeaf
+            .setSettings(settingsMap.get(geoLeaf.getId()))))
+        .then();
+  }
+
+  private Mono<Void> setLeafContent(final List<GeoLeaf> geoLeaves, final String userId) {
+    final Map<String, Feature> features = geoLeaves
+        .stream()
+        .map(GeoLeaf::getFeature)
+        .collect(Collectors.toMap(Feature::getId, feature -> feature, (a, b) -> a));
+    return featureRepository
+        .findOrCreateFeatureSettings(FeatureSettings.class, features.keySet(), userId,
+            featureId -> createFeatureSettings(features.get(featureId), userId))
+        .doOnNext(featureSettings -> {
+          //noinspection unchecked
+          features.get(featureSettings.getFeatureId()).getProperties()
+              .setSettings(featureSettings);
+        })
+        .then();
+  }
+
   @Override
   public Mono<Void> renameLeaf(final Leaf leaf, final String name) {
     final GeoLeaf geoLeaf = (GeoLeaf) leaf;
     geoLeaf.setName(name);
-    geoLeaf.getFeature().getProperties().setName(name);
-    return featureRepository.persist(geoLeaf.getFeature()).flatMap(entity -> Mono.empty());
+    if (geoLeaf.getFeature() != null) {
+      geoLeaf.getFeature().getProperties().setName(name);
+    }
+    return featureRepository.renameFeature(geoLeaf.getFeatureId(), name).then();
   }
 
   @Override
@@ -94,40 +192,69 @@ public class GeoLeafAdapter implements LeafAdapter {
       final Leaf leaf,
       final AccessControl accessControl) {
     final GeoLeaf geoLeaf = (GeoLeaf) leaf;
-    final Feature feature = geoLeaf.getFeature();
-    feature.getProperties().setAccessControl(accessControl);
     return featureRepository
-        .persist(feature)
-        .flatMap(feature0 -> {
-          geoLeaf.setFeature(feature);
+        .updateAccessControl(Collections.singleton(geoLeaf.getFeatureId()), accessControl)
+        .flatMap(count -> {
+          if (geoLeaf.getFeature() != null) {
+            geoLeaf.getFeature().getProperties().setAccessControl(accessControl);
+          }
           geoLeaf.setAccessControl(accessControl);
           return treeRepository.persist(geoLeaf)
               .map(Node::getAccessControl);
         });
   }
 
+  @Override
+  public Mono<Void> updateAccessControl(
+      final Collection<? extends Leaf> leaves,
+      final AccessControl accessControl) {
+    return featureRepository
+        .updateAccessControl(featureIds(leaves), accessControl)
+        .then();
+  }
+
   @Override
   public Mono<Void> delete(final Leaf leaf, final String userId) {
     final GeoLeaf geoLeaf = (GeoLeaf) leaf;
+    final Set<String> featureIds = Collections.singleton(geoLeaf.getFeatureId());
     return treeRepository
-        .deleteNodeSettings(leaf.getId(), userId)
-        .and(treeRepository.delete(leaf))
-        .and(featureRepository.delete(geoLeaf.getFeature()))
-        .and(featureRepository.deleteFeatureSettings(geoLeaf.getFeature().getId(), userId));
+        .deleteNodeSettings(Collections.singleton(leaf.getId()))
+        .then(featureRepository.deleteFeatureSettings(featureIds))
+        .then(featureRepository.deleteFeatures(featureIds))
+        .then(treeRepository.delete(leaf));
   }
 
-  private Mono<FeatureSettings> createFeatureSettings(
-      final Feature feature, final String userId) {
+  @Override
+  public Mono<Void> delete(final Collection<? extends Leaf> leaves, final String userId) {
+    final Set<String> nodeIds = leaves
+        .stream()
+        .map(Node::getId)
+        .collect(Collectors.toSet());
+    final Set<String> featureIds = featureIds(leaves);
+    return treeRepository
+        .deleteNodeSettings(nodeIds)
+        .then(featureRepository.deleteFeatureSettings(featureIds))
+        .then(featureRepository.deleteFeatures(featureIds))
+        .then();
+  }
+
+  private Set<String> featureIds(final Collection<? extends Leaf> leaves) {
+    return leaves
+        .stream()
+        .map(leaf -> ((GeoLeaf) leaf).getFeatureId())
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+  }
 
-    final FeatureSettings featureSettings = feature
+  private FeatureSettings createFeatureSettings(final Feature feature, final String userId) {
+    return feature
         .getProperties()
         .createDefaultSettings(feature.getId(), userId);
-    return featureRepository.persist(featureSettings);
   }
 
-  private Mono<GeoLeafSettings> createLeafSettings(final Leaf leaf, final String userId) {
-    final GeoLeafSettings settings = new GeoLeafSettings(leaf.getId(), userId);
+  private GeoLeafSettings createLeafSettings(final String nodeId, final String userId) {
+    final GeoLeafSettings settings = new GeoLeafSettings(nodeId, userId);
     settings.setDisplayedOnMap(true);
-    return treeRepository.persist(settings);
+    return settings;
   }
 }
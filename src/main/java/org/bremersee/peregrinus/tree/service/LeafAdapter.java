@@ -16,10 +16,14 @@
 
 package org.bremersee.peregrinus.tree.service;
 
+import java.util.Collection;
 import javax.validation.constraints.NotNull;
 import org.bremersee.peregrinus.security.access.AccessControl;
+import org.bremersee.peregrinus.security.access.PermissionEvaluator;
 import org.bremersee.peregrinus.tree.model.Leaf;
+import org.springframework.lang.Nullable;
 import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -36,11 +40,49 @@ public interface LeafAdapter { // N = Node, C = Content?
 
   Mono<Leaf> setLeafContent(@NotNull Leaf leaf, @NotNull String userId);
 
+  /**
+   * Sets name, settings and content of all given leaves. Implementations should load the data of
+   * all leaves with a constant number of queries. Content, that the caller cannot read, is not
+   * set.
+   *
+   * @param leaves    the leaves (all of them must be supported by this adapter)
+   * @param evaluator the permission evaluator of the caller
+   * @param zoom      the zoom level of the map the content is simplified for (can be {@code
+   *                  null})
+   * @return the prepared leaves
+   */
+  Flux<Leaf> prepareLeaves(
+      @NotNull Collection<? extends Leaf> leaves,
+      @NotNull PermissionEvaluator evaluator,
+      @Nullable Integer zoom);
+
   Mono<Void> renameLeaf(@NotNull Leaf leaf, @NotNull String name);
 
   Mono<AccessControl> updateAccessControl(
       @NotNull Leaf leaf,
       @NotNull AccessControl accessControl);
 
+  /**
+   * Updates the access control of the content of all given leaves. The access control of the leaf
+   * nodes themselves is not updated.
+   *
+   * @param leaves        the leaves (all of them must be supported by this adapter)
+   * @param accessControl the new access control
+   * @return empty mono
+   */
+  Mono<Void> updateAccessControl(
+      @NotNull Collection<? extends Leaf> leaves,
+      @NotNull AccessControl accessControl);
+
   Mono<Void> delete(@NotNull Leaf leaf, @NotNull String userId);
+
+  /**
+   * Deletes the content and the settings (of all users) of all given leaves. The leaf nodes
+   * themselves are not deleted.
+   *
+   * @param leaves the leaves (all of them must be supported by this adapter)
+   * @param userId the user id
+   * @return empty mono
+   */
+  Mono<Void> delete(@NotNull Collection<? extends Leaf> leaves, @NotNull String userId);
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.tree.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.tree.model.TreeJob;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Runs the recursive tree operations of large subtrees in the background and keeps their status.
+ *
+ * @author Christian Bremer
+ */
+@Component
+@Slf4j
+public class TreeJobRegistry {
+
+  private final Cache<String, TreeJob> jobs;
+
+  public TreeJobRegistry(PeregrinusProperties peregrinusProperties) {
+    this.jobs = Caffeine.newBuilder()
+        .expireAfterWrite(
+            peregrinusProperties.getTreeJobs().getTimeToLive().toMillis(),
+            TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Registers the job and subscribes the operation in the background.
+   *
+   * @param job       the job
+   * @param operation the operation of the job
+   * @return the running job
+   */
+  public TreeJob submit(final TreeJob job, final Mono<?> operation) {
+    jobs.put(job.getId(), job);
+    log.info("msg=[Tree job started.] job=[{}]", job);
+    operation.subscribe(
+        null,
+        error -> {
+          job.failed(error);
+          jobs.put(job.getId(), job);
+          log.error("msg=[Tree job failed.] job=[" + job + "]", error);
+        },
+        () -> {
+          job.done();
+          jobs.put(job.getId(), job);
+          log.info("msg=[Tree job finished.] job=[{}]", job);
+        });
+    return job;
+  }
+
+  /**
+   * Finds a job.
+   *
+   * @param jobId the job id
+   * @return the job
+   */
+  public Mono<TreeJob> findJob(final String jobId) {
+    return Mono.justOrEmpty(jobs.getIfPresent(jobId));
+  }
+
+}
@@ -17,8 +17,11 @@
 package org.bremersee.peregrinus.tree.service;
 
 import javax.validation.constraints.NotNull;
+import org.bremersee.peregrinus.content.model.Feature;
 import org.bremersee.peregrinus.security.access.AccessControl;
 import org.bremersee.peregrinus.tree.model.Branch;
+import org.bremersee.peregrinus.tree.model.TreeJob;
+import org.bremersee.peregrinus.tree.model.TreeNodeEvent;
 import org.hibernate.validator.constraints.Length;
 import org.springframework.lang.Nullable;
 import org.springframework.security.core.Authentication;
@@ -38,9 +41,36 @@ public interface TreeService {
       @Nullable AccessControl accessControl,
       @NotNull Authentication authentication);
 
+  /**
+   * Loads the root branches of the current user.
+   *
+   * @param openAll        open all branches
+   * @param includePublic  include public branches
+   * @param zoom           the zoom level of the map, the geometries of the leaves are simplified
+   *                       for it (if it is {@code null}, the full geometries are returned)
+   * @param authentication the current user
+   * @return the root branches
+   */
   Flux<Branch> loadBranches(
       boolean openAll,
       boolean includePublic,
+      @Nullable Integer zoom,
+      @NotNull Authentication authentication);
+
+  /**
+   * Streams the root branches of the current user and their open subtrees level by level. A node
+   * is emitted as soon as it and its settings are loaded, the children of a branch follow later.
+   *
+   * @param openAll        open all branches
+   * @param includePublic  include public branches
+   * @param zoom           the zoom level of the map (see {@link #loadBranches})
+   * @param authentication the current user
+   * @return the nodes
+   */
+  Flux<TreeNodeEvent> streamBranches(
+      boolean openAll,
+      boolean includePublic,
+      @Nullable Integer zoom,
       @NotNull Authentication authentication);
 
   Mono<Void> renameNode(
@@ -48,19 +78,62 @@ public interface TreeService {
       @NotNull @Length(min = 1) String name,
       @NotNull Authentication authentication);
 
-  Mono<AccessControl> updateAccessControl(
+  /**
+   * Updates the access control of a node. If it is done recursively and the subtree is large, the
+   * returned job is still running.
+   *
+   * @param nodeId         the node id
+   * @param recursive      specifies whether the access control of all descendants is updated
+   * @param accessControl  the new access control
+   * @param authentication the current user
+   * @return the job with the new access control
+   */
+  Mono<TreeJob> updateAccessControl(
       @NotNull String nodeId,
       boolean recursive,
       @NotNull AccessControl accessControl,
       @NotNull Authentication authentication);
 
-  Mono<Void> deleteNode(
+  /**
+   * Deletes a node with all of its descendants. If the subtree is large, the returned job is still
+   * running.
+   *
+   * @param nodeId         the node id
+   * @param authentication the current user
+   * @return the job
+   */
+  Mono<TreeJob> deleteNode(
       @NotNull String nodeId,
       @NotNull Authentication authentication);
 
+  /**
+   * Finds a job of the current user.
+   *
+   * @param jobId          the job id
+   * @param authentication the current user
+   * @return the job
+   */
+  Mono<TreeJob> findJob(
+      @NotNull String jobId,
+      @NotNull Authentication authentication);
+
   Mono<Branch> openBranch(
       @NotNull String branchId,
       boolean openAll,
+      @Nullable Integer zoom,
+      @NotNull Authentication authentication);
+
+  /**
+   * Finds all features of a subtree, that the user is allowed to read, with all their data and
+   * the settings of the user. The features are ordered by their type (way points, routes and
+   * tracks) and loaded batch by batch.
+   *
+   * @param nodeId         the id of the subtree root
+   * @param authentication the current user
+   * @return the features
+   */
+  Flux<Feature> exportFeatures(
+      @NotNull String nodeId,
       @NotNull Authentication authentication);
 
   Mono<Void> closeBranch(
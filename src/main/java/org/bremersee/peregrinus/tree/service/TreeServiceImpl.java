@@ -16,18 +16,34 @@
 
 package org.bremersee.peregrinus.tree.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.bremersee.exception.ServiceException;
-import org.bremersee.groupman.api.GroupControllerApi;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.TreeJobProperties;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.FeatureSettings;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.bremersee.peregrinus.content.repository.FeatureRepository;
 import org.bremersee.peregrinus.security.access.AccessControl;
 import org.bremersee.peregrinus.security.access.PermissionConstants;
+import org.bremersee.peregrinus.security.access.PermissionEvaluator;
+import org.bremersee.peregrinus.security.group.MembershipService;
 import org.bremersee.peregrinus.tree.model.Branch;
 import org.bremersee.peregrinus.tree.model.BranchSettings;
+import org.bremersee.peregrinus.tree.model.GeoLeaf;
 import org.bremersee.peregrinus.tree.model.Leaf;
 import org.bremersee.peregrinus.tree.model.Node;
+import org.bremersee.peregrinus.tree.model.TreeJob;
+import org.bremersee.peregrinus.tree.model.TreeNodeEvent;
 import org.bremersee.peregrinus.tree.repository.TreeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
@@ -45,18 +61,30 @@ public class TreeServiceImpl implements TreeService {
 
   private final TreeRepository treeRepository;
 
-  private final GroupControllerApi groupService;
+  private final FeatureRepository featureRepository;
+
+  private final MembershipService membershipService;
 
   private final List<LeafAdapter> leafAdapters;
 
+  private final TreeJobRegistry jobRegistry;
+
+  private final TreeJobProperties jobProperties;
+
   @Autowired
   public TreeServiceImpl(
       TreeRepository treeRepository,
-      GroupControllerApi groupService,
-      List<LeafAdapter> leafAdapters) {
+      FeatureRepository featureRepository,
+      MembershipService membershipService,
+      List<LeafAdapter> leafAdapters,
+      TreeJobRegistry jobRegistry,
+      PeregrinusProperties peregrinusProperties) {
     this.treeRepository = treeRepository;
-    this.groupService = groupService;
+    this.featureRepository = featureRepository;
+    this.membershipService = membershipService;
     this.leafAdapters = leafAdapters;
+    this.jobRegistry = jobRegistry;
+    this.jobProperties = peregrinusProperties.getTreeJobs();
   }
 
   private Mono<LeafAdapter> findLeafAdapter(final Leaf leaf) {
@@ -81,14 +109,16 @@ public class TreeServiceImpl implements TreeService {
         .collect(Collectors.toSet());
 
     if (StringUtils.hasText(parentId)) {
-      return groupService.getMembershipIds()
+      return membershipService.getMembershipIds(userId)
           .flatMap(groups -> createBranch(
               name, parentId, userId, accessControl, roles, groups));
     }
     final AccessControl newAccessControl = new AccessControl(accessControl)
         .owner(userId)
         .addUser(userId, PermissionConstants.ALL);
-    return treeRepository.persist(new Branch(name, null, newAccessControl));
+    final Branch branch = new Branch(name, null, newAccessControl);
+    branch.setPath(new ArrayList<>());
+    return treeRepository.persist(branch);
   }
 
   private Mono<Branch> createBranch(
@@ -103,19 +133,21 @@ public class TreeServiceImpl implements TreeService {
         .findNodeById(Branch.class, parentId, PermissionConstants.WRITE, true, userId, roles,
             groups)
         .switchIfEmpty(Mono.error(ServiceException.forbidden("TreeBranch", parentId)))
-        .map(Node::getAccessControl)
-        .flatMap(existAccessControl -> {
+        .flatMap(parent -> {
+          final AccessControl existAccessControl = parent.getAccessControl();
           final AccessControl newAccessControl;
           if (accessControl == null
-              || !existAccessControl.hasPermission(
-              PermissionConstants.ADMINISTRATION, userId, roles, groups)) {
+              || !PermissionEvaluator.of(userId, roles, groups)
+              .hasPermission(existAccessControl, PermissionConstants.ADMINISTRATION)) {
             newAccessControl = existAccessControl;
           } else {
             newAccessControl = new AccessControl(accessControl)
                 .owner(userId)
                 .addUser(userId, PermissionConstants.ALL);
           }
-          return treeRepository.persist(new Branch(name, parentId, newAccessControl));
+          final Branch branch = new Branch(name, parentId, newAccessControl);
+          branch.setPath(parent.buildChildPath());
+          return treeRepository.persist(branch);
         });
   }
 
@@ -130,7 +162,7 @@ public class TreeServiceImpl implements TreeService {
         .stream()
         .map(GrantedAuthority::getAuthority)
         .collect(Collectors.toSet());
-    return groupService.getMembershipIds()
+    return membershipService.getMembershipIds(userId)
         .flatMap(groups -> renameNode(nodeId, name, userId, roles, groups));
   }
 
@@ -160,7 +192,7 @@ public class TreeServiceImpl implements TreeService {
   }
 
   @Override
-  public Mono<AccessControl> updateAccessControl(
+  public Mono<TreeJob> updateAccessControl(
       final String nodeId,
       final boolean recursive,
       final AccessControl accessControl,
@@ -171,12 +203,12 @@ public class TreeServiceImpl implements TreeService {
         .stream()
         .map(GrantedAuthority::getAuthority)
         .collect(Collectors.toSet());
-    return groupService.getMembershipIds()
+    return membershipService.getMembershipIds(userId)
         .flatMap(groups -> updateAccessControl(
             nodeId, recursive, accessControl, userId, roles, groups));
   }
 
-  private Mono<AccessControl> updateAccessControl(
+  private Mono<TreeJob> updateAccessControl(
       final String nodeId,
       final boolean recursive,
       final AccessControl accessControl,
@@ -192,40 +224,63 @@ public class TreeServiceImpl implements TreeService {
         .findNodeById(Node.class, nodeId, PermissionConstants.ADMINISTRATION, true,
             userId, roles, groups)
         .switchIfEmpty(Mono.error(ServiceException.forbidden("TreeNode", nodeId)))
-        .flatMap(node -> updateAccessControl(node, recursive, newAccessControl));
+        .flatMap(node -> updateAccessControl(node, recursive, newAccessControl, userId));
   }
 
-  private Mono<AccessControl> updateAccessControl(
+  private Mono<TreeJob> updateAccessControl(
       final Node node,
       final boolean recursive,
-      final AccessControl accessControl) {
+      final AccessControl accessControl,
+      final String userId) {
 
     if (recursive) {
-      if (node instanceof Branch) {
-        return treeRepository.findNodesByParentId(Branch.class, node.getId())
-            .flatMap(node0 -> updateAccessControl(node0, true, accessControl))
-            .count()
-            .flatMap(size -> updateAccessControl(node, false, accessControl));
-      } else {
-        return updateAccessControl(node, false, accessControl);
-      }
+      return treeRepository
+          .countSubtree(node.getId())
+          .map(total -> new TreeJob(
+              TreeJob.Type.UPDATE_ACCESS_CONTROL, node.getId(), userId, total, accessControl))
+          .flatMap(job -> runJob(job, updateSubtreeAccessControl(node, accessControl, job)));
+    }
+    final Mono<AccessControl> result;
+    if (node instanceof Branch) {
+      node.setAccessControl(accessControl);
+      result = treeRepository.persist(node).map(Node::getAccessControl);
+    } else if (node instanceof Leaf) {
+      final Leaf leaf = (Leaf) node;
+      result = findLeafAdapter(leaf)
+          .flatMap(leafAdapter -> leafAdapter.updateAccessControl(leaf, accessControl))
+          .switchIfEmpty(Mono.just(accessControl));
     } else {
-      if (node instanceof Branch) {
-        node.setAccessControl(accessControl);
-        return treeRepository.persist(node).map(Node::getAccessControl);
-      } else if (node instanceof Leaf) {
-        final Leaf leaf = (Leaf) node;
-        return findLeafAdapter(leaf)
-            .flatMap(leafAdapter -> leafAdapter.updateAccessControl(leaf, accessControl))
-            .switchIfEmpty(Mono.just(accessControl));
-      } else {
-        return Mono.just(accessControl);
-      }
+      result = Mono.just(accessControl);
     }
+    return result.map(newAccessControl -> {
+      final TreeJob job = new TreeJob(
+          TreeJob.Type.UPDATE_ACCESS_CONTROL, node.getId(), userId, 1L, newAccessControl);
+      job.addProcessedNodes(1L);
+      job.done();
+      return job;
+    });
+  }
+
+  private Mono<Void> updateSubtreeAccessControl(
+      final Node node,
+      final AccessControl accessControl,
+      final TreeJob job) {
+
+    return treeRepository
+        .updateSubtreeAccessControl(node.getId(), accessControl)
+        .thenMany(treeRepository.findSubtree(Node.class, node.getId()))
+        .buffer(jobProperties.getBatchSize())
+        .flatMap(nodes -> Flux
+                .fromIterable(groupByLeafAdapter(filterNodes(nodes, Leaf.class)).entrySet())
+                .flatMap(entry -> entry.getKey()
+                    .updateAccessControl(entry.getValue(), accessControl))
+                .then(Mono.fromRunnable(() -> job.addProcessedNodes(nodes.size()))),
+            jobProperties.getMaxConcurrency())
+        .then();
   }
 
   @Override
-  public Mono<Void> deleteNode(
+  public Mono<TreeJob> deleteNode(
       final String nodeId,
       final Authentication authentication) {
 
@@ -234,11 +289,11 @@ public class TreeServiceImpl implements TreeService {
         .stream()
         .map(GrantedAuthority::getAuthority)
         .collect(Collectors.toSet());
-    return groupService.getMembershipIds()
+    return membershipService.getMembershipIds(userId)
         .flatMap(groups -> deleteNode(nodeId, userId, roles, groups));
   }
 
-  private Mono<Void> deleteNode(
+  private Mono<TreeJob> deleteNode(
       final String nodeId,
       final String userId,
       final Collection<String> roles,
@@ -247,31 +302,83 @@ public class TreeServiceImpl implements TreeService {
     return treeRepository
         .findNodeById(Node.class, nodeId, PermissionConstants.DELETE, true, userId, roles, groups)
         .switchIfEmpty(Mono.error(ServiceException.forbidden("TreeNode", nodeId)))
-        .flatMap(node -> deleteNode(node, userId));
+        .flatMap(node -> treeRepository
+            .countSubtree(node.getId())
+            .map(total -> new TreeJob(TreeJob.Type.DELETE, node.getId(), userId, total, null))
+            .flatMap(job -> runJob(job, deleteNode(node, userId, job))));
   }
 
-  private Mono<Void> deleteNode(final Node node, final String userId) {
-    if (node instanceof Branch) {
-      return treeRepository.findNodesByParentId(Node.class, node.getId())
-          .flatMap(child -> deleteNode(child, userId))
-          .count()
-          .flatMap(size -> treeRepository
-              .deleteNodeSettings(node.getId(), userId)
-              .and(treeRepository.delete(node)));
-    } else if (node instanceof Leaf) {
-      final Leaf leaf = (Leaf) node;
-      return treeRepository.delete(node)
-          .and(findLeafAdapter(leaf)
-              .flatMap(leafAdapter -> leafAdapter.delete(leaf, userId)));
-    } else {
-      return Mono.empty();
+  /**
+   * Deletes the settings of all users and the content of the subtree batch by batch and the nodes
+   * at last. Every step can be repeated, so a failed delete is completed by deleting the node
+   * again. What is left by an aborted delete is removed by the {@code OrphanCompaction}.
+   */
+  private Mono<Void> deleteNode(final Node node, final String userId, final TreeJob job) {
+    return treeRepository.findSubtree(Node.class, node.getId())
+        .buffer(jobProperties.getBatchSize())
+        .flatMap(nodes -> treeRepository
+                .deleteNodeSettings(nodes.stream().map(Node::getId).collect(Collectors.toSet()))
+                .thenMany(Flux.fromIterable(
+                    groupByLeafAdapter(filterNodes(nodes, Leaf.class)).entrySet()))
+                .flatMap(entry -> entry.getKey().delete(entry.getValue(), userId))
+                .then(Mono.fromRunnable(() -> job.addProcessedNodes(nodes.size()))),
+            jobProperties.getMaxConcurrency())
+        .then(treeRepository.deleteSubtree(node.getId()))
+        .then();
+  }
+
+  /**
+   * Runs the operation of the job. If the subtree is larger than the threshold, the job is
+   * returned at once and the operation runs in the background.
+   */
+  private Mono<TreeJob> runJob(final TreeJob job, final Mono<Void> operation) {
+    if (job.getTotalNodes() > jobProperties.getThreshold()) {
+      return Mono.just(jobRegistry.submit(job, operation));
     }
+    return operation.then(Mono.fromCallable(() -> {
+      job.done();
+      return job;
+    }));
+  }
+
+  @Override
+  public Mono<TreeJob> findJob(final String jobId, final Authentication authentication) {
+    return jobRegistry.findJob(jobId)
+        .filter(job -> authentication.getName().equals(job.getUserId()))
+        .switchIfEmpty(Mono.error(ServiceException.forbidden("TreeJob", jobId)));
   }
 
   @Override
   public Flux<Branch> loadBranches(
       final boolean openAll,
       final boolean includePublic,
+      final Integer zoom,
+      final Authentication authentication) {
+
+    final OpenBranchCommand openBranchCommand = openAll
+        ? OpenBranchCommand.ALL
+        : OpenBranchCommand.RETAIN;
+    final String userId = authentication.getName();
+    final Set<String> roles = authentication.getAuthorities()
+        .stream()
+        .map(GrantedAuthority::getAuthority)
+        .collect(Collectors.toSet());
+    return membershipService.getMembershipIds(userId)
+        .flatMapMany(groups -> treeRepository
+            .findNodesByParentId(Branch.class, null, PermissionConstants.READ, includePublic,
+                userId, roles, groups)
+            .collectList()
+            .flatMap(branches -> loadBranches(
+                branches, openBranchCommand, zoom, userId, roles, groups,
+                PermissionEvaluator.of(userId, roles, groups)))
+            .flatMapIterable(branches -> branches));
+  }
+
+  @Override
+  public Flux<TreeNodeEvent> streamBranches(
+      final boolean openAll,
+      final boolean includePublic,
+      final Integer zoom,
       final Authentication authentication) {
 
     final OpenBranchCommand openBranchCommand = openAll
@@ -282,17 +389,21 @@ public class TreeServiceImpl implements TreeService {
         .stream()
         .map(GrantedAuthority::getAuthority)
         .collect(Collectors.toSet());
-    return groupService.getMembershipIds()
+    return membershipService.getMembershipIds(userId)
         .flatMapMany(groups -> treeRepository
             .findNodesByParentId(Branch.class, null, PermissionConstants.READ, includePublic,
                 userId, roles, groups)
-            .flatMap(branch -> loadBranch(branch, openBranchCommand, userId, roles, groups)));
+            .collectList()
+            .flatMapMany(branches -> streamBranches(
+                branches, 0, openBranchCommand, zoom, userId, roles, groups,
+                PermissionEvaluator.of(userId, roles, groups))));
   }
 
   @Override
   public Mono<Branch> openBranch(
       final String branchId,
       final boolean openAll,
+      final Integer zoom,
       final Authentication authentication) {
     final String userId = authentication.getName();
     final Set<String> roles = authentication.getAuthorities()
@@ -303,14 +414,15 @@ public class TreeServiceImpl implements TreeService {
     final OpenBranchCommand openBranchCommand = openAll
         ? OpenBranchCommand.ALL
         : OpenBranchCommand.CURRENT;
-    return groupService.getMembershipIds()
-        .flatMap(groups -> treeRepository.findNodeById(Branch.class, branchId,
-            PermissionConstants.READ, true, userId, roles, groups))
-        .switchIfEmpty(Mono.error(ServiceException.forbidden("TreeBranch", branchId)))
-        .flatMap(
-            treeBranch -> groupService.getMembershipIds()
-                .flatMap(
-                    groups -> loadBranch(treeBranch, openBranchCommand, userId, roles, groups)));
+    return membershipService.getMembershipIds(userId)
+        .flatMap(groups -> treeRepository
+            .findNodeById(Branch.class, branchId, PermissionConstants.READ, true,
+                userId, roles, groups)
+            .switchIfEmpty(Mono.error(ServiceException.forbidden("TreeBranch", branchId)))
+            .flatMap(treeBranch -> loadBranches(
+                Collections.singletonList(treeBranch), openBranchCommand, zoom,
+                userId, roles, groups, PermissionEvaluator.of(userId, roles, groups))))
+        .map(branches -> branches.get(0));
   }
 
   @Override
@@ -325,89 +437,266 @@ public class TreeServiceImpl implements TreeService {
         .flatMap(branch -> Mono.empty());
   }
 
-  private Mono<Branch> loadBranch(
-      final Branch branch,
-      final OpenBranchCommand openBranchCommand,
+  @Override
+  public Flux<Feature> exportFeatures(
+      final String nodeId,
+      final Authentication authentication) {
+
+    final String userId = authentication.getName();
+    final Set<String> roles = authentication.getAuthorities()
+        .stream()
+        .map(GrantedAuthority::getAuthority)
+        .collect(Collectors.toSet());
+    return membershipService.getMembershipIds(userId)
+        .flatMapMany(groups -> treeRepository
+            .findNodeById(Node.class, nodeId, PermissionConstants.READ, true, userId, roles,
+                groups)
+            .switchIfEmpty(Mono.error(ServiceException.forbidden("TreeNode", nodeId)))
+            .flatMapMany(node -> treeRepository.findSubtree(Node.class, node.getId()))
+            .filter(node -> node instanceof GeoLeaf && ((GeoLeaf) node).getFeatureId() != null)
+            .map(node -> ((GeoLeaf) node).getFeatureId())
+            .distinct()
+            .collectList()
+            .flatMapMany(featureIds -> Flux.concat(
+                exportFeatures(Wpt.class, featureIds, userId, roles, groups),
+                exportFeatures(Rte.class, featureIds, userId, roles, groups),
+                exportFeatures(Trk.class, featureIds, userId, roles, groups))));
+  }
+
+  /**
+   * Only the ids of the features are held in memory, the features themselves are streamed batch by
+   * batch. The settings are loaded with one query per batch.
+   */
+  private Flux<Feature> exportFeatures(
+      final Class<? extends Feature> clazz,
+      final List<String> featureIds,
       final String userId,
       final Collection<String> roles,
       final Collection<String> groups) {
 
-    return prepareBranch(branch, openBranchCommand, userId)
-        .flatMap(preparedBranch -> addChildren(
-            preparedBranch, openBranchCommand.getCommandForChildren(), userId, roles, groups));
+    return Flux.fromIterable(featureIds)
+        .buffer(jobProperties.getBatchSize())
+        .concatMap(ids -> featureRepository
+            .findFeatures(clazz, ids, PermissionConstants.READ, true, userId, roles, groups)
+            .map(Feature.class::cast)
+            .collectList()
+            .flatMapMany(features -> setFeatureSettings(features, userId)))
+        .concatMap(feature -> feature instanceof Trk
+            ? featureRepository.loadTrkLines((Trk) feature).map(Feature.class::cast)
+            : Mono.just(feature));
   }
 
-  private Mono<Branch> prepareBranch(
-      final Branch branch,
-      final OpenBranchCommand openBranchCommand,
+  private Flux<Feature> setFeatureSettings(
+      final List<Feature> features,
       final String userId) {
-    return treeRepository
-        .findNodeSettings(BranchSettings.class, branch.getId(), userId)
-        .switchIfEmpty(createBranchSettings(branch.getId(), userId))
-        .flatMap(branchSettings -> {
-          if (openBranchCommand.isBranchToBeOpen() && !branchSettings.isOpen()) {
-            branchSettings.setOpen(true);
-            if (OpenBranchCommand.CURRENT.equals(openBranchCommand)) {
-              return treeRepository.persist(branchSettings);
+
+    if (features.isEmpty()) {
+      return Flux.empty();
+    }
+    final List<String> ids = features.stream().map(Feature::getId).collect(Collectors.toList());
+    return featureRepository
+        .findFeatureSettings(FeatureSettings.class, ids, userId)
+        .collectMap(FeatureSettings::getFeatureId, featureSettings -> featureSettings)
+        .flatMapMany(settingsMap -> {
+          features.forEach(feature -> {
+            final FeatureSettings featureSettings = settingsMap.get(feature.getId());
+            if (featureSettings != null) {
+              //noinspection unchecked
+              feature.getProperties().setSettings(featureSettings);
             }
-          }
-          return Mono.just(branchSettings);
-        })
-        .map(branchSettings -> {
-          branch.setSettings(branchSettings);
-          return branch;
+          });
+          return Flux.fromIterable(features);
         });
   }
 
-  private Mono<Branch> addChildren(
-      final Branch parent,
+  /**
+   * Loads the given branches (which are all on the same level) and their subtrees level by level.
+   * The number of queries depends on the depth of the tree and not on the number of nodes. The
+   * permission evaluator is created once per request and checks the content of all leaves.
+   */
+  private Mono<List<Branch>> loadBranches(
+      final List<Branch> branches,
       final OpenBranchCommand openBranchCommand,
+      final Integer zoom,
       final String userId,
       final Collection<String> roles,
-      final Collection<String> groups) {
+      final Collection<String> groups,
+      final PermissionEvaluator evaluator) {
 
-    if (!parent.getSettings().isOpen()) {
-      return Mono.just(parent);
+    if (branches.isEmpty()) {
+      return Mono.just(branches);
     }
+    return prepareBranches(branches, openBranchCommand, userId)
+        .flatMap(preparedBranches -> addChildren(
+            preparedBranches, openBranchCommand.getCommandForChildren(), zoom,
+            userId, roles, groups, evaluator));
+  }
+
+  private Mono<List<Branch>> prepareBranches(
+      final List<Branch> branches,
+      final OpenBranchCommand openBranchCommand,
+      final String userId) {
+
+    final Set<String> branchIds = branches
+        .stream()
+        .map(Node::getId)
+        .collect(Collectors.toSet());
     return treeRepository
-        .findNodesByParentId(Node.class, parent.getId(), PermissionConstants.READ, true, userId,
-            roles, groups)
-        .flatMap(child -> processChild(child, openBranchCommand, userId, roles, groups))
+        .findOrCreateNodeSettings(BranchSettings.class, branchIds, userId,
+            branchId -> new BranchSettings(branchId, userId))
+        .collectMap(BranchSettings::getNodeId)
+        .flatMapMany(settingsMap -> Flux.fromIterable(branches)
+            .flatMap(branch -> Mono.justOrEmpty(settingsMap.get(branch.getId()))
+                .defaultIfEmpty(new BranchSettings(branch.getId(), userId))
+                .flatMap(branchSettings -> {
+                  if (openBranchCommand.isBranchToBeOpen() && !branchSettings.isOpen()) {
+                    branchSettings.setOpen(true);
+                    if (OpenBranchCommand.CURRENT.equals(openBranchCommand)) {
+                      return treeRepository.persist(branchSettings);
+                    }
+                  }
+                  return Mono.just(branchSettings);
+                })
+                .doOnNext(branch::setSettings)))
+        .then(Mono.just(branches));
+  }
+
+  private Mono<List<Branch>> addChildren(
+      final List<Branch> parents,
+      final OpenBranchCommand openBranchCommand,
+      final Integer zoom,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups,
+      final PermissionEvaluator evaluator) {
+
+    final Map<String, Branch> openParents = parents
+        .stream()
+        .filter(parent -> parent.getSettings().isOpen())
+        .collect(Collectors.toMap(Node::getId, parent -> parent, (a, b) -> a));
+    if (openParents.isEmpty()) {
+      return Mono.just(parents);
+    }
+    return treeRepository
+        .findNodesByParentIds(Node.class, openParents.keySet(), PermissionConstants.READ, true,
+            userId, roles, groups)
         .collectList()
+        .flatMap(children -> Mono
+            .when(
+                loadBranches(
+                    filterNodes(children, Branch.class), openBranchCommand, zoom,
+                    userId, roles, groups, evaluator),
+                prepareLeaves(filterNodes(children, Leaf.class), evaluator, zoom))
+            .thenReturn(children))
         .map(children -> {
-          parent.setChildren(children);
-          return parent;
-        })
-        .switchIfEmpty(Mono.just(parent));
+          openParents.values().forEach(parent -> parent.setChildren(new ArrayList<>()));
+          children.forEach(child -> openParents.get(child.getParentId()).getChildren().add(child));
+          return parents;
+        });
   }
 
-  private Mono<Node> processChild(
-      final Node child,
+  /**
+   * Emits the given branches (which are all on the same level) as soon as their settings are
+   * loaded and then the nodes of their open subtrees.
+   */
+  private Flux<TreeNodeEvent> streamBranches(
+      final List<Branch> branches,
+      final int depth,
       final OpenBranchCommand openBranchCommand,
+      final Integer zoom,
       final String userId,
       final Collection<String> roles,
-      final Collection<String> groups) {
+      final Collection<String> groups,
+      final PermissionEvaluator evaluator) {
 
-    if (child instanceof Branch) {
-      return loadBranch((Branch) child, openBranchCommand, userId, roles, groups)
-          .cast(Node.class);
+    if (branches.isEmpty()) {
+      return Flux.empty();
     }
-    if (child instanceof Leaf) {
-      final Leaf leaf = (Leaf) child;
-      return findLeafAdapter(leaf)
-          .flatMap(leafAdapter -> leafAdapter.setLeafName(leaf)
-              .flatMap(leaf0 -> leafAdapter.setLeafSettings(leaf0, userId))
-              .flatMap(leaf1 -> leafAdapter.setLeafContent(leaf1, userId)))
-          .cast(Node.class)
-          .switchIfEmpty(Mono.just(child));
+    return prepareBranches(branches, openBranchCommand, userId)
+        .flatMapMany(preparedBranches -> Flux.concat(
+            Flux.fromIterable(preparedBranches)
+                .map(branch -> new TreeNodeEvent(branch, depth)),
+            streamChildren(
+                preparedBranches, depth + 1, openBranchCommand.getCommandForChildren(), zoom,
+                userId, roles, groups, evaluator)));
+  }
+
+  private Flux<TreeNodeEvent> streamChildren(
+      final List<Branch> parents,
+      final int depth,
+      final OpenBranchCommand openBranchCommand,
+      final Integer zoom,
+      final String userId,
+      final Collection<String> roles,
+      final Collection<String> groups,
+      final PermissionEvaluator evaluator) {
+
+    final Set<String> openParentIds = parents
+        .stream()
+        .filter(parent -> parent.getSettings().isOpen())
+        .map(Node::getId)
+        .collect(Collectors.toSet());
+    if (openParentIds.isEmpty()) {
+      return Flux.empty();
+    }
+    return treeRepository
+        .findNodesByParentIds(Node.class, openParentIds, PermissionConstants.READ, true,
+            userId, roles, groups)
+        .collectList()
+        .flatMapMany(children -> {
+          final List<Leaf> leaves = filterNodes(children, Leaf.class);
+          return Flux.merge(
+              Flux.fromIterable(groupByLeafAdapter(leaves).entrySet())
+                  .flatMap(entry -> entry.getKey()
+                      .prepareLeaves(entry.getValue(), evaluator, zoom))
+                  .map(leaf -> new TreeNodeEvent(leaf, depth)),
+              // leaves without adapter are kept unprepared, as in the assembled tree
+              Flux.fromIterable(leaves)
+                  .filter(leaf -> !isSupported(leaf))
+                  .map(leaf -> new TreeNodeEvent(leaf, depth)),
+              streamBranches(
+                  filterNodes(children, Branch.class), depth, openBranchCommand, zoom,
+                  userId, roles, groups, evaluator));
+        });
+  }
+
+  private Mono<Void> prepareLeaves(
+      final List<Leaf> leaves,
+      final PermissionEvaluator evaluator,
+      final Integer zoom) {
+    return Flux.fromIterable(groupByLeafAdapter(leaves).entrySet())
+        .flatMap(entry -> entry.getKey().prepareLeaves(entry.getValue(), evaluator, zoom))
+        .then();
+  }
+
+  private Map<LeafAdapter, List<Leaf>> groupByLeafAdapter(final List<? extends Leaf> leaves) {
+    final Map<LeafAdapter, List<Leaf>> leavesByAdapter = new LinkedHashMap<>();
+    for (final Leaf leaf : leaves) {
+      leafAdapters
+          .stream()
+          .filter(leafAdapter -> leafAdapter.supportsLeaf(leaf))
+          .findAny()
+          .ifPresent(leafAdapter -> leavesByAdapter
+              .computeIfAbsent(leafAdapter, key -> new ArrayList<>())
+              .add(leaf));
     }
-    return Mono.just(child);
+    return leavesByAdapter;
   }
 
-  private Mono<BranchSettings> createBranchSettings(
-      final String branchId,
-      final String userId) {
-    return treeRepository.persist(new BranchSettings(branchId, userId));
+  private boolean isSupported(final Leaf leaf) {
+    return leafAdapters
+        .stream()
+        .anyMatch(leafAdapter -> leafAdapter.supportsLeaf(leaf));
+  }
+
+  private static <T extends Node> List<T> filterNodes(
+      final List<Node> nodes,
+      final Class<T> clazz) {
+    return nodes
+        .stream()
+        .filter(clazz::isInstance)
+        .map(clazz::cast)
+        .collect(Collectors.toList());
   }
 
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.content.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests the packing of track elevations and times.
+ *
+ * @author Christian Bremer
+ */
+public class TrkLineCodecTest {
+
+  @Test
+  public void encodeAndDecodeEleLine() {
+    final List<BigDecimal> eleLine = Arrays.asList(
+        new BigDecimal("123.5"),
+        new BigDecimal("-12.25"),
+        new BigDecimal("0"),
+        new BigDecimal("8848.5"));
+    final byte[] packed = TrkLineCodec.encodeEleLine(eleLine);
+    assertEquals(eleLine.size() * Float.BYTES, packed.length);
+    final List<BigDecimal> decoded = TrkLineCodec.decodeEleLine(packed);
+    assertEquals(eleLine.size(), decoded.size());
+    for (int i = 0; i < eleLine.size(); i++) {
+      assertEquals(0, eleLine.get(i).compareTo(decoded.get(i)));
+    }
+  }
+
+  @Test
+  public void encodeAndDecodeEleLineWithNulls() {
+    final List<BigDecimal> eleLine = Arrays.asList(
+        null,
+        new BigDecimal("100.5"),
+        null,
+        null);
+    final List<BigDecimal> decoded = TrkLineCodec
+        .decodeEleLine(TrkLineCodec.encodeEleLine(eleLine));
+    assertEquals(4, decoded.size());
+    assertNull(decoded.get(0));
+    assertEquals(0, new BigDecimal("100.5").compareTo(decoded.get(1)));
+    assertNull(decoded.get(2));
+    assertNull(decoded.get(3));
+  }
+
+  @Test
+  public void encodeAndDecodeEmptyEleLine() {
+    assertArrayEquals(new byte[0], TrkLineCodec.encodeEleLine(Collections.emptyList()));
+    assertArrayEquals(new byte[0], TrkLineCodec.encodeEleLine(null));
+    assertTrue(TrkLineCodec.decodeEleLine(new byte[0]).isEmpty());
+    assertTrue(TrkLineCodec.decodeEleLine(null).isEmpty());
+  }
+
+  @Test
+  public void encodeAndDecodeTimeLine() {
+    final List<Instant> timeLine = Arrays.asList(
+        Instant.parse("2013-04-28T14:44:49.000Z"),
+        Instant.parse("2013-04-28T14:44:50.250Z"),
+        Instant.parse("2013-04-28T14:44:50.250Z"),
+        Instant.parse("2013-04-28T14:44:48.000Z"),
+        Instant.parse("2013-04-29T09:00:00.000Z"));
+    final byte[] packed = TrkLineCodec.encodeTimeLine(timeLine);
+    assertEquals(timeLine, TrkLineCodec.decodeTimeLine(packed));
+  }
+
+  @Test
+  public void encodeAndDecodeTimeLineBeforeEpoch() {
+    final List<Instant> timeLine = Arrays.asList(
+        Instant.parse("1969-12-31T23:59:59.999Z"),
+        Instant.parse("1900-01-01T00:00:00.000Z"));
+    assertEquals(timeLine, TrkLineCodec.decodeTimeLine(TrkLineCodec.encodeTimeLine(timeLine)));
+  }
+
+  @Test
+  public void encodeAndDecodeTimeLineWithNulls() {
+    final Instant first = Instant.parse("2019-02-01T10:00:00.000Z");
+    final Instant second = Instant.parse("2019-02-01T10:00:05.000Z");
+    final List<Instant> timeLine = Arrays.asList(first, null, second, null);
+    final List<Instant> decoded = TrkLineCodec
+        .decodeTimeLine(TrkLineCodec.encodeTimeLine(timeLine));
+    assertEquals(Arrays.asList(first, first, second, second), decoded);
+  }
+
+  @Test
+  public void encodeAndDecodeEmptyTimeLine() {
+    assertArrayEquals(new byte[0], TrkLineCodec.encodeTimeLine(Collections.emptyList()));
+    assertArrayEquals(new byte[0], TrkLineCodec.encodeTimeLine(null));
+    assertTrue(TrkLineCodec.decodeTimeLine(new byte[0]).isEmpty());
+    assertTrue(TrkLineCodec.decodeTimeLine(null).isEmpty());
+  }
+
+  @Test
+  public void encodeAndDecodeLines() {
+    final List<List<BigDecimal>> eleLines = new ArrayList<>();
+    eleLines.add(Arrays.asList(new BigDecimal("1.5"), new BigDecimal("2.5")));
+    eleLines.add(Collections.emptyList());
+    final List<List<BigDecimal>> decodedEleLines = TrkLineCodec
+        .decodeEleLines(TrkLineCodec.encodeEleLines(eleLines));
+    assertEquals(2, decodedEleLines.size());
+    assertEquals(2, decodedEleLines.get(0).size());
+    assertTrue(decodedEleLines.get(1).isEmpty());
+
+    final List<List<Instant>> timeLines = new ArrayList<>();
+    timeLines.add(Collections.emptyList());
+    timeLines.add(Collections.singletonList(Instant.parse("2019-02-01T10:00:00.000Z")));
+    assertEquals(timeLines, TrkLineCodec.decodeTimeLines(TrkLineCodec.encodeTimeLines(timeLines)));
+
+    assertNull(TrkLineCodec.encodeEleLines(null));
+    assertNull(TrkLineCodec.decodeEleLines(null));
+    assertNull(TrkLineCodec.encodeTimeLines(null));
+    assertNull(TrkLineCodec.decodeTimeLines(null));
+  }
+
+}
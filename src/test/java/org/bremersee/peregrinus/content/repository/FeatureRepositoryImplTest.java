@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.content.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PersistenceConfiguration;
+import org.bremersee.peregrinus.content.model.FeatureLod;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.TrkChunk;
+import org.bremersee.peregrinus.content.model.TrkProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Tests the feature repository with an embedded MongoDB.
+ *
+ * @author Christian Bremer
+ */
+@RunWith(SpringRunner.class)
+@DataMongoTest
+@Import(PersistenceConfiguration.class)
+public class FeatureRepositoryImplTest {
+
+  private static final Instant START = Instant.parse("2019-02-01T10:00:00.000Z");
+
+  @Autowired
+  private ReactiveMongoTemplate mongoTemplate;
+
+  private FeatureRepositoryImpl featureRepository;
+
+  @Before
+  public void setup() {
+    final PeregrinusProperties properties = new PeregrinusProperties();
+    properties.getFeatureSpatialIndex().setEnabled(false);
+    featureRepository = new FeatureRepositoryImpl(
+        mongoTemplate,
+        new FeatureSpatialIndex(mongoTemplate, properties, new SimpleMeterRegistry()));
+  }
+
+  private static List<Coordinate> coordinates(final int first, final int count) {
+    final List<Coordinate> coordinates = new ArrayList<>(count);
+    for (int i = first; i < first + count; i++) {
+      coordinates.add(new Coordinate(10. + i / 10000., 52. + (i % 2) / 100.));
+    }
+    return coordinates;
+  }
+
+  private static List<Instant> times(final int first, final int count) {
+    final List<Instant> times = new ArrayList<>(count);
+    for (int i = first; i < first + count; i++) {
+      times.add(START.plusSeconds(i));
+    }
+    return times;
+  }
+
+  @Test
+  public void appendTrkLineToChunkedTrk() {
+    final int initial = 6000;
+    final List<List<Instant>> timeLines = new ArrayList<>();
+    timeLines.add(times(0, initial));
+    final Trk trk = new Trk();
+    trk.setProperties(new TrkProperties());
+    trk.setGeometry(GeometryUtils.createMultiLineString(
+        Collections.singletonList(
+            GeometryUtils.createLineString(coordinates(0, initial)))));
+    trk.getProperties().setTimeLines(timeLines);
+    trk.getProperties().setStopTime(START.plusSeconds(initial - 1));
+    final String id = featureRepository.persist(trk).block().getId();
+    assertNotNull(id);
+
+    final LineString first = GeometryUtils.createLineString(coordinates(initial, 500));
+    assertEquals(Long.valueOf(500L), featureRepository
+        .appendTrkLine(id, first, null, times(initial, 500), true)
+        .block());
+
+    final List<Coordinate> secondCoordinates = coordinates(initial + 500, 300);
+    secondCoordinates.set(299, new Coordinate(11.5, 53.5));
+    final LineString second = GeometryUtils.createLineString(secondCoordinates);
+    assertEquals(Long.valueOf(300L), featureRepository
+        .appendTrkLine(id, second, null, times(initial + 500, 300), false)
+        .block());
+
+    final Trk header = mongoTemplate.findById(id, Trk.class).block();
+    assertNotNull(header);
+    assertEquals(Integer.valueOf(initial + 500 + 300), header.getPointCount());
+    assertEquals(
+        mongoTemplate
+            .count(Query.query(Criteria.where("featureId").is(id)), TrkChunk.class)
+            .block(),
+        Long.valueOf(header.getProperties().getChunkCount()));
+    assertNull(header.getProperties().getEleLines());
+    assertEquals(START.plusSeconds(initial + 799), header.getProperties().getStopTime());
+
+    // the overview has the new line and ends with the last appended point
+    assertEquals(2, header.getGeometry().getNumGeometries());
+    final Coordinate[] overviewEnd = header.getGeometry().getGeometryN(1).getCoordinates();
+    assertEquals(new Coordinate(11.5, 53.5), overviewEnd[overviewEnd.length - 1]);
+    final Coordinate[] firstLineEnd = header.getGeometry().getGeometryN(0).getCoordinates();
+    assertEquals(
+        first.getCoordinateN(first.getNumPoints() - 1),
+        firstLineEnd[firstLineEnd.length - 1]);
+    assertEquals(11.5, header.getBbox()[2], 0.);
+    assertEquals(53.5, header.getBbox()[3], 0.);
+
+    final Trk loaded = featureRepository.loadTrkLines(header).block();
+    assertNotNull(loaded);
+    assertEquals(initial + 500 + 300, loaded.getGeometry().getNumPoints());
+    assertEquals(initial + 500, loaded.getGeometry().getGeometryN(0).getNumPoints());
+    assertEquals(
+        START.plusSeconds(initial + 499),
+        loaded.getProperties().getTimeLines().get(0).get(initial + 499));
+  }
+
+  @Test
+  public void applyLeastDetailedFeatureLod() {
+    final Trk trk = new Trk();
+    trk.setProperties(new TrkProperties());
+    trk.setGeometry(GeometryUtils.createMultiLineString(
+        Collections.singletonList(GeometryUtils.createLineString(coordinates(0, 100)))));
+    trk.getProperties().setTimeLines(Collections.singletonList(times(0, 100)));
+    final String id = featureRepository.persist(trk).block().getId();
+    assertNotNull(id);
+    // replace the geometries that were simplified when the track was persisted
+    mongoTemplate
+        .remove(Query.query(Criteria.where("featureId").is(id)), FeatureLod.class)
+        .block();
+    for (final int zoom : new int[]{16, 8, 12}) {
+      final FeatureLod lod = new FeatureLod();
+      lod.setFeatureId(id);
+      lod.setZoom(zoom);
+      lod.setPointCount(zoom / 4);
+      lod.setGeometry(GeometryUtils.createMultiLineString(
+          Collections.singletonList(GeometryUtils.createLineString(coordinates(0, zoom / 4)))));
+      mongoTemplate.save(lod).block();
+    }
+
+    final List<FeatureLod> lods = featureRepository
+        .findFeatureLods(Collections.singleton(id), 10)
+        .collectList()
+        .block();
+    assertNotNull(lods);
+    assertEquals(
+        Collections.singletonList(12),
+        lods.stream().map(FeatureLod::getZoom).collect(Collectors.toList()));
+
+    featureRepository.applyFeatureLods(Collections.singleton(trk), 10).block();
+    assertEquals(3, trk.getGeometry().getNumPoints());
+    assertNull(trk.getProperties().getTimeLines());
+
+    final Trk detailed = mongoTemplate.findById(id, Trk.class).block();
+    assertNotNull(detailed);
+    featureRepository.applyFeatureLods(Collections.singleton(detailed), 17).block();
+    assertEquals(100, detailed.getGeometry().getNumPoints());
+  }
+
+}
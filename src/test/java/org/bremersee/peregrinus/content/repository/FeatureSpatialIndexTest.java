@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.content.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests the splitting of bounding boxes.
+ *
+ * @author Christian Bremer
+ */
+public class FeatureSpatialIndexTest {
+
+  @Test
+  public void splitSmallBoundingBox() {
+    final List<double[]> boxes = FeatureSpatialIndex
+        .splitBoundingBox(new double[]{10., 50., 11., 51.});
+    assertEquals(1, boxes.size());
+    assertArrayEquals(new double[]{10., 50., 11., 51.}, boxes.get(0), 0.);
+  }
+
+  @Test
+  public void splitWideBoundingBox() {
+    final List<double[]> boxes = FeatureSpatialIndex
+        .splitBoundingBox(new double[]{-200., -100., 160., 100.});
+    assertEquals(2, boxes.size());
+    assertArrayEquals(new double[]{-180., -90., -10., 90.}, boxes.get(0), 0.);
+    assertArrayEquals(new double[]{-10., -90., 160., 90.}, boxes.get(1), 0.);
+  }
+
+  @Test
+  public void splitBoundingBoxCrossingAntimeridian() {
+    final List<double[]> boxes = FeatureSpatialIndex
+        .splitBoundingBox(new double[]{170., -10., -170., 10.});
+    assertEquals(2, boxes.size());
+    assertArrayEquals(new double[]{170., -10., 180., 10.}, boxes.get(0), 0.);
+    assertArrayEquals(new double[]{-180., -10., -170., 10.}, boxes.get(1), 0.);
+  }
+
+  @Test
+  public void splitWideBoundingBoxCrossingAntimeridian() {
+    final List<double[]> boxes = FeatureSpatialIndex
+        .splitBoundingBox(new double[]{-10., -10., -20., 10.});
+    assertEquals(3, boxes.size());
+    assertArrayEquals(new double[]{-10., -10., 85., 10.}, boxes.get(0), 0.);
+    assertArrayEquals(new double[]{85., -10., 180., 10.}, boxes.get(1), 0.);
+    assertArrayEquals(new double[]{-180., -10., -20., 10.}, boxes.get(2), 0.);
+  }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.content.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.TrkChunk;
+import org.bremersee.peregrinus.content.model.TrkProperties;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * Tests the splitting of tracks into chunks and the joining of the chunks.
+ *
+ * @author Christian Bremer
+ */
+public class TrkChunkerTest {
+
+  private static final int CHUNK_SIZE = 4;
+
+  private static final Instant START = Instant.parse("2019-02-01T10:00:00.000Z");
+
+  private static Trk createTrk(final int... pointCounts) {
+    final List<LineString> lines = new ArrayList<>();
+    final List<List<BigDecimal>> eleLines = new ArrayList<>();
+    final List<List<Instant>> timeLines = new ArrayList<>();
+    int n = 0;
+    for (final int pointCount : pointCounts) {
+      final List<Coordinate> coordinates = new ArrayList<>();
+      final List<BigDecimal> eleLine = new ArrayList<>();
+      final List<Instant> timeLine = new ArrayList<>();
+      for (int i = 0; i < pointCount; i++, n++) {
+        coordinates.add(new Coordinate(10. + n / 1000., 52. + n / 1000.));
+        eleLine.add(n % 3 == 0 ? null : new BigDecimal(n + ".5"));
+        timeLine.add(START.plusSeconds(n));
+      }
+      lines.add(GeometryUtils.createLineString(coordinates));
+      eleLines.add(eleLine);
+      timeLines.add(timeLine);
+    }
+    final Trk trk = new Trk();
+    trk.setId("trk");
+    trk.setProperties(new TrkProperties());
+    trk.setGeometry(GeometryUtils.createMultiLineString(lines));
+    trk.getProperties().setEleLines(eleLines);
+    trk.getProperties().setTimeLines(timeLines);
+    return trk;
+  }
+
+  private static Trk copyWithoutLines(final Trk trk) {
+    final Trk copy = new Trk();
+    copy.setId(trk.getId());
+    copy.setProperties(new TrkProperties());
+    return copy;
+  }
+
+  private static void assertJoined(final Trk expected, final Trk actual) {
+    assertTrue(expected.getGeometry().equalsExact(actual.getGeometry()));
+    final List<List<BigDecimal>> expectedEles = expected.getProperties().getEleLines();
+    final List<List<BigDecimal>> actualEles = actual.getProperties().getEleLines();
+    assertEquals(expectedEles.size(), actualEles.size());
+    for (int n = 0; n < expectedEles.size(); n++) {
+      assertEquals(expectedEles.get(n).size(), actualEles.get(n).size());
+      for (int i = 0; i < expectedEles.get(n).size(); i++) {
+        final BigDecimal expectedEle = expectedEles.get(n).get(i);
+        final BigDecimal actualEle = actualEles.get(n).get(i);
+        if (expectedEle == null) {
+          assertEquals(null, actualEle);
+        } else {
+          assertEquals(0, expectedEle.compareTo(actualEle));
+        }
+      }
+    }
+    assertEquals(
+        expected.getProperties().getTimeLines(),
+        actual.getProperties().getTimeLines());
+  }
+
+  private static void assertChunks(final List<TrkChunk> chunks) {
+    for (int i = 0; i < chunks.size(); i++) {
+      final TrkChunk chunk = chunks.get(i);
+      assertEquals(i, chunk.getIndex());
+      assertEquals("trk", chunk.getFeatureId());
+      assertTrue(chunk.getGeometry().getNumPoints() <= CHUNK_SIZE);
+      assertTrue(chunk.getGeometry().getNumPoints() >= 2);
+    }
+  }
+
+  @Test
+  public void splitAndJoinLineBelowChunkSize() {
+    final Trk trk = createTrk(CHUNK_SIZE - 1);
+    final List<TrkChunk> chunks = TrkChunker.split(trk, CHUNK_SIZE);
+    assertEquals(1, chunks.size());
+    assertChunks(chunks);
+    assertFalse(chunks.get(0).isContinuation());
+    assertJoined(trk, TrkChunker.join(copyWithoutLines(trk), chunks));
+  }
+
+  @Test
+  public void splitAndJoinLineAtChunkSize() {
+    final Trk trk = createTrk(CHUNK_SIZE);
+    final List<TrkChunk> chunks = TrkChunker.split(trk, CHUNK_SIZE);
+    assertEquals(1, chunks.size());
+    assertChunks(chunks);
+    assertEquals(CHUNK_SIZE, chunks.get(0).getGeometry().getNumPoints());
+    assertJoined(trk, TrkChunker.join(copyWithoutLines(trk), chunks));
+  }
+
+  @Test
+  public void splitAndJoinLineOneOverChunkSize() {
+    final Trk trk = createTrk(CHUNK_SIZE + 1);
+    final List<TrkChunk> chunks = TrkChunker.split(trk, CHUNK_SIZE);
+    assertEquals(2, chunks.size());
+    assertChunks(chunks);
+    assertFalse(chunks.get(0).isContinuation());
+    assertTrue(chunks.get(1).isContinuation());
+    // the second chunk starts with the last point of the first chunk
+    assertEquals(
+        chunks.get(0).getGeometry().getCoordinateN(CHUNK_SIZE - 1),
+        chunks.get(1).getGeometry().getCoordinateN(0));
+    assertEquals(2, chunks.get(1).getGeometry().getNumPoints());
+    assertJoined(trk, TrkChunker.join(copyWithoutLines(trk), chunks));
+  }
+
+  @Test
+  public void splitAndJoinSeveralLines() {
+    final Trk trk = createTrk(CHUNK_SIZE, 3 * CHUNK_SIZE, 2, CHUNK_SIZE + 1);
+    final List<TrkChunk> chunks = TrkChunker.split(trk, CHUNK_SIZE);
+    assertChunks(chunks);
+    int lineIndex = -1;
+    for (final TrkChunk chunk : chunks) {
+      if (chunk.getLineIndex() != lineIndex) {
+        assertFalse(chunk.isContinuation());
+        lineIndex = chunk.getLineIndex();
+      } else {
+        assertTrue(chunk.isContinuation());
+      }
+    }
+    assertEquals(3, lineIndex);
+    assertJoined(trk, TrkChunker.join(copyWithoutLines(trk), chunks));
+  }
+
+  @Test
+  public void joinContinuedLine() {
+    final Trk trk = createTrk(CHUNK_SIZE + 2);
+    final Coordinate[] coordinates = trk.getGeometry().getGeometryN(0).getCoordinates();
+    final int split = 3;
+    final List<TrkChunk> chunks = new ArrayList<>(TrkChunker.splitLine(
+        "trk",
+        Arrays.copyOfRange(coordinates, 0, split),
+        trk.getProperties().getEleLines().get(0).subList(0, split),
+        trk.getProperties().getTimeLines().get(0).subList(0, split),
+        0,
+        0,
+        false,
+        CHUNK_SIZE));
+    // an appended part starts with the last point of the existing line
+    chunks.addAll(TrkChunker.splitLine(
+        "trk",
+        Arrays.copyOfRange(coordinates, split - 1, coordinates.length),
+        trk.getProperties().getEleLines().get(0).subList(split - 1, coordinates.length),
+        trk.getProperties().getTimeLines().get(0).subList(split - 1, coordinates.length),
+        0,
+        chunks.size(),
+        true,
+        CHUNK_SIZE));
+    assertChunks(chunks);
+    assertTrue(chunks.get(chunks.size() - 1).isContinuation());
+    assertJoined(trk, TrkChunker.join(copyWithoutLines(trk), chunks));
+  }
+
+  @Test
+  public void joinWithoutChunks() {
+    final Trk trk = createTrk(CHUNK_SIZE);
+    assertTrue(trk == TrkChunker.join(trk, new ArrayList<>()));
+    assertEquals(CHUNK_SIZE, trk.getGeometry().getNumPoints());
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.gpx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import org.bremersee.garmin.creationtime.v1.model.ext.CreationTimeExtension;
+import org.bremersee.garmin.gpx.v3.model.ext.RoutePointExtension;
+import org.bremersee.garmin.trip.v1.model.ext.ViaPoint;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Measures the decoding of the GPX extensions and the reading of the GPX samples in
+ * {@code src/main/resources/gpx}.
+ *
+ * <p>{@code decodePerLookup} does what the converters did before: every extension lookup builds
+ * a new unmarshaller and unmarshals the extension elements again. {@code decodeOnce} decodes the
+ * extensions once with a pooled unmarshaller.
+ *
+ * <p>It is not run by the tests, start the main method with the test class path.
+ *
+ * @author Christian Bremer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GpxReadBenchmark {
+
+  private static final String[] SAMPLES = {
+      "2013-04-28_14-44-49_T.GPX",
+      "Adresse.GPX",
+      "Bild.GPX",
+      "Peine nach Lüneburg.GPX",
+      "Post-Naturbadstrasse.GPX",
+      "Route.GPX",
+      "S01 bis Post-Naturbadstrasse.GPX",
+      "Track.GPX",
+      "Volksschule Dechsendorf.GPX",
+      "Wpt_Track_Route.GPX"
+  };
+
+  private static final Class<?>[] LOOKUPS = {
+      ViaPoint.class,
+      RoutePointExtension.class,
+      CreationTimeExtension.class
+  };
+
+  private JaxbContextBuilder jaxbContextBuilder;
+
+  private WptConverter wptConverter;
+
+  private GpxConverterImpl gpxConverter;
+
+  private List<byte[]> documents;
+
+  private List<ExtensionsType> extensions;
+
+  /**
+   * Loads the samples and collects the extensions of their way points and route points.
+   *
+   * @throws IOException   if a sample cannot be read
+   * @throws JAXBException if a sample cannot be unmarshalled
+   */
+  @Setup
+  public void setup() throws IOException, JAXBException {
+    jaxbContextBuilder = JaxbContextBuilder
+        .builder()
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class));
+    wptConverter = new WptConverter(new UnmarshallerPool(jaxbContextBuilder, 4));
+    gpxConverter = new GpxConverterImpl(jaxbContextBuilder);
+    documents = new ArrayList<>();
+    extensions = new ArrayList<>();
+    for (final String sample : SAMPLES) {
+      try (InputStream in = GpxReadBenchmark.class.getResourceAsStream("/gpx/" + sample)) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamUtils.copy(in, out);
+        documents.add(out.toByteArray());
+      }
+      Object value = jaxbContextBuilder
+          .buildUnmarshaller()
+          .unmarshal(new ByteArrayInputStream(documents.get(documents.size() - 1)));
+      if (value instanceof JAXBElement) {
+        value = ((JAXBElement<?>) value).getValue();
+      }
+      final Gpx gpx = (Gpx) value;
+      for (final WptType wptType : gpx.getWpts()) {
+        addExtensions(wptType.getExtensions());
+      }
+      for (final RteType rteType : gpx.getRtes()) {
+        addExtensions(rteType.getExtensions());
+        for (final WptType rtePt : rteType.getRtepts()) {
+          addExtensions(rtePt.getExtensions());
+        }
+      }
+    }
+  }
+
+  private void addExtensions(final ExtensionsType extensionsType) {
+    if (extensionsType != null && !extensionsType.getAnies().isEmpty()) {
+      extensions.add(extensionsType);
+    }
+  }
+
+  /**
+   * Decodes the extensions for every lookup with a new unmarshaller.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void decodePerLookup(final Blackhole blackhole) {
+    for (final ExtensionsType extensionsType : extensions) {
+      for (final Class<?> type : LOOKUPS) {
+        blackhole.consume(GpxExtensions
+            .decode(extensionsType, jaxbContextBuilder.buildUnmarshaller())
+            .find(type));
+      }
+    }
+  }
+
+  /**
+   * Decodes the extensions once with a pooled unmarshaller.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void decodeOnce(final Blackhole blackhole) {
+    for (final ExtensionsType extensionsType : extensions) {
+      final GpxExtensions decoded = wptConverter.decodeExtensions(extensionsType);
+      for (final Class<?> type : LOOKUPS) {
+        blackhole.consume(decoded.find(type));
+      }
+    }
+  }
+
+  /**
+   * Reads all samples with the streaming reader.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void readGpx(final Blackhole blackhole) {
+    for (final byte[] document : documents) {
+      blackhole.consume(gpxConverter
+          .readGpx(new ByteArrayInputStream(document))
+          .collectList()
+          .block());
+    }
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the arguments
+   * @throws RunnerException if the benchmark fails
+   */
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(GpxReadBenchmark.class.getSimpleName())
+        .build())
+        .run();
+  }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.converter.gpx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.RteSegment;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Tests the streaming GPX reader with the samples in {@code src/main/resources/gpx} against the
+ * features, that are created from the unmarshalled documents.
+ *
+ * @author Christian Bremer
+ */
+public class GpxStreamReaderTest {
+
+  private static final String[] SAMPLES = {
+      "2013-04-28_14-44-49_T.GPX",
+      "Adresse.GPX",
+      "Bild.GPX",
+      "Peine nach Lüneburg.GPX",
+      "Post-Naturbadstrasse.GPX",
+      "Route.GPX",
+      "S01 bis Post-Naturbadstrasse.GPX",
+      "Track.GPX",
+      "Volksschule Dechsendorf.GPX",
+      "Wpt_Track_Route.GPX"
+  };
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  private static GpxConverterImpl gpxConverter;
+
+  @BeforeClass
+  public static void setup() {
+    jaxbContextBuilder = JaxbContextBuilder
+        .builder()
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class));
+    gpxConverter = new GpxConverterImpl(jaxbContextBuilder);
+  }
+
+  private static byte[] load(final String sample) throws IOException {
+    try (InputStream in = GpxStreamReaderTest.class.getResourceAsStream("/gpx/" + sample)) {
+      assertNotNull(in);
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      StreamUtils.copy(in, out);
+      return out.toByteArray();
+    }
+  }
+
+  private static Gpx unmarshal(final byte[] document) throws JAXBException {
+    Object value = jaxbContextBuilder
+        .buildUnmarshaller()
+        .unmarshal(new ByteArrayInputStream(document));
+    if (value instanceof JAXBElement) {
+      value = ((JAXBElement<?>) value).getValue();
+    }
+    return (Gpx) value;
+  }
+
+  private static List<Feature> read(final byte[] document) {
+    final List<Feature> features = gpxConverter
+        .readGpx(new ByteArrayInputStream(document))
+        .collectList()
+        .block();
+    assertNotNull(features);
+    return features;
+  }
+
+  private static <T extends Feature> List<T> filter(
+      final List<Feature> features,
+      final Class<T> clazz) {
+    return features
+        .stream()
+        .filter(clazz::isInstance)
+        .map(clazz::cast)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void readSamples() throws IOException, JAXBException {
+    for (final String sample : SAMPLES) {
+      final byte[] document = load(sample);
+      final Gpx gpx = unmarshal(document);
+      final List<Feature> expected = gpxConverter.mapToGpxImport(gpx);
+      final List<Feature> actual = read(document);
+      assertEquals(sample, expected.size(), actual.size());
+      assertWpts(sample, filter(expected, Wpt.class), filter(actual, Wpt.class));
+      assertRtes(sample, filter(expected, Rte.class), filter(actual, Rte.class));
+      assertTrks(sample, gpx.getTrks(), filter(expected, Trk.class), filter(actual, Trk.class));
+    }
+  }
+
+  @Test
+  public void readTrk() throws IOException {
+    final List<Feature> features = read(load("2013-04-28_14-44-49_T.GPX"));
+    assertEquals(1, features.size());
+    assertTrue(features.get(0) instanceof Trk);
+    final Trk trk = (Trk) features.get(0);
+    assertEquals(5598, trk.getGeometry().getNumPoints());
+    assertEquals(
+        Instant.parse("2013-04-28T12:44:49Z"),
+        trk.getProperties().getTimeLines().get(0).get(0));
+    assertEquals(
+        Instant.parse("2013-04-28T12:44:49Z"),
+        trk.getProperties().getStartTime());
+    assertEquals(
+        0,
+        new BigDecimal("79.450000000000003")
+            .compareTo(trk.getProperties().getEleLines().get(0).get(0)));
+  }
+
+  private static void assertWpts(
+      final String sample,
+      final List<Wpt> expected,
+      final List<Wpt> actual) {
+
+    assertEquals(sample, expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      final Wpt e = expected.get(i);
+      final Wpt a = actual.get(i);
+      assertEquals(sample, e.getProperties().getName(), a.getProperties().getName());
+      assertEquals(sample,
+          e.getProperties().getPlainTextDescription(),
+          a.getProperties().getPlainTextDescription());
+      assertTrue(sample, e.getGeometry().equalsExact(a.getGeometry()));
+      assertEquals(sample, e.getProperties().getEle(), a.getProperties().getEle());
+      assertEquals(sample, e.getProperties().getTime(), a.getProperties().getTime());
+      // the Garmin way point extension
+      assertEquals(sample,
+          String.valueOf(e.getProperties().getAddress()),
+          String.valueOf(a.getProperties().getAddress()));
+      assertEquals(sample,
+          String.valueOf(e.getProperties().getPhoneNumbers()),
+          String.valueOf(a.getProperties().getPhoneNumbers()));
+      assertEquals(sample,
+          String.valueOf(e.getProperties().getLinks()),
+          String.valueOf(a.getProperties().getLinks()));
+    }
+  }
+
+  private static void assertRtes(
+      final String sample,
+      final List<Rte> expected,
+      final List<Rte> actual) {
+
+    assertEquals(sample, expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      final Rte e = expected.get(i);
+      final Rte a = actual.get(i);
+      assertEquals(sample, e.getProperties().getName(), a.getProperties().getName());
+      // the points between the route points are taken from the Garmin route point extensions
+      assertTrue(sample, e.getGeometry().equalsExact(a.getGeometry()));
+      assertEquals(sample,
+          e.getProperties().getSettings().getDisplayColor(),
+          a.getProperties().getSettings().getDisplayColor());
+      final List<RteSegment> eSegments = e.getProperties().getRteSegments();
+      final List<RteSegment> aSegments = a.getProperties().getRteSegments();
+      assertEquals(sample, eSegments.size(), aSegments.size());
+      for (int j = 0; j < eSegments.size(); j++) {
+        assertTrue(sample, eSegments.get(j).getPoint().equalsExact(aSegments.get(j).getPoint()));
+        assertEquals(sample,
+            eSegments.get(j).getProperties().getName(),
+            aSegments.get(j).getProperties().getName());
+        // the Garmin via point and trip extensions
+        assertEquals(sample,
+            String.valueOf(eSegments.get(j).getProperties().getCalculationProperties()),
+            String.valueOf(aSegments.get(j).getProperties().getCalculationProperties()));
+      }
+    }
+  }
+
+  private static void assertTrks(
+      final String sample,
+      final List<TrkType> trkTypes,
+      final List<Trk> expected,
+      final List<Trk> actual) {
+
+    assertEquals(sample, trkTypes.size(), actual.size());
+    assertEquals(sample, expected.size(), actual.size());
+    for (int i = 0; i < actual.size(); i++) {
+      final Trk e = expected.get(i);
+      final Trk a = actual.get(i);
+      assertEquals(sample, e.getProperties().getName(), a.getProperties().getName());
+      // the Garmin track extension
+      assertEquals(sample,
+          e.getProperties().getSettings().getDisplayColor(),
+          a.getProperties().getSettings().getDisplayColor());
+      assertEquals(sample, e.getProperties().getStartTime(), a.getProperties().getStartTime());
+      assertEquals(sample, e.getProperties().getStopTime(), a.getProperties().getStopTime());
+      assertTrkPoints(sample, trkTypes.get(i), a);
+    }
+  }
+
+  /*
+   * Compares the lines of the track with the track points of the document: the lines are no
+   * (closed) rings and every point has its coordinate and (if present) its elevation and time.
+   */
+  private static void assertTrkPoints(
+      final String sample,
+      final TrkType trkType,
+      final Trk trk) {
+
+    final List<List<WptType>> segments = new ArrayList<>();
+    for (final TrksegType trksegType : trkType.getTrksegs()) {
+      final List<WptType> points = trksegType.getTrkpts()
+          .stream()
+          .filter(Objects::nonNull)
+          .filter(point -> point.getLon() != null && point.getLat() != null)
+          .collect(Collectors.toList());
+      if (points.size() > 1) {
+        segments.add(points);
+      }
+    }
+    if (segments.isEmpty()) {
+      assertNull(sample, trk.getGeometry());
+      return;
+    }
+    assertEquals(sample, segments.size(), trk.getGeometry().getNumGeometries());
+    for (int n = 0; n < segments.size(); n++) {
+      final List<WptType> points = segments.get(n);
+      final LineString line = (LineString) trk.getGeometry().getGeometryN(n);
+      assertFalse(sample, line instanceof LinearRing);
+      final List<BigDecimal> eleLine = trk.getProperties().getEleLines().get(n);
+      final List<Instant> timeLine = trk.getProperties().getTimeLines().get(n);
+      assertEquals(sample, points.size(), line.getNumPoints());
+      assertEquals(sample, points.size(), eleLine.size());
+      assertEquals(sample, points.size(), timeLine.size());
+      for (int i = 0; i < points.size(); i++) {
+        final WptType point = points.get(i);
+        final Coordinate coordinate = line.getCoordinateN(i);
+        assertEquals(sample, point.getLon().doubleValue(), coordinate.x, 0.);
+        assertEquals(sample, point.getLat().doubleValue(), coordinate.y, 0.);
+        if (point.getEle() != null) {
+          assertEquals(sample, 0, point.getEle().compareTo(eleLine.get(i)));
+        }
+        if (point.getTime() != null) {
+          assertEquals(sample,
+              point.getTime().toGregorianCalendar().getTime().toInstant(),
+              timeLine.get(i));
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.converter.gpx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests the GPX writer by reading the written documents again.
+ *
+ * @author Christian Bremer
+ */
+public class GpxStreamWriterTest {
+
+  private static GpxConverter gpxConverter;
+
+  @BeforeClass
+  public static void setup() {
+    final JaxbContextBuilder jaxbContextBuilder = JaxbContextBuilder
+        .builder()
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class));
+    gpxConverter = new GpxConverterImpl(jaxbContextBuilder);
+  }
+
+  private static List<Feature> read(final InputStream inputStream) {
+    final List<Feature> features = gpxConverter.readGpx(inputStream).collectList().block();
+    assertNotNull(features);
+    return features;
+  }
+
+  private static byte[] write(final Flux<Feature> features) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    gpxConverter
+        .writeGpx(features, new DefaultDataBufferFactory())
+        .doOnNext(buffer -> {
+          final byte[] bytes = new byte[buffer.readableByteCount()];
+          buffer.read(bytes);
+          out.write(bytes, 0, bytes.length);
+        })
+        .doOnNext(DataBufferUtils::release)
+        .blockLast();
+    return out.toByteArray();
+  }
+
+  private static <T extends Feature> List<T> filter(
+      final List<Feature> features,
+      final Class<T> clazz) {
+    return features
+        .stream()
+        .filter(clazz::isInstance)
+        .map(clazz::cast)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void writeEmptyDocument() {
+    final byte[] document = write(Flux.empty());
+    assertTrue(new String(document, StandardCharsets.UTF_8).contains("gpx"));
+    assertTrue(read(new ByteArrayInputStream(document)).isEmpty());
+  }
+
+  @Test
+  public void writeAndRead() {
+    final List<Feature> features = read(
+        GpxStreamWriterTest.class.getResourceAsStream("/gpx/Wpt_Track_Route.GPX"));
+    final List<Feature> readFeatures = read(new ByteArrayInputStream(write(Flux.concat(
+        Flux.fromIterable(filter(features, Wpt.class)),
+        Flux.fromIterable(filter(features, Rte.class)),
+        Flux.fromIterable(filter(features, Trk.class))))));
+
+    final List<Wpt> wpts = filter(features, Wpt.class);
+    final List<Wpt> readWpts = filter(readFeatures, Wpt.class);
+    assertEquals(wpts.size(), readWpts.size());
+    for (int i = 0; i < wpts.size(); i++) {
+      assertEquals(
+          wpts.get(i).getProperties().getName(),
+          readWpts.get(i).getProperties().getName());
+      assertTrue(wpts.get(i).getGeometry().equalsExact(readWpts.get(i).getGeometry()));
+      assertEquals(wpts.get(i).getProperties().getEle(), readWpts.get(i).getProperties().getEle());
+      assertEquals(
+          wpts.get(i).getProperties().getTime(),
+          readWpts.get(i).getProperties().getTime());
+    }
+
+    final List<Rte> rtes = filter(features, Rte.class);
+    final List<Rte> readRtes = filter(readFeatures, Rte.class);
+    assertEquals(rtes.size(), readRtes.size());
+    for (int i = 0; i < rtes.size(); i++) {
+      assertEquals(
+          rtes.get(i).getProperties().getName(),
+          readRtes.get(i).getProperties().getName());
+      assertTrue(rtes.get(i).getGeometry().equalsExact(readRtes.get(i).getGeometry()));
+      assertEquals(
+          rtes.get(i).getProperties().getRteSegments().size(),
+          readRtes.get(i).getProperties().getRteSegments().size());
+      assertEquals(
+          rtes.get(i).getProperties().getSettings().getDisplayColor(),
+          readRtes.get(i).getProperties().getSettings().getDisplayColor());
+    }
+
+    final List<Trk> trks = filter(features, Trk.class);
+    final List<Trk> readTrks = filter(readFeatures, Trk.class);
+    assertEquals(trks.size(), readTrks.size());
+    for (int i = 0; i < trks.size(); i++) {
+      assertEquals(
+          trks.get(i).getProperties().getName(),
+          readTrks.get(i).getProperties().getName());
+      assertTrue(trks.get(i).getGeometry().equalsExact(readTrks.get(i).getGeometry()));
+      assertEquals(
+          trks.get(i).getProperties().getEleLines(),
+          readTrks.get(i).getProperties().getEleLines());
+      assertEquals(
+          trks.get(i).getProperties().getTimeLines(),
+          readTrks.get(i).getProperties().getTimeLines());
+      assertEquals(
+          trks.get(i).getProperties().getSettings().getDisplayColor(),
+          readTrks.get(i).getProperties().getSettings().getDisplayColor());
+    }
+  }
+
+}
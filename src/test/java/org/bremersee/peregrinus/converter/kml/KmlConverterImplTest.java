@@ -0,0 +1,304 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.peregrinus.converter.kml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+import java.util.zip.ZipInputStream;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.content.model.Feature;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.Trk;
+import org.bremersee.peregrinus.content.model.TrkProperties;
+import org.bremersee.peregrinus.content.model.Wpt;
+import org.bremersee.peregrinus.converter.gpx.GpxConverterImpl;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.springframework.util.StreamUtils;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests the KML converter with the sample files.
+ *
+ * @author Christian Bremer
+ */
+public class KmlConverterImplTest {
+
+  private static KmlConverterImpl kmlConverter;
+
+  @BeforeClass
+  public static void setup() {
+    final JaxbContextBuilder jaxbContextBuilder = JaxbContextBuilder
+        .builder()
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class));
+    kmlConverter = new KmlConverterImpl(new GpxConverterImpl(jaxbContextBuilder));
+  }
+
+  private static List<Feature> readKml(final String name) {
+    final InputStream inputStream = KmlConverterImplTest.class
+        .getResourceAsStream("/kml/" + name);
+    assertNotNull(inputStream);
+    return kmlConverter.readKml(inputStream).collectList().block();
+  }
+
+  private static List<Feature> readKmlText(final String kml) {
+    return kmlConverter
+        .readKml(new ByteArrayInputStream(kml.getBytes(StandardCharsets.UTF_8)))
+        .collectList()
+        .block();
+  }
+
+  private static byte[] writeKmz(final List<Feature> features) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    kmlConverter
+        .writeKmz(Flux.fromIterable(features), new DefaultDataBufferFactory())
+        .doOnNext(buffer -> {
+          final byte[] bytes = new byte[buffer.readableByteCount()];
+          buffer.read(bytes);
+          out.write(bytes, 0, bytes.length);
+        })
+        .doOnNext(DataBufferUtils::release)
+        .blockLast();
+    return out.toByteArray();
+  }
+
+  private static String readKmlEntry(final byte[] kmz) throws IOException {
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(kmz))) {
+      assertNotNull(zip.getNextEntry());
+      return StreamUtils.copyToString(zip, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static int count(final String text, final String part) {
+    int count = 0;
+    for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length())) {
+      count++;
+    }
+    return count;
+  }
+
+  private static <T extends Feature> List<T> filter(
+      final List<Feature> features,
+      final Class<T> clazz) {
+    return features
+        .stream()
+        .filter(clazz::isInstance)
+        .map(clazz::cast)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void readWpt() {
+    final List<Feature> features = readKml("Volksschule Dechsendorf.kml");
+    assertEquals(1, features.size());
+    assertTrue(features.get(0) instanceof Wpt);
+    final Wpt wpt = (Wpt) features.get(0);
+    assertEquals("Volksschule Dechsendorf", wpt.getProperties().getName());
+    assertEquals(0, new BigDecimal("20").compareTo(wpt.getProperties().getEle()));
+    assertEquals(3, wpt.getProperties().getLinks().size());
+    assertEquals(10.943713188171387, wpt.getGeometry().getX(), 0.0000001);
+    assertEquals(49.632925987243652, wpt.getGeometry().getY(), 0.0000001);
+  }
+
+  @Test
+  public void readRte() {
+    final List<Feature> features = readKml("Peine nach Lüneburg.kml");
+    assertEquals(1, features.size());
+    assertTrue(features.get(0) instanceof Rte);
+    final Rte rte = (Rte) features.get(0);
+    assertEquals("Peine nach Lüneburg", rte.getProperties().getName());
+    assertEquals(2, rte.getProperties().getRteSegments().size());
+    assertEquals(1, rte.getGeometry().getNumGeometries());
+    assertEquals(1463, rte.getGeometry().getNumPoints());
+  }
+
+  @Test
+  public void readTrk() {
+    final List<Feature> features = readKml("2013-04-28_14-44-49_T.kml");
+    assertEquals(1, features.size());
+    assertTrue(features.get(0) instanceof Trk);
+    final Trk trk = (Trk) features.get(0);
+    assertEquals(5598, trk.getGeometry().getNumPoints());
+    assertEquals(
+        Instant.parse("2013-04-28T12:44:49Z"),
+        trk.getProperties().getTimeLines().get(0).get(0));
+    assertEquals(
+        0,
+        new BigDecimal("79.450000000000003")
+            .compareTo(trk.getProperties().getEleLines().get(0).get(0)));
+  }
+
+  @Test
+  public void readWptTrkRte() {
+    final List<Feature> features = readKml("Wpt_Track_Route.kml");
+    assertEquals(10, filter(features, Wpt.class).size());
+    assertEquals(2, filter(features, Rte.class).size());
+    assertEquals(2, filter(features, Trk.class).size());
+  }
+
+  @Test
+  public void readMultiGeometry() {
+    final List<Feature> features = readKmlText(""
+        + "<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document><Placemark>"
+        + "<name>Multi</name><MultiGeometry>"
+        + "<Point><coordinates>10.1,52.1</coordinates></Point>"
+        + "<Point><coordinates>10.2,52.2</coordinates></Point>"
+        + "<LineString><coordinates>10.1,52.1 10.2,52.2 10.3,52.3</coordinates></LineString>"
+        + "</MultiGeometry></Placemark></Document></kml>");
+    assertNotNull(features);
+    final List<Wpt> wpts = filter(features, Wpt.class);
+    assertEquals(2, wpts.size());
+    assertEquals("Multi", wpts.get(1).getProperties().getName());
+    assertEquals(10.2, wpts.get(1).getGeometry().getX(), 0.0000001);
+    assertEquals(1, filter(features, Trk.class).size());
+    assertEquals(3, filter(features, Trk.class).get(0).getGeometry().getNumPoints());
+  }
+
+  @Test
+  public void readFlatDocumentWithoutHoldingThePlacemarks() {
+    final StringBuilder kml = new StringBuilder()
+        .append("<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document>");
+    for (int i = 0; i < 10000; i++) {
+      kml.append("<Placemark><name>Point ").append(i).append("</name>")
+          .append("<Point><coordinates>10.1,52.1</coordinates></Point></Placemark>");
+    }
+    kml.append("</Document></kml>");
+    final byte[] bytes = kml.toString().getBytes(StandardCharsets.UTF_8);
+    final int[] readBytes = new int[1];
+    final InputStream inputStream = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = super.read(b, off, len);
+        readBytes[0] += Math.max(n, 0);
+        return n;
+      }
+    };
+    final Feature feature = kmlConverter.readKml(inputStream).blockFirst();
+    assertTrue(feature instanceof Wpt);
+    assertTrue(readBytes[0] < bytes.length / 2);
+  }
+
+  @Test
+  public void writeAndReadTrkWithIncompleteTimes() throws IOException {
+    final Instant start = Instant.parse("2019-02-01T10:00:00.000Z");
+    final List<LineString> lines = new ArrayList<>();
+    for (int n = 0; n < 3; n++) {
+      lines.add(GeometryUtils.createLineString(Arrays.asList(
+          new Coordinate(10. + n, 52.),
+          new Coordinate(10.1 + n, 52.1),
+          new Coordinate(10.2 + n, 52.2))));
+    }
+    final Trk trk = new Trk();
+    trk.setId("trk");
+    trk.setProperties(new TrkProperties());
+    trk.getProperties().setName("Incomplete");
+    trk.setGeometry(GeometryUtils.createMultiLineString(lines));
+    trk.getProperties().setTimeLines(Arrays.asList(
+        Arrays.asList(start, start.plusSeconds(1), start.plusSeconds(2)),
+        Arrays.asList(start.plusSeconds(3), null, start.plusSeconds(5))));
+
+    final byte[] kmz = writeKmz(Arrays.asList(trk));
+    final String kml = readKmlEntry(kmz);
+    assertEquals(0, count(kml, "MultiTrack"));
+    assertEquals(1, count(kml, "<gx:Track>"));
+    assertEquals(2, count(kml, "<LineString>"));
+    assertEquals(count(kml, "<gx:coord>"), count(kml, "<when>"));
+
+    final List<Feature> readFeatures = kmlConverter
+        .readKmz(new ByteArrayInputStream(kmz))
+        .collectList()
+        .block();
+    assertNotNull(readFeatures);
+    final List<Trk> readTrks = filter(readFeatures, Trk.class);
+    assertEquals(1, readTrks.size());
+    assertEquals(9, readTrks.get(0).getGeometry().getNumPoints());
+    assertEquals(
+        trk.getProperties().getTimeLines().get(0),
+        readTrks.get(0).getProperties().getTimeLines().get(0));
+  }
+
+  @Test
+  public void writeAndReadUntimedTrk() throws IOException {
+    final Trk trk = new Trk();
+    trk.setId("trk");
+    trk.setProperties(new TrkProperties());
+    trk.getProperties().setName("Untimed");
+    trk.setGeometry(GeometryUtils.createMultiLineString(Arrays.asList(
+        GeometryUtils.createLineString(Arrays.asList(
+            new Coordinate(10., 52.),
+            new Coordinate(10.1, 52.1))))));
+
+    final byte[] kmz = writeKmz(Arrays.asList(trk));
+    final String kml = readKmlEntry(kmz);
+    assertEquals(0, count(kml, "Track"));
+    assertEquals(0, count(kml, "<when>"));
+    assertEquals(1, count(kml, "<LineString>"));
+
+    final List<Feature> readFeatures = kmlConverter
+        .readKmz(new ByteArrayInputStream(kmz))
+        .collectList()
+        .block();
+    assertNotNull(readFeatures);
+    assertEquals(1, filter(readFeatures, Trk.class).size());
+    assertEquals(2, filter(readFeatures, Trk.class).get(0).getGeometry().getNumPoints());
+  }
+
+  @Test
+  public void writeAndReadKmz() {
+    final List<Feature> features = readKml("Wpt_Track_Route.kml");
+    final List<Feature> readFeatures = kmlConverter
+        .readKmz(new ByteArrayInputStream(writeKmz(features)))
+        .collectList()
+        .block();
+    assertNotNull(readFeatures);
+    assertEquals(10, filter(readFeatures, Wpt.class).size());
+    assertEquals(2, filter(readFeatures, Rte.class).size());
+    assertEquals(2, filter(readFeatures, Trk.class).size());
+
+    final Trk trk = filter(features, Trk.class).get(0);
+    final Trk readTrk = filter(readFeatures, Trk.class)
+        .stream()
+        .filter(t -> t.getProperties().getName().equals(trk.getProperties().getName()))
+        .findAny()
+        .orElse(null);
+    assertNotNull(readTrk);
+    assertEquals(trk.getGeometry().getNumPoints(), readTrk.getGeometry().getNumPoints());
+    assertEquals(trk.getProperties().getTimeLines(), readTrk.getProperties().getTimeLines());
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.geo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.List;
+import org.bremersee.google.maps.model.GeocodingRequest;
+import org.bremersee.nominatim.client.ReactiveNominatimClient;
+import org.bremersee.nominatim.model.SearchRequest;
+import org.bremersee.nominatim.model.SearchResult;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.config.PeregrinusProperties.GeoProviderGuardProperties;
+import org.bremersee.peregrinus.geo.model.GeoCodingQueryRequest;
+import org.bremersee.peregrinus.geo.model.GeoCodingResult;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
+import org.bremersee.tomtom.client.ReactiveGeocodingClient;
+import org.bremersee.tomtom.model.GeocodeRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import reactor.core.publisher.Flux;
+
+/**
+ * Tests the fallback and the merge of the geocoder with stubs of the provider clients.
+ *
+ * @author Christian Bremer
+ */
+public class GeoCoderImplTest {
+
+  private ReactiveNominatimClient nominatimClient;
+
+  private ReactiveGeocodingClient tomTomClient;
+
+  private org.bremersee.google.maps.client.ReactiveGeocodingClient googleClient;
+
+  private PeregrinusProperties properties;
+
+  private static SearchResult searchResult(final double lat, final double lon) {
+    final SearchResult result = mock(SearchResult.class);
+    when(result.hasLatLon()).thenReturn(true);
+    when(result.latToDouble()).thenReturn(lat);
+    when(result.lonToDouble()).thenReturn(lon);
+    return result;
+  }
+
+  private static GeoCodingQueryRequest request(final GeoProvider geoProvider) {
+    final GeoCodingQueryRequest request = new GeoCodingQueryRequest();
+    request.setQuery("Berlin");
+    request.setGeoProvider(geoProvider);
+    return request;
+  }
+
+  @Before
+  public void setUp() {
+    nominatimClient = mock(ReactiveNominatimClient.class);
+    tomTomClient = mock(ReactiveGeocodingClient.class);
+    googleClient = mock(org.bremersee.google.maps.client.ReactiveGeocodingClient.class);
+
+    properties = new PeregrinusProperties();
+    properties.setGoogleKey("google-key");
+    properties.getGeoCoding().setFallbackProviders(
+        Arrays.asList(GeoProvider.NOMINATIM, GeoProvider.GOOGLE));
+    for (final GeoProvider geoProvider : GeoProvider.values()) {
+      final GeoProviderGuardProperties guard = properties.getGeoCoding().getGuard(geoProvider);
+      guard.setPermitsPerSecond(1000.0);
+      guard.setBurst(1000);
+    }
+  }
+
+  private GeoCoderImpl geoCoder() {
+    return new GeoCoderImpl(
+        nominatimClient,
+        tomTomClient,
+        googleClient,
+        new GeoCodingCache(properties, mock(ReactiveMongoOperations.class),
+            new SimpleMeterRegistry()),
+        new ReverseGeoCodingCache(properties, new SimpleMeterRegistry()),
+        properties);
+  }
+
+  @Test
+  public void fallbackToNextProvider() {
+    when(googleClient.geocode(any(GeocodingRequest.class)))
+        .thenReturn(Flux.error(new IllegalStateException("Google is down.")));
+    when(nominatimClient.geocode(any(SearchRequest.class)))
+        .thenReturn(Flux.just(searchResult(52.5, 13.4)));
+
+    final List<GeoCodingResult> results = geoCoder()
+        .geocode(request(GeoProvider.GOOGLE))
+        .collectList()
+        .block();
+
+    assertEquals(1, results.size());
+    assertEquals(13.4, results.get(0).getPosition().getX(), 0.);
+    assertEquals(52.5, results.get(0).getPosition().getY(), 0.);
+    verify(googleClient).geocode(any(GeocodingRequest.class));
+    verify(nominatimClient).geocode(any(SearchRequest.class));
+  }
+
+  @Test
+  public void mergeIgnoresFailedProvider() {
+    properties.getGeoCoding().setMerge(true);
+    when(nominatimClient.geocode(any(SearchRequest.class)))
+        .thenReturn(Flux.just(searchResult(52.5, 13.4), searchResult(48.1, 11.6)));
+    when(googleClient.geocode(any(GeocodingRequest.class)))
+        .thenReturn(Flux.error(new IllegalStateException("Google is down.")));
+
+    final List<GeoCodingResult> results = geoCoder()
+        .geocode(request(GeoProvider.NOMINATIM))
+        .collectList()
+        .block();
+
+    assertEquals(2, results.size());
+  }
+
+  @Test
+  public void mergePropagatesErrorIfAllProvidersFail() {
+    properties.getGeoCoding().setMerge(true);
+    when(nominatimClient.geocode(any(SearchRequest.class)))
+        .thenReturn(Flux.error(new IllegalStateException("Nominatim is down.")));
+    when(googleClient.geocode(any(GeocodingRequest.class)))
+        .thenReturn(Flux.error(new IllegalStateException("Google is down.")));
+
+    final GeoCoderImpl geoCoder = geoCoder();
+    try {
+      geoCoder.geocode(request(GeoProvider.NOMINATIM)).collectList().block();
+      fail("Geocoding must fail, if all providers fail.");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("is down"));
+    }
+
+    // the outage must not be cached as 'no results'
+    when(nominatimClient.geocode(any(SearchRequest.class)))
+        .thenReturn(Flux.just(searchResult(52.5, 13.4)));
+    final List<GeoCodingResult> results = geoCoder
+        .geocode(request(GeoProvider.NOMINATIM))
+        .collectList()
+        .block();
+    assertEquals(1, results.size());
+  }
+
+  @Test
+  public void openCircuitSkipsProvider() {
+    final GeoProviderGuardProperties guard = properties.getGeoCoding()
+        .getGuard(GeoProvider.GOOGLE);
+    guard.setFailureThreshold(2);
+    properties.getGeoCodingCache().setEnabled(false);
+    when(googleClient.geocode(any(GeocodingRequest.class)))
+        .thenReturn(Flux.error(new IllegalStateException("Google is down.")));
+    when(nominatimClient.geocode(any(SearchRequest.class)))
+        .thenReturn(Flux.just(searchResult(52.5, 13.4)));
+
+    final GeoCoderImpl geoCoder = geoCoder();
+    for (int i = 0; i < 4; i++) {
+      final List<GeoCodingResult> results = geoCoder
+          .geocode(request(GeoProvider.GOOGLE))
+          .collectList()
+          .block();
+      assertEquals(1, results.size());
+    }
+    // after two failures the circuit is open and google is not asked anymore
+    verify(googleClient, times(2)).geocode(any(GeocodingRequest.class));
+    verify(nominatimClient, times(4)).geocode(any(SearchRequest.class));
+    verify(tomTomClient, never()).geocode(any(GeocodeRequest.class));
+  }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.geo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Tests the geohash encoding and the distance calculation.
+ *
+ * @author Christian Bremer
+ */
+public class GeoHashTest {
+
+  @Test
+  public void encode() {
+    assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+    assertEquals("u4pru", GeoHash.encode(57.64911, 10.40744, 5));
+    assertEquals("u33dc0c", GeoHash.encode(52.5200, 13.4050, 7));
+    assertEquals("s0000", GeoHash.encode(0., 0., 5));
+    assertEquals("7zzzz", GeoHash.encode(-0.00001, -0.00001, 5));
+  }
+
+  @Test
+  public void encodeWithNeighbours() {
+    final Set<String> hashes = GeoHash.encodeWithNeighbours(52.5200, 13.4050, 7);
+    assertEquals(9, hashes.size());
+    assertEquals("u33dc0c", hashes.iterator().next());
+    for (final String hash : hashes) {
+      assertEquals(7, hash.length());
+      assertTrue(hash.startsWith("u33"));
+    }
+  }
+
+  @Test
+  public void encodeWithNeighboursAtAntimeridian() {
+    final Set<String> hashes = GeoHash.encodeWithNeighbours(0.00001, 179.99999, 5);
+    assertEquals(9, hashes.size());
+    // the cells on the other side of the antimeridian are neighbours, too
+    assertTrue(hashes.contains(GeoHash.encode(0.00001, -179.99999, 5)));
+  }
+
+  @Test
+  public void distance() {
+    assertEquals(0., GeoHash.distance(52.52, 13.405, 52.52, 13.405), 0.);
+    // one degree of latitude is about 111.2 km
+    assertEquals(111195., GeoHash.distance(52., 13., 53., 13.), 10.);
+    // Berlin - Munich is about 504 km
+    assertEquals(504000., GeoHash.distance(52.5200, 13.4050, 48.1351, 11.5820), 2000.);
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.geo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bremersee.peregrinus.config.PeregrinusProperties.GeoProviderGuardProperties;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests the circuit breaker and the rate limit of the geo provider guard.
+ *
+ * @author Christian Bremer
+ */
+public class GeoProviderGuardTest {
+
+  private static GeoProviderGuardProperties properties() {
+    final GeoProviderGuardProperties properties = new GeoProviderGuardProperties();
+    properties.setPermitsPerSecond(1000.0);
+    properties.setBurst(1000);
+    properties.setFailureThreshold(2);
+    properties.setOpenDuration(Duration.ofMillis(200L));
+    return properties;
+  }
+
+  private static void assertUnavailable(final Mono<?> call) {
+    try {
+      call.block();
+      fail("The provider must not be available.");
+    } catch (GeoProviderUnavailableException e) {
+      assertTrue(e.getMessage() != null);
+    }
+  }
+
+  private static void assertFails(final Mono<?> call) {
+    try {
+      call.block();
+      fail("The call must fail.");
+    } catch (IllegalStateException e) {
+      assertEquals("down", e.getMessage());
+    }
+  }
+
+  @Test
+  public void openCircuit() throws InterruptedException {
+    final GeoProviderGuard guard = new GeoProviderGuard(
+        GeoProvider.NOMINATIM, properties(), Duration.ofSeconds(5L));
+    final AtomicInteger calls = new AtomicInteger();
+
+    assertFails(guard.execute(() -> {
+      calls.incrementAndGet();
+      return Mono.error(new IllegalStateException("down"));
+    }));
+    assertFails(guard.execute(() -> {
+      calls.incrementAndGet();
+      return Mono.error(new IllegalStateException("down"));
+    }));
+
+    // the circuit is open, the provider is not called
+    assertUnavailable(guard.execute(() -> {
+      calls.incrementAndGet();
+      return Mono.just("ok");
+    }));
+    assertEquals(2, calls.get());
+
+    // after the open duration one trial request is allowed and closes the circuit
+    Thread.sleep(300L);
+    assertEquals("ok", guard.execute(() -> {
+      calls.incrementAndGet();
+      return Mono.just("ok");
+    }).block());
+    assertEquals("ok", guard.execute(() -> {
+      calls.incrementAndGet();
+      return Mono.just("ok");
+    }).block());
+    assertEquals(4, calls.get());
+  }
+
+  @Test
+  public void failedTrialOpensCircuitAgain() throws InterruptedException {
+    final GeoProviderGuard guard = new GeoProviderGuard(
+        GeoProvider.NOMINATIM, properties(), Duration.ofSeconds(5L));
+
+    assertFails(guard.execute(() -> Mono.error(new IllegalStateException("down"))));
+    assertFails(guard.execute(() -> Mono.error(new IllegalStateException("down"))));
+    Thread.sleep(300L);
+    assertFails(guard.execute(() -> Mono.error(new IllegalStateException("down"))));
+    assertUnavailable(guard.execute(() -> Mono.just("ok")));
+  }
+
+  @Test
+  public void rateLimit() {
+    final GeoProviderGuardProperties properties = properties();
+    properties.setPermitsPerSecond(1.0);
+    properties.setBurst(1);
+    properties.setMaxWait(Duration.ofMillis(100L));
+    final GeoProviderGuard guard = new GeoProviderGuard(
+        GeoProvider.NOMINATIM, properties, Duration.ofSeconds(5L));
+
+    assertEquals("ok", guard.execute(() -> Mono.just("ok")).block());
+    assertUnavailable(guard.execute(() -> Mono.just("ok")));
+  }
+
+  @Test
+  public void cancelledDelayedTrialClosesHalfOpenCircuit() throws InterruptedException {
+    final GeoProviderGuardProperties properties = properties();
+    properties.setPermitsPerSecond(1.0);
+    properties.setBurst(1);
+    properties.setMaxWait(Duration.ofSeconds(5L));
+    properties.setFailureThreshold(1);
+    properties.setOpenDuration(Duration.ofMillis(100L));
+    final GeoProviderGuard guard = new GeoProviderGuard(
+        GeoProvider.NOMINATIM, properties, Duration.ofSeconds(5L));
+    final AtomicInteger calls = new AtomicInteger();
+
+    assertFails(guard.execute(() -> Mono.error(new IllegalStateException("down"))));
+    Thread.sleep(200L);
+
+    // the trial request waits for a permit and is cancelled by the faster one (hedging)
+    assertEquals("other", Mono.first(
+        guard.execute(() -> {
+          calls.incrementAndGet();
+          return Mono.just("ok");
+        }),
+        Mono.just("other"))
+        .block());
+    assertEquals(0, calls.get());
+
+    // the cancelled trial does not block the next one
+    assertEquals("ok", guard.execute(() -> {
+      calls.incrementAndGet();
+      return Mono.just("ok");
+    }).block());
+    assertEquals(1, calls.get());
+  }
+
+}
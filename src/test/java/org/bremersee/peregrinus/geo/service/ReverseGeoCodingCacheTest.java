@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.geo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.geo.model.GeoCodingResult;
+import org.bremersee.peregrinus.geo.model.GeoProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Point;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests the reverse geocoding cache.
+ *
+ * @author Christian Bremer
+ */
+public class ReverseGeoCodingCacheTest {
+
+  private ReverseGeoCodingCache cache;
+
+  private AtomicInteger loads;
+
+  @Before
+  public void setUp() {
+    final PeregrinusProperties properties = new PeregrinusProperties();
+    properties.getReverseGeoCoding().setTolerance(25.0);
+    properties.getReverseGeoCoding().setGeoHashPrecision(7);
+    cache = new ReverseGeoCodingCache(properties, new SimpleMeterRegistry());
+    loads = new AtomicInteger();
+  }
+
+  private GeoCodingResult get(
+      final double latitude,
+      final double longitude,
+      final Locale language,
+      final GeoCodingResult loaded) {
+
+    final Point position = GeometryUtils.createPointWGS84(latitude, longitude);
+    return cache
+        .get(position, language, GeoProvider.NOMINATIM, () -> {
+          loads.incrementAndGet();
+          return Mono.justOrEmpty(loaded);
+        })
+        .block();
+  }
+
+  @Test
+  public void getNearbyPosition() {
+    final GeoCodingResult result = new GeoCodingResult();
+    assertSame(result, get(52.5200, 13.4050, Locale.GERMAN, result));
+    assertEquals(1, loads.get());
+
+    // about 10 meters away
+    assertSame(result, get(52.52009, 13.4050, Locale.GERMAN, new GeoCodingResult()));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void getNearbyPositionInNeighbourCell() {
+    // the cell u33dc0c ends at latitude 52.520141..., the positions are about 9 meters apart
+    final GeoCodingResult result = new GeoCodingResult();
+    assertSame(result, get(52.52010, 13.4050, Locale.GERMAN, result));
+    assertSame(result, get(52.52018, 13.4050, Locale.GERMAN, new GeoCodingResult()));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void getDistantPosition() {
+    final GeoCodingResult result = new GeoCodingResult();
+    final GeoCodingResult other = new GeoCodingResult();
+    assertSame(result, get(52.5200, 13.4050, Locale.GERMAN, result));
+
+    // about 100 meters away
+    assertSame(other, get(52.5209, 13.4050, Locale.GERMAN, other));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void getOtherLanguage() {
+    final GeoCodingResult result = new GeoCodingResult();
+    final GeoCodingResult other = new GeoCodingResult();
+    assertSame(result, get(52.5200, 13.4050, Locale.GERMAN, result));
+    assertSame(other, get(52.5200, 13.4050, Locale.ENGLISH, other));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void getEmptyResult() {
+    assertNull(get(52.5200, 13.4050, null, null));
+    assertNull(get(52.5200, 13.4050, null, new GeoCodingResult()));
+    assertEquals(1, loads.get());
+  }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.geo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.bremersee.geojson.utils.GeometryUtils;
+import org.bremersee.peregrinus.config.PeregrinusProperties;
+import org.bremersee.peregrinus.content.model.Rte;
+import org.bremersee.peregrinus.content.model.RteSegment;
+import org.bremersee.peregrinus.geo.model.TomTomRteCalculationProperties;
+import org.bremersee.tomtom.client.ReactiveRoutingClient;
+import org.bremersee.tomtom.model.LatLon;
+import org.bremersee.tomtom.model.LatLonAware;
+import org.bremersee.tomtom.model.Route;
+import org.bremersee.tomtom.model.RouteLeg;
+import org.bremersee.tomtom.model.RoutingRequest;
+import org.bremersee.tomtom.model.RoutingResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests the reuse of legs and the shared requests of the route calculator.
+ *
+ * @author Christian Bremer
+ */
+public class RteCalculatorImplTest {
+
+  private static final Point A = GeometryUtils.createPointWGS84(52.0, 10.0);
+
+  private static final Point B = GeometryUtils.createPointWGS84(52.1, 10.1);
+
+  private static final Point C = GeometryUtils.createPointWGS84(52.2, 10.2);
+
+  private static final Point D = GeometryUtils.createPointWGS84(52.3, 10.3);
+
+  private static final Point C_MOVED = GeometryUtils.createPointWGS84(52.25, 10.15);
+
+  private ReactiveRoutingClient routingClient;
+
+  private RteCalculatorImpl rteCalculator;
+
+  private TomTomRteCalculationProperties calculationProperties;
+
+  @Before
+  public void setUp() {
+    routingClient = mock(ReactiveRoutingClient.class);
+    rteCalculator = new RteCalculatorImpl(
+        routingClient, new PeregrinusProperties(), new SimpleMeterRegistry());
+    calculationProperties = new TomTomRteCalculationProperties();
+  }
+
+  private static LatLon latLon(final double latitude, final double longitude) {
+    return new LatLon(LatLonAware.builder().latitude(latitude).longitude(longitude).build());
+  }
+
+  /*
+   * A leg from start to end with a point in the middle.
+   */
+  private static RouteLeg leg(final Point start, final Point end) {
+    final RouteLeg leg = mock(RouteLeg.class);
+    doReturn(Arrays.asList(
+        latLon(start.getY(), start.getX()),
+        latLon((start.getY() + end.getY()) / 2., (start.getX() + end.getX()) / 2.),
+        latLon(end.getY(), end.getX())))
+        .when(leg).getPoints();
+    return leg;
+  }
+
+  private static RoutingResponse response(final Point... locations) {
+    final List<RouteLeg> legs = new ArrayList<>();
+    for (int i = 0; i < locations.length - 1; i++) {
+      legs.add(leg(locations[i], locations[i + 1]));
+    }
+    final Route route = mock(Route.class);
+    doReturn(legs).when(route).getLegs();
+    final RoutingResponse response = mock(RoutingResponse.class);
+    doReturn(Collections.singletonList(route)).when(response).getRoutes();
+    return response;
+  }
+
+  private Rte calculate(final Point... locations) {
+    when(routingClient.calculateRoute(any(RoutingRequest.class)))
+        .thenReturn(Mono.just(response(locations)));
+    final Rte rte = rteCalculator
+        .calculateRte(Arrays.asList(locations), calculationProperties)
+        .block();
+    assertNotNull(rte);
+    return rte;
+  }
+
+  private static void assertSegments(final Rte rte, final Point... locations) {
+    final List<RteSegment> segments = rte.getProperties().getRteSegments();
+    assertEquals(locations.length, segments.size());
+    assertEquals(locations.length - 1, rte.getGeometry().getNumGeometries());
+    for (int i = 0; i < locations.length; i++) {
+      assertTrue(locations[i].equalsExact(segments.get(i).getPoint(), 0.0000001));
+    }
+  }
+
+  @Test
+  public void recalculateMovedViaPoint() {
+    final Rte rte = calculate(A, B, C, D);
+    assertSegments(rte, A, B, C, D);
+    final Geometry firstLeg = rte.getGeometry().getGeometryN(0);
+
+    // only the legs to and from the moved via point are calculated with one request
+    when(routingClient.calculateRoute(any(RoutingRequest.class)))
+        .thenReturn(Mono.just(response(B, C_MOVED, D)));
+    final Rte recalculated = rteCalculator
+        .recalculateRte(rte, Arrays.asList(A, B, C_MOVED, D), calculationProperties)
+        .block();
+    assertNotNull(recalculated);
+    assertSegments(recalculated, A, B, C_MOVED, D);
+    // the first leg is not part of the request, so it must be the reused one
+    assertTrue(firstLeg.equalsExact(recalculated.getGeometry().getGeometryN(0)));
+
+    final ArgumentCaptor<RoutingRequest> requests = ArgumentCaptor.forClass(RoutingRequest.class);
+    verify(routingClient, times(2)).calculateRoute(requests.capture());
+    assertEquals(4, requests.getAllValues().get(0).getLocations().size());
+    assertEquals(3, requests.getAllValues().get(1).getLocations().size());
+  }
+
+  @Test
+  public void recalculateUnchangedRte() {
+    final Rte rte = calculate(A, B, C, D);
+    final Rte recalculated = rteCalculator
+        .recalculateRte(rte, Arrays.asList(A, B, C, D), calculationProperties)
+        .block();
+    assertNotNull(recalculated);
+    assertSegments(recalculated, A, B, C, D);
+    verify(routingClient, times(1)).calculateRoute(any(RoutingRequest.class));
+  }
+
+  @Test
+  public void recalculateWithOtherProperties() {
+    final Rte rte = calculate(A, B, C);
+    final TomTomRteCalculationProperties otherProperties = new TomTomRteCalculationProperties();
+    otherProperties.setDepartAt(Instant.parse("2019-02-01T10:00:00Z"));
+    when(routingClient.calculateRoute(any(RoutingRequest.class)))
+        .thenReturn(Mono.just(response(A, B, C)));
+    final Rte recalculated = rteCalculator
+        .recalculateRte(rte, Arrays.asList(A, B, C), otherProperties)
+        .block();
+    assertNotNull(recalculated);
+    assertSegments(recalculated, A, B, C);
+    verify(routingClient, times(2)).calculateRoute(any(RoutingRequest.class));
+  }
+
+  @Test
+  public void shareConcurrentCalculations() {
+    when(routingClient.calculateRoute(any(RoutingRequest.class)))
+        .thenReturn(Mono.just(response(A, B)).delayElement(Duration.ofMillis(100L)));
+    final Mono<Rte> first = rteCalculator.calculateRte(Arrays.asList(A, B), calculationProperties);
+    final Mono<Rte> second = rteCalculator.calculateRte(Arrays.asList(A, B), calculationProperties);
+    verify(routingClient, never()).calculateRoute(any(RoutingRequest.class));
+
+    final List<Rte> rtes = Mono.zip(first, second, (a, b) -> Arrays.asList(a, b)).block();
+    assertNotNull(rtes);
+    assertSegments(rtes.get(0), A, B);
+    assertSegments(rtes.get(1), A, B);
+    // every caller gets its own copy of the cached route
+    assertTrue(rtes.get(0) != rtes.get(1));
+    verify(routingClient, times(1)).calculateRoute(any(RoutingRequest.class));
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests the lease with an embedded MongoDB.
+ *
+ * @author Christian Bremer
+ */
+@RunWith(SpringRunner.class)
+@DataMongoTest
+public class MongoLeaseTest {
+
+  @Autowired
+  private ReactiveMongoTemplate mongoTemplate;
+
+  @Test
+  public void acquireAndRelease() {
+    final MongoLease one = new MongoLease(mongoTemplate, "acquireAndRelease");
+    final MongoLease two = new MongoLease(mongoTemplate, "acquireAndRelease");
+    final Duration duration = Duration.ofMinutes(5L);
+
+    assertTrue(one.acquire(duration).block());
+    assertFalse(two.acquire(duration).block());
+    // the holder can renew its lease
+    assertTrue(one.acquire(duration).block());
+
+    one.release().block();
+    assertTrue(two.acquire(duration).block());
+    assertFalse(one.acquire(duration).block());
+  }
+
+  @Test
+  public void acquireExpiredLease() throws InterruptedException {
+    final MongoLease one = new MongoLease(mongoTemplate, "acquireExpiredLease");
+    final MongoLease two = new MongoLease(mongoTemplate, "acquireExpiredLease");
+
+    assertTrue(one.acquire(Duration.ofMillis(50L)).block());
+    Thread.sleep(100L);
+    assertTrue(two.acquire(Duration.ofMinutes(5L)).block());
+  }
+
+  @Test
+  public void runExclusively() {
+    final MongoLease one = new MongoLease(mongoTemplate, "runExclusively");
+    final MongoLease two = new MongoLease(mongoTemplate, "runExclusively");
+    final Duration duration = Duration.ofMinutes(5L);
+
+    final Long result = one
+        .runExclusively(duration, Mono.defer(() -> {
+          // the other instance must not run the job at the same time
+          assertNull(two.runExclusively(duration, Mono.just(2L)).block());
+          return Mono.just(1L);
+        }))
+        .block();
+    assertEquals(Long.valueOf(1L), result);
+
+    // the lease was released
+    assertEquals(Long.valueOf(2L), two.runExclusively(duration, Mono.just(2L)).block());
+  }
+
+}
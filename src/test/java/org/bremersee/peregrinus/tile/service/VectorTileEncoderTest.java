@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.peregrinus.tile.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Tests the vector tile encoder by decoding the encoded tile.
+ *
+ * @author Christian Bremer
+ */
+public class VectorTileEncoderTest {
+
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+  private static Map<String, String> tags(final String id, final String name) {
+    final Map<String, String> tags = new LinkedHashMap<>();
+    tags.put("id", id);
+    tags.put("name", name);
+    return tags;
+  }
+
+  @Test
+  public void encode() {
+    final VectorTileEncoder encoder = new VectorTileEncoder(4096);
+    encoder.addFeature("wpt", tags("a", "A"),
+        GEOMETRY_FACTORY.createPoint(new Coordinate(25, 17)));
+    encoder.addFeature("wpt", tags("d", "D"),
+        GEOMETRY_FACTORY.createPoint(new Coordinate(-1, 3)));
+    encoder.addFeature("trk", tags("b", "B"),
+        GEOMETRY_FACTORY.createLineString(new Coordinate[]{
+            new Coordinate(2, 2), new Coordinate(2, 10), new Coordinate(10, 10)}));
+    // a clipped geometry, that consists of a point and a line
+    encoder.addFeature("trk", tags("c", null),
+        GEOMETRY_FACTORY.createGeometryCollection(new Geometry[]{
+            GEOMETRY_FACTORY.createPoint(new Coordinate(5, 5)),
+            GEOMETRY_FACTORY.createLineString(new Coordinate[]{
+                new Coordinate(0, 0), new Coordinate(3.2, 3.9)})}));
+    // a line, that is shorter than one tile unit, is dropped
+    encoder.addFeature("trk", tags("e", "E"),
+        GEOMETRY_FACTORY.createLineString(new Coordinate[]{
+            new Coordinate(1, 1), new Coordinate(1.2, 1.1)}));
+
+    final List<DecodedLayer> layers = decodeTile(encoder.encode());
+    assertEquals(2, layers.size());
+
+    final DecodedLayer wpt = layers.get(0);
+    assertEquals("wpt", wpt.name);
+    assertEquals(2, wpt.version);
+    assertEquals(4096, wpt.extent);
+    assertEquals(Arrays.asList("id", "name"), wpt.keys);
+    assertEquals(Arrays.asList("a", "A", "d", "D"), wpt.values);
+    assertEquals(2, wpt.features.size());
+    assertFeature(wpt.features.get(0), 1, Arrays.asList(0, 0, 1, 1), Arrays.asList(9, 50, 34));
+    assertFeature(wpt.features.get(1), 1, Arrays.asList(0, 2, 1, 3), Arrays.asList(9, 1, 6));
+
+    final DecodedLayer trk = layers.get(1);
+    assertEquals("trk", trk.name);
+    assertEquals(Arrays.asList("id", "name"), trk.keys);
+    assertEquals(Arrays.asList("b", "B", "c"), trk.values);
+    assertEquals(3, trk.features.size());
+    assertFeature(trk.features.get(0), 2, Arrays.asList(0, 0, 1, 1),
+        Arrays.asList(9, 4, 4, 18, 0, 16, 16, 0));
+    assertFeature(trk.features.get(1), 1, Arrays.asList(0, 2), Arrays.asList(9, 10, 10));
+    assertFeature(trk.features.get(2), 2, Arrays.asList(0, 2), Arrays.asList(9, 0, 0, 10, 6, 8));
+  }
+
+  @Test
+  public void encodeEmptyTile() {
+    assertEquals(0, new VectorTileEncoder(4096).encode().length);
+  }
+
+  private static void assertFeature(
+      final DecodedFeature feature,
+      final int type,
+      final List<Integer> tags,
+      final List<Integer> geometry) {
+    assertEquals(type, feature.type);
+    assertEquals(tags, feature.tags);
+    assertEquals(geometry, feature.geometry);
+  }
+
+  private static List<DecodedLayer> decodeTile(final byte[] bytes) {
+    final List<DecodedLayer> layers = new ArrayList<>();
+    final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+    while (in.available() > 0) {
+      final long tag = readVarint(in);
+      assertEquals(3, tag >>> 3);
+      assertEquals(2, tag & 0x7);
+      layers.add(decodeLayer(readBytes(in)));
+    }
+    return layers;
+  }
+
+  private static DecodedLayer decodeLayer(final byte[] bytes) {
+    final DecodedLayer layer = new DecodedLayer();
+    final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+    while (in.available() > 0) {
+      final long tag = readVarint(in);
+      switch ((int) (tag >>> 3)) {
+        case 1:
+          layer.name = new String(readBytes(in), StandardCharsets.UTF_8);
+          break;
+        case 2:
+          layer.features.add(decodeFeature(readBytes(in)));
+          break;
+        case 3:
+          layer.keys.add(new String(readBytes(in), StandardCharsets.UTF_8));
+          break;
+        case 4:
+          final ByteArrayInputStream value = new ByteArrayInputStream(readBytes(in));
+          assertEquals((1 << 3) | 2, readVarint(value));
+          layer.values.add(new String(readBytes(value), StandardCharsets.UTF_8));
+          break;
+        case 5:
+          layer.extent = (int) readVarint(in);
+          break;
+        case 15:
+          layer.version = (int) readVarint(in);
+          break;
+        default:
+          throw new AssertionError("Unexpected field " + (tag >>> 3));
+      }
+    }
+    return layer;
+  }
+
+  private static DecodedFeature decodeFeature(final byte[] bytes) {
+    final DecodedFeature feature = new DecodedFeature();
+    final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+    while (in.available() > 0) {
+      final long tag = readVarint(in);
+      switch ((int) (tag >>> 3)) {
+        case 2:
+          feature.tags.addAll(readPacked(readBytes(in)));
+          break;
+        case 3:
+          feature.type = (int) readVarint(in);
+          break;
+        case 4:
+          feature.geometry.addAll(readPacked(readBytes(in)));
+          break;
+        default:
+          throw new AssertionError("Unexpected field " + (tag >>> 3));
+      }
+    }
+    return feature;
+  }
+
+  private static List<Integer> readPacked(final byte[] bytes) {
+    final List<Integer> values = new ArrayList<>();
+    final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+    while (in.available() > 0) {
+      values.add((int) readVarint(in));
+    }
+    return values;
+  }
+
+  private static byte[] readBytes(final ByteArrayInputStream in) {
+    final byte[] bytes = new byte[(int) readVarint(in)];
+    assertEquals(bytes.length, in.read(bytes, 0, bytes.length));
+    return bytes;
+  }
+
+  private static long readVarint(final ByteArrayInputStream in) {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.read();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  private static class DecodedLayer {
+
+    private String name;
+
+    private int version;
+
+    private int extent;
+
+    private final List<String> keys = new ArrayList<>();
+
+    private final List<String> values = new ArrayList<>();
+
+    private final List<DecodedFeature> features = new ArrayList<>();
+  }
+
+  private static class DecodedFeature {
+
+    private int type;
+
+    private final List<Integer> tags = new ArrayList<>();
+
+    private final List<Integer> geometry = new ArrayList<>();
+  }
+
+}